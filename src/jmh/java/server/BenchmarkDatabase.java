@@ -0,0 +1,160 @@
+package server;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * Wbudowana baza H2 (tryb MySQL) dla benchmarków.
+ * <p>
+ * Schemat pochodzi z tego samego pliku {@code init.sql} co w testach, a następnie baza jest
+ * wypełniana w dużej skali: {@link #films} filmów, {@link #users} użytkowników (login {@code userN},
+ * hasło {@value #PASSWORD}) i po {@link #history} zwróconych i opłaconych wypożyczeń na użytkownika.
+ * Rozmiar można zmienić parametrami JMH, np. {@code -p users=50000}.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    /** Adres bazy w pamięci. */
+    static final String URL = "jdbc:h2:mem:bench;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE";
+    /** Hasło wszystkich użytkowników testowych. */
+    static final String PASSWORD = "haslo";
+
+    private static final String[] GENRES = {"Sci-Fi", "Dramat", "Komedia", "Thriller", "Horror", "Animacja"};
+    private static final int BATCH = 1_000;
+
+    /** Liczba użytkowników (i klientów). */
+    @Param("10000")
+    public int users;
+    /** Liczba filmów. */
+    @Param("50000")
+    public int films;
+    /** Liczba archiwalnych wypożyczeń na użytkownika. */
+    @Param("20")
+    public int history;
+
+    /**
+     * Tworzy schemat i wypełnia bazę. Świeża baza nadaje kolejne ID od 1,
+     * więc użytkownik {@code userN} ma ID {@code N}, a filmy ID od 1 do {@link #films}.
+     *
+     * @throws Exception W przypadku błędu bazy lub braku {@code init.sql}.
+     */
+    @Setup(Level.Trial)
+    public void seed() throws Exception {
+        Database.setConnectionDetails(URL, "sa", "");
+        try (Connection conn = DriverManager.getConnection(URL, "sa", "")) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("DROP ALL OBJECTS");
+                try (InputStream is = BenchmarkDatabase.class.getResourceAsStream("/init.sql")) {
+                    if (is == null) throw new IllegalStateException("Nie znaleziono pliku init.sql");
+                    for (String query : new String(is.readAllBytes(), StandardCharsets.UTF_8).split(";")) {
+                        if (!query.trim().isEmpty()) st.execute(query.trim());
+                    }
+                }
+                st.execute("DELETE FROM Film");
+                st.execute("ALTER TABLE Film ALTER COLUMN id RESTART WITH 1");
+            }
+            conn.setAutoCommit(false);
+            seedFilms(conn);
+            seedUsers(conn);
+            seedHistory(conn);
+            conn.commit();
+        }
+        FilmCatalog.shared().invalidate();
+        BillingEngine.shared().forgetAll();
+        UserHistoryCache.shared().forgetAll();
+    }
+
+    /**
+     * Zamyka pulę połączeń po zakończeniu pomiarów.
+     */
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        Database.shutdown();
+    }
+
+    private void seedFilms(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO Film(tytul, gatunek, rok, dostepny) VALUES (?, ?, ?, TRUE)")) {
+            for (int i = 1; i <= films; i++) {
+                ps.setString(1, "Film " + i);
+                ps.setString(2, GENRES[i % GENRES.length]);
+                ps.setInt(3, 1950 + i % 75);
+                ps.addBatch();
+                if (i % BATCH == 0) ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void seedUsers(Connection conn) throws SQLException {
+        String hash = new UserRepository().hash(PASSWORD);
+        try (PreparedStatement pu = conn.prepareStatement("INSERT INTO Uzytkownik(username, password_hash) VALUES (?, ?)");
+             PreparedStatement pk = conn.prepareStatement("INSERT INTO Klient(id, imie, nazwisko, email, telefon) VALUES (?, '', '', '', '')")) {
+            for (int i = 1; i <= users; i++) {
+                pu.setString(1, "user" + i);
+                pu.setString(2, hash);
+                pu.addBatch();
+                pk.setInt(1, i);
+                pk.addBatch();
+                if (i % BATCH == 0) {
+                    pu.executeBatch();
+                    pk.executeBatch();
+                }
+            }
+            pu.executeBatch();
+            pk.executeBatch();
+        }
+    }
+
+    private void seedHistory(Connection conn) throws SQLException {
+        long now = System.currentTimeMillis();
+        try (PreparedStatement pr = conn.prepareStatement("INSERT INTO Rachunek(klient_id, dataWystawienia, lacznaKwota) VALUES (?, ?, ?)");
+             PreparedStatement pt = conn.prepareStatement("INSERT INTO Transakcja(klient_id, film_id, dataWypozyczenia, dataZwrotu) VALUES (?, ?, ?, ?)");
+             PreparedStatement po = conn.prepareStatement("INSERT INTO Oplata(transakcja_id, rachunek_id, kwota, powod) VALUES (?, ?, ?, 'Startowe + Czas (30 min)')")) {
+            int transId = 0;
+            for (int u = 1; u <= users; u++) {
+                pr.setInt(1, u);
+                pr.setTimestamp(2, new Timestamp(now));
+                pr.setDouble(3, history * 55.0);
+                pr.addBatch();
+                for (int h = 0; h < history; h++) {
+                    long rentedAt = now - (long) (h + 1) * 86_400_000L;
+                    pt.setInt(1, u);
+                    pt.setInt(2, 1 + (u * 31 + h * 7) % films);
+                    pt.setTimestamp(3, new Timestamp(rentedAt));
+                    pt.setTimestamp(4, new Timestamp(rentedAt + 1_800_000L));
+                    pt.addBatch();
+                    po.setInt(1, ++transId);
+                    po.setInt(2, u);
+                    po.setDouble(3, 55.0);
+                    po.addBatch();
+                }
+                if (u % 50 == 0) {
+                    pr.executeBatch();
+                    pt.executeBatch();
+                    po.executeBatch();
+                }
+            }
+            pr.executeBatch();
+            pt.executeBatch();
+            po.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark pełnego cyklu żądanie-odpowiedź protokołu tekstowego przez gniazdo na interfejsie
+ * pętli zwrotnej: akceptacja w {@link ServerApp#dispatch}, {@code ClientHandler},
+ * {@link CommandProcessor}, repozytorium i zapis odpowiedzi.
+ * <p>
+ * Każdy wątek JMH ma własne połączenie i własną sesję (zalogowany użytkownik {@code userN}).
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtocolBenchmark {
+
+    /**
+     * Serwer nasłuchujący na losowym porcie, obsługujący klientów jak {@link ServerApp#main}.
+     */
+    @State(Scope.Benchmark)
+    public static class Server {
+        ServerSocket serverSocket;
+        ExecutorService executor;
+        Thread acceptor;
+
+        /**
+         * @param db Baza benchmarków (wypełniana przed uruchomieniem serwera).
+         * @throws IOException Jeśli nie udało się otworzyć portu.
+         */
+        @Setup(Level.Trial)
+        public void start(BenchmarkDatabase db) throws IOException {
+            serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+            executor = ServerApp.createExecutor(ServerApp.ExecutionMode.POOL);
+            Semaphore sessions = new Semaphore(1000);
+            acceptor = new Thread(() -> {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        ServerApp.dispatch(serverSocket.accept(), executor, sessions);
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }, "bench-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        /**
+         * Zatrzymuje serwer.
+         *
+         * @throws IOException W przypadku błędu zamykania gniazda.
+         */
+        @TearDown(Level.Trial)
+        public void stop() throws IOException {
+            serverSocket.close();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Połączenie klienta z zalogowaną sesją.
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        private static final AtomicInteger USERS = new AtomicInteger();
+
+        Socket socket;
+        OutputStream out;
+        BufferedReader in;
+        SplittableRandom random;
+        String token;
+        int filmCount;
+
+        /**
+         * @param server Uruchomiony serwer.
+         * @param db     Baza benchmarków.
+         * @throws IOException W przypadku błędu połączenia lub logowania.
+         */
+        @Setup(Level.Trial)
+        public void connect(Server server, BenchmarkDatabase db) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), server.serverSocket.getLocalPort());
+            socket.setTcpNoDelay(true);
+            out = socket.getOutputStream();
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            int user = 1 + USERS.getAndIncrement() % db.users;
+            random = new SplittableRandom(user);
+            filmCount = db.films;
+            String[] login = call("LOGIN;user" + user + ";" + BenchmarkDatabase.PASSWORD).split(";");
+            if (login.length < 3) throw new IOException("Logowanie nie powiodło się: " + String.join(";", login));
+            token = login[2];
+        }
+
+        /**
+         * Zamyka połączenie.
+         *
+         * @throws IOException W przypadku błędu zamykania gniazda.
+         */
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        String call(String command) throws IOException {
+            out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            return in.readLine();
+        }
+
+        int callList(String command) throws IOException {
+            out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            int rows = 0;
+            for (String line; (line = in.readLine()) != null && !"END".equals(line); ) rows++;
+            return rows;
+        }
+    }
+
+    @Benchmark
+    public String countAvailable(Client c) throws IOException {
+        return c.call("COUNT_AVAILABLE");
+    }
+
+    @Benchmark
+    public String login(Client c) throws IOException {
+        return c.call("LOGIN;user1;" + BenchmarkDatabase.PASSWORD);
+    }
+
+    @Benchmark
+    public int getFilmsPage(Client c) throws IOException {
+        return c.callList("GET_FILMS_PAGE;" + c.random.nextInt(c.filmCount) + ";100");
+    }
+
+    @Benchmark
+    public int searchFilms(Client c) throws IOException {
+        return c.callList("SEARCH_FILMS;film " + (1 + c.random.nextInt(999)) + ";;;1");
+    }
+
+    @Benchmark
+    public int myTransactions(Client c) throws IOException {
+        return c.callList("MY_TRANS;" + c.token);
+    }
+
+    @Benchmark
+    public int myRentals(Client c) throws IOException {
+        return c.callList("MY_RENTS;" + c.token);
+    }
+}
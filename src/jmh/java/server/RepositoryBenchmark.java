@@ -0,0 +1,167 @@
+package server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarki metod repozytoriów, puli połączeń i skrótu hasła na bazie {@link BenchmarkDatabase}.
+ * <p>
+ * Odczyty losują użytkownika i film z całej bazy. Zapisy (wypożyczenie i płatność) wykonuje każdy wątek
+ * na własnym filmie i własnym użytkowniku, a każda iteracja przywraca stan (film wraca jako dostępny),
+ * więc wyniki kolejnych iteracji są porównywalne. Każdy benchmark przyjmuje {@link BenchmarkDatabase},
+ * aby JMH wypełnił bazę przed pomiarem.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final UserRepository userRepo = new UserRepository();
+    private final FilmRepository filmRepo = new FilmRepository();
+    private final TransactionRepository transRepo = new TransactionRepository();
+
+    /**
+     * Stan wątku: generator losowy oraz film i użytkownik używani przez benchmarki zapisu.
+     */
+    @State(Scope.Thread)
+    public static class Worker {
+        SplittableRandom random;
+        int ownUser;
+        int ownFilm;
+        int registered;
+
+        /**
+         * @param db Baza benchmarków.
+         */
+        @Setup
+        public void setUp(BenchmarkDatabase db) {
+            int index = THREADS.getAndIncrement();
+            random = new SplittableRandom(index);
+            ownUser = db.users - index;
+            ownFilm = db.films - index;
+        }
+
+        int user(BenchmarkDatabase db) {
+            return 1 + random.nextInt(db.users);
+        }
+
+        int film(BenchmarkDatabase db) {
+            return 1 + random.nextInt(db.films);
+        }
+    }
+
+    @Benchmark
+    public boolean connectAndClose(BenchmarkDatabase db) throws SQLException {
+        try (Connection conn = Database.connect()) {
+            return conn != null;
+        }
+    }
+
+    @Benchmark
+    public String hashPassword(Worker w) {
+        return userRepo.hash("haslo" + w.random.nextInt(1000));
+    }
+
+    @Benchmark
+    public int login(BenchmarkDatabase db, Worker w) {
+        return userRepo.getUserIdByCredentials("user" + w.user(db), BenchmarkDatabase.PASSWORD);
+    }
+
+    /**
+     * Rejestracja nowego użytkownika i jego usunięcie ({@link UserRepository#deleteUser(int)}).
+     */
+    @Benchmark
+    public boolean registerAndDelete(Worker w) {
+        String name = "bench-" + Thread.currentThread().getId() + "-" + w.registered++;
+        userRepo.registerUser(name, BenchmarkDatabase.PASSWORD);
+        return userRepo.deleteUser(userRepo.getUserIdByCredentials(name, BenchmarkDatabase.PASSWORD));
+    }
+
+    @Benchmark
+    public boolean changePassword(BenchmarkDatabase db, Worker w) {
+        return userRepo.changeUserPassword(w.user(db), BenchmarkDatabase.PASSWORD);
+    }
+
+    @Benchmark
+    public List<String> getAllUsers(BenchmarkDatabase db) {
+        return userRepo.getAllUsers();
+    }
+
+    @Benchmark
+    public List<String> getAllFilmsFormatted(BenchmarkDatabase db) {
+        return filmRepo.getAllFilmsFormatted();
+    }
+
+    @Benchmark
+    public List<Film> loadFilmsFromDatabase(BenchmarkDatabase db) throws SQLException {
+        return filmRepo.loadFilmsFromDatabase();
+    }
+
+    @Benchmark
+    public List<Film> getFilmsPage(BenchmarkDatabase db, Worker w) throws SQLException {
+        return filmRepo.getFilmsPage(w.film(db), 100);
+    }
+
+    @Benchmark
+    public int streamAllFilms(BenchmarkDatabase db, Blackhole bh) throws SQLException, IOException {
+        return filmRepo.streamAllFilms(bh::consume);
+    }
+
+    @Benchmark
+    public List<String> getUserTransactions(BenchmarkDatabase db, Worker w) {
+        return transRepo.getUserTransactions(w.user(db));
+    }
+
+    @Benchmark
+    public List<String> getUserRentals(BenchmarkDatabase db, Worker w) {
+        return transRepo.getUserRentals(w.user(db));
+    }
+
+    @Benchmark
+    public List<BillingEngine.OpenCharge> loadOpenCharges(BenchmarkDatabase db, Worker w) throws SQLException {
+        return transRepo.loadOpenCharges(w.user(db));
+    }
+
+    @Benchmark
+    public String rentAndPay(Worker w) throws SQLException {
+        transRepo.rentFilm(w.ownUser, w.ownFilm);
+        String result = null;
+        for (BillingEngine.OpenCharge c : transRepo.loadOpenCharges(w.ownUser)) {
+            result = transRepo.payTransaction(w.ownUser, c.oplataId());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public String rentReturnAndPayAll(Worker w) {
+        transRepo.rentFilm(w.ownUser, w.ownFilm);
+        transRepo.returnFilm(w.ownUser, w.ownFilm);
+        return transRepo.payAll(w.ownUser);
+    }
+}
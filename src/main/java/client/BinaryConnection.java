@@ -0,0 +1,162 @@
+package client;
+
+import protocol.BinaryProtocol;
+import protocol.Request;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trwałe połączenie z serwerem korzystające z protokołu binarnego ({@link BinaryProtocol}).
+ * <p>
+ * W przeciwieństwie do trybu tekstowego (nowe gniazdo na każdą komendę) połączenie jest
+ * negocjowane raz i używane dla kolejnych komend. Komendy są budowane z typowanych argumentów
+ * ({@link Request}), a listy filmów odbierane jako pola typowane ({@link FilmEntry}) przez
+ * {@link #callFilms(Request)}; pozostałe odpowiedzi to linie tekstu jak w trybie tekstowym.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+class BinaryConnection implements Closeable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    private BinaryConnection(Socket socket, DataInputStream in, DataOutputStream out) {
+        this.socket = socket;
+        this.in = in;
+        this.out = out;
+    }
+
+    /**
+     * Nawiązuje połączenie i negocjuje protokół binarny.
+     *
+     * @param host Adres serwera.
+     * @param port Port serwera.
+     * @return Połączenie binarne lub {@code null}, jeśli serwer nie obsługuje protokołu binarnego.
+     * @throws IOException W przypadku błędu połączenia.
+     */
+    static BinaryConnection open(String host, int port) throws IOException {
+        Socket socket = new Socket(host, port);
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream rawIn = new BufferedInputStream(socket.getInputStream());
+            OutputStream rawOut = new BufferedOutputStream(socket.getOutputStream());
+            Charset cs = Charset.defaultCharset();
+
+            rawOut.write((BinaryProtocol.NEGOTIATE + "\n").getBytes(cs));
+            rawOut.flush();
+            if (!BinaryProtocol.NEGOTIATE_OK.equals(readTextLine(rawIn, cs))) {
+                socket.close();
+                return null;
+            }
+            return new BinaryConnection(socket, new DataInputStream(rawIn), new DataOutputStream(rawOut));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wysyła komendę i odbiera odpowiedź jako linie tekstu (filmy w formacie {@link FilmEntry#format()}).
+     *
+     * @param request Komenda.
+     * @return Linie odpowiedzi (dla odpowiedzi jednowierszowej - lista z jednym elementem).
+     * @throws IOException W przypadku błędu połączenia.
+     */
+    synchronized List<String> call(Request request) throws IOException {
+        request.writeFrame(out);
+        out.flush();
+        return lines(readReply());
+    }
+
+    /**
+     * Wysyła komendę zwracającą listę filmów i odbiera ją jako pola typowane.
+     *
+     * @param request Komenda (np. {@link Request#getAvailableFilms()}).
+     * @return Filmy z odpowiedzi; wiersze, które nie są filmami, są pomijane.
+     * @throws IOException W przypadku błędu połączenia.
+     */
+    synchronized List<FilmEntry> callFilms(Request request) throws IOException {
+        request.writeFrame(out);
+        out.flush();
+        List<FilmEntry> films = new ArrayList<>();
+        for (Object row : readReply()) {
+            FilmEntry film = row instanceof FilmEntry ? (FilmEntry) row : FilmEntry.parse((String) row);
+            if (film != null) films.add(film);
+        }
+        return films;
+    }
+
+    /**
+     * Wysyła kilka komend jedną paczką (pipelining) i odbiera odpowiedzi w tej samej kolejności.
+     * Wszystkie ramki są kodowane przed wysłaniem i zapisywane jednym opróżnieniem bufora.
+     *
+     * @param requests Komendy.
+     * @return Odpowiedzi, po jednej liście linii na komendę.
+     * @throws IOException W przypadku błędu połączenia.
+     */
+    synchronized List<List<String>> callAll(List<Request> requests) throws IOException {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(requests.size() * 32);
+        DataOutputStream batchOut = new DataOutputStream(batch);
+        for (Request request : requests) request.writeFrame(batchOut);
+        batch.writeTo(out);
+        out.flush();
+
+        List<List<String>> replies = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) replies.add(lines(readReply()));
+        return replies;
+    }
+
+    /** Odczytuje odpowiedź: napisy lub (dla {@link BinaryProtocol#REPLY_FILMS}) obiekty {@link FilmEntry}. */
+    private List<Object> readReply() throws IOException {
+        DataInputStream frame = BinaryProtocol.readFrame(in);
+        if (frame == null) throw new EOFException("Serwer zamknął połączenie");
+
+        int kind = frame.readUnsignedByte();
+        List<Object> rows = new ArrayList<>();
+        if (kind == BinaryProtocol.REPLY_LINE) {
+            rows.add(BinaryProtocol.readString(frame));
+            return rows;
+        }
+        int count = frame.readInt();
+        for (int i = 0; i < count; i++) {
+            if (kind == BinaryProtocol.REPLY_FILMS) {
+                int id = frame.readInt();
+                String tytul = BinaryProtocol.readString(frame);
+                int rok = frame.readShort();
+                boolean dostepny = frame.readUnsignedByte() != 0;
+                rows.add(new FilmEntry(id, tytul, rok, dostepny));
+            } else {
+                rows.add(BinaryProtocol.readString(frame));
+            }
+        }
+        return rows;
+    }
+
+    private static List<String> lines(List<Object> rows) {
+        List<String> lines = new ArrayList<>(rows.size());
+        for (Object row : rows) lines.add(row instanceof FilmEntry ? ((FilmEntry) row).format() : (String) row);
+        return lines;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /** Czyta jedną linię tekstu bajt po bajcie, aby nie zabrać z bufora danych ramek binarnych. */
+    private static String readTextLine(InputStream in, Charset cs) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(32);
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') line.write(b);
+        }
+        return b == -1 && line.size() == 0 ? null : line.toString(cs);
+    }
+}
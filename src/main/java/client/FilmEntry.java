@@ -0,0 +1,43 @@
+package client;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Film z odpowiedzi serwera (GET_FILMS, GET_AVAILABLE_FILMS) w postaci pól typowanych.
+ * <p>
+ * W protokole binarnym pola przychodzą wprost z ramki ({@code REPLY_FILMS}); w tekstowym
+ * są odczytywane z linii {@code "ID. Tytuł (Rok) - Dostępny: Tak/Nie"}.
+ * </p>
+ *
+ * @param id       ID filmu.
+ * @param tytul    Tytuł.
+ * @param rok      Rok produkcji.
+ * @param dostepny Czy film można wypożyczyć.
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+record FilmEntry(int id, String tytul, int rok, boolean dostepny) {
+
+    private static final Pattern LINE = Pattern.compile("^(\\d+)\\. (.*) \\((\\d+)\\) - Dostępny: (Tak|Nie)$");
+
+    /**
+     * Odczytuje film z linii protokołu tekstowego.
+     *
+     * @param line Linia odpowiedzi.
+     * @return Film lub {@code null}, jeśli linia nie opisuje filmu.
+     */
+    static FilmEntry parse(String line) {
+        Matcher m = LINE.matcher(line);
+        if (!m.matches()) return null;
+        return new FilmEntry(Integer.parseInt(m.group(1)), m.group(2), Integer.parseInt(m.group(3)), "Tak".equals(m.group(4)));
+    }
+
+    /**
+     * @return Tekst w formacie {@code "ID. Tytuł (Rok) - Dostępny: Tak/Nie"} (jak w protokole tekstowym).
+     */
+    String format() {
+        return String.format(Locale.ROOT, "%d. %s (%d) - Dostępny: %s", id, tytul, rok, dostepny ? "Tak" : "Nie");
+    }
+}
@@ -0,0 +1,111 @@
+package client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Narzędzie wiersza poleceń do importu katalogu filmów z pliku CSV (komenda ADMIN_IMPORT_FILMS).
+ * <p>
+ * Plik (UTF-8) zawiera wiersze {@code tytul,gatunek,rok}, opcjonalnie z nagłówkiem; pola mogą
+ * być ujęte w cudzysłów, ale nie mogą zawierać znaku nowej linii. Import wymaga sesji
+ * administratora: narzędzie loguje się jako {@code import.user} (domyślnie {@code admin}) hasłem
+ * z {@code import.password} lub wpisanym w konsoli. Plik jest czytany i wysyłany wiersz po
+ * wierszu, więc jego wielkość nie wpływa na pamięć klienta. Serwer pomija duplikaty (ten sam
+ * tytuł i rok) i zatwierdza nowe filmy porcjami już w trakcie wysyłania; odsyłany postęp jest
+ * wypisywany na standardowe wyjście przez osobny wątek.
+ * </p>
+ * <p>
+ * Przykład: {@code java -Dimport.host=127.0.0.1 -Dimport.port=5000 -Dimport.user=admin -cp ... client.ImportFilms filmy.csv}
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class ImportFilms {
+
+    private ImportFilms() {
+    }
+
+    /**
+     * Punkt wejścia narzędzia.
+     *
+     * @param args Ścieżka do pliku CSV.
+     * @throws IOException W przypadku błędu odczytu pliku lub połączenia z serwerem.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Użycie: ImportFilms <plik.csv>");
+            System.exit(2);
+        }
+        String host = System.getProperty("import.host", "127.0.0.1");
+        int port = Integer.getInteger("import.port", 5000);
+
+        String user = System.getProperty("import.user", "admin");
+        String password = System.getProperty("import.password");
+        if (password == null) {
+            if (System.console() == null) {
+                System.err.println("Brak hasła: ustaw -Dimport.password");
+                System.exit(2);
+            }
+            password = new String(System.console().readPassword("Hasło użytkownika %s: ", user));
+        }
+
+        try (Socket socket = new Socket(host, port);
+             BufferedReader csv = Files.newBufferedReader(Path.of(args[0]), StandardCharsets.UTF_8);
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()), 65536);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            out.write("LOGIN;" + user + ";" + password + "\n");
+            out.flush();
+            String reply = in.readLine();
+            String[] login = reply == null ? new String[0] : reply.split(";", 3);
+            if (login.length < 3 || !"LOGIN_OK".equals(login[0])) {
+                System.err.println("Logowanie nieudane");
+                System.exit(1);
+            }
+            out.write("ADMIN_IMPORT_FILMS;" + login[2] + "\n");
+            out.flush();
+            reply = in.readLine();
+            if (!"IMPORT_READY".equals(reply)) {
+                System.err.println("Serwer odrzucił import: " + reply);
+                System.exit(1);
+            }
+
+            // Serwer odsyła postęp w trakcie wysyłania pliku - czytany równolegle, aby nie zapełnić bufora gniazda.
+            Thread progress = new Thread(() -> {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null && !"END".equals(line)) System.out.println(line);
+                } catch (IOException e) {
+                    System.err.println("Błąd odczytu odpowiedzi: " + e.getMessage());
+                }
+            }, "import-progress");
+            progress.start();
+
+            int sent = 0;
+            String line;
+            while ((line = csv.readLine()) != null) {
+                // Pojedyncze "END" zakończyłoby import; i tak nie jest poprawnym wierszem.
+                if ("END".equals(line)) continue;
+                out.write(line);
+                out.write('\n');
+                if (++sent % 100_000 == 0) System.out.println("Wysłano wierszy: " + sent);
+            }
+            out.write("END\n");
+            out.flush();
+            System.out.println("Wysłano wierszy: " + sent);
+            try {
+                progress.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package client;
+
+import server.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generator obciążenia serwera wypożyczalni.
+ * <p>
+ * Symuluje {@code load.users} wirtualnych użytkowników. Każdy ma własne trwałe połączenie
+ * i wysyła te same komendy tekstowe co {@link MainClient} ({@code LOGIN;login;hasło},
+ * {@code RENT;film;token} itd.), wybierając akcję losowo według proporcji {@code load.mix}:
+ * </p>
+ * <ul>
+ * <li>{@code login} - ponowne logowanie (nowy token sesji),</li>
+ * <li>{@code browse} - strona katalogu {@code GET_FILMS_PAGE},</li>
+ * <li>{@code rent} - wypożyczenie dostępnego filmu z ostatnio oglądanej strony,</li>
+ * <li>{@code fees} - lista opłat {@code MY_TRANS},</li>
+ * <li>{@code pay} - opłacenie najstarszej nieopłaconej opłaty ({@code PAY}).</li>
+ * </ul>
+ * <p>
+ * Tryb {@code closed} (domyślny): każdy użytkownik wykonuje akcję, odczekuje losowy czas
+ * namysłu (rozkład wykładniczy o średniej {@code load.thinkMs}) i wykonuje następną.
+ * Tryb {@code open}: akcje przychodzą ze stałą średnią częstością {@code load.rate} na sekundę
+ * (proces Poissona) niezależnie od tego, jak szybko odpowiada serwer; czas odpowiedzi liczony jest
+ * od planowanego startu, więc kolejkowanie po stronie klienta nie zaniża wyników.
+ * </p>
+ * <p>
+ * Na koniec wypisywana jest przepustowość, odsetek błędów i percentyle czasów dla każdej komendy.
+ * Jeśli ustawiono {@code load.histogramDir}, dla każdej komendy zapisywany jest też plik
+ * {@code <KOMENDA>.hgrm} z rozkładem percentyli w formacie HdrHistogram, który można porównywać
+ * między wersjami serwera (np. w HdrHistogram Plotter).
+ * </p>
+ * <p>
+ * Przykład: {@code java -Dload.users=200 -Dload.durationSec=60 -Dload.mode=open -Dload.rate=500 -cp ... client.LoadGenerator}
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class LoadGenerator {
+
+    private static final Pattern UNPAID_FEE = Pattern.compile("^\\S+ (\\d+) \\|.*: NIE$");
+    private static final Pattern AVAILABLE_FILM = Pattern.compile("^(\\d+)\\. .* - \\S+: Tak$");
+
+    private final String host;
+    private final int port;
+    private final int users;
+    private final long durationMillis;
+    private final boolean openLoop;
+    private final double rate;
+    private final long thinkMillis;
+    private final String userPrefix;
+    private final String password;
+    private final String[] actions;
+    private final int[] cumulativeWeights;
+
+    private final Map<String, Stat> stats = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    /**
+     * Tworzy generator na podstawie właściwości systemowych {@code load.*}.
+     */
+    LoadGenerator() {
+        this.host = System.getProperty("load.host", "127.0.0.1");
+        this.port = Integer.getInteger("load.port", 5000);
+        this.users = Integer.getInteger("load.users", 50);
+        this.durationMillis = TimeUnit.SECONDS.toMillis(Long.getLong("load.durationSec", 60L));
+        this.openLoop = "open".equalsIgnoreCase(System.getProperty("load.mode", "closed"));
+        this.rate = Double.parseDouble(System.getProperty("load.rate", "100"));
+        this.thinkMillis = Long.getLong("load.thinkMs", 500L);
+        this.userPrefix = System.getProperty("load.userPrefix", "load");
+        this.password = System.getProperty("load.password", "load");
+
+        Map<String, Integer> mix = parseMix(System.getProperty("load.mix", "login=5,browse=40,rent=15,fees=25,pay=15"));
+        this.actions = mix.keySet().toArray(new String[0]);
+        this.cumulativeWeights = new int[actions.length];
+        int sum = 0;
+        for (int i = 0; i < actions.length; i++) {
+            sum += mix.get(actions[i]);
+            cumulativeWeights[i] = sum;
+        }
+        if (sum <= 0) throw new IllegalArgumentException("Pusta proporcja akcji load.mix");
+    }
+
+    /**
+     * Punkt wejścia generatora. Parametry przekazywane są właściwościami systemowymi
+     * ({@code load.host}, {@code load.port}, {@code load.users}, {@code load.durationSec},
+     * {@code load.mode}, {@code load.rate}, {@code load.thinkMs}, {@code load.mix},
+     * {@code load.userPrefix}, {@code load.password}, {@code load.histogramDir}).
+     *
+     * @param args Argumenty wiersza poleceń (nieużywane).
+     * @throws Exception W przypadku przerwania lub błędu zapisu histogramów.
+     */
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        generator.run();
+        generator.report(System.out);
+        String dir = System.getProperty("load.histogramDir");
+        if (dir != null) generator.writeHistograms(Path.of(dir));
+    }
+
+    static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            if (kv.length != 2) throw new IllegalArgumentException("Niepoprawny wpis load.mix: " + part);
+            String action = kv[0].trim().toLowerCase(Locale.ROOT);
+            if (!List.of("login", "browse", "rent", "fees", "pay").contains(action)) {
+                throw new IllegalArgumentException("Nieznana akcja load.mix: " + action);
+            }
+            int weight = Integer.parseInt(kv[1].trim());
+            if (weight > 0) mix.put(action, weight);
+        }
+        return mix;
+    }
+
+    /**
+     * Łączy wirtualnych użytkowników, wykonuje test przez zadany czas i czeka na zakończenie wątków.
+     *
+     * @throws InterruptedException Jeśli wątek główny został przerwany.
+     */
+    void run() throws InterruptedException {
+        List<VirtualUser> vus = new ArrayList<>(users);
+        for (int i = 1; i <= users; i++) {
+            VirtualUser vu = new VirtualUser(userPrefix + i, i);
+            try {
+                vu.connect();
+                vus.add(vu);
+            } catch (IOException e) {
+                stat("CONNECT").errors.increment();
+            }
+        }
+        System.out.printf(Locale.US, "Połączono %d/%d użytkowników, tryb %s, czas %d s%n",
+                vus.size(), users, openLoop ? "open (" + rate + "/s)" : "closed (namysł " + thinkMillis + " ms)",
+                durationMillis / 1000);
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        BlockingQueue<Long> arrivals = new LinkedBlockingQueue<>();
+        CountDownLatch done = new CountDownLatch(vus.size());
+        for (VirtualUser vu : vus) {
+            Thread t = new Thread(() -> {
+                try {
+                    if (openLoop) vu.runOpen(arrivals, end);
+                    else vu.runClosed(end);
+                } finally {
+                    vu.close();
+                    done.countDown();
+                }
+            }, "vu-" + vu.index);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        if (openLoop) {
+            SplittableRandom random = new SplittableRandom();
+            double meanGapNanos = 1_000_000_000.0 / rate;
+            long next = start;
+            while (next < end) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                arrivals.add(next);
+                next += (long) (-Math.log(1.0 - random.nextDouble()) * meanGapNanos);
+            }
+            running = false;
+        } else {
+            long wait = end - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            running = false;
+        }
+        done.await(30, TimeUnit.SECONDS);
+        int backlog = arrivals.size();
+        if (backlog > 0) System.out.println("Niewykonane akcje w kolejce (serwer nie nadążał): " + backlog);
+    }
+
+    /**
+     * Wypisuje podsumowanie: liczba wywołań, błędy, przepustowość i percentyle czasów (ms).
+     *
+     * @param out Strumień wyjściowy.
+     */
+    void report(PrintStream out) {
+        double seconds = durationMillis / 1000.0;
+        out.printf(Locale.US, "%-16s %9s %8s %7s %10s %9s %9s %9s %9s %9s%n",
+                "KOMENDA", "WYWOŁANIA", "BŁĘDY", "BŁĘDY%", "OPS/S", "P50", "P90", "P99", "P99.9", "MAX");
+        long total = 0;
+        long totalErrors = 0;
+        for (Map.Entry<String, Stat> e : new TreeMap<>(stats).entrySet()) {
+            LatencyHistogram h = e.getValue().latency;
+            long count = h.count();
+            long errors = e.getValue().errors.sum();
+            total += count;
+            totalErrors += errors;
+            out.printf(Locale.US, "%-16s %9d %8d %6.2f%% %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    e.getKey(), count, errors, count == 0 ? 0.0 : 100.0 * errors / count, count / seconds,
+                    ms(h.percentile(0.50)), ms(h.percentile(0.90)), ms(h.percentile(0.99)),
+                    ms(h.percentile(0.999)), ms(h.max()));
+        }
+        out.printf(Locale.US, "Razem: %d wywołań, %.1f/s, błędy %.2f%%%n",
+                total, total / seconds, total == 0 ? 0.0 : 100.0 * totalErrors / total);
+    }
+
+    /**
+     * Zapisuje rozkład percentyli każdej komendy w formacie {@code .hgrm} (wartości w ms).
+     *
+     * @param dir Katalog docelowy (tworzony w razie potrzeby).
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    void writeHistograms(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        for (Map.Entry<String, Stat> e : stats.entrySet()) {
+            LatencyHistogram h = e.getValue().latency;
+            if (h.count() == 0) continue;
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve(e.getKey() + ".hgrm")),
+                    false, StandardCharsets.UTF_8)) {
+                out.printf("%12s %14s %10s %14s%n%n", "Value", "Percentile", "TotalCount", "1/(1-Percentile)");
+                for (double q = 0.0; q < 0.999999; q = q + (1.0 - q) / 2) {
+                    hgrmLine(out, h, q);
+                    if (q > 0.0) hgrmLine(out, h, q + (1.0 - q) / 4);
+                }
+                hgrmLine(out, h, 1.0);
+                out.printf(Locale.US, "#[Mean    = %12.3f, Max            = %12.3f]%n", h.mean() / 1_000_000.0, ms(h.max()));
+                out.printf(Locale.US, "#[Total count    = %12d]%n", h.count());
+            }
+        }
+        System.out.println("Zapisano histogramy do " + dir.toAbsolutePath());
+    }
+
+    private static void hgrmLine(PrintStream out, LatencyHistogram h, double q) {
+        long value = h.percentile(q);
+        long totalCount = Math.max(1, (long) Math.ceil(q * h.count()));
+        if (q >= 1.0) out.printf(Locale.US, "%12.3f %2.12f %10d%n", ms(value), q, totalCount);
+        else out.printf(Locale.US, "%12.3f %2.12f %10d %14.2f%n", ms(value), q, totalCount, 1.0 / (1.0 - q));
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private Stat stat(String command) {
+        Stat s = stats.get(command);
+        return s != null ? s : stats.computeIfAbsent(command, k -> new Stat());
+    }
+
+    /** Liczniki jednej komendy. */
+    private static final class Stat {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * Wirtualny użytkownik z własnym połączeniem i sesją.
+     */
+    private final class VirtualUser {
+        private final String login;
+        private final int index;
+        private final SplittableRandom random;
+        private Socket socket;
+        private OutputStream out;
+        private BufferedReader in;
+        private String token;
+        private int lastPageStart;
+        private final List<Integer> availableFilms = new ArrayList<>();
+        private final List<Integer> unpaidFees = new ArrayList<>();
+
+        private VirtualUser(String login, int index) {
+            this.login = login;
+            this.index = index;
+            this.random = new SplittableRandom(index * 7919L);
+        }
+
+        private void connect() throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            out = socket.getOutputStream();
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            call("REGISTER", "REGISTER;" + login + ";" + password, false, System.nanoTime());
+            login(System.nanoTime());
+            if (token == null) throw new IOException("Logowanie nie powiodło się: " + login);
+        }
+
+        private void runClosed(long end) {
+            while (running && System.nanoTime() < end) {
+                if (!step(System.nanoTime())) return;
+                long think = (long) (-Math.log(1.0 - random.nextDouble()) * thinkMillis);
+                try {
+                    Thread.sleep(Math.min(think, Math.max(0, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()))));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void runOpen(BlockingQueue<Long> arrivals, long end) {
+            while (running || !arrivals.isEmpty()) {
+                Long intended;
+                try {
+                    intended = arrivals.poll(50, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (intended == null) continue;
+                if (!step(intended)) return;
+                if (System.nanoTime() > end + TimeUnit.SECONDS.toNanos(5)) return;
+            }
+        }
+
+        /**
+         * Wykonuje jedną losową akcję.
+         *
+         * @param intendedStart Planowany start (czas odpowiedzi liczony jest od tej chwili).
+         * @return {@code false}, jeśli połączenie zostało zerwane.
+         */
+        private boolean step(long intendedStart) {
+            try {
+                switch (pickAction()) {
+                    case "login" -> login(intendedStart);
+                    case "browse" -> browse(intendedStart);
+                    case "rent" -> rent(intendedStart);
+                    case "fees" -> fees(intendedStart);
+                    case "pay" -> pay(intendedStart);
+                    default -> { }
+                }
+                return true;
+            } catch (IOException e) {
+                stat("DISCONNECT").errors.increment();
+                return false;
+            }
+        }
+
+        private String pickAction() {
+            int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (r < cumulativeWeights[i]) return actions[i];
+            }
+            return actions[actions.length - 1];
+        }
+
+        private void login(long intendedStart) throws IOException {
+            List<String> reply = call("LOGIN", "LOGIN;" + login + ";" + password, false, intendedStart);
+            String[] parts = reply.isEmpty() ? new String[0] : reply.get(0).split(";");
+            if (parts.length >= 3 && "LOGIN_OK".equals(parts[0])) token = parts[2];
+        }
+
+        private void browse(long intendedStart) throws IOException {
+            int after = lastPageStart;
+            lastPageStart = random.nextInt(4) == 0 ? 0 : lastPageStart + 50;
+            List<String> rows = call("GET_FILMS_PAGE", "GET_FILMS_PAGE;" + after + ";50", true, intendedStart);
+            if (rows.isEmpty()) lastPageStart = 0;
+            availableFilms.clear();
+            for (String row : rows) {
+                Matcher m = AVAILABLE_FILM.matcher(row);
+                if (m.matches()) availableFilms.add(Integer.parseInt(m.group(1)));
+            }
+        }
+
+        private void rent(long intendedStart) throws IOException {
+            if (availableFilms.isEmpty()) {
+                browse(intendedStart);
+                return;
+            }
+            int filmId = availableFilms.remove(random.nextInt(availableFilms.size()));
+            call("RENT", "RENT;" + filmId + ";" + token, false, intendedStart);
+        }
+
+        private void fees(long intendedStart) throws IOException {
+            List<String> rows = call("MY_TRANS", "MY_TRANS;" + token, true, intendedStart);
+            unpaidFees.clear();
+            for (String row : rows) {
+                Matcher m = UNPAID_FEE.matcher(row);
+                if (m.matches()) unpaidFees.add(Integer.parseInt(m.group(1)));
+            }
+        }
+
+        private void pay(long intendedStart) throws IOException {
+            if (unpaidFees.isEmpty()) {
+                fees(intendedStart);
+                return;
+            }
+            call("PAY", "PAY;" + unpaidFees.remove(0) + ";0.0;" + token, false, intendedStart);
+        }
+
+        /**
+         * Wysyła komendę i czyta odpowiedź (jedną linię albo listę do "END"), mierząc czas.
+         */
+        private List<String> call(String name, String command, boolean list, long intendedStart) throws IOException {
+            out.write((command + "\n").getBytes());
+            out.flush();
+            List<String> reply = new ArrayList<>();
+            String line;
+            if (list) {
+                while ((line = in.readLine()) != null && !"END".equals(line)) reply.add(line);
+            } else if ((line = in.readLine()) != null) {
+                reply.add(line);
+            }
+            if (line == null) throw new IOException("Serwer zamknął połączenie");
+            Stat s = stat(name);
+            s.latency.recordSince(intendedStart);
+            if (isError(reply)) s.errors.increment();
+            return reply;
+        }
+
+        private boolean isError(List<String> reply) {
+            if (reply.isEmpty()) return false;
+            String first = reply.get(0);
+            return first.equals("ERROR") || first.equals("SESSION_INVALID") || first.equals("SERVER_BUSY")
+                    || first.equals("UNKNOWN_COMMAND") || first.startsWith("Błąd");
+        }
+
+        private void close() {
+            try {
+                if (socket != null) socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
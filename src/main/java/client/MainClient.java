@@ -14,6 +14,8 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import protocol.Request;
+
 /**
  * Główna klasa aplikacji klienckiej (Frontend) oparta na bibliotece Swing.
  * <p>
@@ -32,11 +34,20 @@ public class MainClient {
 
     /** Przechowuje ID zalogowanego użytkownika (-1 oznacza brak logowania). */
     private static int loggedUserId = -1;
+    /** Token sesji wydany przez serwer przy logowaniu (null oznacza brak logowania). */
+    private static String sessionToken;
     /** Port serwera. */
     private static final int PORT = 5000;
     /** Adres IP serwera. */
     private static final String HOST = "127.0.0.1";
 
+    /** Czy używać protokołu binarnego ({@code -Dclient.protocol=binary}); tekstowy pozostaje rezerwą. */
+    private static final boolean USE_BINARY = "binary".equalsIgnoreCase(System.getProperty("client.protocol"));
+    /** Trwałe połączenie binarne (null - jeszcze nie nawiązane lub serwer go nie obsługuje). */
+    private static BinaryConnection binaryConnection;
+    /** Ustawiane, gdy serwer odrzucił negocjację - kolejne komendy idą protokołem tekstowym. */
+    private static boolean binaryUnsupported;
+
     /** Główna czcionka aplikacji. */
     private static final Font MAIN_FONT = new Font("Segoe UI", Font.BOLD, 14);
     /** Domyślny kolor tekstu na przyciskach. */
@@ -122,11 +133,13 @@ public class MainClient {
             if (result == JOptionPane.OK_OPTION) {
                 String user = userField.getText();
                 String pass = new String(passField.getPassword());
-                String reply = sendCommand("LOGIN;" + user + ";" + pass);
+                String reply = sendCommand(Request.login(user, pass));
 
                 if (reply != null && reply.startsWith("LOGIN_OK;")) {
-                    String[] parts = reply.split(";", 2);
+                    String[] parts = reply.split(";", 3);
                     loggedUserId = Integer.parseInt(parts[1]);
+                    // Starszy serwer nie wydaje tokenu - wtedy komendy niosą ID użytkownika.
+                    sessionToken = parts.length > 2 ? parts[2] : String.valueOf(loggedUserId);
                     frame.setVisible(false);
 
                     if ("admin".equals(user)) {
@@ -153,7 +166,7 @@ public class MainClient {
             if (result == JOptionPane.OK_OPTION) {
                 String user = userField.getText();
                 String pass = new String(passField.getPassword());
-                String reply = sendCommand("REGISTER;" + user + ";" + pass);
+                String reply = sendCommand(Request.register(user, pass));
                 if ("REGISTER_OK".equals(reply)) {
                     JOptionPane.showMessageDialog(frame, "Zarejestrowano pomyślnie!");
                 } else {
@@ -178,7 +191,7 @@ public class MainClient {
      */
     private static JFrame buildDashboardFrame(JFrame mainFrame) {
         JFrame frame = new JFrame("Panel użytkownika");
-        frame.setSize(600, 600);
+        frame.setSize(600, 720);
         frame.setLocationRelativeTo(mainFrame);
         frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 
@@ -203,10 +216,12 @@ public class MainClient {
         JButton rentBtn = createModernButton("Wypożycz film", new Color(41, 128, 185));
         JButton myRentsBtn = createModernButton("Moje wypożyczenia", new Color(39, 174, 96)); // Zielony
         JButton myTransBtn = createModernButton("Moje transakcje / opłaty", new Color(211, 84, 0)); // Pomarańczowy
+        JButton summaryBtn = createModernButton("Podsumowanie konta", new Color(39, 174, 96));
         JButton payAndReturnBtn = createModernButton("Zapłać i zwróć film", new Color(192, 57, 43)); // Czerwony
+        JButton payAllBtn = createModernButton("Zapłać wszystko", new Color(192, 57, 43));
         JButton logoutBtn = createModernButton("Wyloguj", new Color(90, 90, 90));
 
-        for (JComponent c : new JComponent[]{moviesBtn, rentBtn, myRentsBtn, myTransBtn, payAndReturnBtn, new JSeparator(), logoutBtn}) {
+        for (JComponent c : new JComponent[]{moviesBtn, rentBtn, myRentsBtn, myTransBtn, summaryBtn, payAndReturnBtn, payAllBtn, new JSeparator(), logoutBtn}) {
             c.setAlignmentX(Component.CENTER_ALIGNMENT);
             if (c instanceof JButton) {
                 contentPanel.add(c);
@@ -224,17 +239,12 @@ public class MainClient {
         moviesBtn.addActionListener(e -> showMoviesWindow(frame));
 
         rentBtn.addActionListener(e -> {
-            List<String> lines = sendCommandLines("GET_FILMS");
-            if (lines == null) { JOptionPane.showMessageDialog(frame, "Błąd połączenia"); return; }
+            List<FilmEntry> films = fetchFilms(Request.getAvailableFilms());
+            if (films == null) { JOptionPane.showMessageDialog(frame, "Błąd połączenia"); return; }
 
             List<String> available = new ArrayList<>();
-            Pattern idPattern = Pattern.compile("^(\\d+)\\.");
-            for (String l : lines) {
-                if (l.contains("Dostępny: Tak") || l.contains("Dostepny: Tak")) {
-                    Matcher m = idPattern.matcher(l);
-                    if (m.find()) available.add(m.group(1) + " - " + l.substring(l.indexOf(".") + 1).trim());
-                }
-            }
+            // Serwer zwraca już tylko dostępne filmy.
+            for (FilmEntry f : films) available.add(f.id() + " - " + f.tytul() + " (" + f.rok() + ")");
 
             if (available.isEmpty()) { JOptionPane.showMessageDialog(frame, "Brak dostępnych filmów."); return; }
 
@@ -243,16 +253,17 @@ public class MainClient {
 
             try {
                 int filmId = Integer.parseInt(selected.split("\\s*-\\s*", 2)[0].trim());
-                String reply = sendCommand("RENT;" + filmId + ";" + loggedUserId);
+                String reply = sendCommand(Request.rent(filmId, sessionToken));
                 JOptionPane.showMessageDialog(frame, reply);
             } catch (Exception ex) { JOptionPane.showMessageDialog(frame, "Błąd przetwarzania"); }
         });
 
-        myRentsBtn.addActionListener(e -> showListWindow(frame, "Moje wypożyczenia", "MY_RENTS;" + loggedUserId));
-        myTransBtn.addActionListener(e -> showListWindow(frame, "Moje opłaty", "MY_TRANS;" + loggedUserId));
+        myRentsBtn.addActionListener(e -> showListWindow(frame, "Moje wypożyczenia", Request.myRentals(sessionToken)));
+        myTransBtn.addActionListener(e -> showListWindow(frame, "Moje opłaty", Request.myTransactions(sessionToken)));
+        summaryBtn.addActionListener(e -> showAccountSummary(frame));
 
         payAndReturnBtn.addActionListener(e -> {
-            List<String> lines = sendCommandLines("MY_TRANS;" + loggedUserId);
+            List<String> lines = sendCommandLines(Request.myTransactions(sessionToken));
             if (lines == null) { JOptionPane.showMessageDialog(frame, "Błąd połączenia"); return; }
 
             List<String> unpaid = new ArrayList<>();
@@ -272,13 +283,20 @@ public class MainClient {
 
             Matcher mId = Pattern.compile("ID:\\s*(\\d+)").matcher(selected);
             if (mId.find()) {
-                String reply = sendCommand("PAY;" + mId.group(1) + ";0.0;" + loggedUserId);
+                String reply = sendCommand(Request.pay(Integer.parseInt(mId.group(1)), sessionToken));
                 JOptionPane.showMessageDialog(frame, reply);
             }
         });
 
+        payAllBtn.addActionListener(e -> {
+            String balance = sendCommand(Request.myBalance(sessionToken));
+            if (balance == null) { JOptionPane.showMessageDialog(frame, "Błąd połączenia"); return; }
+            int confirm = JOptionPane.showConfirmDialog(frame, balance + "\nZapłacić i zwrócić wszystkie filmy?", "Zapłać wszystko", JOptionPane.YES_NO_OPTION);
+            if (confirm == JOptionPane.YES_OPTION) JOptionPane.showMessageDialog(frame, sendCommand(Request.payAll(sessionToken)));
+        });
+
         logoutBtn.addActionListener(e -> {
-            loggedUserId = -1;
+            logout();
             frame.dispose();
             mainFrame.setVisible(true);
         });
@@ -291,6 +309,15 @@ public class MainClient {
         return frame;
     }
 
+    /**
+     * Kończy sesję na serwerze i czyści dane zalogowanego użytkownika.
+     */
+    private static void logout() {
+        if (sessionToken != null) sendCommand(Request.logout(sessionToken));
+        sessionToken = null;
+        loggedUserId = -1;
+    }
+
     /**
      * Buduje panel administratora.
      * Uruchamiany tylko, gdy login to "admin". Umożliwia zarządzanie użytkownikami.
@@ -327,24 +354,30 @@ public class MainClient {
         listWrapper.add(new JScrollPane(userList), BorderLayout.CENTER);
         bgPanel.add(listWrapper, BorderLayout.CENTER);
 
-        JPanel btnPanel = new JPanel(new GridLayout(2, 2, 15, 15));
+        JPanel btnPanel = new JPanel(new GridLayout(4, 2, 15, 15));
         btnPanel.setOpaque(false);
         btnPanel.setBorder(new EmptyBorder(20, 40, 30, 40));
 
         JButton refreshBtn = createModernButton("Odśwież", new Color(41, 128, 185));
         JButton deleteBtn = createModernButton("Usuń użytkownika", new Color(192, 57, 43));
         JButton passBtn = createModernButton("Zmień hasło", new Color(243, 156, 18));
+        JButton statsBtn = createModernButton("Statystyki serwera", new Color(39, 174, 96));
+        JButton inactiveBtn = createModernButton("Usuń nieaktywnych", new Color(142, 68, 173));
+        JButton reportBtn = createModernButton("Raporty", new Color(22, 160, 133));
         JButton logoutBtn = createModernButton("Wyloguj", new Color(90, 90, 90));
 
         btnPanel.add(refreshBtn);
         btnPanel.add(deleteBtn);
         btnPanel.add(passBtn);
+        btnPanel.add(statsBtn);
+        btnPanel.add(inactiveBtn);
+        btnPanel.add(reportBtn);
         btnPanel.add(logoutBtn);
         bgPanel.add(btnPanel, BorderLayout.SOUTH);
 
         Runnable refreshAction = () -> {
             listModel.clear();
-            List<String> lines = sendCommandLines("ADMIN_GET_USERS");
+            List<String> lines = sendCommandLines(Request.adminGetUsers());
             if (lines != null) for (String l : lines) listModel.addElement(l);
         };
 
@@ -352,11 +385,21 @@ public class MainClient {
         refreshAction.run();
 
         deleteBtn.addActionListener(e -> {
+            List<String> selectedAll = userList.getSelectedValuesList();
+            if (selectedAll.size() > 1) {
+                List<String> ids = new ArrayList<>();
+                for (String s : selectedAll) ids.add(s.split("\\|")[0].replace("ID:", "").trim());
+                if (JOptionPane.showConfirmDialog(frame, "Usunąć " + ids.size() + " użytkowników?", "Potwierdź", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                    showListWindow(frame, "Usuwanie użytkowników", Request.adminDeleteUsers(sessionToken, "IDS", String.join(",", ids)));
+                    refreshAction.run();
+                }
+                return;
+            }
             String selected = userList.getSelectedValue();
             if (selected == null) { JOptionPane.showMessageDialog(frame, "Wybierz użytkownika"); return; }
             String idStr = selected.split("\\|")[0].replace("ID:", "").trim();
             if (JOptionPane.showConfirmDialog(frame, "Usunąć użytkownika ID " + idStr + "?", "Potwierdź", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
-                JOptionPane.showMessageDialog(frame, sendCommand("ADMIN_DEL_USER;" + idStr));
+                JOptionPane.showMessageDialog(frame, sendCommand(Request.adminDeleteUser(Integer.parseInt(idStr))));
                 refreshAction.run();
             }
         });
@@ -367,12 +410,33 @@ public class MainClient {
             String idStr = selected.split("\\|")[0].replace("ID:", "").trim();
             String newPass = JOptionPane.showInputDialog(frame, "Nowe hasło:");
             if (newPass != null && !newPass.isBlank()) {
-                JOptionPane.showMessageDialog(frame, sendCommand("ADMIN_PASS;" + idStr + ";" + newPass));
+                JOptionPane.showMessageDialog(frame, sendCommand(Request.adminPassword(Integer.parseInt(idStr), newPass)));
+            }
+        });
+
+        statsBtn.addActionListener(e -> showListWindow(frame, "Statystyki serwera", Request.adminStats(sessionToken)));
+
+        inactiveBtn.addActionListener(e -> {
+            String since = JOptionPane.showInputDialog(frame, "Usuń użytkowników bez wypożyczeń od dnia (RRRR-MM-DD):");
+            if (since == null || since.isBlank()) return;
+            if (JOptionPane.showConfirmDialog(frame, "Usunąć wszystkich nieaktywnych od " + since.trim() + "?", "Potwierdź", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                showListWindow(frame, "Usuwanie nieaktywnych", Request.adminDeleteUsers(sessionToken, "INACTIVE", since.trim()));
+                refreshAction.run();
+            }
+        });
+
+        reportBtn.addActionListener(e -> {
+            String[] names = {"Przychód dzienny", "Wypożyczenia wg gatunku", "Najpopularniejsze filmy", "Najlepsi klienci"};
+            String[] types = {"REVENUE_DAILY", "GENRES", "TOP_FILMS", "TOP_CUSTOMERS"};
+            Object choice = JOptionPane.showInputDialog(frame, "Wybierz raport:", "Raporty",
+                    JOptionPane.QUESTION_MESSAGE, null, names, names[0]);
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(choice)) showListWindow(frame, names[i], Request.adminReport(sessionToken, types[i], 0));
             }
         });
 
         logoutBtn.addActionListener(e -> {
-            loggedUserId = -1;
+            logout();
             frame.dispose();
             mainFrame.setVisible(true);
         });
@@ -467,10 +531,10 @@ public class MainClient {
     }
 
     private static void showMoviesWindow(JFrame parent) {
-        showListWindow(parent, "Lista Filmów", "GET_FILMS");
+        showListWindow(parent, "Lista Filmów", Request.getFilms());
     }
 
-    private static void showListWindow(JFrame parent, String title, String command) {
+    private static void showListWindow(JFrame parent, String title, Request command) {
         JFrame listFrame = new JFrame(title);
         listFrame.setSize(500, 400);
         listFrame.setLocationRelativeTo(parent);
@@ -488,18 +552,52 @@ public class MainClient {
         else for (String l : lines) textArea.append(l + "\n");
     }
 
+    /**
+     * Pokazuje wypożyczenia, opłaty i saldo użytkownika w jednym oknie. Trzy widoki są pobierane
+     * jedną paczką ({@link #sendPipelined(List)}) - jedno połączenie i jedna wymiana zamiast trzech.
+     */
+    private static void showAccountSummary(JFrame parent) {
+        List<List<String>> replies = sendPipelined(List.of(Request.myRentals(sessionToken),
+                Request.myTransactions(sessionToken), Request.myBalance(sessionToken)));
+
+        JFrame summaryFrame = new JFrame("Podsumowanie konta");
+        summaryFrame.setSize(600, 500);
+        summaryFrame.setLocationRelativeTo(parent);
+
+        JTextArea textArea = new JTextArea();
+        textArea.setEditable(false);
+        textArea.setFont(new Font("Consolas", Font.PLAIN, 14));
+        textArea.setMargin(new Insets(10,10,10,10));
+
+        if (replies == null) {
+            textArea.setText("Błąd połączenia z serwerem");
+        } else {
+            String[] sections = {"Wypożyczenia", "Opłaty", "Saldo"};
+            for (int i = 0; i < sections.length; i++) {
+                textArea.append("== " + sections[i] + " ==\n");
+                for (String l : replies.get(i)) textArea.append(l + "\n");
+                textArea.append("\n");
+            }
+        }
+
+        summaryFrame.add(new JScrollPane(textArea));
+        summaryFrame.setVisible(true);
+    }
+
     /**
      * Wysyła komendę do serwera i zwraca pojedynczą linię odpowiedzi.
      * Używane np. przy logowaniu lub rejestracji.
      *
-     * @param cmd Treść komendy (np. "LOGIN;user;pass").
+     * @param cmd Komenda (np. {@link Request#login(String, String)}).
      * @return Pierwsza linia odpowiedzi serwera lub null w przypadku błędu.
      */
-    private static String sendCommand(String cmd) {
+    private static String sendCommand(Request cmd) {
+        List<String> binary = sendBinary(cmd);
+        if (binary != null) return binary.isEmpty() ? null : binary.get(0);
         try (Socket socket = new Socket(HOST, PORT);
              PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
              BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-            out.println(cmd);
+            out.println(cmd.text());
             return in.readLine();
         } catch (IOException e) { return null; }
     }
@@ -509,15 +607,17 @@ public class MainClient {
      * Używane np. do pobierania listy filmów.
      * Czyta dane dopóki serwer nie wyśle "END".
      *
-     * @param cmd Treść komendy (np. "GET_FILMS").
+     * @param cmd Komenda (np. {@link Request#getFilms()}).
      * @return Lista linii odpowiedzi lub null w przypadku błędu.
      */
-    private static List<String> sendCommandLines(String cmd) {
+    private static List<String> sendCommandLines(Request cmd) {
+        List<String> binary = sendBinary(cmd);
+        if (binary != null) return binary;
         List<String> result = new ArrayList<>();
         try (Socket socket = new Socket(HOST, PORT);
              PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
              BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-            out.println(cmd);
+            out.println(cmd.text());
             String line;
             while ((line = in.readLine()) != null) {
                 if ("END".equals(line)) break;
@@ -526,4 +626,128 @@ public class MainClient {
             return result;
         } catch (IOException e) { return null; }
     }
-}
\ No newline at end of file
+
+    /**
+     * Pobiera listę filmów jako pola typowane. W protokole binarnym pola są czytane wprost
+     * z ramki; w tekstowym - z linii odpowiedzi.
+     *
+     * @param cmd Komenda zwracająca filmy (np. {@link Request#getAvailableFilms()}).
+     * @return Filmy lub null w przypadku błędu.
+     */
+    private static List<FilmEntry> fetchFilms(Request cmd) {
+        BinaryConnection conn = binaryConnection();
+        if (conn != null) {
+            try {
+                return conn.callFilms(cmd);
+            } catch (IOException e) {
+                dropBinaryConnection();
+            }
+        }
+        List<String> lines = sendCommandLines(cmd);
+        if (lines == null) return null;
+        List<FilmEntry> films = new ArrayList<>(lines.size());
+        for (String l : lines) {
+            FilmEntry f = FilmEntry.parse(l);
+            if (f != null) films.add(f);
+        }
+        return films;
+    }
+
+    /**
+     * Wysyła komendę protokołem binarnym, jeśli jest on włączony i obsługiwany przez serwer.
+     * W razie błędu połączenie jest zamykane, a przy kolejnej komendzie nawiązywane ponownie.
+     *
+     * @param cmd Komenda.
+     * @return Linie odpowiedzi lub {@code null}, gdy należy użyć protokołu tekstowego.
+     */
+    private static synchronized List<String> sendBinary(Request cmd) {
+        BinaryConnection conn = binaryConnection();
+        if (conn == null) return null;
+        try {
+            return conn.call(cmd);
+        } catch (IllegalArgumentException e) {
+            return null;
+        } catch (IOException e) {
+            dropBinaryConnection();
+            return null;
+        }
+    }
+
+    /**
+     * @return Połączenie binarne (nawiązywane przy pierwszym użyciu) lub {@code null},
+     * gdy należy użyć protokołu tekstowego.
+     */
+    private static synchronized BinaryConnection binaryConnection() {
+        if (!USE_BINARY || binaryUnsupported) return null;
+        if (binaryConnection == null) {
+            try {
+                binaryConnection = BinaryConnection.open(HOST, PORT);
+            } catch (IOException e) {
+                return null;
+            }
+            if (binaryConnection == null) binaryUnsupported = true;
+        }
+        return binaryConnection;
+    }
+
+    private static synchronized void dropBinaryConnection() {
+        try { if (binaryConnection != null) binaryConnection.close(); } catch (IOException ignored) {}
+        binaryConnection = null;
+    }
+
+    /**
+     * Wysyła kilka komend jednym połączeniem bez czekania na odpowiedzi (pipelining)
+     * i zbiera odpowiedzi w kolejności wysłania.
+     * <p>
+     * Serwer wykonuje komendy po kolei i odsyła odpowiedzi zbiorczo, więc cała paczka kosztuje
+     * jedno połączenie i zwykle jedną wymianę pakietów zamiast osobnego połączenia na komendę.
+     * Komendy są wysyłane z osobnego wątku, aby duże odpowiedzi nie zablokowały obu stron.
+     * </p>
+     *
+     * @param commands Lista komend (np. {@code Request.myRentals(sessionToken)}, {@code Request.myTransactions(sessionToken)}).
+     * @return Odpowiedzi (dla komend jednowierszowych - lista z jednym elementem)
+     * lub null w przypadku błędu połączenia.
+     */
+    public static List<List<String>> sendPipelined(List<Request> commands) {
+        BinaryConnection conn = binaryConnection();
+        if (conn != null) {
+            try {
+                return conn.callAll(commands);
+            } catch (IllegalArgumentException e) {
+                // komenda bez odpowiednika binarnego - cała paczka idzie protokołem tekstowym
+            } catch (IOException e) {
+                dropBinaryConnection();
+            }
+        }
+
+        try (Socket socket = new Socket(HOST, PORT);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            Thread sender = new Thread(() -> {
+                try {
+                    for (Request cmd : commands) {
+                        out.write(cmd.text());
+                        out.write(System.lineSeparator());
+                    }
+                    out.flush();
+                } catch (IOException ignored) {}
+            }, "pipeline-sender");
+            sender.setDaemon(true);
+            sender.start();
+
+            List<List<String>> replies = new ArrayList<>(commands.size());
+            for (Request cmd : commands) {
+                List<String> reply = new ArrayList<>();
+                if (cmd.list()) {
+                    String line;
+                    while ((line = in.readLine()) != null && !"END".equals(line)) reply.add(line);
+                } else {
+                    String line = in.readLine();
+                    if (line != null) reply.add(line);
+                }
+                replies.add(reply);
+            }
+            return replies;
+        } catch (IOException e) { return null; }
+    }
+}
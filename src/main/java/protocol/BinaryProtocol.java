@@ -0,0 +1,156 @@
+package protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wspólna definicja binarnego protokołu komunikacji klient-serwer.
+ * <p>
+ * Protokół binarny jest negocjowany w ramach protokołu tekstowego: klient wysyła linię
+ * {@value #NEGOTIATE}, a serwer, który go obsługuje, odpowiada {@value #NEGOTIATE_OK}.
+ * Od tego momentu obie strony wymieniają ramki binarne. Serwer, który go nie zna, odpowie
+ * {@code UNKNOWN_COMMAND} i klient zostaje przy protokole tekstowym.
+ * </p>
+ * <p>
+ * Każda ramka to {@code int32} długości treści, a następnie treść (big-endian):
+ * </p>
+ * <ul>
+ * <li>żądanie: {@code uint8} kod operacji, potem pola zależne od operacji
+ * ({@code int32} dla identyfikatorów, napisy jako {@code uint16} długości + bajty UTF-8),</li>
+ * <li>odpowiedź: {@code uint8} rodzaj ({@link #REPLY_LINE}, {@link #REPLY_LIST}, {@link #REPLY_FILMS}),
+ * dla list {@code int32} liczby wierszy, potem wiersze.</li>
+ * </ul>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class BinaryProtocol {
+
+    /** Linia tekstowa rozpoczynająca negocjację protokołu binarnego. */
+    public static final String NEGOTIATE = "PROTO;BIN";
+    /** Odpowiedź serwera potwierdzająca przejście na protokół binarny. */
+    public static final String NEGOTIATE_OK = "PROTO_OK;BIN";
+
+    /** Maksymalny rozmiar treści ramki (zabezpieczenie przed błędnymi danymi). */
+    public static final int MAX_FRAME = 16 * 1024 * 1024;
+
+    /** LOGIN: napis login, napis hasło. */
+    public static final int OP_LOGIN = 1;
+    /** REGISTER: napis login, napis hasło. */
+    public static final int OP_REGISTER = 2;
+    /** GET_FILMS: brak pól. */
+    public static final int OP_GET_FILMS = 3;
+    /** RENT: int32 ID filmu, napis token sesji. */
+    public static final int OP_RENT = 4;
+    /** MY_TRANS: napis token sesji, opcjonalnie bool - dołącz archiwum. */
+    public static final int OP_MY_TRANS = 5;
+    /** PAY: int32 ID opłaty, napis token sesji. */
+    public static final int OP_PAY = 6;
+    /** MY_RENTS: napis token sesji, opcjonalnie bool - dołącz archiwum. */
+    public static final int OP_MY_RENTS = 7;
+    /** ADMIN_GET_USERS: brak pól. */
+    public static final int OP_ADMIN_GET_USERS = 8;
+    /** ADMIN_DEL_USER: int32 ID użytkownika. */
+    public static final int OP_ADMIN_DEL_USER = 9;
+    /** ADMIN_PASS: int32 ID użytkownika, napis nowe hasło. */
+    public static final int OP_ADMIN_PASS = 10;
+    /** GET_FILMS_PAGE: int32 ID ostatniego filmu poprzedniej strony, int32 rozmiar strony. */
+    public static final int OP_GET_FILMS_PAGE = 11;
+    /** SEARCH_FILMS: napis zapytanie, napis gatunek, int32 rok (0 = dowolny), uint8 tylko dostępne (0/1). */
+    public static final int OP_SEARCH_FILMS = 12;
+    /** GET_AVAILABLE_FILMS: brak pól. */
+    public static final int OP_GET_AVAILABLE_FILMS = 13;
+    /** COUNT_AVAILABLE: brak pól. */
+    public static final int OP_COUNT_AVAILABLE = 14;
+    /** LOGOUT: napis token sesji. */
+    public static final int OP_LOGOUT = 15;
+    /** PAY_ALL: napis token sesji. */
+    public static final int OP_PAY_ALL = 16;
+    /** MY_BALANCE: napis token sesji. */
+    public static final int OP_MY_BALANCE = 17;
+    /** ADMIN_STATS: napis token sesji administratora. */
+    public static final int OP_ADMIN_STATS = 18;
+    /** ADMIN_DEL_USERS: napis token sesji administratora, napis tryb (IDS/INACTIVE), napis argument (lista ID lub data). */
+    public static final int OP_ADMIN_DEL_USERS = 19;
+    /** ADMIN_REPORT: napis token sesji administratora, napis rodzaj raportu, int32 liczba pozycji (0 = domyślna). */
+    public static final int OP_ADMIN_REPORT = 20;
+
+    /** Odpowiedź jednowierszowa: jeden napis. */
+    public static final int REPLY_LINE = 1;
+    /** Odpowiedź listowa: int32 liczba wierszy, potem napisy. */
+    public static final int REPLY_LIST = 2;
+    /** Lista filmów: int32 liczba wierszy, każdy wiersz to int32 id, napis tytuł, int16 rok, uint8 dostępność. */
+    public static final int REPLY_FILMS = 3;
+
+    /**
+     * Prywatny konstruktor zapobiegający instancjalizacji klasy narzędziowej.
+     */
+    private BinaryProtocol() {
+        throw new IllegalStateException("Klasa narzędziowa");
+    }
+
+    /**
+     * Zapisuje napis jako {@code uint16} długości w bajtach i bajty UTF-8.
+     *
+     * @param out   Strumień docelowy.
+     * @param value Napis (null zapisywany jest jako pusty).
+     * @throws IOException W przypadku błędu zapisu lub napisu dłuższego niż 65535 bajtów.
+     */
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) throw new IOException("Napis zbyt długi dla protokołu binarnego");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Odczytuje napis zapisany przez {@link #writeString(DataOutputStream, String)}.
+     *
+     * @param in Strumień źródłowy.
+     * @return Odczytany napis.
+     * @throws IOException W przypadku błędu odczytu.
+     */
+    public static String readString(DataInputStream in) throws IOException {
+        int len = in.readUnsignedShort();
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Wysyła ramkę: długość treści i treść.
+     *
+     * @param out     Strumień docelowy.
+     * @param payload Treść ramki.
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    public static void writeFrame(DataOutputStream out, ByteArrayOutputStream payload) throws IOException {
+        out.writeInt(payload.size());
+        payload.writeTo(out);
+    }
+
+    /**
+     * Odczytuje jedną ramkę i zwraca strumień nad jej treścią.
+     *
+     * @param in Strumień źródłowy.
+     * @return Strumień treści ramki lub {@code null}, jeśli druga strona zamknęła połączenie.
+     * @throws IOException W przypadku błędu odczytu lub niepoprawnej długości ramki.
+     */
+    public static DataInputStream readFrame(DataInputStream in) throws IOException {
+        int len;
+        try {
+            len = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (len < 0 || len > MAX_FRAME) throw new IOException("Niepoprawna długość ramki: " + len);
+        byte[] payload = new byte[len];
+        in.readFully(payload);
+        return new DataInputStream(new ByteArrayInputStream(payload));
+    }
+}
@@ -0,0 +1,250 @@
+package protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Komenda klienta zbudowana z typowanych argumentów, gotowa do wysłania w obu protokołach.
+ * <p>
+ * Każda metoda fabryczna zapisuje argumenty jednocześnie do treści ramki binarnej
+ * ({@link BinaryProtocol}) i do linii protokołu tekstowego, więc klient nie skleja komend
+ * z napisów ani nie rozbija ich ponownie przed zakodowaniem binarnym.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class Request {
+
+    private final String name;
+    private final boolean list;
+    private final StringBuilder text;
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(32);
+    private final DataOutputStream out = new DataOutputStream(payload);
+    /** Ustawiane, gdy argument nie mieści się w ramce binarnej - zostaje tylko protokół tekstowy. */
+    private boolean textOnly;
+
+    private Request(String name, int op, boolean list) {
+        this.name = name;
+        this.list = list;
+        this.text = new StringBuilder(name);
+        try {
+            out.writeByte(op);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // zapis do pamięci nie zgłasza błędów
+        }
+    }
+
+    /**
+     * @param user     Login.
+     * @param password Hasło.
+     * @return Komenda LOGIN.
+     */
+    public static Request login(String user, String password) {
+        return new Request("LOGIN", BinaryProtocol.OP_LOGIN, false).str(user).str(password);
+    }
+
+    /**
+     * @param user     Login.
+     * @param password Hasło.
+     * @return Komenda REGISTER.
+     */
+    public static Request register(String user, String password) {
+        return new Request("REGISTER", BinaryProtocol.OP_REGISTER, false).str(user).str(password);
+    }
+
+    /**
+     * @return Komenda GET_FILMS (odpowiedź: lista filmów).
+     */
+    public static Request getFilms() {
+        return new Request("GET_FILMS", BinaryProtocol.OP_GET_FILMS, true);
+    }
+
+    /**
+     * @return Komenda GET_AVAILABLE_FILMS (odpowiedź: lista filmów).
+     */
+    public static Request getAvailableFilms() {
+        return new Request("GET_AVAILABLE_FILMS", BinaryProtocol.OP_GET_AVAILABLE_FILMS, true);
+    }
+
+    /**
+     * @return Komenda COUNT_AVAILABLE.
+     */
+    public static Request countAvailable() {
+        return new Request("COUNT_AVAILABLE", BinaryProtocol.OP_COUNT_AVAILABLE, false);
+    }
+
+    /**
+     * @param filmId ID filmu.
+     * @param token  Token sesji.
+     * @return Komenda RENT.
+     */
+    public static Request rent(int filmId, String token) {
+        return new Request("RENT", BinaryProtocol.OP_RENT, false).i32(filmId).str(token);
+    }
+
+    /**
+     * @param token Token sesji.
+     * @return Komenda MY_TRANS.
+     */
+    public static Request myTransactions(String token) {
+        return new Request("MY_TRANS", BinaryProtocol.OP_MY_TRANS, true).str(token);
+    }
+
+    /**
+     * @param token Token sesji.
+     * @return Komenda MY_RENTS.
+     */
+    public static Request myRentals(String token) {
+        return new Request("MY_RENTS", BinaryProtocol.OP_MY_RENTS, true).str(token);
+    }
+
+    /**
+     * @param oplataId ID opłaty.
+     * @param token    Token sesji.
+     * @return Komenda PAY (kwota w protokole tekstowym jest ignorowana przez serwer i wysyłana jako 0.0).
+     */
+    public static Request pay(int oplataId, String token) {
+        Request r = new Request("PAY", BinaryProtocol.OP_PAY, false).i32(oplataId);
+        r.text.append(";0.0");
+        return r.str(token);
+    }
+
+    /**
+     * @param token Token sesji.
+     * @return Komenda PAY_ALL.
+     */
+    public static Request payAll(String token) {
+        return new Request("PAY_ALL", BinaryProtocol.OP_PAY_ALL, false).str(token);
+    }
+
+    /**
+     * @param token Token sesji.
+     * @return Komenda MY_BALANCE.
+     */
+    public static Request myBalance(String token) {
+        return new Request("MY_BALANCE", BinaryProtocol.OP_MY_BALANCE, false).str(token);
+    }
+
+    /**
+     * @param token Token sesji.
+     * @return Komenda LOGOUT.
+     */
+    public static Request logout(String token) {
+        return new Request("LOGOUT", BinaryProtocol.OP_LOGOUT, false).str(token);
+    }
+
+    /**
+     * @return Komenda ADMIN_GET_USERS.
+     */
+    public static Request adminGetUsers() {
+        return new Request("ADMIN_GET_USERS", BinaryProtocol.OP_ADMIN_GET_USERS, true);
+    }
+
+    /**
+     * @param userId ID użytkownika.
+     * @return Komenda ADMIN_DEL_USER.
+     */
+    public static Request adminDeleteUser(int userId) {
+        return new Request("ADMIN_DEL_USER", BinaryProtocol.OP_ADMIN_DEL_USER, false).i32(userId);
+    }
+
+    /**
+     * @param userId   ID użytkownika.
+     * @param password Nowe hasło.
+     * @return Komenda ADMIN_PASS.
+     */
+    public static Request adminPassword(int userId, String password) {
+        return new Request("ADMIN_PASS", BinaryProtocol.OP_ADMIN_PASS, false).i32(userId).str(password);
+    }
+
+    /**
+     * @param token Token sesji administratora.
+     * @return Komenda ADMIN_STATS.
+     */
+    public static Request adminStats(String token) {
+        return new Request("ADMIN_STATS", BinaryProtocol.OP_ADMIN_STATS, true).str(token);
+    }
+
+    /**
+     * @param token Token sesji administratora.
+     * @param mode  {@code IDS} lub {@code INACTIVE}.
+     * @param arg   Lista ID po przecinku lub data {@code RRRR-MM-DD}.
+     * @return Komenda ADMIN_DEL_USERS.
+     */
+    public static Request adminDeleteUsers(String token, String mode, String arg) {
+        return new Request("ADMIN_DEL_USERS", BinaryProtocol.OP_ADMIN_DEL_USERS, true).str(token).str(mode).str(arg);
+    }
+
+    /**
+     * @param token Token sesji administratora.
+     * @param type  Rodzaj raportu (np. {@code TOP_FILMS}).
+     * @param limit Liczba pozycji (0 = domyślna).
+     * @return Komenda ADMIN_REPORT.
+     */
+    public static Request adminReport(String token, String type, int limit) {
+        Request r = new Request("ADMIN_REPORT", BinaryProtocol.OP_ADMIN_REPORT, true).str(token).str(type);
+        if (limit > 0) r.text.append(';').append(limit);
+        try {
+            r.out.writeInt(limit);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return r;
+    }
+
+    /**
+     * @return Nazwa komendy (np. {@code "RENT"}).
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return {@code true}, jeśli serwer odpowiada listą zakończoną linią {@code END}.
+     */
+    public boolean list() {
+        return list;
+    }
+
+    /**
+     * @return Linia protokołu tekstowego (bez znaku końca linii).
+     */
+    public String text() {
+        return text.toString();
+    }
+
+    /**
+     * Zapisuje komendę jako ramkę binarną.
+     *
+     * @param target Strumień docelowy.
+     * @throws IOException W przypadku błędu zapisu.
+     * @throws IllegalArgumentException Jeśli komendy nie da się zakodować binarnie.
+     */
+    public void writeFrame(DataOutputStream target) throws IOException {
+        if (textOnly) throw new IllegalArgumentException("Komenda bez odpowiednika binarnego: " + name);
+        BinaryProtocol.writeFrame(target, payload);
+    }
+
+    private Request i32(int value) {
+        text.append(';').append(value);
+        try {
+            out.writeInt(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    private Request str(String value) {
+        String v = value == null ? "" : value;
+        text.append(';').append(v);
+        try {
+            BinaryProtocol.writeString(out, v);
+        } catch (IOException e) {
+            textOnly = true; // napis zbyt długi dla ramki
+        }
+        return this;
+    }
+}
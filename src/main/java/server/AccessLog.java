@@ -0,0 +1,338 @@
+package server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dziennik dostępu: jedna linia na wykonaną komendę klienta.
+ * <p>
+ * Wątek obsługujący komendę tylko wpisuje kilka pól (czas, adres klienta, surową komendę, czas
+ * wykonania) do wcześniej zaalokowanego slotu w ograniczonym buforze pierścieniowym i wraca - nie
+ * formatuje tekstu i nigdy nie czeka na dysk. Gdy bufor jest pełny, wpis jest pomijany i zliczany
+ * ({@link #dropped()}). Osobny wątek zapisujący odbiera wpisy, maskuje dane uwierzytelniające
+ * (hasła w LOGIN/REGISTER/ADMIN_PASS, tokeny sesji), formatuje linie i zapisuje je do pliku
+ * partiami po {@code access.batchSize} linii. Gdy bufor jest pusty, wątek zapisujący śpi do czasu,
+ * aż pierwszy nowy wpis go obudzi, więc bezczynny serwer nie zużywa procesora.
+ * </p>
+ * <p>
+ * Komendy odczytu (lista filmów, wyszukiwanie, opłaty, statystyki) mogą być próbkowane
+ * ({@code access.sampleReads}, 0..1, domyślnie 1 - wszystkie); komendy zmieniające dane są
+ * zapisywane zawsze. Plik: {@code access.file} (domyślnie {@code logs/access.log}),
+ * rozmiar bufora: {@code access.bufferSize} (domyślnie 8192), wyłączenie: {@code -Daccess.enabled=false}.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class AccessLog implements AutoCloseable {
+
+    /** Logger log4j do rejestrowania problemów samego dziennika. */
+    private static final Logger logger = LogManager.getLogger(AccessLog.class);
+
+    /** Komendy tylko odczytujące dane - podlegają próbkowaniu. */
+    private static final String[] READ_COMMANDS = {
+            "GET_FILMS", "GET_FILMS_PAGE", "GET_FILMS_STREAM", "SEARCH_FILMS", "GET_AVAILABLE_FILMS",
+            "COUNT_AVAILABLE", "MY_TRANS", "MY_RENTS", "MY_BALANCE", "ADMIN_GET_USERS", "ADMIN_STATS"
+    };
+
+    /** Najdłuższy sen wątku zapisującego przy pustym buforze (zabezpieczenie, zwykle budzi go nowy wpis). */
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final DateTimeFormatter SECOND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static volatile AccessLog shared;
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    /** Następny slot do odczytu (używany tylko przez wątek zapisujący). */
+    private long tail;
+    private final int batchSize;
+    private final double readSampleRate;
+    private final Writer out;
+    private final Thread writer;
+    private volatile boolean running = true;
+    /** Wątek zapisujący zasnął przy pustym buforze - kolejny wpis musi go obudzić. */
+    private volatile boolean idle;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+
+    private final StringBuilder batch = new StringBuilder(16 * 1024);
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedSecondText;
+
+    /**
+     * Otwiera plik dziennika (dopisywanie) i uruchamia wątek zapisujący.
+     *
+     * @param file           Plik dziennika.
+     * @param capacity       Pojemność bufora (zaokrąglana w górę do potęgi dwójki).
+     * @param batchSize      Maksymalna liczba linii w jednym zapisie.
+     * @param readSampleRate Odsetek zapisywanych komend odczytu (0..1).
+     * @throws IOException Jeśli nie udało się otworzyć pliku.
+     */
+    public AccessLog(Path file, int capacity, int batchSize, double readSampleRate) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) slots[i] = new Slot(i);
+        this.mask = size - 1;
+        this.batchSize = Math.max(1, batchSize);
+        this.readSampleRate = readSampleRate;
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        this.out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+        this.writer = new Thread(this::runWriter, "access-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return Wspólny dziennik serwera lub {@code null}, gdy jest wyłączony albo nie dało się otworzyć pliku.
+     */
+    public static AccessLog shared() {
+        AccessLog log = shared;
+        if (log == null && !"false".equalsIgnoreCase(System.getProperty("access.enabled"))) {
+            synchronized (AccessLog.class) {
+                if (shared == null) {
+                    try {
+                        shared = new AccessLog(Path.of(System.getProperty("access.file", "logs/access.log")),
+                                Integer.getInteger("access.bufferSize", 8192),
+                                Integer.getInteger("access.batchSize", 256),
+                                Double.parseDouble(System.getProperty("access.sampleReads", "1.0")));
+                        Runtime.getRuntime().addShutdownHook(new Thread(shared::close, "access-log-shutdown"));
+                    } catch (IOException e) {
+                        logger.error("Nie można otworzyć dziennika dostępu - wpisy nie będą zapisywane", e);
+                        System.setProperty("access.enabled", "false");
+                    }
+                }
+                log = shared;
+            }
+        }
+        return log;
+    }
+
+    /**
+     * Dodaje wpis do bufora. Nie blokuje: przy pełnym buforze wpis jest pomijany.
+     *
+     * @param remote     Adres klienta.
+     * @param request    Surowa linia komendy (maskowana dopiero przy zapisie).
+     * @param startNanos Chwila rozpoczęcia obsługi ({@link System#nanoTime()}).
+     * @return {@code true}, jeśli wpis trafił do bufora.
+     */
+    public boolean log(String remote, String request, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        if (readSampleRate < 1.0 && isRead(request) && ThreadLocalRandom.current().nextDouble() >= readSampleRate) {
+            sampledOut.increment();
+            return true;
+        }
+        long pos = head.get();
+        Slot slot;
+        while (true) {
+            slot = slots[(int) pos & mask];
+            long diff = slot.sequence - pos;
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) break;
+                pos = head.get();
+            } else if (diff < 0) {
+                dropped.increment();
+                return false;
+            } else {
+                pos = head.get();
+            }
+        }
+        slot.epochMillis = System.currentTimeMillis();
+        slot.elapsedNanos = elapsed;
+        slot.remote = remote;
+        slot.request = request;
+        slot.sequence = pos + 1;
+        if (idle) LockSupport.unpark(writer);
+        return true;
+    }
+
+    /**
+     * @return Liczba wpisów pominiętych z powodu pełnego bufora.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return Liczba komend odczytu pominiętych przez próbkowanie.
+     */
+    public long sampledOut() {
+        return sampledOut.sum();
+    }
+
+    private static boolean isRead(String request) {
+        for (String cmd : READ_COMMANDS) {
+            if (request.startsWith(cmd) && (request.length() == cmd.length() || request.charAt(cmd.length()) == ';')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void runWriter() {
+        while (running) {
+            int n = drain();
+            if (n == 0) {
+                flush();
+                idle = true;
+                // Ponowne sprawdzenie po ustawieniu flagi: wpis dodany w międzyczasie nie zostanie bez pobudki.
+                if (drain() == 0 && running) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                idle = false;
+            }
+        }
+        while (drain() > 0) {
+            // dopisanie wpisów, które przyszły przed zamknięciem
+        }
+        flush();
+    }
+
+    /** Przenosi do {@code batchSize} wpisów z bufora do pliku (jednym zapisem). */
+    private int drain() {
+        int n = 0;
+        while (n < batchSize) {
+            Slot slot = slots[(int) tail & mask];
+            if (slot.sequence != tail + 1) break;
+            format(slot);
+            slot.remote = null;
+            slot.request = null;
+            slot.sequence = tail + slots.length;
+            tail++;
+            n++;
+        }
+        if (n > 0) {
+            try {
+                out.append(batch);
+            } catch (IOException e) {
+                logger.error("Błąd zapisu dziennika dostępu", e);
+            }
+            batch.setLength(0);
+        }
+        return n;
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            logger.error("Błąd zapisu dziennika dostępu", e);
+        }
+    }
+
+    private void format(Slot slot) {
+        long second = slot.epochMillis / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedSecondText = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault())
+                    .format(SECOND_FORMAT);
+        }
+        long millis = slot.epochMillis % 1000;
+        batch.append(cachedSecondText).append('.');
+        if (millis < 100) batch.append('0');
+        if (millis < 10) batch.append('0');
+        batch.append(millis).append(' ').append(slot.remote).append(' ');
+        appendRedacted(batch, slot.request);
+        long micros = slot.elapsedNanos / 1000;
+        batch.append(' ').append(micros / 1000).append('.');
+        long frac = micros % 1000;
+        if (frac < 100) batch.append('0');
+        if (frac < 10) batch.append('0');
+        batch.append(frac).append("ms").append(System.lineSeparator());
+    }
+
+    /**
+     * Dopisuje komendę z zamaskowanymi hasłami (zastępowane przez {@code ***}) i tokenami sesji
+     * (pozostają pierwsze 4 znaki, aby dało się powiązać wpisy jednej sesji).
+     *
+     * @param sb      Bufor docelowy.
+     * @param request Surowa komenda.
+     */
+    static void appendRedacted(StringBuilder sb, String request) {
+        int secret;
+        boolean token;
+        if (request.startsWith("LOGIN;") || request.startsWith("REGISTER;") || request.startsWith("ADMIN_PASS;")) {
+            secret = 2;
+            token = false;
+        } else if (request.startsWith("RENT;")) {
+            secret = 2;
+            token = true;
+        } else if (request.startsWith("PAY;")) {
+            secret = 3;
+            token = true;
+        } else if (request.startsWith("MY_TRANS;") || request.startsWith("MY_RENTS;") || request.startsWith("MY_BALANCE;")
+                || request.startsWith("PAY_ALL;") || request.startsWith("LOGOUT;") || request.startsWith("ADMIN_DEL_USERS;")
+                || request.startsWith("ADMIN_IMPORT_FILMS;") || request.startsWith("ADMIN_REPORT;")
+                || request.startsWith("ADMIN_STATS;") || request.startsWith("ADMIN_RELOAD_FILMS;")) {
+            secret = 1;
+            token = true;
+        } else {
+            sb.append(request);
+            return;
+        }
+        int start = 0;
+        for (int i = 0; i < secret && start >= 0; i++) {
+            start = request.indexOf(';', start);
+            if (start >= 0) start++;
+        }
+        if (start < 0 || start >= request.length()) {
+            sb.append(request);
+            return;
+        }
+        int end = request.indexOf(';', start);
+        if (end < 0) end = request.length();
+        sb.append(request, 0, start);
+        if (token) sb.append(request, start, Math.min(end, start + 4));
+        sb.append("***").append(request, end, request.length());
+    }
+
+    /**
+     * Zapisuje pozostałe wpisy, zatrzymuje wątek zapisujący i zamyka plik.
+     */
+    @Override
+    public void close() {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            out.close();
+        } catch (IOException ignored) {}
+        if (dropped.sum() > 0) logger.warn("Dziennik dostępu pominął {} wpisów (pełny bufor)", dropped.sum());
+    }
+
+    /** Slot bufora pierścieniowego; {@code sequence} publikuje zapisane pola wątkowi zapisującemu. */
+    private static final class Slot {
+        private volatile long sequence;
+        private long epochMillis;
+        private long elapsedNanos;
+        private String remote;
+        private String request;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
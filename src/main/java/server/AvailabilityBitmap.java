@@ -0,0 +1,86 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Mapa bitowa dostępności filmów indeksowana ID filmu (bit ustawiony = {@code dostepny}).
+ * <p>
+ * Jeden film zajmuje jeden bit, więc nawet duży katalog mieści się w kilku kilobajtach.
+ * Bity zmieniane są atomowo (compare-and-set na słowie 64-bitowym), a licznik dostępnych filmów
+ * jest aktualizowany tylko przy faktycznej zmianie bitu - odczyty nie wymagają blokad.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+final class AvailabilityBitmap {
+
+    private final AtomicLongArray words;
+    private final AtomicInteger count = new AtomicInteger();
+    private final int capacity;
+
+    /**
+     * @param maxId Największe ID filmu, które może zostać zapisane.
+     */
+    AvailabilityBitmap(int maxId) {
+        this.capacity = maxId + 1;
+        this.words = new AtomicLongArray((capacity + 63) >>> 6);
+    }
+
+    /**
+     * @param filmId ID filmu.
+     * @return {@code true}, jeśli film jest dostępny; ID spoza zakresu są niedostępne.
+     */
+    boolean get(int filmId) {
+        if (filmId < 0 || filmId >= capacity) return false;
+        return (words.get(filmId >>> 6) & (1L << filmId)) != 0;
+    }
+
+    /**
+     * Ustawia dostępność filmu.
+     *
+     * @param filmId   ID filmu.
+     * @param dostepny Nowa wartość.
+     * @return {@code true}, jeśli bit został zmieniony.
+     */
+    boolean set(int filmId, boolean dostepny) {
+        if (filmId < 0 || filmId >= capacity) return false;
+        int w = filmId >>> 6;
+        long mask = 1L << filmId;
+        while (true) {
+            long old = words.get(w);
+            long next = dostepny ? old | mask : old & ~mask;
+            if (old == next) return false;
+            if (words.compareAndSet(w, old, next)) {
+                count.addAndGet(dostepny ? 1 : -1);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return Liczba dostępnych filmów.
+     */
+    int count() {
+        return count.get();
+    }
+
+    /**
+     * Zwraca najmniejsze ID dostępnego filmu nie mniejsze niż {@code fromId}.
+     *
+     * @param fromId ID, od którego zaczyna się wyszukiwanie.
+     * @return ID filmu lub -1, jeśli brak dalszych dostępnych filmów.
+     */
+    int nextAvailable(int fromId) {
+        if (fromId < 0) fromId = 0;
+        if (fromId >= capacity) return -1;
+        int w = fromId >>> 6;
+        long word = words.get(w) & (-1L << fromId);
+        while (true) {
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w >= words.length()) return -1;
+            word = words.get(w);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package server;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Silnik naliczania opłat za wypożyczenia.
+ * <p>
+ * Kwoty liczone są w groszach na liczbach całkowitych ({@code long}), bez błędów zaokrągleń
+ * typu {@code double}. Bieżąca opłata za otwarte wypożyczenie to kwota startowa plus pełne minuty
+ * od wypożyczenia razy stawka - wyliczana w O(1) z samego znacznika czasu ({@link #charge(long, long, long)}).
+ * </p>
+ * <p>
+ * Dla każdego użytkownika, który sprawdzał należności, silnik trzyma w pamięci jego nieopłacone
+ * opłaty (wczytane z bazy jednym zapytaniem). Repozytorium transakcji po zatwierdzeniu
+ * wypożyczenia dopisuje nową opłatę ({@link #rented}), a po płatności usuwa opłaconą
+ * ({@link #settled}), więc kolejne sprawdzenia łącznej należności ({@link #totalOwed(int)})
+ * nie wymagają łączenia i przeglądania tabel Oplata/Transakcja.
+ * </p>
+ * <p>
+ * Pamięć jest ograniczona liczbą użytkowników ({@code -Dbilling.cache.users}, domyślnie 10000);
+ * po przekroczeniu usuwani są najdawniej używani użytkownicy (LRU).
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class BillingEngine {
+
+    /** Opłata startowa w groszach (10,00 zł). */
+    public static final long START_FEE_GROSZE = 1_000;
+    /** Stawka za każdą pełną minutę wypożyczenia w groszach (1,50 zł). */
+    public static final long RATE_PER_MINUTE_GROSZE = 150;
+
+    /** Wspólna instancja używana przez serwer. */
+    private static final BillingEngine SHARED = new BillingEngine(new TransactionRepository(),
+            Integer.getInteger("billing.cache.users", 10_000));
+
+    private final TransactionRepository source;
+    private final int maxUsers;
+    /** Opłaty użytkowników w kolejności ostatniego użycia; dostęp pod blokadą samej mapy. */
+    private final LinkedHashMap<Integer, Account> accounts = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Account> eldest) {
+            return size() > maxUsers;
+        }
+    };
+
+    /**
+     * @param source   Repozytorium, z którego wczytywane są nieopłacone opłaty użytkownika.
+     * @param maxUsers Maksymalna liczba użytkowników w pamięci.
+     */
+    BillingEngine(TransactionRepository source, int maxUsers) {
+        this.source = source;
+        this.maxUsers = Math.max(1, maxUsers);
+    }
+
+    /**
+     * @return Wspólna instancja silnika.
+     */
+    public static BillingEngine shared() {
+        return SHARED;
+    }
+
+    /**
+     * Liczba pełnych minut między wypożyczeniem a chwilą obecną (nie mniej niż 0).
+     *
+     * @param startMillis Chwila wypożyczenia ({@link #toMillis(Timestamp)}).
+     * @param nowMillis   Chwila obecna ({@link #nowMillis()}).
+     * @return Liczba minut.
+     */
+    public static long minutes(long startMillis, long nowMillis) {
+        return Math.max(0, (nowMillis - startMillis) / 60_000);
+    }
+
+    /**
+     * Bieżąca kwota otwartego wypożyczenia.
+     *
+     * @param baseGrosze  Kwota zapisana w opłacie (startowa).
+     * @param startMillis Chwila wypożyczenia.
+     * @param nowMillis   Chwila obecna.
+     * @return Kwota w groszach.
+     */
+    public static long charge(long baseGrosze, long startMillis, long nowMillis) {
+        return baseGrosze + minutes(startMillis, nowMillis) * RATE_PER_MINUTE_GROSZE;
+    }
+
+    /**
+     * Zamienia kwotę z kolumny {@code DOUBLE} na grosze.
+     *
+     * @param kwota Kwota w złotych.
+     * @return Kwota w groszach.
+     */
+    public static long toGrosze(double kwota) {
+        return Math.round(kwota * 100);
+    }
+
+    /**
+     * Formatuje kwotę w groszach jako złote z dwoma miejscami po kropce (np. {@code 11.50}).
+     *
+     * @param grosze Kwota w groszach.
+     * @return Tekst kwoty.
+     */
+    public static String format(long grosze) {
+        return BigDecimal.valueOf(grosze, 2).toPlainString();
+    }
+
+    /**
+     * Zamienia znacznik czasu z bazy na milisekundy w lokalnej strefie zegara serwera
+     * (tak samo jak dotychczasowe liczenie na {@link LocalDateTime}).
+     *
+     * @param ts Znacznik czasu.
+     * @return Milisekundy.
+     */
+    public static long toMillis(Timestamp ts) {
+        return ts.toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * @return Chwila obecna w tej samej skali co {@link #toMillis(Timestamp)}.
+     */
+    public static long nowMillis() {
+        return LocalDateTime.now().toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Zwraca łączną należność użytkownika za nieopłacone opłaty, liczoną na chwilę obecną.
+     *
+     * @param userId ID użytkownika.
+     * @return Kwota w groszach.
+     * @throws SQLException Jeśli pierwsze wczytanie opłat użytkownika się nie powiodło.
+     */
+    public long totalOwed(int userId) throws SQLException {
+        Account account = account(userId);
+        long now = nowMillis();
+        synchronized (account) {
+            long total = 0;
+            for (OpenCharge c : account.charges.values()) total += c.current(now);
+            return total;
+        }
+    }
+
+    /**
+     * Zwraca nieopłacone opłaty użytkownika.
+     *
+     * @param userId ID użytkownika.
+     * @return Kopia listy opłat.
+     * @throws SQLException Jeśli pierwsze wczytanie opłat użytkownika się nie powiodło.
+     */
+    public List<OpenCharge> openCharges(int userId) throws SQLException {
+        Account account = account(userId);
+        synchronized (account) {
+            return new ArrayList<>(account.charges.values());
+        }
+    }
+
+    /**
+     * Usuwa opłatę po zatwierdzeniu płatności.
+     *
+     * @param userId   ID użytkownika.
+     * @param oplataId ID opłaty.
+     */
+    void settled(int userId, int oplataId) {
+        Account account = cached(userId);
+        if (account == null) return;
+        synchronized (account) {
+            account.charges.remove(oplataId);
+        }
+    }
+
+    /**
+     * Dopisuje opłatę startową zatwierdzonego wypożyczenia (jeśli opłaty użytkownika są w pamięci).
+     * Chwila wypożyczenia jest zaokrąglana tak jak w bazie (kolumna DATE przechowuje sam dzień),
+     * więc kwota jest taka sama jak po ponownym wczytaniu.
+     *
+     * @param userId      ID użytkownika.
+     * @param oplataId    ID opłaty startowej.
+     * @param filmId      ID filmu.
+     * @param rentedAt    Data wypożyczenia zapisana w bazie.
+     * @param baseGrosze  Opłata startowa w groszach.
+     */
+    void rented(int userId, int oplataId, int filmId, LocalDateTime rentedAt, long baseGrosze) {
+        Account account = cached(userId);
+        if (account == null) return;
+        if (oplataId <= 0) {
+            forget(userId);
+            return;
+        }
+        synchronized (account) {
+            // Opłaty jeszcze nie wczytane - wczytanie i tak zobaczy zatwierdzone wypożyczenie.
+            if (!account.loaded) return;
+            account.charges.putIfAbsent(oplataId, new OpenCharge(oplataId, filmId, baseGrosze,
+                    UserHistoryCache.startMillis(rentedAt), false));
+        }
+    }
+
+    /**
+     * Usuwa opłaty użytkownika z pamięci (po zmianach wykonanych poza silnikiem);
+     * kolejne użycie wczyta je z bazy.
+     *
+     * @param userId ID użytkownika.
+     */
+    void forget(int userId) {
+        synchronized (accounts) {
+            accounts.remove(userId);
+        }
+    }
+
+    /**
+     * Usuwa z pamięci opłaty wszystkich użytkowników (np. po wymianie bazy danych).
+     */
+    void forgetAll() {
+        synchronized (accounts) {
+            accounts.clear();
+        }
+    }
+
+    /**
+     * @return Liczba użytkowników, których opłaty są w pamięci.
+     */
+    int size() {
+        synchronized (accounts) {
+            return accounts.size();
+        }
+    }
+
+    private Account cached(int userId) {
+        synchronized (accounts) {
+            return accounts.get(userId);
+        }
+    }
+
+    private Account account(int userId) throws SQLException {
+        Account account;
+        synchronized (accounts) {
+            account = accounts.get(userId);
+            if (account == null) {
+                account = new Account();
+                accounts.put(userId, account);
+            }
+        }
+        synchronized (account) {
+            if (!account.loaded) {
+                for (OpenCharge c : source.loadOpenCharges(userId)) account.charges.put(c.oplataId(), c);
+                account.loaded = true;
+            }
+        }
+        return account;
+    }
+
+    /**
+     * Nieopłacona opłata.
+     *
+     * @param oplataId     ID opłaty.
+     * @param filmId       ID wypożyczonego filmu.
+     * @param baseGrosze   Kwota zapisana w opłacie.
+     * @param startMillis  Chwila wypożyczenia ({@link #toMillis(Timestamp)}).
+     * @param returned     Czy film został już zwrócony (wtedy kwota nie rośnie).
+     */
+    public record OpenCharge(int oplataId, int filmId, long baseGrosze, long startMillis, boolean returned) {
+
+        /**
+         * @param nowMillis Chwila obecna.
+         * @return Bieżąca kwota w groszach.
+         */
+        public long current(long nowMillis) {
+            return returned ? baseGrosze : charge(baseGrosze, startMillis, nowMillis);
+        }
+    }
+
+    /** Nieopłacone opłaty jednego użytkownika (ID opłaty -> opłata). */
+    private static final class Account {
+        private final Map<Integer, OpenCharge> charges = new HashMap<>();
+        private boolean loaded;
+    }
+}
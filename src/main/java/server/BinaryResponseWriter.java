@@ -0,0 +1,86 @@
+package server;
+
+import protocol.BinaryProtocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Implementacja {@link ResponseWriter} dla protokołu binarnego ({@link BinaryProtocol}).
+ * <p>
+ * Odpowiedź jednowierszowa jest od razu wysyłana jako ramka {@link BinaryProtocol#REPLY_LINE}.
+ * Wiersze list są gromadzone do wywołania {@link #end()}, ponieważ nagłówek ramki zawiera
+ * liczbę wierszy. Filmy przesyłane są jako pola typowane ({@link BinaryProtocol#REPLY_FILMS}).
+ * Klasa nie opróżnia strumienia - robi to obsługa połączenia po zakończeniu paczki komend.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public class BinaryResponseWriter implements ResponseWriter {
+
+    private final DataOutputStream out;
+
+    private ByteArrayOutputStream rows;
+    private DataOutputStream rowsOut;
+    private int rowKind;
+    private int rowCount;
+
+    /**
+     * @param out Strumień wyjściowy gniazda.
+     */
+    public BinaryResponseWriter(DataOutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void line(String line) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(line.length() + 8);
+        DataOutputStream p = new DataOutputStream(payload);
+        p.writeByte(BinaryProtocol.REPLY_LINE);
+        BinaryProtocol.writeString(p, line);
+        BinaryProtocol.writeFrame(out, payload);
+    }
+
+    @Override
+    public void row(String row) throws IOException {
+        startRows(BinaryProtocol.REPLY_LIST);
+        BinaryProtocol.writeString(rowsOut, row);
+        rowCount++;
+    }
+
+    @Override
+    public void film(Film film) throws IOException {
+        startRows(BinaryProtocol.REPLY_FILMS);
+        rowsOut.writeInt(film.id());
+        BinaryProtocol.writeString(rowsOut, film.tytul());
+        rowsOut.writeShort(film.rok());
+        rowsOut.writeByte(film.dostepny() ? 1 : 0);
+        rowCount++;
+    }
+
+    @Override
+    public void end() throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(5 + (rows == null ? 0 : rows.size()));
+        DataOutputStream p = new DataOutputStream(payload);
+        p.writeByte(rows == null ? BinaryProtocol.REPLY_LIST : rowKind);
+        p.writeInt(rowCount);
+        if (rows != null) rows.writeTo(p);
+        BinaryProtocol.writeFrame(out, payload);
+
+        rows = null;
+        rowsOut = null;
+        rowCount = 0;
+    }
+
+    private void startRows(int kind) throws IOException {
+        if (rows == null) {
+            rows = new ByteArrayOutputStream(1024);
+            rowsOut = new DataOutputStream(rows);
+            rowKind = kind;
+        } else if (rowKind != kind) {
+            throw new IOException("Nie można mieszać rodzajów wierszy w jednej odpowiedzi");
+        }
+    }
+}
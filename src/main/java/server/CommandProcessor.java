@@ -0,0 +1,764 @@
+package server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import protocol.BinaryProtocol;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Interpreter komend protokołu klient-serwer.
+ * <p>
+ * Zawiera całą logikę wykonania komend przez odpowiednie repozytorium
+ * ({@link UserRepository}, {@link FilmRepository}, {@link TransactionRepository}).
+ * Każda komenda ma własną metodę z typowanymi argumentami; {@link #process(String, ResponseWriter)}
+ * dekoduje protokół tekstowy (rozdzielany znakiem ';'), a {@link #processBinary(DataInputStream, ResponseWriter)}
+ * ramki protokołu binarnego. Odpowiedzi przekazywane są do {@link ResponseWriter}, więc klasa
+ * nie zależy od sposobu transportu (gniazdo blokujące lub kanały NIO).
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public class CommandProcessor {
+
+    /** Logger log4j do rejestrowania błędów przetwarzania komend. */
+    private static final Logger logger = LogManager.getLogger(CommandProcessor.class);
+
+    /** Maksymalny rozmiar strony dla GET_FILMS_PAGE. */
+    static final int MAX_PAGE_SIZE = 1000;
+    /** Maksymalna liczba wyników SEARCH_FILMS. */
+    static final int MAX_SEARCH_RESULTS = 500;
+    /** Odpowiedź na komendę z nieznanym lub wygasłym tokenem sesji. */
+    static final String SESSION_INVALID = "SESSION_INVALID";
+    /**
+     * Czy akceptować surowe ID użytkownika zamiast tokenu sesji ({@code -Dsession.legacyIds=true}),
+     * dla starszych klientów.
+     */
+    private static final boolean LEGACY_IDS = Boolean.getBoolean("session.legacyIds");
+
+    /** Nazwy komend binarnych (indeks = kod operacji), pod którymi zapisywane są ich metryki. */
+    private static final String[] BINARY_COMMANDS = {
+            null, "LOGIN", "REGISTER", "GET_FILMS", "RENT", "MY_TRANS", "PAY", "MY_RENTS",
+            "ADMIN_GET_USERS", "ADMIN_DEL_USER", "ADMIN_PASS", "GET_FILMS_PAGE", "SEARCH_FILMS",
+            "GET_AVAILABLE_FILMS", "COUNT_AVAILABLE", "LOGOUT", "PAY_ALL", "MY_BALANCE", "ADMIN_STATS",
+            "ADMIN_DEL_USERS", "ADMIN_REPORT"
+    };
+
+    /** Liczba użytkowników usuwanych w jednej transakcji przez ADMIN_DEL_USERS ({@code -Dadmin.deleteChunk}). */
+    private static final int DELETE_CHUNK = Integer.getInteger("admin.deleteChunk", 500);
+    /** Liczba filmów w jednej instrukcji INSERT przy ADMIN_IMPORT_FILMS ({@code -Dimport.batchSize}). */
+    private static final int IMPORT_BATCH = Integer.getInteger("import.batchSize", 1000);
+    /** Maksymalna liczba nowych filmów w jednym ADMIN_IMPORT_FILMS ({@code -Dimport.maxRows}). */
+    private static final int IMPORT_MAX_ROWS = Integer.getInteger("import.maxRows", 200_000);
+
+    private final UserRepository userRepo;
+    private final FilmRepository filmRepo;
+    private final TransactionRepository transRepo;
+    private final SessionStore sessions = SessionStore.shared();
+    private final ReportRepository reportRepo = new ReportRepository();
+    /** Trwający import ADMIN_IMPORT_FILMS; do linii {@code END} kolejne linie są wierszami CSV. */
+    private FilmImport filmImport;
+    /** Chwila rozpoczęcia trwającego importu (do metryk i dziennika dostępu). */
+    private long importStart;
+    /** Linia ADMIN_IMPORT_FILMS, która rozpoczęła trwający import. */
+    private String importRequest;
+    /** Podsumowanie importu zakończonego ostatnią linią, jeszcze nie zapisane w dzienniku dostępu. */
+    private String importSummary;
+    /** Import zatwierdził porcje, a katalog w pamięci nie został jeszcze przeładowany. */
+    private volatile boolean catalogStale;
+    /** Połączenie klienta zostało zamknięte ({@link #connectionClosed()}). */
+    private volatile boolean closed;
+
+    /**
+     * Tworzy procesor z nowymi instancjami repozytoriów.
+     */
+    public CommandProcessor() {
+        this(new UserRepository(), new FilmRepository(), new TransactionRepository());
+    }
+
+    /**
+     * Tworzy procesor korzystający z podanych repozytoriów.
+     *
+     * @param userRepo  Repozytorium użytkowników.
+     * @param filmRepo  Repozytorium filmów.
+     * @param transRepo Repozytorium transakcji.
+     */
+    public CommandProcessor(UserRepository userRepo, FilmRepository filmRepo, TransactionRepository transRepo) {
+        this.userRepo = userRepo;
+        this.filmRepo = filmRepo;
+        this.transRepo = transRepo;
+    }
+
+    /**
+     * Wykonuje pojedynczą komendę tekstową i zapisuje odpowiedź.
+     * <p>
+     * Błędy biznesowe (np. złe ID) są zamieniane na odpowiedź {@code ERROR};
+     * wyjątek {@link IOException} oznacza problem z połączeniem i jest przekazywany dalej.
+     * </p>
+     *
+     * @param request Surowa linia komendy (np. {@code "RENT;3;7"}).
+     * @param out     Odbiorca odpowiedzi.
+     * @throws IOException W przypadku błędu zapisu odpowiedzi.
+     */
+    public void process(String request, ResponseWriter out) throws IOException {
+        if (filmImport != null) {
+            importLine(request, out);
+            return;
+        }
+        String[] parts = request.split(";");
+        String command = parts[0];
+        long start = System.nanoTime();
+        boolean known = true;
+
+        try {
+            switch (command) {
+                case "LOGIN":
+                    if (parts.length < 3) { out.line("LOGIN_FAIL"); break; }
+                    login(parts[1], parts[2], out);
+                    break;
+
+                case "REGISTER":
+                    if (parts.length < 3) { out.line("REGISTER_FAIL"); break; }
+                    register(parts[1], parts[2], out);
+                    break;
+
+                case "GET_FILMS":
+                    getFilms(out);
+                    break;
+
+                case "GET_FILMS_PAGE":
+                    if (parts.length < 3) { out.end(); break; }
+                    getFilmsPage(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), out);
+                    break;
+
+                case "GET_FILMS_STREAM":
+                    streamFilms(out);
+                    break;
+
+                case "SEARCH_FILMS":
+                    // SEARCH_FILMS;tytuł;gatunek;rok;tylkoDostępne - puste pola oznaczają dowolną wartość.
+                    searchFilms(field(parts, 1), field(parts, 2),
+                            field(parts, 3).isBlank() ? 0 : Integer.parseInt(field(parts, 3).trim()),
+                            "1".equals(field(parts, 4).trim()), out);
+                    break;
+
+                case "GET_AVAILABLE_FILMS":
+                    getAvailableFilms(out);
+                    break;
+
+                case "COUNT_AVAILABLE":
+                    countAvailable(out);
+                    break;
+
+                case "LOGOUT":
+                    logout(field(parts, 1), out);
+                    break;
+
+                case "RENT":
+                    if (parts.length < 3) { out.line("Błąd danych"); break; }
+                    rent(Integer.parseInt(parts[1]), parts[2], out);
+                    break;
+
+                case "MY_TRANS":
+                    if (parts.length < 2) { out.end(); break; }
+                    myTransactions(parts[1], "ALL".equals(field(parts, 2)), out);
+                    break;
+
+                case "PAY":
+                    // PAY;oplataId;kwota;token - kwota jest ignorowana (liczy ją serwer)
+                    if (parts.length < 2) { out.line("Błąd"); break; }
+                    pay(Integer.parseInt(parts[1]), field(parts, 3), out);
+                    break;
+
+                case "PAY_ALL":
+                    if (parts.length < 2) { out.line("Błąd"); break; }
+                    payAll(parts[1], out);
+                    break;
+
+                case "MY_BALANCE":
+                    if (parts.length < 2) { out.line(SESSION_INVALID); break; }
+                    myBalance(parts[1], out);
+                    break;
+
+                case "MY_RENTS":
+                    if (parts.length < 2) { out.end(); break; }
+                    myRentals(parts[1], "ALL".equals(field(parts, 2)), out);
+                    break;
+
+                case "ADMIN_GET_USERS":
+                    adminGetUsers(out);
+                    break;
+
+                case "ADMIN_DEL_USER":
+                    if (parts.length < 2) { out.line("ERROR"); break; }
+                    adminDeleteUser(Integer.parseInt(parts[1]), out);
+                    break;
+
+                case "ADMIN_DEL_USERS":
+                    // ADMIN_DEL_USERS;token;IDS;1,2,3 albo ADMIN_DEL_USERS;token;INACTIVE;2024-01-01
+                    if (parts.length < 4) { out.row("Błędne dane"); out.end(); break; }
+                    adminDeleteUsers(parts[1], parts[2], parts[3], out);
+                    break;
+
+                case "ADMIN_PASS":
+                    if (parts.length < 3) { out.line("ERROR"); break; }
+                    adminChangePassword(Integer.parseInt(parts[1]), parts[2], out);
+                    break;
+
+                case "ADMIN_RELOAD_FILMS":
+                    // ADMIN_RELOAD_FILMS;token
+                    if (!adminSession(field(parts, 1))) {
+                        out.line(SESSION_INVALID);
+                        break;
+                    }
+                    FilmCatalog.shared().invalidate();
+                    out.line("Katalog filmów zostanie przeładowany");
+                    break;
+
+                case "ADMIN_STATS":
+                    // ADMIN_STATS;token
+                    adminStats(field(parts, 1), out);
+                    break;
+
+                case "ADMIN_REPORT":
+                    // ADMIN_REPORT;token;REVENUE_DAILY|GENRES|TOP_FILMS|TOP_CUSTOMERS[;limit]
+                    adminReport(field(parts, 1), field(parts, 2),
+                            field(parts, 3).isBlank() ? 0 : Integer.parseInt(field(parts, 3).trim()), out);
+                    break;
+
+                case "ADMIN_IMPORT_FILMS":
+                    // ADMIN_IMPORT_FILMS;token -> IMPORT_READY; kolejne linie to wiersze CSV tytul,gatunek,rok
+                    // zakończone linią END. W trakcie przychodzą wiersze postępu, po END podsumowanie i END.
+                    if (!adminSession(field(parts, 1))) {
+                        out.line(SESSION_INVALID);
+                        break;
+                    }
+                    filmImport = new FilmImport(IMPORT_BATCH, IMPORT_MAX_ROWS);
+                    importStart = start;
+                    importRequest = request;
+                    known = false; // czas mierzony jest dla całego importu, po END
+                    out.line("IMPORT_READY");
+                    break;
+
+                default:
+                    known = false;
+                    out.line("UNKNOWN_COMMAND");
+                    break;
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Błąd przetwarzania komendy: " + command, e);
+            if (known) Metrics.commandError(command);
+            out.line("ERROR");
+        } finally {
+            // Nieznane komendy nie są mierzone, aby dowolny tekst od klienta nie tworzył nowych histogramów.
+            if (known) Metrics.command(command).recordSince(start);
+        }
+    }
+
+    /**
+     * Wykonuje komendę zapisaną w ramce protokołu binarnego ({@link BinaryProtocol}).
+     * Pola są odczytywane bezpośrednio jako liczby i napisy, bez parsowania tekstu.
+     *
+     * @param frame Treść ramki żądania.
+     * @param out   Odbiorca odpowiedzi.
+     * @throws IOException W przypadku błędu zapisu odpowiedzi lub uszkodzonej ramki.
+     */
+    public void processBinary(DataInputStream frame, ResponseWriter out) throws IOException {
+        int opcode = frame.readUnsignedByte();
+        String command = opcode < BINARY_COMMANDS.length ? BINARY_COMMANDS[opcode] : null;
+        long start = System.nanoTime();
+        try {
+            switch (opcode) {
+                case BinaryProtocol.OP_LOGIN:
+                    login(BinaryProtocol.readString(frame), BinaryProtocol.readString(frame), out);
+                    break;
+                case BinaryProtocol.OP_REGISTER:
+                    register(BinaryProtocol.readString(frame), BinaryProtocol.readString(frame), out);
+                    break;
+                case BinaryProtocol.OP_GET_FILMS:
+                    getFilms(out);
+                    break;
+                case BinaryProtocol.OP_GET_FILMS_PAGE:
+                    getFilmsPage(frame.readInt(), frame.readInt(), out);
+                    break;
+                case BinaryProtocol.OP_SEARCH_FILMS:
+                    searchFilms(BinaryProtocol.readString(frame), BinaryProtocol.readString(frame),
+                            frame.readInt(), frame.readUnsignedByte() == 1, out);
+                    break;
+                case BinaryProtocol.OP_GET_AVAILABLE_FILMS:
+                    getAvailableFilms(out);
+                    break;
+                case BinaryProtocol.OP_COUNT_AVAILABLE:
+                    countAvailable(out);
+                    break;
+                case BinaryProtocol.OP_LOGOUT:
+                    logout(BinaryProtocol.readString(frame), out);
+                    break;
+                case BinaryProtocol.OP_RENT:
+                    rent(frame.readInt(), BinaryProtocol.readString(frame), out);
+                    break;
+                case BinaryProtocol.OP_MY_TRANS:
+                    myTransactions(BinaryProtocol.readString(frame), frame.available() > 0 && frame.readBoolean(), out);
+                    break;
+                case BinaryProtocol.OP_PAY:
+                    pay(frame.readInt(), BinaryProtocol.readString(frame), out);
+                    break;
+                case BinaryProtocol.OP_PAY_ALL:
+                    payAll(BinaryProtocol.readString(frame), out);
+                    break;
+                case BinaryProtocol.OP_MY_BALANCE:
+                    myBalance(BinaryProtocol.readString(frame), out);
+                    break;
+                case BinaryProtocol.OP_MY_RENTS:
+                    myRentals(BinaryProtocol.readString(frame), frame.available() > 0 && frame.readBoolean(), out);
+                    break;
+                case BinaryProtocol.OP_ADMIN_GET_USERS:
+                    adminGetUsers(out);
+                    break;
+                case BinaryProtocol.OP_ADMIN_DEL_USER:
+                    adminDeleteUser(frame.readInt(), out);
+                    break;
+                case BinaryProtocol.OP_ADMIN_PASS:
+                    adminChangePassword(frame.readInt(), BinaryProtocol.readString(frame), out);
+                    break;
+                case BinaryProtocol.OP_ADMIN_STATS:
+                    adminStats(BinaryProtocol.readString(frame), out);
+                    break;
+                case BinaryProtocol.OP_ADMIN_DEL_USERS:
+                    adminDeleteUsers(BinaryProtocol.readString(frame), BinaryProtocol.readString(frame),
+                            BinaryProtocol.readString(frame), out);
+                    break;
+                case BinaryProtocol.OP_ADMIN_REPORT:
+                    adminReport(BinaryProtocol.readString(frame), BinaryProtocol.readString(frame), frame.readInt(), out);
+                    break;
+                default:
+                    out.line("UNKNOWN_COMMAND");
+                    break;
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Błąd przetwarzania komendy binarnej: " + opcode, e);
+            if (command != null) Metrics.commandError(command);
+            out.line("ERROR");
+        } finally {
+            if (command != null) Metrics.command(command).recordSince(start);
+        }
+    }
+
+    private void login(String username, String password, ResponseWriter out) throws IOException {
+        int userId = userRepo.getUserIdByCredentials(username, password);
+        out.line(userId >= 0 ? "LOGIN_OK;" + userId + ";" + sessions.create(userId) : "LOGIN_FAIL");
+    }
+
+    private void logout(String token, ResponseWriter out) throws IOException {
+        sessions.remove(token);
+        out.line("LOGOUT_OK");
+    }
+
+    /**
+     * Ustala użytkownika komendy na podstawie tokenu sesji (bez odwołania do bazy).
+     * Surowe ID są przyjmowane tylko w trybie zgodności ({@link #LEGACY_IDS}).
+     *
+     * @return ID użytkownika lub -1, jeśli sesja jest nieważna.
+     */
+    private int sessionUser(String token) {
+        SessionStore.Session session = sessions.touch(token);
+        if (session != null) return session.userId();
+        if (LEGACY_IDS && token != null && token.chars().allMatch(Character::isDigit) && !token.isEmpty()) {
+            return Integer.parseInt(token);
+        }
+        return -1;
+    }
+
+    private void register(String username, String password, ResponseWriter out) throws IOException {
+        boolean regOk = userRepo.registerUser(username, password);
+        out.line(regOk ? "REGISTER_OK" : "REGISTER_FAIL");
+    }
+
+    private void getFilms(ResponseWriter out) throws IOException {
+        List<Film> films;
+        try {
+            if (out.supportsPreEncoded()) {
+                out.preEncoded(FilmCatalog.shared().encodedListing());
+                return;
+            }
+            films = filmRepo.getAllFilms();
+        } catch (SQLException e) {
+            logger.error("Błąd SQL przy pobieraniu filmów", e);
+            out.row("Błąd bazy danych.");
+            out.end();
+            return;
+        }
+        for (Film f : films) out.film(f);
+        out.end();
+    }
+
+    /**
+     * Wysyła jedną stronę katalogu (stronicowanie po kluczu). Kolejną stronę klient pobiera,
+     * podając ID ostatniego otrzymanego filmu; pusta strona oznacza koniec katalogu.
+     */
+    private void getFilmsPage(int afterId, int limit, ResponseWriter out) throws IOException {
+        List<Film> page;
+        try {
+            page = filmRepo.getFilmsPage(afterId, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+        } catch (SQLException e) {
+            logger.error("Błąd SQL przy pobieraniu strony filmów", e);
+            out.row("Błąd bazy danych.");
+            out.end();
+            return;
+        }
+        for (Film f : page) out.film(f);
+        out.end();
+    }
+
+    /**
+     * Wysyła cały katalog wiersz po wierszu prosto z kursora bazy, bez budowania listy w pamięci.
+     * Przy błędzie w trakcie przesyłania część wierszy mogła już zostać wysłana.
+     */
+    private void streamFilms(ResponseWriter out) throws IOException {
+        try {
+            filmRepo.streamAllFilms(out::film);
+        } catch (SQLException e) {
+            logger.error("Błąd SQL przy strumieniowaniu filmów", e);
+            out.row("Błąd bazy danych.");
+        }
+        out.end();
+    }
+
+    private void searchFilms(String query, String genre, int year, boolean onlyAvailable, ResponseWriter out) throws IOException {
+        List<Film> found;
+        try {
+            found = FilmCatalog.shared().search(query, genre, year, onlyAvailable, MAX_SEARCH_RESULTS);
+        } catch (SQLException e) {
+            logger.error("Błąd SQL przy wyszukiwaniu filmów", e);
+            out.row("Błąd bazy danych.");
+            out.end();
+            return;
+        }
+        for (Film f : found) out.film(f);
+        out.end();
+    }
+
+    private void getAvailableFilms(ResponseWriter out) throws IOException {
+        List<Film> films;
+        try {
+            films = FilmCatalog.shared().availableFilms();
+        } catch (SQLException e) {
+            logger.error("Błąd SQL przy pobieraniu dostępnych filmów", e);
+            out.row("Błąd bazy danych.");
+            out.end();
+            return;
+        }
+        for (Film f : films) out.film(f);
+        out.end();
+    }
+
+    private void countAvailable(ResponseWriter out) throws IOException {
+        try {
+            out.line(String.valueOf(FilmCatalog.shared().availableCount()));
+        } catch (SQLException e) {
+            logger.error("Błąd SQL przy liczeniu dostępnych filmów", e);
+            out.line("ERROR");
+        }
+    }
+
+    private static String field(String[] parts, int index) {
+        return index < parts.length ? parts[index] : "";
+    }
+
+    private void rent(int filmId, String token, ResponseWriter out) throws IOException {
+        int userId = sessionUser(token);
+        if (userId < 0) { out.line(SESSION_INVALID); return; }
+        out.line(transRepo.rentFilm(userId, filmId));
+    }
+
+    private void myTransactions(String token, boolean withHistory, ResponseWriter out) throws IOException {
+        int userId = sessionUser(token);
+        if (userId < 0) { out.row(SESSION_INVALID); out.end(); return; }
+        try {
+            if (withHistory) for (String t : transRepo.getArchivedTransactions(userId)) out.row(t);
+            for (String t : UserHistoryCache.shared().transactions(userId)) out.row(t);
+        } catch (SQLException e) {
+            logger.error("Błąd opłat", e);
+            out.row("Błąd bazy danych");
+        }
+        out.end();
+    }
+
+    private void pay(int oplataId, String token, ResponseWriter out) throws IOException {
+        int userId = sessionUser(token);
+        if (userId < 0) { out.line(SESSION_INVALID); return; }
+        out.line(transRepo.payTransaction(userId, oplataId));
+    }
+
+    private void payAll(String token, ResponseWriter out) throws IOException {
+        int userId = sessionUser(token);
+        if (userId < 0) { out.line(SESSION_INVALID); return; }
+        out.line(transRepo.payAll(userId));
+    }
+
+    private void myBalance(String token, ResponseWriter out) throws IOException {
+        int userId = sessionUser(token);
+        if (userId < 0) { out.line(SESSION_INVALID); return; }
+        try {
+            out.line("Do zapłaty: " + BillingEngine.format(BillingEngine.shared().totalOwed(userId)) + " zł");
+        } catch (SQLException e) {
+            logger.error("Błąd SQL przy liczeniu należności", e);
+            out.line("Błąd bazy danych");
+        }
+    }
+
+    private void myRentals(String token, boolean withHistory, ResponseWriter out) throws IOException {
+        int userId = sessionUser(token);
+        if (userId < 0) { out.row(SESSION_INVALID); out.end(); return; }
+        try {
+            if (withHistory) for (String r : transRepo.getArchivedRentals(userId)) out.row(r);
+            for (String r : UserHistoryCache.shared().rentals(userId)) out.row(r);
+        } catch (SQLException e) {
+            logger.error("Błąd historii", e);
+            out.row("Błąd bazy danych");
+        }
+        out.end();
+    }
+
+    private void adminGetUsers(ResponseWriter out) throws IOException {
+        List<String> users = userRepo.getAllUsers();
+        for (String u : users) out.row(u);
+        out.end();
+    }
+
+    private void adminDeleteUser(int userId, ResponseWriter out) throws IOException {
+        boolean delOk = userRepo.deleteUser(userId);
+        if (delOk) sessions.removeUser(userId);
+        out.line(delOk ? "Usunięto pomyślnie" : "Błąd usuwania (może użytkownik nie istnieje?)");
+    }
+
+    private void adminChangePassword(int userId, String newPass, ResponseWriter out) throws IOException {
+        boolean passOk = userRepo.changeUserPassword(userId, newPass);
+        if (passOk) sessions.removeUser(userId);
+        out.line(passOk ? "Hasło zmienione" : "Błąd zmiany hasła");
+    }
+
+    private void adminStats(String token, ResponseWriter out) throws IOException {
+        if (!adminSession(token)) { out.row(SESSION_INVALID); out.end(); return; }
+        for (String line : Metrics.report()) out.row(line);
+        out.end();
+    }
+
+    /**
+     * Wysyła raport administratora wiersz po wierszu, w miarę jego liczenia ({@link ReportRepository}).
+     * Wymaga sesji administratora.
+     *
+     * @param token Token sesji administratora.
+     * @param type  {@code REVENUE_DAILY}, {@code GENRES}, {@code TOP_FILMS} albo {@code TOP_CUSTOMERS}.
+     * @param limit Liczba pozycji raportów TOP (0 = domyślnie 10, najwyżej {@link #MAX_PAGE_SIZE}).
+     * @param out   Odbiorca odpowiedzi.
+     */
+    private void adminReport(String token, String type, int limit, ResponseWriter out) throws IOException {
+        if (!adminSession(token)) { out.row(SESSION_INVALID); out.end(); return; }
+        int top = limit <= 0 ? 10 : Math.min(limit, MAX_PAGE_SIZE);
+        RowSink<String> sink = out::row;
+        try {
+            switch (type) {
+                case "REVENUE_DAILY":
+                    reportRepo.revenuePerDay(sink);
+                    break;
+                case "GENRES":
+                    reportRepo.rentalsPerGenre(sink);
+                    break;
+                case "TOP_FILMS":
+                    reportRepo.topFilms(top, sink);
+                    break;
+                case "TOP_CUSTOMERS":
+                    reportRepo.topCustomers(top, sink);
+                    break;
+                default:
+                    out.row("Nieznany raport: " + type);
+                    break;
+            }
+        } catch (SQLException e) {
+            logger.error("Błąd SQL przy raporcie {}", type, e);
+            out.row("Błąd bazy danych");
+        }
+        out.end();
+    }
+
+    /**
+     * Sprawdza, czy token należy do sesji administratora. Surowe ID ({@link #LEGACY_IDS})
+     * nie są tu przyjmowane.
+     *
+     * @param token Token sesji.
+     * @return {@code true}, jeśli sesja jest ważna i należy do konta 'admin'.
+     */
+    private boolean adminSession(String token) {
+        SessionStore.Session session = sessions.touch(token);
+        return session != null && userRepo.isAdmin(session.userId());
+    }
+
+    /**
+     * Usuwa wielu użytkowników porcjami, wysyłając wiersz postępu po każdej zatwierdzonej porcji.
+     * Wymaga sesji administratora.
+     *
+     * @param token Token sesji administratora.
+     * @param mode {@code IDS} (argument: ID rozdzielone przecinkami) albo {@code INACTIVE} (argument: data RRRR-MM-DD).
+     * @param arg  Argument trybu.
+     * @param out  Odbiorca odpowiedzi.
+     */
+    private void adminDeleteUsers(String token, String mode, String arg, ResponseWriter out) throws IOException {
+        if (!adminSession(token)) { out.row(SESSION_INVALID); out.end(); return; }
+        int[] done = new int[2]; // {porcje, usunięci użytkownicy}
+        Consumer<List<Integer>> onChunk = ids -> {
+            for (int id : ids) sessions.removeUser(id);
+            done[0]++;
+            done[1] += ids.size();
+            try {
+                out.row("Porcja " + done[0] + ": usunięto " + ids.size() + " (łącznie " + done[1] + ")");
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            if ("IDS".equals(mode)) {
+                List<Integer> ids = new ArrayList<>();
+                for (String id : arg.split(",")) if (!id.isBlank()) ids.add(Integer.parseInt(id.trim()));
+                userRepo.deleteUsers(ids, DELETE_CHUNK, onChunk);
+            } else if ("INACTIVE".equals(mode)) {
+                userRepo.deleteInactiveUsers(LocalDate.parse(arg.trim()), DELETE_CHUNK, onChunk);
+            } else {
+                out.row("Nieznany tryb: " + mode);
+                out.end();
+                return;
+            }
+            out.row("Usunięto użytkowników: " + done[1]);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (IllegalArgumentException | DateTimeException e) {
+            out.row("Błędne dane");
+        } catch (SQLException e) {
+            logger.error("Błąd SQL przy usuwaniu użytkowników", e);
+            out.row("Błąd bazy danych - usunięto użytkowników: " + done[1]);
+        }
+        out.end();
+    }
+
+    /**
+     * Obsługuje linię odebraną w trakcie ADMIN_IMPORT_FILMS: wiersz CSV albo kończące {@code END}.
+     * <p>
+     * Każda pełna porcja {@code import.batchSize} nowych filmów jest zapisywana osobną krótką
+     * transakcją jeszcze w trakcie odbierania pliku; wiersz postępu jest wysyłany dopiero po jej
+     * zatwierdzeniu, więc wolny klient nie przetrzymuje blokad w bazie. Po błędzie bazy kolejne
+     * wiersze są pomijane do {@code END}, a wcześniej zatwierdzone porcje pozostają. Katalog
+     * w pamięci jest przeładowywany jednorazowo po {@code END}.
+     * </p>
+     *
+     * @param line Linia od klienta.
+     * @param out  Odbiorca odpowiedzi.
+     */
+    private void importLine(String line, ResponseWriter out) throws IOException {
+        FilmImport current = filmImport;
+        boolean end = "END".equals(line);
+        if (!end) {
+            current.accept(line);
+            if (!current.batchFull()) return;
+        }
+        if (!current.failed() && saveImportBatch(current) && !end) {
+            out.row("Zapisano: " + current.inserted());
+            out.flush();
+        }
+        if (!end) return;
+
+        filmImport = null;
+        if (catalogStale) {
+            FilmCatalog catalog = FilmCatalog.shared();
+            catalog.invalidate();
+            catalogStale = false;
+            try {
+                catalog.films();
+            } catch (SQLException e) {
+                logger.error("Błąd SQL przy przeładowaniu katalogu", e); // katalog wczyta się przy następnym odczycie
+            }
+        }
+        String summary;
+        if (current.failed()) {
+            summary = "Błąd bazy danych - zapisano filmów: " + current.inserted();
+        } else {
+            summary = "Dodano: " + current.inserted() + ", pominięto duplikatów: " + current.duplicates()
+                    + ", błędnych wierszy: " + current.invalid()
+                    + (current.overLimit() > 0 ? ", ponad limit: " + current.overLimit() : "");
+        }
+        out.row(summary);
+        importSummary = summary;
+        Metrics.command("ADMIN_IMPORT_FILMS").recordSince(importStart);
+        out.end();
+    }
+
+    /**
+     * Zapisuje bieżącą porcję importu w osobnej transakcji.
+     *
+     * @return {@code true}, jeśli porcja zawierała nowe filmy i została zatwierdzona.
+     */
+    private boolean saveImportBatch(FilmImport current) {
+        try {
+            List<Film> films = current.takeBatch(FilmCatalog.shared().films());
+            if (films.isEmpty()) return false;
+            current.inserted(filmRepo.insertFilms(films, IMPORT_BATCH));
+        } catch (SQLException e) {
+            logger.error("Błąd SQL przy imporcie filmów", e);
+            current.fail();
+            return false;
+        }
+        catalogStale = true;
+        // Klient rozłączył się w trakcie zapisu porcji - katalog nie doczeka się END.
+        if (closed) FilmCatalog.shared().invalidate();
+        return true;
+    }
+
+    /**
+     * Zapisuje linię obsłużoną właśnie przez {@link #process(String, ResponseWriter)} w dzienniku dostępu.
+     * <p>
+     * Wiersze CSV importu ADMIN_IMPORT_FILMS nie trafiają do dziennika - cały import jest zapisywany
+     * jednym wpisem przy linii {@code END}: komenda rozpoczynająca import z dopisanym podsumowaniem
+     * i czasem trwania całego importu.
+     * </p>
+     *
+     * @param log     Dziennik dostępu lub {@code null}, gdy jest wyłączony.
+     * @param remote  Adres klienta.
+     * @param request Obsłużona linia.
+     * @param start   Chwila rozpoczęcia obsługi linii ({@link System#nanoTime()}).
+     */
+    void recordAccess(AccessLog log, String remote, String request, long start) {
+        if (importSummary != null) {
+            if (log != null) log.log(remote, importRequest + ";" + importSummary, importStart);
+            importSummary = null;
+            importRequest = null;
+        } else if (filmImport == null && log != null) {
+            log.log(remote, request, start);
+        }
+    }
+
+    /**
+     * Informuje procesor o zamknięciu połączenia klienta.
+     * <p>
+     * Jeśli przerwany import ADMIN_IMPORT_FILMS zdążył zatwierdzić porcje filmów, katalog
+     * w pamięci jest unieważniany, aby nowe filmy były widoczne mimo braku {@code END}.
+     * Może być wołana z innego wątku niż {@link #process(String, ResponseWriter)}.
+     * </p>
+     */
+    public void connectionClosed() {
+        closed = true;
+        if (catalogStale) FilmCatalog.shared().invalidate();
+    }
+}
@@ -0,0 +1,660 @@
+package server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ograniczona pula połączeń JDBC używana przez {@link Database}.
+ * <p>
+ * Pula przechowuje "ciepłe" połączenia fizyczne i wydaje je repozytoriom w postaci
+ * obiektów pośredniczących (proxy). Wywołanie {@code close()} na takim obiekcie nie zamyka
+ * połączenia fizycznego, tylko oddaje je do puli, dzięki czemu istniejący kod
+ * (try-with-resources) działa bez zmian.
+ * </p>
+ * <ul>
+ * <li>Rozmiar minimalny i maksymalny puli.</li>
+ * <li>Limit czasu oczekiwania na wolne połączenie.</li>
+ * <li>Walidacja połączenia przy wypożyczeniu (jeśli leżało bezczynnie dłużej niż zadany próg).</li>
+ * <li>Usuwanie połączeń bezczynnych oraz przekraczających maksymalny czas życia.</li>
+ * <li>Pamięć podręczna przygotowanych zapytań przypisana do połączenia fizycznego.</li>
+ * <li>Statystyki: aktywne, bezczynne, oczekujący, średni czas oczekiwania, trafienia pamięci zapytań.</li>
+ * </ul>
+ * <p>
+ * Repozytoria przygotowują przy każdym wywołaniu te same stałe zapytania SQL. Pula zachowuje
+ * przygotowane zapytania (klucz: metoda, treść SQL i flagi) w pamięci LRU każdego połączenia
+ * fizycznego ({@link Config#statementCacheSize}), a {@code close()} na zapytaniu tylko czyści jego
+ * parametry i oddaje je do ponownego użycia. Z MySQL ({@code useServerPrepStmts=true}) oznacza to,
+ * że zapytanie jest parsowane przez serwer raz na połączenie, a nie przy każdej komendzie.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    /** Logger log4j do rejestrowania zdarzeń puli. */
+    private static final Logger logger = LogManager.getLogger(ConnectionPool.class);
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Config config;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    /** Bezczynne połączenia (LIFO - ostatnio oddane są najcieplejsze). */
+    private final ArrayDeque<PooledEntry> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+
+    private int total;
+    private int active;
+    private int waiters;
+    private boolean closed;
+
+    private long borrowCount;
+    private long totalWaitNanos;
+    private long createdCount;
+    private long destroyedCount;
+    private long timeoutCount;
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    /**
+     * Tworzy pulę i wstępnie otwiera {@link Config#minSize} połączeń.
+     *
+     * @param url      Adres URL JDBC.
+     * @param user     Nazwa użytkownika bazy.
+     * @param password Hasło użytkownika bazy.
+     * @param config   Parametry puli.
+     */
+    public ConnectionPool(String url, String user, String password, Config config) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.config = config;
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        this.evictor.scheduleWithFixedDelay(this::evict,
+                config.evictionIntervalMs, config.evictionIntervalMs, TimeUnit.MILLISECONDS);
+
+        fillToMinimum();
+    }
+
+    /**
+     * Wypożycza połączenie z puli.
+     * <p>
+     * Jeśli brak wolnych połączeń, a pula nie osiągnęła rozmiaru maksymalnego, otwierane jest nowe.
+     * W przeciwnym razie wątek czeka maksymalnie {@link Config#borrowTimeoutMs} milisekund.
+     * </p>
+     *
+     * @return Połączenie, którego {@code close()} zwraca je do puli.
+     * @throws SQLException Gdy upłynął limit czasu lub nie udało się otworzyć połączenia.
+     */
+    public Connection borrow() throws SQLException {
+        return borrow(null);
+    }
+
+    /**
+     * Wypożycza połączenie z puli jak {@link #borrow()}; czas od wydania do zwrotu połączenia
+     * jest zapisywany w {@link Metrics#repository(String)} pod podaną nazwą.
+     *
+     * @param operation Nazwa operacji lub {@code null} (bez pomiaru).
+     * @return Połączenie, którego {@code close()} zwraca je do puli.
+     * @throws SQLException Gdy upłynął limit czasu lub nie udało się otworzyć połączenia.
+     */
+    public Connection borrow(String operation) throws SQLException {
+        long start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(config.borrowTimeoutMs);
+
+        while (true) {
+            PooledEntry candidate = null;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) throw new SQLException("Pula połączeń została zamknięta");
+                    candidate = idle.pollFirst();
+                    if (candidate != null) break;
+                    if (total < config.maxSize) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+                    if (remaining <= 0) {
+                        timeoutCount++;
+                        throw new SQLTransientConnectionException(
+                                "Przekroczono czas oczekiwania na połączenie (" + config.borrowTimeoutMs + " ms)");
+                    }
+                    waiters++;
+                    try {
+                        remaining = available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Przerwano oczekiwanie na połączenie", e);
+                    } finally {
+                        waiters--;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                try {
+                    candidate = openEntry();
+                } catch (SQLException e) {
+                    lock.lock();
+                    try {
+                        total--;
+                        available.signal();
+                    } finally {
+                        lock.unlock();
+                    }
+                    throw e;
+                }
+            } else if (!isUsable(candidate)) {
+                destroy(candidate);
+                remaining = TimeUnit.MILLISECONDS.toNanos(config.borrowTimeoutMs) - (System.nanoTime() - start);
+                continue;
+            }
+
+            long leasedAt = System.nanoTime();
+            lock.lock();
+            try {
+                active++;
+                borrowCount++;
+                totalWaitNanos += leasedAt - start;
+            } finally {
+                lock.unlock();
+            }
+            Metrics.poolAcquire().record(leasedAt - start);
+            return candidate.lease(operation, leasedAt);
+        }
+    }
+
+    /**
+     * Zwraca aktualne statystyki puli.
+     *
+     * @return Migawka statystyk.
+     */
+    public Stats stats() {
+        lock.lock();
+        try {
+            double avgWaitMs = borrowCount == 0 ? 0.0 : (totalWaitNanos / (double) borrowCount) / 1_000_000.0;
+            return new Stats(active, idle.size(), total, waiters, borrowCount, avgWaitMs,
+                    createdCount, destroyedCount, timeoutCount, statementHits.sum(), statementMisses.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Zamyka pulę i wszystkie bezczynne połączenia.
+     * Połączenia aktualnie wypożyczone zostaną zamknięte fizycznie w momencie ich zwrotu.
+     */
+    @Override
+    public void close() {
+        List<PooledEntry> toClose;
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        evictor.shutdownNow();
+        for (PooledEntry e : toClose) destroy(e);
+        logger.info("Zamknięto pulę połączeń: " + url);
+    }
+
+    private void fillToMinimum() {
+        while (true) {
+            lock.lock();
+            try {
+                if (closed || total >= config.minSize) return;
+                total++;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                PooledEntry entry = openEntry();
+                giveBack(entry);
+            } catch (SQLException e) {
+                lock.lock();
+                try {
+                    total--;
+                } finally {
+                    lock.unlock();
+                }
+                logger.warn("Nie udało się wstępnie otworzyć połączenia do puli", e);
+                return;
+            }
+        }
+    }
+
+    private PooledEntry openEntry() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        lock.lock();
+        try {
+            createdCount++;
+        } finally {
+            lock.unlock();
+        }
+        logger.debug("Połączono z bazą: {}", url);
+        return new PooledEntry(physical);
+    }
+
+    private boolean isUsable(PooledEntry entry) {
+        long now = System.currentTimeMillis();
+        if (now - entry.createdAt > config.maxLifetimeMs) return false;
+        if (now - entry.lastUsedAt < config.validateAfterIdleMs) return true;
+        try {
+            return entry.physical.isValid(config.validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /** Przyjmuje połączenie oddane przez repozytorium (wywołanie {@code close()} na proxy). */
+    private void release(PooledEntry entry) {
+        entry.statements.releaseAll();
+        boolean healthy;
+        try {
+            healthy = !entry.physical.isClosed();
+            if (healthy && !entry.physical.getAutoCommit()) {
+                entry.physical.rollback();
+                entry.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            healthy = false;
+        }
+        entry.lastUsedAt = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            active--;
+        } finally {
+            lock.unlock();
+        }
+
+        if (!healthy || entry.lastUsedAt - entry.createdAt > config.maxLifetimeMs) {
+            destroy(entry);
+            fillToMinimum();
+        } else {
+            giveBack(entry);
+        }
+    }
+
+    private void giveBack(PooledEntry entry) {
+        boolean discard;
+        lock.lock();
+        try {
+            discard = closed;
+            if (!discard) {
+                idle.addFirst(entry);
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (discard) destroy(entry);
+    }
+
+    private void destroy(PooledEntry entry) {
+        entry.statements.clear();
+        try {
+            entry.physical.close();
+        } catch (SQLException ignored) {}
+        lock.lock();
+        try {
+            total--;
+            destroyedCount++;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Cykliczne sprzątanie: usuwa połączenia zbyt długo bezczynne lub zbyt stare. */
+    private void evict() {
+        List<PooledEntry> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            int keep = total;
+            Iterator<PooledEntry> it = idle.descendingIterator(); // od najdłużej bezczynnych
+            while (it.hasNext()) {
+                PooledEntry e = it.next();
+                boolean tooOld = now - e.createdAt > config.maxLifetimeMs;
+                boolean tooIdle = now - e.lastUsedAt > config.idleTimeoutMs && keep > config.minSize;
+                if (tooOld || tooIdle) {
+                    it.remove();
+                    expired.add(e);
+                    keep--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (PooledEntry e : expired) destroy(e);
+        if (!expired.isEmpty()) logger.debug("Usunięto z puli {} połączeń", expired.size());
+        fillToMinimum();
+    }
+
+    /**
+     * Połączenie fizyczne wraz z metadanymi potrzebnymi do walidacji i usuwania.
+     */
+    private final class PooledEntry {
+        private final Connection physical;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long lastUsedAt = createdAt;
+        private final StatementCache statements = new StatementCache(this);
+
+        private PooledEntry(Connection physical) {
+            this.physical = physical;
+        }
+
+        private Connection lease(String operation, long leasedAt) {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Lease(this, operation, leasedAt));
+        }
+    }
+
+    /**
+     * Obsługa wywołań na proxy połączenia. Po logicznym zamknięciu dalsze użycie kończy się wyjątkiem.
+     */
+    private final class Lease implements InvocationHandler {
+        private final PooledEntry entry;
+        private final String operation;
+        private final long leasedAt;
+        private boolean returned;
+
+        private Lease(PooledEntry entry, String operation, long leasedAt) {
+            this.entry = entry;
+            this.operation = operation;
+            this.leasedAt = leasedAt;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        if (operation != null) Metrics.repository(operation).recordSince(leasedAt);
+                        release(entry);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || entry.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + entry.physical + "]";
+                case "prepareStatement":
+                case "prepareCall":
+                    if (returned) throw new SQLException("Połączenie zostało już zwrócone do puli");
+                    if (config.statementCacheSize > 0) return entry.statements.prepare(proxy, method, args);
+                    try {
+                        return method.invoke(entry.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                default:
+                    if (returned) throw new SQLException("Połączenie zostało już zwrócone do puli");
+                    try {
+                        return method.invoke(entry.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    /**
+     * Przygotowane zapytania jednego połączenia fizycznego w kolejności LRU.
+     * Używana tylko przez wątek, który aktualnie wypożyczył połączenie (oraz przy jego niszczeniu).
+     */
+    private final class StatementCache {
+        private final PooledEntry entry;
+        private final LinkedHashMap<String, CachedStatement> cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= config.statementCacheSize) return false;
+                if (!eldest.getValue().inUse) eldest.getValue().closePhysical();
+                else eldest.getValue().evicted = true;
+                return true;
+            }
+        };
+
+        private StatementCache(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Zwraca zapytanie z pamięci lub przygotowuje nowe. Jeśli to samo zapytanie jest jeszcze
+         * otwarte (np. zagnieżdżone użycie), przygotowywane jest osobne, niebuforowane.
+         */
+        private synchronized Object prepare(Object connectionProxy, Method method, Object[] args) throws Throwable {
+            String key = method.getName() + Arrays.deepToString(args);
+            CachedStatement cached = cache.get(key);
+            if (cached != null && !cached.inUse) {
+                statementHits.increment();
+                return cached.open(connectionProxy);
+            }
+            statementMisses.increment();
+            PreparedStatement physical;
+            try {
+                physical = (PreparedStatement) method.invoke(entry.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (cached != null) return physical;
+            CachedStatement created = new CachedStatement(this, key, method.getReturnType(), physical);
+            cache.put(key, created);
+            return created.open(connectionProxy);
+        }
+
+        private synchronized void discard(CachedStatement s) {
+            cache.remove(s.key, s);
+            s.closePhysical();
+        }
+
+        /** Zwalnia zapytania niezamknięte przez repozytorium przed oddaniem połączenia. */
+        private synchronized void releaseAll() {
+            for (CachedStatement s : new ArrayList<>(cache.values())) {
+                if (s.inUse) s.release();
+            }
+        }
+
+        private synchronized void clear() {
+            for (CachedStatement s : cache.values()) s.closePhysical();
+            cache.clear();
+        }
+    }
+
+    /**
+     * Przygotowane zapytanie przechowywane w {@link StatementCache}. Każde wydanie tworzy nowe proxy,
+     * którego {@code close()} resetuje zapytanie fizyczne zamiast je zamykać.
+     */
+    private static final class CachedStatement {
+        private final StatementCache owner;
+        private final String key;
+        private final Class<?> type;
+        private final PreparedStatement physical;
+        private Handle current;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(StatementCache owner, String key, Class<?> type, PreparedStatement physical) {
+            this.owner = owner;
+            this.key = key;
+            this.type = type;
+            this.physical = physical;
+        }
+
+        private Object open(Object connectionProxy) {
+            inUse = true;
+            current = new Handle(this, connectionProxy);
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, current);
+        }
+
+        /** Czyści stan zapytania po użyciu; przy błędzie usuwa je z pamięci. */
+        private void release() {
+            if (current != null) current.closed = true;
+            current = null;
+            inUse = false;
+            if (evicted) {
+                closePhysical();
+                return;
+            }
+            try {
+                ResultSet rs = physical.getResultSet();
+                if (rs != null) rs.close();
+                physical.clearParameters();
+                physical.clearBatch();
+                physical.clearWarnings();
+            } catch (SQLException e) {
+                owner.discard(this);
+            }
+        }
+
+        private void closePhysical() {
+            try {
+                physical.close();
+            } catch (SQLException ignored) {}
+        }
+    }
+
+    /**
+     * Obsługa wywołań na proxy buforowanego zapytania.
+     */
+    private static final class Handle implements InvocationHandler {
+        private final CachedStatement statement;
+        private final Object connectionProxy;
+        private boolean closed;
+
+        private Handle(CachedStatement statement, Object connectionProxy) {
+            this.statement = statement;
+            this.connectionProxy = connectionProxy;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        synchronized (statement.owner) {
+                            statement.release();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return connectionProxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + statement.physical + "]";
+                default:
+                    if (closed) throw new SQLException("Zapytanie zostało już zamknięte");
+                    try {
+                        return method.invoke(statement.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    /**
+     * Parametry konfiguracyjne puli. Wartości domyślne można nadpisać właściwościami systemowymi
+     * ({@code -Ddb.pool.maxSize=20} itd.).
+     */
+    public static final class Config {
+        /** Minimalna liczba utrzymywanych połączeń. */
+        public int minSize = Integer.getInteger("db.pool.minSize", 2);
+        /** Maksymalna liczba połączeń (aktywnych i bezczynnych). */
+        public int maxSize = Integer.getInteger("db.pool.maxSize", 10);
+        /** Maksymalny czas oczekiwania na wolne połączenie. */
+        public long borrowTimeoutMs = Long.getLong("db.pool.borrowTimeoutMs", 5_000L);
+        /** Połączenie bezczynne dłużej niż ten próg jest walidowane przed wydaniem. */
+        public long validateAfterIdleMs = Long.getLong("db.pool.validateAfterIdleMs", 1_000L);
+        /** Limit czasu pojedynczej walidacji ({@link Connection#isValid(int)}). */
+        public int validationTimeoutSec = Integer.getInteger("db.pool.validationTimeoutSec", 2);
+        /** Czas bezczynności, po którym nadmiarowe połączenie jest zamykane. */
+        public long idleTimeoutMs = Long.getLong("db.pool.idleTimeoutMs", 300_000L);
+        /** Maksymalny czas życia połączenia fizycznego. */
+        public long maxLifetimeMs = Long.getLong("db.pool.maxLifetimeMs", 1_800_000L);
+        /** Odstęp między kolejnymi przebiegami sprzątania. */
+        public long evictionIntervalMs = Long.getLong("db.pool.evictionIntervalMs", 30_000L);
+        /** Liczba przygotowanych zapytań buforowanych na jedno połączenie (0 - bez buforowania). */
+        public int statementCacheSize = Integer.getInteger("db.pool.statementCacheSize", 64);
+    }
+
+    /**
+     * Migawka statystyk puli.
+     *
+     * @param active         Liczba połączeń aktualnie wypożyczonych.
+     * @param idle           Liczba połączeń bezczynnych.
+     * @param total          Łączna liczba połączeń fizycznych.
+     * @param waiters        Liczba wątków czekających na połączenie.
+     * @param borrowCount    Liczba udanych wypożyczeń od startu.
+     * @param avgWaitMillis  Średni czas uzyskania połączenia (ms).
+     * @param created        Liczba otwartych połączeń fizycznych.
+     * @param destroyed      Liczba zamkniętych połączeń fizycznych.
+     * @param timeouts       Liczba wypożyczeń zakończonych przekroczeniem czasu.
+     * @param statementHits   Liczba zapytań wydanych z pamięci przygotowanych zapytań.
+     * @param statementMisses Liczba zapytań przygotowanych od nowa.
+     */
+    public record Stats(int active, int idle, int total, int waiters, long borrowCount, double avgWaitMillis,
+                        long created, long destroyed, long timeouts, long statementHits, long statementMisses) {
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.US,
+                    "active=%d idle=%d total=%d waiters=%d borrows=%d avgWait=%.3fms created=%d destroyed=%d timeouts=%d "
+                            + "stmtHits=%d stmtMisses=%d",
+                    active, idle, total, waiters, borrowCount, avgWaitMillis, created, destroyed, timeouts,
+                    statementHits, statementMisses);
+        }
+    }
+}
@@ -11,8 +11,11 @@ import java.sql.SQLException;
  * Klasa narzędziowa odpowiedzialna za zarządzanie połączeniem z bazą danych.
  * <p>
  * Przechowuje parametry konfiguracyjne (URL, użytkownik, hasło) i udostępnia
- * statyczną metodę fabrykującą połączenia JDBC. Klasa umożliwia również
- * dynamiczną zmianę konfiguracji, co jest wykorzystywane w środowisku testowym.
+ * statyczną metodę wydającą połączenia JDBC. Połączenia pochodzą z ograniczonej
+ * puli ({@link ConnectionPool}), więc kolejne komendy serwera korzystają z już
+ * nawiązanych ("ciepłych") sesji zamiast za każdym razem łączyć się od nowa.
+ * Klasa umożliwia również dynamiczną zmianę konfiguracji, co jest wykorzystywane
+ * w środowisku testowym.
  * </p>
  *
  * @author Igor Błędziński, Łukasz Gierczak
@@ -24,7 +27,7 @@ public class Database {
     private static final Logger logger = LogManager.getLogger(Database.class);
 
     /** Adres URL połączenia JDBC (domyślnie lokalna baza MySQL). */
-    private static String URL = "jdbc:mysql://localhost:3306/WypozyczalniaPlytDVD";
+    private static String URL = "jdbc:mysql://localhost:3306/WypozyczalniaPlytDVD?useServerPrepStmts=true";
 
     /** Nazwa użytkownika bazy danych. */
     private static String USER = "root";
@@ -32,6 +35,12 @@ public class Database {
     /** Hasło użytkownika bazy danych. */
     private static String PASSWORD = "";
 
+    /** Parametry puli połączeń (domyślnie z właściwości systemowych db.pool.*). */
+    private static ConnectionPool.Config poolConfig = new ConnectionPool.Config();
+
+    /** Pula połączeń tworzona leniwie przy pierwszym wywołaniu {@link #connect()}. */
+    private static ConnectionPool pool;
+
     /**
      * Prywatny konstruktor zapobiegający instancjalizacji klasy narzędziowej.
      */
@@ -40,26 +49,94 @@ public class Database {
     }
 
     /**
-     * Nawiązuje nowe połączenie z bazą danych.
+     * Wydaje połączenie z bazą danych z puli połączeń.
      * <p>
-     * Wykorzystuje sterownik {@link DriverManager} do utworzenia sesji z bazą.
-     * W przypadku powodzenia loguje komunikat na poziomie DEBUG.
-     * W przypadku błędu (np. brak bazy, złe hasło) loguje wyjątek na poziomie ERROR i zwraca null.
+     * Zwrócony obiekt należy zamknąć ({@code close()}) jak zwykłe połączenie - zamiast rozłączenia
+     * trafia ono z powrotem do puli. Połączenia fizyczne otwierane są przez {@link DriverManager}.
+     * W przypadku błędu (np. brak bazy, złe hasło, przekroczony czas oczekiwania na wolne połączenie)
+     * loguje wyjątek na poziomie ERROR i zwraca null.
      * </p>
      *
      * @return Obiekt {@link Connection} reprezentujący aktywne połączenie lub {@code null}, jeśli wystąpił błąd.
      */
     public static Connection connect() {
+        return connect(null);
+    }
+
+    /**
+     * Wydaje połączenie z puli jak {@link #connect()}, a czas od wydania do zwrotu połączenia
+     * zapisuje w histogramie {@link Metrics#repository(String)} o podanej nazwie.
+     *
+     * @param operation Nazwa operacji repozytorium (np. {@code "UserRepository.deleteUser"}) lub {@code null}.
+     * @return Obiekt {@link Connection} lub {@code null}, jeśli wystąpił błąd.
+     */
+    public static Connection connect(String operation) {
         try {
-            Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-            logger.debug("Połączono z bazą: " + URL);
-            return conn;
+            return getPool().borrow(operation);
         } catch (SQLException e) {
             logger.error("Błąd połączenia z bazą! Sprawdź czy baza 'WypozyczalniaPlytDVD' istnieje.", e);
             return null;
         }
     }
 
+    /**
+     * Zwraca rozmiar porcji pobierania dla zapytań czytanych strumieniowo.
+     * <p>
+     * Sterownik MySQL przesyła wiersze pojedynczo (bez wczytywania całego wyniku do pamięci)
+     * tylko dla kursora tylko-do-przodu z rozmiarem porcji {@link Integer#MIN_VALUE}.
+     * Inne bazy (np. H2 w testach) nie akceptują wartości ujemnych - dla nich zwracana jest mała porcja.
+     * </p>
+     *
+     * @return Wartość dla {@link java.sql.Statement#setFetchSize(int)}.
+     */
+    public static int streamingFetchSize() {
+        return isMySql() ? Integer.MIN_VALUE : 256;
+    }
+
+    /**
+     * @return {@code true}, jeśli skonfigurowana baza to MySQL (a nie np. H2 w testach).
+     */
+    public static synchronized boolean isMySql() {
+        return URL.startsWith("jdbc:mysql:");
+    }
+
+    /**
+     * Zwraca statystyki puli połączeń (aktywne, bezczynne, oczekujący, średni czas oczekiwania).
+     *
+     * @return Migawka statystyk puli.
+     */
+    public static ConnectionPool.Stats getPoolStats() {
+        return getPool().stats();
+    }
+
+    /**
+     * Ustawia parametry puli połączeń. Dotychczasowa pula jest zamykana,
+     * a nowa zostanie utworzona przy kolejnym wywołaniu {@link #connect()}.
+     *
+     * @param config Nowe parametry puli.
+     */
+    public static synchronized void setPoolConfig(ConnectionPool.Config config) {
+        poolConfig = config;
+        shutdown();
+    }
+
+    /**
+     * Zamyka pulę połączeń (np. przy zatrzymaniu serwera).
+     */
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    private static synchronized ConnectionPool getPool() {
+        if (pool == null) {
+            pool = new ConnectionPool(URL, USER, PASSWORD, poolConfig);
+        }
+        return pool;
+    }
+
     /**
      * Ustawia parametry połączenia z bazą danych.
      * <p>
@@ -71,9 +148,10 @@ public class Database {
      * @param user     Nowa nazwa użytkownika.
      * @param password Nowe hasło.
      */
-    public static void setConnectionDetails(String url, String user, String password) {
+    public static synchronized void setConnectionDetails(String url, String user, String password) {
         URL = url;
         USER = user;
         PASSWORD = password;
+        shutdown();
     }
 }
\ No newline at end of file
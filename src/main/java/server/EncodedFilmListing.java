@@ -0,0 +1,114 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gotowa, zakodowana odpowiedź tekstowa na komendę GET_FILMS (wszystkie wiersze filmów i {@code END}).
+ * <p>
+ * Odpowiedź jest przechowywana w kawałkach ({@link #CHUNK_SIZE}) w buforach bezpośrednich
+ * ({@link ByteBuffer#allocateDirect(int)}), a dla każdego filmu zapamiętana jest pozycja tekstu
+ * "Tak"/"Nie". Zmiana dostępności podmienia te 3 bajty w kopii jednego kawałka, bez ponownego
+ * formatowania i kodowania całej listy. Obsługa żądania to jeden zapis zbiorczy gotowych buforów.
+ * </p>
+ * <p>
+ * Kawałki są niezmienne po opublikowaniu (kopiowanie przy zapisie), więc wiele połączeń może
+ * jednocześnie wysyłać tę samą odpowiedź bez blokad.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+final class EncodedFilmListing {
+
+    /** Docelowy rozmiar jednego kawałka odpowiedzi (wiersze nie są dzielone między kawałki). */
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    private static final String YES = "Tak";
+    private static final String NO = "Nie";
+
+    private final Charset charset;
+    private volatile ByteBuffer[] chunks;
+    /** Numer kawałka zawierającego wiersz filmu (indeks jak w katalogu). */
+    private final int[] chunkOfFilm;
+    /** Pozycja tekstu "Tak"/"Nie" w kawałku. */
+    private final int[] flagOffset;
+
+    private EncodedFilmListing(Charset charset, ByteBuffer[] chunks, int[] chunkOfFilm, int[] flagOffset) {
+        this.charset = charset;
+        this.chunks = chunks;
+        this.chunkOfFilm = chunkOfFilm;
+        this.flagOffset = flagOffset;
+    }
+
+    /**
+     * Koduje pełną odpowiedź GET_FILMS dla podanych filmów.
+     *
+     * @param films   Filmy w kolejności wysyłania.
+     * @param charset Kodowanie protokołu tekstowego.
+     * @return Zakodowana odpowiedź.
+     */
+    static EncodedFilmListing encode(List<Film> films, Charset charset) {
+        String newline = System.lineSeparator();
+        int[] chunkOfFilm = new int[films.size()];
+        int[] flagOffset = new int[films.size()];
+        List<ByteBuffer> chunks = new ArrayList<>();
+        ByteArrayOutputStream current = new ByteArrayOutputStream(CHUNK_SIZE + 256);
+
+        for (int i = 0; i < films.size(); i++) {
+            String line = films.get(i).format();
+            byte[] bytes = (line + newline).getBytes(charset);
+            if (current.size() > 0 && current.size() + bytes.length > CHUNK_SIZE) {
+                chunks.add(seal(current));
+                current.reset();
+            }
+            // Wiersz kończy się "Tak"/"Nie" (ASCII, 3 bajty w każdym kodowaniu zgodnym z ASCII).
+            chunkOfFilm[i] = chunks.size();
+            flagOffset[i] = current.size() + bytes.length - newline.getBytes(charset).length - 3;
+            current.writeBytes(bytes);
+        }
+        current.writeBytes((TextResponseWriter.END + newline).getBytes(charset));
+        chunks.add(seal(current));
+
+        return new EncodedFilmListing(charset, chunks.toArray(new ByteBuffer[0]), chunkOfFilm, flagOffset);
+    }
+
+    /**
+     * Zwraca bufory do wysłania (kopie wskaźników tylko do odczytu - treść nie jest kopiowana).
+     *
+     * @return Kawałki odpowiedzi gotowe do zapisu zbiorczego.
+     */
+    ByteBuffer[] buffers() {
+        ByteBuffer[] current = chunks;
+        ByteBuffer[] result = new ByteBuffer[current.length];
+        for (int i = 0; i < current.length; i++) result[i] = current[i].duplicate();
+        return result;
+    }
+
+    /**
+     * Podmienia tekst dostępności filmu. Wywoływane pod blokadą zapisu katalogu.
+     *
+     * @param filmIndex Indeks filmu w katalogu.
+     * @param dostepny  Nowa dostępność.
+     */
+    void patch(int filmIndex, boolean dostepny) {
+        ByteBuffer[] current = chunks;
+        int c = chunkOfFilm[filmIndex];
+        ByteBuffer copy = ByteBuffer.allocateDirect(current[c].capacity());
+        copy.put(current[c].duplicate()).flip();
+        copy.put(flagOffset[filmIndex], (dostepny ? YES : NO).getBytes(charset));
+
+        ByteBuffer[] next = current.clone();
+        next[c] = copy.asReadOnlyBuffer();
+        chunks = next;
+    }
+
+    private static ByteBuffer seal(ByteArrayOutputStream bytes) {
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.size());
+        direct.put(bytes.toByteArray()).flip();
+        return direct.asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,37 @@
+package server;
+
+import java.util.Locale;
+
+/**
+ * Zwarta reprezentacja jednego filmu z tabeli Film.
+ *
+ * @param id       ID filmu.
+ * @param tytul    Tytuł.
+ * @param gatunek  Gatunek.
+ * @param rok      Rok produkcji.
+ * @param dostepny Czy film jest dostępny do wypożyczenia.
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public record Film(int id, String tytul, String gatunek, int rok, boolean dostepny) {
+
+    /**
+     * Formatuje film do postaci tekstowej wysyłanej klientowi.
+     *
+     * @return Tekst w formacie {@code "ID. Tytuł (Rok) - Dostępny: Tak/Nie"}.
+     */
+    public String format() {
+        return String.format(Locale.ROOT, "%d. %s (%d) - Dostępny: %s", id, tytul, rok, dostepny ? "Tak" : "Nie");
+    }
+
+    /**
+     * Zwraca kopię filmu z inną wartością dostępności.
+     *
+     * @param value Nowa dostępność.
+     * @return Nowy obiekt Film.
+     */
+    public Film withDostepny(boolean value) {
+        return value == dostepny ? this : new Film(id, tytul, gatunek, rok, value);
+    }
+}
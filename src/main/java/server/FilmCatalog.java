@@ -0,0 +1,264 @@
+package server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pamięć podręczna katalogu filmów (tabela Film) współdzielona przez wszystkie połączenia.
+ * <p>
+ * Katalog zmienia się rzadko - na bieżąco zmienia się tylko flaga {@code dostepny}.
+ * Dlatego lista filmów jest wczytywana z bazy raz i trzymana w pamięci jako tablica
+ * rekordów {@link Film} uporządkowana po ID. Po zatwierdzeniu wypożyczenia lub płatności
+ * repozytorium transakcji aktualizuje jedynie dostępność danego filmu
+ * ({@link #markAvailable(int, boolean)}); pełne przeładowanie następuje tylko po zmianie
+ * samego katalogu ({@link #invalidate()}).
+ * </p>
+ * <p>
+ * Katalog utrzymuje też gotową, zakodowaną odpowiedź tekstową GET_FILMS ({@link EncodedFilmListing}),
+ * w której zmiana dostępności podmienia tylko kilka bajtów, oraz indeks wyszukiwania
+ * ({@link FilmSearchIndex}) dla komendy SEARCH_FILMS.
+ * </p>
+ * <p>
+ * Dostępność jest dodatkowo trzymana w mapie bitowej ({@link AvailabilityBitmap}), dzięki czemu
+ * wypożyczenie filmu już wypożyczonego jest odrzucane bez otwierania transakcji w bazie.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class FilmCatalog {
+
+    /** Logger log4j do rejestrowania przeładowań katalogu. */
+    private static final Logger logger = LogManager.getLogger(FilmCatalog.class);
+
+    /** Wspólna instancja używana przez repozytoria. */
+    private static final FilmCatalog SHARED = new FilmCatalog(new FilmRepository());
+
+    private final FilmRepository source;
+    /** Blokada zapisów (przeładowanie i zmiany dostępności); odczyty jej nie wymagają. */
+    private final Object writeLock = new Object();
+    /** Aktualny stan katalogu; {@code null} oznacza konieczność wczytania z bazy. */
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param source Repozytorium, z którego wczytywany jest katalog.
+     */
+    FilmCatalog(FilmRepository source) {
+        this.source = source;
+    }
+
+    /**
+     * @return Wspólna instancja katalogu.
+     */
+    public static FilmCatalog shared() {
+        return SHARED;
+    }
+
+    /**
+     * Zwraca wszystkie filmy (uporządkowane po ID). Przy pierwszym wywołaniu lub po
+     * {@link #invalidate()} katalog jest wczytywany z bazy.
+     *
+     * @return Niemodyfikowalny widok listy filmów.
+     * @throws SQLException Jeśli wczytanie katalogu z bazy się nie powiodło.
+     */
+    public List<Film> films() throws SQLException {
+        return current().view;
+    }
+
+    /**
+     * Zwraca film o podanym ID.
+     *
+     * @param filmId ID filmu.
+     * @return Film lub {@code null}, jeśli nie istnieje.
+     * @throws SQLException Jeśli wczytanie katalogu z bazy się nie powiodło.
+     */
+    public Film find(int filmId) throws SQLException {
+        Snapshot s = current();
+        int idx = s.indexOf(filmId);
+        return idx < 0 ? null : s.films.get(idx);
+    }
+
+    /**
+     * Sprawdza dostępność filmu w mapie bitowej katalogu, bez odpytywania bazy.
+     * Filmy spoza katalogu są traktowane jako niedostępne.
+     *
+     * @param filmId ID filmu.
+     * @return {@code true}, jeśli film jest dostępny do wypożyczenia.
+     * @throws SQLException Jeśli wczytanie katalogu z bazy się nie powiodło.
+     */
+    public boolean isAvailable(int filmId) throws SQLException {
+        return current().availability.get(filmId);
+    }
+
+    /**
+     * @return Liczba dostępnych filmów (licznik utrzymywany przy zmianach dostępności).
+     * @throws SQLException Jeśli wczytanie katalogu z bazy się nie powiodło.
+     */
+    public int availableCount() throws SQLException {
+        return current().availability.count();
+    }
+
+    /**
+     * Zwraca dostępne filmy, przechodząc po ustawionych bitach mapy dostępności.
+     *
+     * @return Dostępne filmy uporządkowane po ID.
+     * @throws SQLException Jeśli wczytanie katalogu z bazy się nie powiodło.
+     */
+    public List<Film> availableFilms() throws SQLException {
+        Snapshot s = current();
+        List<Film> result = new ArrayList<>(s.availability.count());
+        for (int id = s.availability.nextAvailable(0); id >= 0; id = s.availability.nextAvailable(id + 1)) {
+            int idx = s.indexOf(id);
+            if (idx >= 0) result.add(s.films.get(idx));
+        }
+        return result;
+    }
+
+    /**
+     * Zwraca gotową odpowiedź tekstową GET_FILMS (wiersze filmów i {@code END}) zakodowaną
+     * domyślnym kodowaniem platformy, tak jak protokół tekstowy. Przy pierwszym użyciu
+     * odpowiedź jest kodowana, później jedynie aktualizowana przy zmianach dostępności.
+     *
+     * @return Bufory tylko do odczytu gotowe do zapisu zbiorczego.
+     * @throws SQLException Jeśli wczytanie katalogu z bazy się nie powiodło.
+     */
+    public ByteBuffer[] encodedListing() throws SQLException {
+        Snapshot s = current();
+        EncodedFilmListing listing = s.listing;
+        if (listing == null) {
+            synchronized (writeLock) {
+                if (s.listing == null) s.listing = EncodedFilmListing.encode(s.view, Charset.defaultCharset());
+                listing = s.listing;
+            }
+        }
+        return listing.buffers();
+    }
+
+    /**
+     * Wyszukuje filmy w indeksie katalogu ({@link FilmSearchIndex}), bez odpytywania bazy.
+     * Indeks jest budowany przy pierwszym wyszukiwaniu dla danego stanu katalogu.
+     *
+     * @param query         Słowa tytułu (prefiksy, z tolerancją literówek); puste = dowolny tytuł.
+     * @param genre         Gatunek; puste = dowolny.
+     * @param year          Rok produkcji; 0 = dowolny.
+     * @param onlyAvailable Czy zwracać tylko filmy dostępne do wypożyczenia.
+     * @param limit         Maksymalna liczba wyników.
+     * @return Pasujące filmy uporządkowane po ID.
+     * @throws SQLException Jeśli wczytanie katalogu z bazy się nie powiodło.
+     */
+    public List<Film> search(String query, String genre, int year, boolean onlyAvailable, int limit) throws SQLException {
+        Snapshot s = current();
+        FilmSearchIndex index = s.searchIndex;
+        if (index == null) {
+            synchronized (writeLock) {
+                if (s.searchIndex == null) s.searchIndex = FilmSearchIndex.build(s.view);
+                index = s.searchIndex;
+            }
+        }
+
+        int[] positions = index.search(query, genre, year);
+        List<Film> result = new ArrayList<>(Math.min(positions.length, limit));
+        for (int i = 0; i < positions.length && result.size() < limit; i++) {
+            Film f = s.films.get(positions[i]);
+            if (!onlyAvailable || f.dostepny()) result.add(f);
+        }
+        return result;
+    }
+
+    /**
+     * Aktualizuje dostępność filmu po zatwierdzeniu transakcji w bazie.
+     * Jeśli katalog nie jest wczytany, nic nie robi - kolejne wczytanie odczyta stan z bazy.
+     *
+     * @param filmId   ID filmu.
+     * @param dostepny Nowa dostępność.
+     */
+    public void markAvailable(int filmId, boolean dostepny) {
+        synchronized (writeLock) {
+            Snapshot s = snapshot;
+            if (s == null) return;
+            int idx = s.indexOf(filmId);
+            if (idx < 0) {
+                // Film spoza katalogu (np. dodany ręcznie w bazie) - katalog jest nieaktualny.
+                snapshot = null;
+                return;
+            }
+            Film film = s.films.get(idx);
+            s.availability.set(filmId, dostepny);
+            if (film.dostepny() == dostepny) return;
+            s.films.set(idx, film.withDostepny(dostepny));
+            if (s.listing != null) s.listing.patch(idx, dostepny);
+        }
+    }
+
+    /**
+     * Unieważnia katalog po zmianie zawartości tabeli Film (nowe lub usunięte tytuły).
+     * Kolejny odczyt wczyta katalog z bazy od nowa.
+     */
+    public void invalidate() {
+        synchronized (writeLock) {
+            snapshot = null;
+        }
+    }
+
+    private Snapshot current() throws SQLException {
+        Snapshot s = snapshot;
+        if (s != null) return s;
+        synchronized (writeLock) {
+            if (snapshot == null) {
+                List<Film> loaded = source.loadFilmsFromDatabase();
+                snapshot = new Snapshot(loaded.toArray(new Film[0]));
+                logger.info("Wczytano katalog filmów do pamięci (" + loaded.size() + " pozycji)");
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Stan katalogu: filmy uporządkowane po ID (wyszukiwanie binarne po ID).
+     */
+    private static final class Snapshot {
+        private final int[] ids;
+        private final AtomicReferenceArray<Film> films;
+        private final List<Film> view;
+        /** Dostępność filmów indeksowana ID (przełączana atomowo po zatwierdzeniu transakcji). */
+        private final AvailabilityBitmap availability;
+        /** Zakodowana odpowiedź GET_FILMS, tworzona przy pierwszym użyciu. */
+        private volatile EncodedFilmListing listing;
+        /** Indeks wyszukiwania SEARCH_FILMS, tworzony przy pierwszym użyciu. */
+        private volatile FilmSearchIndex searchIndex;
+
+        private Snapshot(Film[] sorted) {
+            Arrays.sort(sorted, (a, b) -> Integer.compare(a.id(), b.id()));
+            this.ids = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) ids[i] = sorted[i].id();
+            this.films = new AtomicReferenceArray<>(sorted);
+            this.availability = new AvailabilityBitmap(sorted.length == 0 ? 0 : ids[sorted.length - 1]);
+            for (Film f : sorted) availability.set(f.id(), f.dostepny());
+            this.view = new AbstractList<>() {
+                @Override
+                public Film get(int index) {
+                    return films.get(index);
+                }
+
+                @Override
+                public int size() {
+                    return films.length();
+                }
+            };
+        }
+
+        private int indexOf(int filmId) {
+            int idx = Arrays.binarySearch(ids, filmId);
+            return idx < 0 ? -1 : idx;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Stan jednego importu filmów z pliku CSV (komenda ADMIN_IMPORT_FILMS).
+ * <p>
+ * Wiersze mają postać {@code tytul,gatunek,rok}; pola mogą być ujęte w cudzysłów
+ * (cudzysłów wewnątrz pola zapisuje się jako {@code ""}), a pierwszy wiersz może być
+ * nagłówkiem {@code tytul,gatunek,rok}. Każdy wiersz jest sprawdzany i odrzucany jako
+ * duplikat z wcześniejszym wierszem pliku już w chwili odczytu - klucz to tytuł (bez wielkości
+ * liter i skrajnych spacji) wraz z rokiem. Poprawne wiersze trafiają do bieżącej porcji;
+ * pełna porcja jest odbierana przez {@link #takeBatch(List)}, który pomija też filmy będące już
+ * w katalogu, i zapisywana osobną krótką transakcją. W pamięci pozostaje więc tylko jedna porcja
+ * i zbiór kluczy, ograniczony liczbą {@code maxRows} przyjmowanych wierszy.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+final class FilmImport {
+
+    /** Maksymalna długość tytułu (kolumna Film.tytul). */
+    private static final int MAX_TITLE = 255;
+    /** Maksymalna długość gatunku (kolumna Film.gatunek). */
+    private static final int MAX_GENRE = 100;
+
+    private final int batchSize;
+    private final int maxRows;
+    private final Set<String> known = new HashSet<>();
+    private final List<Film> batch;
+    /** Klucze filmów z katalogu, budowane raz przy pierwszej porcji. */
+    private Set<String> existing;
+    private boolean first = true;
+    private int accepted;
+    private int inserted;
+    private int duplicates;
+    private int invalid;
+    private int overLimit;
+    /** Ustawiane po błędzie zapisu - dalsze wiersze są tylko odczytywane do linii END. */
+    private boolean failed;
+
+    /**
+     * @param batchSize Liczba filmów w jednej porcji zapisu.
+     * @param maxRows   Maksymalna liczba przyjmowanych nowych filmów; kolejne wiersze są pomijane.
+     */
+    FilmImport(int batchSize, int maxRows) {
+        this.batchSize = Math.max(1, batchSize);
+        this.maxRows = Math.max(0, maxRows);
+        this.batch = new ArrayList<>(Math.min(this.batchSize, 4096));
+    }
+
+    /**
+     * Przetwarza jeden wiersz pliku CSV.
+     *
+     * @param line Wiersz bez znaku końca linii.
+     */
+    void accept(String line) {
+        boolean header = first;
+        first = false;
+        if (failed || line.isBlank()) return;
+        List<String> fields = split(line);
+        if (header && fields.size() == 3 && "tytul".equalsIgnoreCase(fields.get(0).trim())) return;
+
+        String tytul = fields.size() == 3 ? fields.get(0).trim() : "";
+        String gatunek = fields.size() == 3 ? fields.get(1).trim() : "";
+        int rok;
+        try {
+            rok = fields.size() == 3 ? Integer.parseInt(fields.get(2).trim()) : 0;
+        } catch (NumberFormatException e) {
+            rok = 0;
+        }
+        if (tytul.isEmpty() || tytul.length() > MAX_TITLE || gatunek.length() > MAX_GENRE || rok <= 0) {
+            invalid++;
+            return;
+        }
+        if (accepted >= maxRows) {
+            overLimit++;
+            return;
+        }
+        if (!known.add(key(tytul, rok))) {
+            duplicates++;
+            return;
+        }
+        accepted++;
+        batch.add(new Film(0, tytul, gatunek, rok, true));
+    }
+
+    /**
+     * @return {@code true}, jeśli bieżąca porcja osiągnęła rozmiar zapisu.
+     */
+    boolean batchFull() {
+        return batch.size() >= batchSize;
+    }
+
+    /**
+     * Odbiera bieżącą porcję bez filmów, które są już w katalogu (liczonych jako duplikaty).
+     * Katalog jest odczytywany tylko przy pierwszej porcji - filmy zapisane później przez ten
+     * import są już odrzucane jako duplikaty wierszy pliku.
+     *
+     * @param catalog Filmy z katalogu na początku importu.
+     * @return Nowe filmy do zapisania (w kolejności z pliku).
+     */
+    List<Film> takeBatch(List<Film> catalog) {
+        if (existing == null) {
+            existing = new HashSet<>(catalog.size() * 2);
+            for (Film f : catalog) existing.add(key(f.tytul(), f.rok()));
+        }
+        List<Film> result = new ArrayList<>(batch.size());
+        for (Film f : batch) {
+            if (existing.contains(key(f.tytul(), f.rok()))) duplicates++;
+            else result.add(f);
+        }
+        batch.clear();
+        return result;
+    }
+
+    /**
+     * Odnotowuje zatwierdzoną porcję.
+     *
+     * @param count Liczba zapisanych filmów.
+     */
+    void inserted(int count) {
+        inserted += count;
+    }
+
+    /**
+     * Przerywa zapis po błędzie; pozostałe wiersze do END są pomijane.
+     */
+    void fail() {
+        failed = true;
+        batch.clear();
+    }
+
+    /**
+     * @return Czy zapis został przerwany błędem.
+     */
+    boolean failed() {
+        return failed;
+    }
+
+    /**
+     * @return Liczba filmów zapisanych w zatwierdzonych porcjach.
+     */
+    int inserted() {
+        return inserted;
+    }
+
+    /**
+     * @return Liczba wierszy pominiętych jako duplikaty.
+     */
+    int duplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return Liczba wierszy z błędnym formatem.
+     */
+    int invalid() {
+        return invalid;
+    }
+
+    /**
+     * @return Liczba poprawnych wierszy pominiętych po przekroczeniu limitu {@code maxRows}.
+     */
+    int overLimit() {
+        return overLimit;
+    }
+
+    private static String key(String tytul, int rok) {
+        return tytul.trim().toLowerCase(Locale.ROOT) + '\u0000' + rok;
+    }
+
+    /**
+     * Dzieli wiersz CSV na pola z uwzględnieniem cudzysłowów.
+     */
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
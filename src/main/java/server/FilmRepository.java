@@ -3,6 +3,7 @@ package server;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -12,6 +13,7 @@ import java.util.List;
  * <p>
  * Służy do pobierania informacji o dostępnych zasobach (filmach) i przygotowywania
  * ich w formie sformatowanej listy tekstowej dla warstwy prezentacji (Klienta).
+ * Odczyty katalogu obsługuje pamięć podręczna {@link FilmCatalog}.
  * </p>
  *
  * @author Igor Błędziński, Łukasz Gierczak
@@ -31,7 +33,6 @@ public class FilmRepository {
     /**
      * Pobiera listę wszystkich filmów z bazy danych i formatuje ją do czytelnej postaci tekstowej.
      * <p>
-     * Metoda wykonuje zapytanie SQL SELECT, a następnie iteruje przez wyniki.
      * Wartość logiczna (boolean) określająca dostępność filmu jest konwertowana
      * na polski tekst ("Tak" lub "Nie").
      * </p>
@@ -42,29 +43,183 @@ public class FilmRepository {
      */
     public List<String> getAllFilmsFormatted() {
         List<String> result = new ArrayList<>();
+        try {
+            for (Film f : getAllFilms()) result.add(f.format());
+        } catch (SQLException e) {
+            logger.error("Błąd SQL przy pobieraniu filmów", e);
+            result.add("Błąd bazy danych.");
+        }
+        return result;
+    }
+
+    /**
+     * Pobiera wszystkie filmy jako obiekty {@link Film}.
+     * <p>
+     * Dane pochodzą z pamięci podręcznej {@link FilmCatalog}, więc zwykle nie wymagają
+     * zapytania do bazy. Wykorzystywana m.in. przez binarny protokół, który przesyła
+     * pola filmu bez formatowania tekstu.
+     * </p>
+     *
+     * @return Lista filmów uporządkowana po ID.
+     * @throws SQLException W przypadku błędu bazy danych przy wczytywaniu katalogu.
+     */
+    public List<Film> getAllFilms() throws SQLException {
+        return FilmCatalog.shared().films();
+    }
+
+    /**
+     * Wczytuje wszystkie filmy bezpośrednio z bazy danych (z pominięciem pamięci podręcznej).
+     * <p>
+     * Metoda wykonuje zapytanie SQL SELECT i iteruje przez wyniki.
+     * Używana przez {@link FilmCatalog} przy pełnym przeładowaniu katalogu.
+     * </p>
+     *
+     * @return Lista filmów.
+     * @throws SQLException W przypadku błędu bazy danych.
+     */
+    List<Film> loadFilmsFromDatabase() throws SQLException {
+        List<Film> result = new ArrayList<>();
         String sql = "SELECT id, tytul, rok, gatunek, dostepny FROM Film";
 
-        try (Connection conn = Database.connect();
+        try (Connection conn = Database.connect("FilmRepository.loadFilmsFromDatabase");
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
             while (rs.next()) {
-                int id = rs.getInt("id");
-                String tytul = rs.getString("tytul");
-                int rok = rs.getInt("rok");
-                boolean dostepny = rs.getBoolean("dostepny");
-
-                String dostepnoscTekst = dostepny ? "Tak" : "Nie";
-
-                String line = String.format("%d. %s (%d) - Dostępny: %s", id, tytul, rok, dostepnoscTekst);
-                result.add(line);
+                result.add(readFilm(rs));
             }
             logger.info("Pobrano filmy z bazy.");
+        }
+        return result;
+    }
 
-        } catch (SQLException e) {
-            logger.error("Błąd SQL przy pobieraniu filmów", e);
-            result.add("Błąd bazy danych.");
+    /**
+     * Pobiera jedną stronę katalogu metodą stronicowania po kluczu (keyset) na kolumnie {@code Film.id}.
+     * <p>
+     * Zapytanie {@code WHERE id > ? ORDER BY id LIMIT ?} korzysta z indeksu klucza głównego,
+     * więc koszt strony nie rośnie wraz z jej numerem (w przeciwieństwie do {@code OFFSET}).
+     * Kolejną stronę pobiera się, podając ID ostatniego filmu z poprzedniej.
+     * </p>
+     *
+     * @param afterId ID ostatniego filmu z poprzedniej strony (0 dla pierwszej strony).
+     * @param limit   Maksymalna liczba filmów na stronie.
+     * @return Filmy o ID większym niż {@code afterId}, uporządkowane po ID.
+     * @throws SQLException W przypadku błędu bazy danych.
+     */
+    public List<Film> getFilmsPage(int afterId, int limit) throws SQLException {
+        List<Film> result = new ArrayList<>(Math.min(limit, 1024));
+        String sql = "SELECT id, tytul, rok, gatunek, dostepny FROM Film WHERE id > ? ORDER BY id LIMIT ?";
+
+        try (Connection conn = Database.connect("FilmRepository.getFilmsPage");
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, afterId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) result.add(readFilm(rs));
+            }
         }
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Przekazuje wszystkie filmy do odbiorcy na bieżąco, w miarę odczytu z kursora bazy.
+     * <p>
+     * Zapytanie używa kursora tylko-do-przodu i małej porcji pobierania
+     * ({@link Database#streamingFetchSize()}), więc pamięć zajęta przez żądanie nie zależy
+     * od wielkości katalogu. Połączenie z bazą jest zajęte do końca wysyłania.
+     * </p>
+     *
+     * @param sink Odbiorca filmów (np. zapis do gniazda klienta).
+     * @return Liczba przekazanych filmów.
+     * @throws SQLException W przypadku błędu bazy danych.
+     * @throws IOException  W przypadku błędu zapisu przez odbiorcę.
+     */
+    public int streamAllFilms(RowSink<Film> sink) throws SQLException, IOException {
+        String sql = "SELECT id, tytul, rok, gatunek, dostepny FROM Film ORDER BY id";
+        int count = 0;
+        try (Connection conn = Database.connect("FilmRepository.streamAllFilms");
+             Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(Database.streamingFetchSize());
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    sink.accept(readFilm(rs));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Dodaje filmy do tabeli Film w jednej transakcji, wielowierszowymi instrukcjami
+     * {@code INSERT ... VALUES (...), (...), ...}.
+     * <p>
+     * Każda instrukcja zapisuje do {@code batchSize} filmów, więc liczba podróży do bazy
+     * wynosi {@code films.size() / batchSize}, a nie {@code films.size()}. Import z pliku
+     * wywołuje metodę osobno dla każdej porcji, aby transakcja była krótka i nie obejmowała
+     * komunikacji z klientem; w razie błędu wycofywana jest tylko bieżąca porcja.
+     * Nowe filmy są dostępne do wypożyczenia. Katalog w pamięci należy następnie
+     * przeładować ({@link FilmCatalog#invalidate()}).
+     * </p>
+     *
+     * @param films     Filmy do dodania (ID jest ignorowane).
+     * @param batchSize Maksymalna liczba wierszy w jednej instrukcji INSERT.
+     * @return Liczba dodanych filmów.
+     * @throws SQLException W przypadku błędu bazy danych (nic z tej porcji nie zostaje zapisane).
+     */
+    public int insertFilms(List<Film> films, int batchSize) throws SQLException {
+        if (films.isEmpty()) return 0;
+        int batch = Math.max(1, batchSize);
+        Connection conn = Database.connect("FilmRepository.insertFilms");
+        if (conn == null) throw new SQLException("Brak połączenia z bazą");
+        int inserted = 0;
+        try {
+            conn.setAutoCommit(false);
+            PreparedStatement full = null;
+            try {
+                for (int from = 0; from < films.size(); from += batch) {
+                    int n = Math.min(batch, films.size() - from);
+                    PreparedStatement ps;
+                    if (n == batch) {
+                        if (full == null) full = conn.prepareStatement(insertSql(batch));
+                        ps = full;
+                    } else {
+                        ps = conn.prepareStatement(insertSql(n));
+                    }
+                    try {
+                        int i = 1;
+                        for (Film f : films.subList(from, from + n)) {
+                            ps.setString(i++, f.tytul());
+                            ps.setString(i++, f.gatunek());
+                            ps.setInt(i++, f.rok());
+                        }
+                        inserted += ps.executeUpdate();
+                    } finally {
+                        if (ps != full) ps.close();
+                    }
+                }
+            } finally {
+                if (full != null) full.close();
+            }
+            conn.commit();
+            logger.debug("Zapisano porcję filmów: {}", inserted);
+        } catch (SQLException | RuntimeException e) {
+            try { conn.rollback(); } catch (SQLException ex) {}
+            throw e;
+        } finally {
+            try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) {}
+        }
+        return inserted;
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sb = new StringBuilder(48 + rows * 16).append("INSERT INTO Film (tytul, gatunek, rok, dostepny) VALUES ");
+        for (int i = 0; i < rows; i++) sb.append(i == 0 ? "(?, ?, ?, TRUE)" : ", (?, ?, ?, TRUE)");
+        return sb.toString();
+    }
+
+    private static Film readFilm(ResultSet rs) throws SQLException {
+        return new Film(rs.getInt("id"), rs.getString("tytul"), rs.getString("gatunek"),
+                rs.getInt("rok"), rs.getBoolean("dostepny"));
+    }
+}
@@ -0,0 +1,281 @@
+package server;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Indeks wyszukiwania filmów w katalogu ({@link FilmCatalog}), budowany raz dla stanu katalogu.
+ * <p>
+ * Tytuły dzielone są na słowa sprowadzone do małych liter bez polskich znaków
+ * ("Żądło" i "zadlo" to to samo słowo). Dla każdego słowa trzymana jest posortowana lista
+ * pozycji filmów (indeks odwrócony), a posortowana tablica słów pozwala dopasować prefiks
+ * wyszukiwaniem binarnym. Jeśli słowo zapytania nie pasuje ani dokładnie, ani jako prefiks,
+ * kandydaci wyszukiwani są po wspólnych trójznakach i sprawdzani odległością edycyjną
+ * (tolerancja literówek). Gatunek i rok mają własne listy pozycji.
+ * </p>
+ * <p>
+ * Indeks przechowuje tylko pozycje filmów w katalogu, więc zmiana dostępności nie wymaga
+ * jego przebudowy - filtr dostępności czyta bieżący stan filmu z katalogu.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+final class FilmSearchIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    /** Posortowane, unikalne słowa ze wszystkich tytułów. */
+    private final String[] terms;
+    /** Pozycje filmów dla słowa o tym samym numerze co w {@link #terms}. */
+    private final int[][] termPostings;
+    /** Trójznak słowa (z ogranicznikami '$') -> numery słów zawierających go. */
+    private final Map<String, int[]> trigrams;
+    private final Map<String, int[]> byGenre;
+    private final Map<Integer, int[]> byYear;
+    private final int size;
+
+    private FilmSearchIndex(String[] terms, int[][] termPostings, Map<String, int[]> trigrams,
+                            Map<String, int[]> byGenre, Map<Integer, int[]> byYear, int size) {
+        this.terms = terms;
+        this.termPostings = termPostings;
+        this.trigrams = trigrams;
+        this.byGenre = byGenre;
+        this.byYear = byYear;
+        this.size = size;
+    }
+
+    /**
+     * Buduje indeks dla filmów katalogu.
+     *
+     * @param films Filmy w kolejności katalogu (pozycja na liście = pozycja w indeksie).
+     * @return Gotowy indeks.
+     */
+    static FilmSearchIndex build(List<Film> films) {
+        TreeMap<String, IntList> termMap = new TreeMap<>();
+        Map<String, IntList> genreMap = new HashMap<>();
+        Map<Integer, IntList> yearMap = new HashMap<>();
+
+        for (int i = 0; i < films.size(); i++) {
+            Film f = films.get(i);
+            for (String token : tokenize(f.tytul())) {
+                IntList postings = termMap.computeIfAbsent(token, k -> new IntList());
+                // Słowo powtórzone w jednym tytule dodaje pozycję tylko raz.
+                if (postings.size == 0 || postings.last() != i) postings.add(i);
+            }
+            if (f.gatunek() != null) genreMap.computeIfAbsent(normalize(f.gatunek()), k -> new IntList()).add(i);
+            yearMap.computeIfAbsent(f.rok(), k -> new IntList()).add(i);
+        }
+
+        String[] terms = termMap.keySet().toArray(new String[0]);
+        int[][] termPostings = new int[terms.length][];
+        Map<String, IntList> trigramMap = new HashMap<>();
+        for (int t = 0; t < terms.length; t++) {
+            termPostings[t] = termMap.get(terms[t]).toArray();
+            for (String g : trigramsOf(terms[t])) {
+                IntList ids = trigramMap.computeIfAbsent(g, k -> new IntList());
+                if (ids.size == 0 || ids.last() != t) ids.add(t);
+            }
+        }
+
+        return new FilmSearchIndex(terms, termPostings, freeze(trigramMap), freeze(genreMap), freeze(yearMap), films.size());
+    }
+
+    /**
+     * Wyszukuje pozycje filmów spełniających wszystkie podane warunki.
+     *
+     * @param query  Słowa tytułu (każde musi pasować dokładnie, jako prefiks lub z literówką); puste = dowolny tytuł.
+     * @param genre  Gatunek (bez rozróżniania wielkości liter i polskich znaków); {@code null} lub puste = dowolny.
+     * @param year   Rok produkcji; 0 = dowolny.
+     * @return Posortowane rosnąco pozycje filmów w katalogu.
+     */
+    int[] search(String query, String genre, int year) {
+        int[] result = null;
+
+        if (genre != null && !genre.isBlank()) {
+            result = byGenre.getOrDefault(normalize(genre.trim()), EMPTY);
+        }
+        if (year != 0) {
+            result = intersect(result, byYear.getOrDefault(year, EMPTY));
+        }
+        if (query != null) {
+            for (String token : tokenize(query)) {
+                if (result != null && result.length == 0) break;
+                result = intersect(result, matchTerm(token));
+            }
+        }
+        if (result == null) {
+            result = new int[size];
+            for (int i = 0; i < size; i++) result[i] = i;
+        }
+        return result;
+    }
+
+    /** Pozycje filmów, których tytuł zawiera słowo pasujące do {@code token}. */
+    private int[] matchTerm(String token) {
+        int from = lowerBound(token);
+        int to = from;
+        while (to < terms.length && terms[to].startsWith(token)) to++;
+        if (to > from) return union(from, to, null);
+        return token.length() >= 3 ? fuzzy(token) : EMPTY;
+    }
+
+    /** Słowa różniące się od {@code token} o najwyżej 1 (krótkie) lub 2 (dłuższe) edycje. */
+    private int[] fuzzy(String token) {
+        int maxDistance = token.length() <= 5 ? 1 : 2;
+        List<String> grams = trigramsOf(token);
+        // Zliczanie wspólnych trójznaków przez sortowanie - koszt zależy od liczby kandydatów, nie od katalogu.
+        IntList all = new IntList();
+        for (String g : grams) all.addAll(trigrams.getOrDefault(g, EMPTY));
+        int[] candidates = all.toArray();
+        Arrays.sort(candidates);
+
+        // Każda edycja psuje najwyżej 3 trójznaki słowa.
+        int minShared = Math.max(1, grams.size() - 3 * maxDistance);
+        IntList matched = new IntList();
+        for (int i = 0; i < candidates.length; ) {
+            int t = candidates[i];
+            int j = i;
+            while (j < candidates.length && candidates[j] == t) j++;
+            if (j - i >= minShared
+                    && Math.abs(terms[t].length() - token.length()) <= maxDistance
+                    && editDistance(token, terms[t], maxDistance) <= maxDistance) {
+                matched.add(t);
+            }
+            i = j;
+        }
+        if (matched.size == 0) return EMPTY;
+        int[] termIds = matched.toArray();
+        return union(0, termIds.length, termIds);
+    }
+
+    private int[] union(int from, int to, int[] termIds) {
+        if (to - from == 1) return termPostings[termIds == null ? from : termIds[from]];
+        IntList all = new IntList();
+        for (int i = from; i < to; i++) all.addAll(termPostings[termIds == null ? i : termIds[i]]);
+        int[] result = all.toArray();
+        Arrays.sort(result);
+        int n = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (n == 0 || result[n - 1] != result[i]) result[n++] = result[i];
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    private int lowerBound(String token) {
+        int lo = 0, hi = terms.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms[mid].compareTo(token) < 0) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        if (a == null) return b;
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { result[n++] = a[i]; i++; j++; }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /** Odległość Levenshteina z przerwaniem po przekroczeniu {@code limit}. */
+    private static int editDistance(String a, String b, int limit) {
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) prev[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > limit) return limit + 1;
+            int[] tmp = prev; prev = cur; cur = tmp;
+        }
+        return prev[b.length()];
+    }
+
+    private static List<String> trigramsOf(String term) {
+        String padded = "$" + term + "$";
+        List<String> grams = new ArrayList<>(padded.length());
+        for (int i = 0; i + 3 <= padded.length(); i++) grams.add(padded.substring(i, i + 3));
+        return grams;
+    }
+
+    /**
+     * Sprowadza tekst do małych liter bez znaków diakrytycznych (również "ł" -> "l").
+     *
+     * @param text Tekst wejściowy.
+     * @return Tekst znormalizowany.
+     */
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            sb.append(c == 'ł' ? 'l' : c);
+        }
+        return sb.toString();
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        String normalized = normalize(text);
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean word = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (word && start < 0) start = i;
+            if (!word && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static <K> Map<K, int[]> freeze(Map<K, IntList> lists) {
+        Map<K, int[]> result = new HashMap<>(lists.size() * 2);
+        lists.forEach((k, v) -> result.put(k, v.toArray()));
+        return result;
+    }
+
+    /** Rosnąca lista liczb bez opakowywania w {@code Integer}. */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        void addAll(int[] more) {
+            if (size + more.length > values.length) values = Arrays.copyOf(values, Math.max(size * 2, size + more.length));
+            System.arraycopy(more, 0, values, size, more.length);
+            size += more.length;
+        }
+
+        int last() {
+            return values[size - 1];
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
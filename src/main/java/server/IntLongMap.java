@@ -0,0 +1,135 @@
+package server;
+
+import java.util.PriorityQueue;
+
+/**
+ * Mapa z kluczami {@code int} i wartościami {@code long} (adresowanie otwarte, sondowanie liniowe).
+ * <p>
+ * Służy do sumowania liczników i kwot podczas odczytu raportów z bazy: nie tworzy obiektu
+ * na każdy wpis ani na każdą aktualizację, więc zajmuje kilkanaście bajtów na klucz
+ * (zamiast kilkudziesięciu w {@code HashMap<Integer, Long>}), a pamięć zależy tylko od liczby
+ * różnych kluczy (np. filmów lub klientów), nie od liczby odczytanych wierszy.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+final class IntLongMap {
+
+    /** Odwiedzający wpisy mapy. */
+    @FunctionalInterface
+    interface Visitor {
+        /**
+         * @param key   Klucz.
+         * @param value Wartość.
+         */
+        void visit(int key, long value);
+    }
+
+    private int[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size;
+
+    /**
+     * @param expected Spodziewana liczba kluczy.
+     */
+    IntLongMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+    }
+
+    /**
+     * Dodaje {@code delta} do wartości klucza (brakujący klucz ma wartość 0).
+     *
+     * @param key   Klucz.
+     * @param delta Przyrost.
+     */
+    void add(int key, long delta) {
+        int slot = slot(key);
+        if (!used[slot]) {
+            used[slot] = true;
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                values[slot] = delta;
+                grow();
+                return;
+            }
+        }
+        values[slot] += delta;
+    }
+
+    /**
+     * @param key Klucz.
+     * @return Wartość klucza lub 0, jeśli go nie ma.
+     */
+    long get(int key) {
+        int slot = slot(key);
+        return used[slot] ? values[slot] : 0;
+    }
+
+    /**
+     * @return Liczba kluczy.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Przekazuje wszystkie wpisy (w nieokreślonej kolejności).
+     *
+     * @param visitor Odwiedzający.
+     */
+    void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) if (used[i]) visitor.visit(keys[i], values[i]);
+    }
+
+    /**
+     * Zwraca klucze o największych wartościach (przy równych wartościach - mniejszy klucz wcześniej).
+     * Wybór odbywa się kopcem o rozmiarze {@code n}, bez sortowania całej mapy.
+     *
+     * @param n Maksymalna liczba kluczy.
+     * @return Klucze uporządkowane malejąco według wartości.
+     */
+    int[] top(int n) {
+        if (n <= 0) return new int[0];
+        // Na szczycie kopca jest najsłabszy z dotychczasowych kandydatów.
+        PriorityQueue<Integer> heap = new PriorityQueue<>(n + 1, (a, b) -> {
+            int cmp = Long.compare(get(a), get(b));
+            return cmp != 0 ? cmp : Integer.compare(b, a);
+        });
+        forEach((key, value) -> {
+            heap.add(key);
+            if (heap.size() > n) heap.poll();
+        });
+        int[] result = new int[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--) result[i] = heap.poll();
+        return result;
+    }
+
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int h = key * 0x9E3779B9;
+        int slot = (h ^ h >>> 16) & mask;
+        while (used[slot] && keys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new int[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (!oldUsed[i]) continue;
+            int slot = slot(oldKeys[i]);
+            used[slot] = true;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram czasów odpowiedzi z przedziałami o rosnącej logarytmicznie szerokości.
+ * <p>
+ * Każda potęga dwójki (w nanosekundach) jest dzielona na {@value #SUB_BUCKETS} równe przedziały,
+ * więc błąd odczytanego percentyla nie przekracza ok. 25%, a cały zakres od 1 ns do
+ * {@link Long#MAX_VALUE} mieści się w 256 licznikach. Zapis to kilka operacji bitowych i jedno
+ * atomowe zwiększenie licznika - bez blokad i bez alokacji, więc histogram można aktualizować
+ * z wielu wątków na gorącej ścieżce.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class LatencyHistogram {
+
+    /** Liczba przedziałów na jedną potęgę dwójki. */
+    private static final int SUB_BUCKETS = 4;
+    private static final int SUB_BITS = 2;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Zapisuje pomiar.
+     *
+     * @param nanos Czas w nanosekundach (wartości ujemne są traktowane jak 0).
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        count.increment();
+        sum.add(nanos);
+        long m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) m = max.get();
+    }
+
+    /**
+     * Zapisuje czas, jaki upłynął od podanej chwili.
+     *
+     * @param startNanos Chwila początkowa z {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return Liczba pomiarów.
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return Suma wszystkich pomiarów w nanosekundach.
+     */
+    public long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return Największy pomiar w nanosekundach.
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return Średnia w nanosekundach (0 przy braku pomiarów).
+     */
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0.0 : sum() / (double) n;
+    }
+
+    /**
+     * Zwraca przybliżony percentyl - górną granicę przedziału, w którym leży szukany pomiar
+     * (nie większą niż maksimum).
+     *
+     * @param quantile Kwantyl z zakresu 0..1 (np. 0.99).
+     * @return Wartość w nanosekundach (0 przy braku pomiarów).
+     */
+    public long percentile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(upperBound(i), max());
+        }
+        return max();
+    }
+
+    /**
+     * Dodaje pomiary innego histogramu (np. przy łączeniu wyników wielu wątków).
+     *
+     * @param other Histogram źródłowy.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) counts.addAndGet(i, c);
+        }
+        count.add(other.count());
+        sum.add(other.sum());
+        long m = max.get();
+        long om = other.max();
+        while (om > m && !max.compareAndSet(m, om)) m = max.get();
+    }
+
+    /**
+     * Zeruje histogram. Pomiary zapisywane równolegle mogą zostać częściowo zachowane.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exp = bucket / SUB_BUCKETS - 1 + SUB_BITS;
+        long sub = bucket % SUB_BUCKETS;
+        long lower = (1L << exp) + (sub << (exp - SUB_BITS));
+        long width = 1L << (exp - SUB_BITS);
+        long upper = lower + width - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
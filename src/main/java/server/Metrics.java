@@ -0,0 +1,199 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rejestr metryk serwera.
+ * <p>
+ * Przechowuje histogramy czasów ({@link LatencyHistogram}) w trzech grupach:
+ * </p>
+ * <ul>
+ * <li>{@code command} - czas wykonania komendy protokołu (LOGIN, GET_FILMS, RENT, PAY, ...),</li>
+ * <li>{@code repository} - czas, przez jaki metoda repozytorium trzyma połączenie z bazą,</li>
+ * <li>{@code pool} - czas uzyskania połączenia z puli.</li>
+ * </ul>
+ * <p>
+ * oraz liczniki błędów komend. Wszystkie struktury są bez blokad ({@link LongAdder},
+ * liczniki atomowe), a histogram danej nazwy tworzony jest raz - kolejne zapisy to jedno
+ * wyszukanie w {@link ConcurrentHashMap}. Metryki udostępnia komenda ADMIN_STATS
+ * ({@link #report()}) oraz punkt HTTP w formacie Prometheus ({@link #prometheus()}, {@link MetricsHttpServer}).
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class Metrics {
+
+    /** Nazwa histogramu czasu uzyskania połączenia z puli. */
+    static final String POOL_ACQUIRE = "acquire";
+
+    private static final ConcurrentMap<String, LatencyHistogram> COMMANDS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LatencyHistogram> REPOSITORY = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LatencyHistogram> POOL = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongAdder> ERRORS = new ConcurrentHashMap<>();
+
+    /**
+     * Prywatny konstruktor zapobiegający instancjalizacji klasy narzędziowej.
+     */
+    private Metrics() {
+        throw new IllegalStateException("Klasa narzędziowa - nie należy tworzyć instancji.");
+    }
+
+    /**
+     * @param name Nazwa komendy (np. {@code RENT}).
+     * @return Histogram czasów wykonania komendy.
+     */
+    public static LatencyHistogram command(String name) {
+        return histogram(COMMANDS, name);
+    }
+
+    /**
+     * @param name Nazwa metody repozytorium (np. {@code TransactionRepository.rentFilm}).
+     * @return Histogram czasów metody.
+     */
+    public static LatencyHistogram repository(String name) {
+        return histogram(REPOSITORY, name);
+    }
+
+    /**
+     * @return Histogram czasów uzyskania połączenia z puli.
+     */
+    public static LatencyHistogram poolAcquire() {
+        return histogram(POOL, POOL_ACQUIRE);
+    }
+
+    /**
+     * Zlicza komendę zakończoną odpowiedzią {@code ERROR}.
+     *
+     * @param command Nazwa komendy.
+     */
+    public static void commandError(String command) {
+        LongAdder a = ERRORS.get(command);
+        if (a == null) a = ERRORS.computeIfAbsent(command, k -> new LongAdder());
+        a.increment();
+    }
+
+    private static LatencyHistogram histogram(ConcurrentMap<String, LatencyHistogram> group, String name) {
+        LatencyHistogram h = group.get(name);
+        return h != null ? h : group.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Zwraca metryki w postaci czytelnych linii (dla komendy ADMIN_STATS).
+     * Czasy podane są w milisekundach.
+     *
+     * @return Linie raportu, np. {@code command;RENT;count=12;errors=0;p50=1.2;p90=3.4;p99=8.1;max=9.0;mean=1.9}.
+     */
+    public static List<String> report() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(COMMANDS).entrySet()) {
+            LongAdder errors = ERRORS.get(e.getKey());
+            lines.add("command;" + e.getKey() + ";" + summary(e.getValue())
+                    + ";errors=" + (errors == null ? 0 : errors.sum()));
+        }
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(REPOSITORY).entrySet()) {
+            lines.add("repository;" + e.getKey() + ";" + summary(e.getValue()));
+        }
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(POOL).entrySet()) {
+            lines.add("pool;" + e.getKey() + ";" + summary(e.getValue()));
+        }
+        lines.add("pool;stats;" + Database.getPoolStats());
+        lines.add("sessions;active;" + SessionStore.shared().size());
+        return lines;
+    }
+
+    private static String summary(LatencyHistogram h) {
+        return String.format(Locale.US, "count=%d;p50=%.3f;p90=%.3f;p99=%.3f;max=%.3f;mean=%.3f",
+                h.count(), millis(h.percentile(0.50)), millis(h.percentile(0.90)),
+                millis(h.percentile(0.99)), millis(h.max()), h.mean() / 1_000_000.0);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * Zwraca metryki w formacie tekstowym Prometheus (histogramy jako {@code summary}, czasy w sekundach).
+     *
+     * @return Treść odpowiedzi dla {@code /metrics}.
+     */
+    public static String prometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        summaryFamily(sb, "dvd_command_duration_seconds", "Czas wykonania komendy", "command", COMMANDS);
+        summaryFamily(sb, "dvd_repository_duration_seconds", "Czas metody repozytorium", "method", REPOSITORY);
+        summaryFamily(sb, "dvd_pool_acquire_duration_seconds", "Czas uzyskania polaczenia z puli", null, POOL);
+
+        sb.append("# HELP dvd_command_errors_total Liczba komend zakonczonych bledem\n");
+        sb.append("# TYPE dvd_command_errors_total counter\n");
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(ERRORS).entrySet()) {
+            sb.append("dvd_command_errors_total{command=\"").append(escape(e.getKey())).append("\"} ")
+                    .append(e.getValue().sum()).append('\n');
+        }
+
+        ConnectionPool.Stats pool = Database.getPoolStats();
+        gauge(sb, "dvd_pool_active_connections", pool.active());
+        gauge(sb, "dvd_pool_idle_connections", pool.idle());
+        gauge(sb, "dvd_pool_waiters", pool.waiters());
+        counter(sb, "dvd_pool_timeouts_total", pool.timeouts());
+        counter(sb, "dvd_pool_statement_cache_hits_total", pool.statementHits());
+        counter(sb, "dvd_pool_statement_cache_misses_total", pool.statementMisses());
+        gauge(sb, "dvd_sessions_active", SessionStore.shared().size());
+        return sb.toString();
+    }
+
+    private static void summaryFamily(StringBuilder sb, String name, String help, String label,
+                                      Map<String, LatencyHistogram> group) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" summary\n");
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(group).entrySet()) {
+            LatencyHistogram h = e.getValue();
+            String labels = label == null ? "" : label + "=\"" + escape(e.getKey()) + "\"";
+            for (double q : new double[]{0.5, 0.9, 0.99}) {
+                sb.append(name).append('{').append(labels).append(labels.isEmpty() ? "" : ",")
+                        .append("quantile=\"").append(q).append("\"} ")
+                        .append(seconds(h.percentile(q))).append('\n');
+            }
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            sb.append(name).append("_sum").append(suffix).append(' ').append(seconds(h.sum())).append('\n');
+            sb.append(name).append("_count").append(suffix).append(' ').append(h.count()).append('\n');
+        }
+        sb.append("# TYPE ").append(name).append("_max gauge\n");
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(group).entrySet()) {
+            String suffix = label == null ? "" : "{" + label + "=\"" + escape(e.getKey()) + "\"}";
+            sb.append(name).append("_max").append(suffix).append(' ').append(seconds(e.getValue().max())).append('\n');
+        }
+    }
+
+    private static void gauge(StringBuilder sb, String name, long value) {
+        sb.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, String name, long value) {
+        sb.append("# TYPE ").append(name).append(" counter\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.US, "%.9f", nanos / 1_000_000_000.0);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Zeruje wszystkie metryki (np. między testami).
+     */
+    static void reset() {
+        COMMANDS.clear();
+        REPOSITORY.clear();
+        POOL.clear();
+        ERRORS.clear();
+    }
+}
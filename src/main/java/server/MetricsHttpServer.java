@@ -0,0 +1,101 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Mały wbudowany serwer HTTP udostępniający metryki ({@link Metrics#prometheus()})
+ * pod adresem {@code /metrics} w formacie tekstowym Prometheus.
+ * <p>
+ * Uruchamiany przez {@link ServerApp}, gdy ustawiono {@code -Dmetrics.port=<port>}.
+ * Obsługę zapytań wykonuje jeden wątek demona, więc odpytywanie nie zabiera wątków obsługi klientów.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class MetricsHttpServer implements AutoCloseable {
+
+    /** Logger log4j do rejestrowania zdarzeń serwera metryk. */
+    private static final Logger logger = LogManager.getLogger(MetricsHttpServer.class);
+
+    /** Typ treści odpowiedzi w formacie tekstowym Prometheus. */
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "metrics-http");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Otwiera port i zaczyna obsługiwać zapytania.
+     *
+     * @param port Port HTTP (0 - dowolny wolny).
+     * @throws IOException Jeśli nie udało się otworzyć portu.
+     */
+    public MetricsHttpServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Metryki Prometheus dostępne pod http://localhost:" + port() + "/metrics");
+    }
+
+    /**
+     * Uruchamia serwer metryk, jeśli ustawiono {@code -Dmetrics.port}.
+     *
+     * @return Uruchomiony serwer lub {@code null}.
+     */
+    public static MetricsHttpServer startIfEnabled() {
+        Integer port = Integer.getInteger("metrics.port");
+        if (port == null) return null;
+        try {
+            return new MetricsHttpServer(port);
+        } catch (IOException e) {
+            logger.error("Nie można uruchomić serwera metryk na porcie " + port, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return Port, na którym nasłuchuje serwer.
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = Metrics.prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Zatrzymuje serwer metryk.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
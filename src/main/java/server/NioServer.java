@@ -0,0 +1,437 @@
+package server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Nieblokujący transport protokołu tekstowego oparty na kanałach {@code java.nio}.
+ * <p>
+ * Jeden wątek pętli zdarzeń ({@link Selector}) obsługuje wszystkie połączenia: akceptuje je,
+ * czyta dane, dzieli je na linie (także gdy linia przychodzi w kilku kawałkach) i zapisuje
+ * odpowiedzi (także częściowo, gdy bufor gniazda jest pełny). Zdekodowane komendy wykonuje
+ * niewielka pula wątków roboczych przez {@link CommandProcessor}, czyli przez te same
+ * repozytoria co transport blokujący.
+ * </p>
+ * <ul>
+ * <li>Komendy jednego połączenia wykonywane są po kolei (odpowiedzi zachowują kolejność).
+ * Gdy klient wysłał kilka komend naraz, odpowiedzi są zbierane i wysyłane jednym zapisem
+ * zbiorczym ({@code write(ByteBuffer[])}) po wykonaniu całej paczki.</li>
+ * <li>Bezczynne połączenie nie zajmuje wątku ani własnego bufora odczytu.</li>
+ * <li>Jeśli klient nie odbiera odpowiedzi i zaległe dane przekroczą próg {@code highWatermark},
+ * serwer przestaje czytać i wykonywać jego komendy, aż zaległość spadnie poniżej {@code lowWatermark}.</li>
+ * </ul>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public class NioServer implements AutoCloseable {
+
+    /** Logger log4j do rejestrowania zdarzeń transportu NIO. */
+    private static final Logger logger = LogManager.getLogger(NioServer.class);
+
+    /** Maksymalna długość pojedynczej linii komendy (w bajtach). */
+    private static final int MAX_LINE = 64 * 1024;
+    /** Maksymalna liczba komend oczekujących w kolejce jednego połączenia. */
+    private static final int MAX_QUEUED_COMMANDS = 1024;
+    /** Ilość zebranych odpowiedzi, po której zapis następuje mimo dalszych komend w paczce. */
+    private static final int COALESCE_LIMIT = 64 * 1024;
+
+    private final InetSocketAddress address;
+    private final int maxConnections;
+    private final long highWatermark;
+    private final long lowWatermark;
+    private final ExecutorService workers;
+    /** Kodowanie zgodne z transportem blokującym (domyślne kodowanie platformy). */
+    private final Charset charset = Charset.defaultCharset();
+
+    /** Wspólny bufor odczytu pętli zdarzeń - połączenia nie mają własnych buforów. */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final byte[] scratch = new byte[64 * 1024];
+    /** Zadania zlecone pętli zdarzeń przez wątki robocze (zakończone komendy). */
+    private final Queue<Runnable> loopTasks = new ConcurrentLinkedQueue<>();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread loopThread;
+    private volatile boolean running;
+    private int connections;
+
+    /**
+     * Tworzy serwer z domyślnymi progami przeciwciśnienia (256 KB / 64 KB).
+     *
+     * @param address        Adres nasłuchu (port 0 - dowolny wolny port).
+     * @param workerThreads  Liczba wątków wykonujących komendy.
+     * @param maxConnections Maksymalna liczba jednoczesnych połączeń.
+     */
+    public NioServer(InetSocketAddress address, int workerThreads, int maxConnections) {
+        this(address, workerThreads, maxConnections, 256 * 1024, 64 * 1024);
+    }
+
+    /**
+     * Tworzy serwer z własnymi progami przeciwciśnienia.
+     *
+     * @param address        Adres nasłuchu.
+     * @param workerThreads  Liczba wątków wykonujących komendy.
+     * @param maxConnections Maksymalna liczba jednoczesnych połączeń.
+     * @param highWatermark  Liczba zaległych bajtów, powyżej której połączenie jest wstrzymywane.
+     * @param lowWatermark   Liczba zaległych bajtów, poniżej której połączenie jest wznawiane.
+     */
+    public NioServer(InetSocketAddress address, int workerThreads, int maxConnections,
+                     long highWatermark, long lowWatermark) {
+        this.address = address;
+        this.maxConnections = maxConnections;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "nio-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Otwiera gniazdo nasłuchujące i uruchamia wątek pętli zdarzeń.
+     *
+     * @throws IOException Jeśli nie udało się otworzyć portu.
+     */
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        loopThread = new Thread(this::runLoop, "nio-selector");
+        loopThread.start();
+        logger.info("Transport NIO nasłuchuje na porcie " + getPort());
+    }
+
+    /**
+     * @return Port, na którym serwer faktycznie nasłuchuje.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Czeka na zakończenie pętli zdarzeń.
+     *
+     * @throws InterruptedException Jeśli wątek został przerwany.
+     */
+    public void awaitTermination() throws InterruptedException {
+        loopThread.join();
+    }
+
+    /**
+     * Zatrzymuje pętlę zdarzeń, zamyka wszystkie połączenia i pulę wątków roboczych.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (selector != null) selector.wakeup();
+        try {
+            if (loopThread != null) loopThread.join(2_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+    }
+
+    private void runLoop() {
+        try {
+            while (running) {
+                selector.select();
+                Runnable task;
+                while ((task = loopTasks.poll()) != null) task.run();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        if (key.isReadable()) read(key);
+                        if (key.isValid() && key.isWritable()) write(key);
+                    } catch (IOException e) {
+                        closeSession(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Błąd pętli zdarzeń NIO", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) closeQuietly(key);
+            try { selector.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = serverChannel.accept()) != null) {
+            if (connections >= maxConnections) {
+                logger.warn("Odrzucono połączenie " + ch.getRemoteAddress() + " (limit sesji)");
+                try (SocketChannel rejected = ch) {
+                    rejected.write(charset.encode(ServerApp.BUSY_RESPONSE + "\n"));
+                } catch (IOException ignored) {}
+                continue;
+            }
+            ch.configureBlocking(false);
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Session session = new Session(ch);
+            session.key = ch.register(selector, SelectionKey.OP_READ, session);
+            connections++;
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Session s = (Session) key.attachment();
+        readBuffer.clear();
+        int n = s.channel.read(readBuffer);
+        if (n < 0) {
+            s.eof = true;
+            updateInterest(s);
+            closeIfDrained(s);
+            return;
+        }
+        readBuffer.flip();
+        readBuffer.get(scratch, 0, n);
+
+        int lineStart = 0;
+        for (int i = 0; i < n; i++) {
+            if (scratch[i] != '\n') continue;
+            s.pending.add(decodeLine(s, scratch, lineStart, i));
+            lineStart = i + 1;
+        }
+        if (lineStart < n) s.appendPartial(scratch, lineStart, n - lineStart);
+        if (s.partialLen > MAX_LINE) throw new IOException("Zbyt długa linia komendy");
+
+        dispatchNext(s);
+        updateInterest(s);
+    }
+
+    /** Składa linię z ewentualnego fragmentu z poprzednich odczytów i bieżących bajtów. */
+    private String decodeLine(Session s, byte[] buf, int from, int to) {
+        byte[] src = buf;
+        int off = from;
+        int len = to - from;
+        if (s.partialLen > 0) {
+            s.appendPartial(buf, from, len);
+            src = s.partial;
+            off = 0;
+            len = s.partialLen;
+            s.clearPartial();
+        }
+        if (len > 0 && src[off + len - 1] == '\r') len--;
+        return new String(src, off, len, charset);
+    }
+
+    private void dispatchNext(Session s) {
+        if (s.busy || s.closed || s.pending.isEmpty() || s.pendingBytes > highWatermark) return;
+        String request = s.pending.poll();
+        s.busy = true;
+        workers.execute(() -> execute(s, request));
+    }
+
+    /** Wykonywane w wątku roboczym: uruchamia komendę i przekazuje odpowiedź do pętli zdarzeń. */
+    private void execute(Session s, String request) {
+        BufferingWriter writer = new BufferingWriter();
+        long start = System.nanoTime();
+        try {
+            s.processor.process(request, writer);
+        } catch (Exception e) {
+            logger.error("Błąd przetwarzania komendy NIO", e);
+            writer.line("ERROR");
+        }
+        s.processor.recordAccess(AccessLog.shared(), s.remote, request, start);
+        List<ByteBuffer> response = writer.finish();
+        loopTasks.add(() -> completed(s, response));
+        selector.wakeup();
+    }
+
+    private void completed(Session s, List<ByteBuffer> response) {
+        s.busy = false;
+        if (s.closed) return;
+        for (ByteBuffer part : response) {
+            s.output.add(part);
+            s.pendingBytes += part.remaining();
+        }
+        try {
+            // Kolejne komendy z paczki czekają - odpowiedź zostanie wysłana razem z następnymi.
+            if (s.pending.isEmpty() || s.pendingBytes >= COALESCE_LIMIT) flush(s);
+        } catch (IOException e) {
+            closeSession(s.key);
+            return;
+        }
+        dispatchNext(s);
+        updateInterest(s);
+        closeIfDrained(s);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Session s = (Session) key.attachment();
+        flush(s);
+        dispatchNext(s);
+        updateInterest(s);
+        closeIfDrained(s);
+    }
+
+    /** Wysyła zaległe odpowiedzi jednym zapisem zbiorczym; niewysłana reszta czeka na OP_WRITE. */
+    private void flush(Session s) throws IOException {
+        while (!s.output.isEmpty()) {
+            ByteBuffer[] batch = s.output.toArray(new ByteBuffer[0]);
+            long written = s.channel.write(batch);
+            s.pendingBytes -= written;
+            while (!s.output.isEmpty() && !s.output.peek().hasRemaining()) s.output.poll();
+            if (written == 0 || !s.output.isEmpty()) return;
+        }
+    }
+
+    /** Ustawia zainteresowania klucza z uwzględnieniem przeciwciśnienia (histereza high/low). */
+    private void updateInterest(Session s) {
+        if (s.closed || !s.key.isValid()) return;
+        long threshold = s.readPaused ? lowWatermark : highWatermark;
+        s.readPaused = s.pendingBytes > threshold || s.pending.size() >= MAX_QUEUED_COMMANDS;
+
+        int ops = 0;
+        // W trakcie wykonywania paczki komend odpowiedzi czekają na jeden wspólny zapis.
+        if (!s.output.isEmpty() && (!s.busy || s.pendingBytes >= COALESCE_LIMIT)) ops |= SelectionKey.OP_WRITE;
+        if (!s.readPaused && !s.eof) ops |= SelectionKey.OP_READ;
+        s.key.interestOps(ops);
+    }
+
+    private void closeIfDrained(Session s) {
+        if (s.eof && !s.busy && s.pending.isEmpty() && s.output.isEmpty()) closeSession(s.key);
+    }
+
+    private void closeSession(SelectionKey key) {
+        Session s = (Session) key.attachment();
+        if (s == null || s.closed) return;
+        s.closed = true;
+        connections--;
+        s.processor.connectionClosed();
+        closeQuietly(key);
+    }
+
+    private void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try { key.channel().close(); } catch (IOException ignored) {}
+    }
+
+    /**
+     * Odbiorca odpowiedzi zbierający je w bufory do wysłania przez pętlę zdarzeń.
+     * Gotowe odpowiedzi ({@link #preEncoded(ByteBuffer[])}, np. GET_FILMS) są dołączane
+     * bez kopiowania - trafiają wprost do zapisu zbiorczego kanału.
+     */
+    private final class BufferingWriter implements ResponseWriter {
+        private final List<ByteBuffer> parts = new ArrayList<>(2);
+        private final ByteArrayOutputStream text = new ByteArrayOutputStream(256);
+        private final PrintWriter pw = new PrintWriter(new OutputStreamWriter(text, charset));
+        private final TextResponseWriter lines = new TextResponseWriter(pw);
+
+        @Override
+        public void line(String line) {
+            lines.line(line);
+        }
+
+        @Override
+        public void row(String row) {
+            lines.row(row);
+        }
+
+        @Override
+        public void end() {
+            lines.end();
+        }
+
+        @Override
+        public boolean supportsPreEncoded() {
+            return true;
+        }
+
+        @Override
+        public void preEncoded(ByteBuffer[] buffers) {
+            seal();
+            parts.addAll(Arrays.asList(buffers));
+        }
+
+        private List<ByteBuffer> finish() {
+            seal();
+            return parts;
+        }
+
+        private void seal() {
+            pw.flush();
+            if (text.size() == 0) return;
+            parts.add(ByteBuffer.wrap(text.toByteArray()));
+            text.reset();
+        }
+    }
+
+    /**
+     * Stan pojedynczego połączenia. Modyfikowany wyłącznie w wątku pętli zdarzeń.
+     */
+    private static final class Session {
+        private final SocketChannel channel;
+        /** Adres klienta do dziennika dostępu. */
+        private final String remote;
+        private final CommandProcessor processor = new CommandProcessor();
+        private final ArrayDeque<String> pending = new ArrayDeque<>();
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        private SelectionKey key;
+        /** Niedokończona linia z poprzednich odczytów (null, gdy brak). */
+        private byte[] partial;
+        private int partialLen;
+        private long pendingBytes;
+        private boolean busy;
+        private boolean readPaused;
+        private boolean eof;
+        private boolean closed;
+
+        private Session(SocketChannel channel) {
+            this.channel = channel;
+            this.remote = String.valueOf(channel.socket().getRemoteSocketAddress());
+        }
+
+        private void appendPartial(byte[] src, int off, int len) {
+            if (partial == null) partial = new byte[Math.max(256, len)];
+            if (partialLen + len > partial.length) {
+                partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLen + len));
+            }
+            System.arraycopy(src, off, partial, partialLen, len);
+            partialLen += len;
+        }
+
+        private void clearPartial() {
+            partial = null;
+            partialLen = 0;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Etap grupowego zatwierdzania wypożyczeń (group commit).
+ * <p>
+ * Przy dużym ruchu każde wypożyczenie we własnej transakcji oznacza osobne zatwierdzenie
+ * (i zapis dziennika) w bazie. Ta klasa zbiera żądania RENT napływające w krótkim oknie
+ * ({@code rent.batchWindowMs}, domyślnie 2 ms) lub do osiągnięcia rozmiaru partii
+ * ({@code rent.batchSize}, domyślnie 64) i zapisuje je jedną transakcją
+ * ({@link TransactionRepository#rentFilmsInOneTransaction(int[], int[])}). Każdy wywołujący
+ * dostaje własny wynik przez {@link CompletableFuture}.
+ * </p>
+ * <p>
+ * Jeśli transakcja partii się nie powiedzie (np. jedno żądanie narusza klucz obcy),
+ * żądania partii są wykonywane pojedynczo, aby błąd jednego nie odrzucał pozostałych.
+ * Włączane przez {@code -Drent.groupCommit=true}.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class RentGroupCommitter implements AutoCloseable {
+
+    /** Logger log4j do rejestrowania błędów partii. */
+    private static final Logger logger = LogManager.getLogger(RentGroupCommitter.class);
+
+    /** Czy wypożyczenia mają przechodzić przez grupowe zatwierdzanie. */
+    static final boolean ENABLED = Boolean.getBoolean("rent.groupCommit");
+
+    private static volatile RentGroupCommitter shared;
+
+    private final TransactionRepository repository;
+    private final int batchSize;
+    private final long windowNanos;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * Tworzy etap i uruchamia wątek zatwierdzający.
+     *
+     * @param repository Repozytorium wykonujące transakcje partii.
+     * @param batchSize  Maksymalna liczba wypożyczeń w jednej transakcji.
+     * @param windowMs   Jak długo (ms) czekać na kolejne żądania po pierwszym w partii.
+     */
+    public RentGroupCommitter(TransactionRepository repository, int batchSize, long windowMs) {
+        this.repository = repository;
+        this.batchSize = Math.max(1, batchSize);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.worker = new Thread(this::runLoop, "rent-group-commit");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * @return Wspólna instancja tworzona przy pierwszym użyciu.
+     */
+    static RentGroupCommitter shared() {
+        RentGroupCommitter c = shared;
+        if (c == null) {
+            synchronized (RentGroupCommitter.class) {
+                if (shared == null) {
+                    shared = new RentGroupCommitter(new TransactionRepository(),
+                            Integer.getInteger("rent.batchSize", 64), Long.getLong("rent.batchWindowMs", 2L));
+                }
+                c = shared;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Dodaje wypożyczenie do najbliższej partii.
+     *
+     * @param userId ID użytkownika.
+     * @param filmId ID filmu.
+     * @return Przyszły komunikat dla klienta (jak z {@link TransactionRepository#rentFilm(int, int)}).
+     */
+    public CompletableFuture<String> submit(int userId, int filmId) {
+        Request r = new Request(userId, filmId);
+        if (!running) {
+            r.result.complete("Błąd bazy danych");
+            return r.result;
+        }
+        queue.add(r);
+        return r.result;
+    }
+
+    /**
+     * Wypożycza film w ramach partii i czeka na wynik.
+     *
+     * @param userId ID użytkownika.
+     * @param filmId ID filmu.
+     * @return Komunikat dla klienta.
+     */
+    public String rent(int userId, int filmId) {
+        try {
+            return submit(userId, filmId).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Błąd bazy danych";
+        } catch (Exception e) {
+            logger.error("Błąd grupowego wypożyczenia", e);
+            return "Błąd bazy danych";
+        }
+    }
+
+    private void runLoop() {
+        List<Request> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) continue;
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) break;
+                    Request next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                for (Request r : batch) r.result.complete("Błąd bazy danych");
+                break;
+            } catch (RuntimeException e) {
+                logger.error("Nieoczekiwany błąd partii wypożyczeń", e);
+                for (Request r : batch) r.result.complete("Błąd bazy danych");
+            } finally {
+                batch.clear();
+            }
+        }
+        for (Request r; (r = queue.poll()) != null; ) r.result.complete("Błąd bazy danych");
+    }
+
+    private void commit(List<Request> batch) {
+        int[] userIds = new int[batch.size()];
+        int[] filmIds = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            userIds[i] = batch.get(i).userId;
+            filmIds[i] = batch.get(i).filmId;
+        }
+        try {
+            String[] results = repository.rentFilmsInOneTransaction(userIds, filmIds);
+            for (int i = 0; i < results.length; i++) batch.get(i).result.complete(results[i]);
+        } catch (SQLException e) {
+            logger.warn("Partia " + batch.size() + " wypożyczeń odrzucona, wykonuję pojedynczo", e);
+            for (Request r : batch) r.result.complete(repository.rentFilmInTransaction(r.userId, r.filmId));
+        }
+    }
+
+    /**
+     * Zatrzymuje wątek zatwierdzający; oczekujące żądania kończą się błędem.
+     */
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private static final class Request {
+        private final int userId;
+        private final int filmId;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        private Request(int userId, int filmId) {
+            this.userId = userId;
+            this.filmId = filmId;
+        }
+    }
+}
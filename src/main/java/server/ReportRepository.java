@@ -0,0 +1,204 @@
+package server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repozytorium raportów administratora (komenda ADMIN_REPORT) liczonych z historii
+ * rachunków i wypożyczeń.
+ * <p>
+ * Wszystkie raporty czytają tabele kursorem tylko-do-przodu z porcją pobierania
+ * {@link Database#streamingFetchSize()} (w MySQL wiersz po wierszu), więc historia nigdy
+ * nie jest wczytywana w całości. Sumy liczone są na bieżąco w mapach o kluczach prostych
+ * ({@link IntLongMap}), których rozmiar zależy od liczby filmów lub klientów, a nie od
+ * długości historii. Przychód dzienny czytany jest w kolejności dat, więc każdy dzień
+ * jest wysyłany, gdy tylko się zamknie. Wypożyczenia obejmują też archiwum
+ * ({@link TransactionArchiver}).
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public class ReportRepository {
+
+    /** Logger do rejestrowania czasu wykonania raportów. */
+    private static final Logger logger = LogManager.getLogger(ReportRepository.class);
+
+    /**
+     * Domyślny konstruktor klasy.
+     */
+    public ReportRepository() {
+    }
+
+    /**
+     * Przychód z rachunków w podziale na dni, od najstarszego dnia.
+     *
+     * @param sink Odbiorca wierszy {@code "RRRR-MM-DD | kwota zł | rachunków: N"}; na końcu wiersz sumy.
+     * @throws SQLException W przypadku błędu bazy danych.
+     * @throws IOException  W przypadku błędu wysyłania wiersza.
+     */
+    public void revenuePerDay(RowSink<String> sink) throws SQLException, IOException {
+        String sql = "SELECT dataWystawienia, lacznaKwota FROM Rachunek " +
+                "WHERE dataWystawienia IS NOT NULL ORDER BY dataWystawienia";
+        long start = System.nanoTime();
+        LocalDate day = null;
+        long dayGrosze = 0, totalGrosze = 0;
+        int dayCount = 0, totalCount = 0, days = 0;
+        try (Connection conn = connect("ReportRepository.revenuePerDay");
+             Statement stmt = streaming(conn);
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                LocalDate d = rs.getDate(1).toLocalDate();
+                long grosze = BillingEngine.toGrosze(rs.getDouble(2));
+                if (!d.equals(day)) {
+                    if (day != null) sink.accept(revenueRow(day.toString(), dayGrosze, dayCount));
+                    day = d;
+                    dayGrosze = 0;
+                    dayCount = 0;
+                    days++;
+                }
+                dayGrosze += grosze;
+                dayCount++;
+                totalGrosze += grosze;
+                totalCount++;
+            }
+        }
+        if (day != null) sink.accept(revenueRow(day.toString(), dayGrosze, dayCount));
+        sink.accept(revenueRow("Razem", totalGrosze, totalCount));
+        logger.info("Raport przychodu: {} dni, {} rachunków w {} ms", days, totalCount, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Liczba wypożyczeń w podziale na gatunki, od najpopularniejszego.
+     *
+     * @param sink Odbiorca wierszy {@code "Gatunek: N"}.
+     * @throws SQLException W przypadku błędu bazy danych.
+     * @throws IOException  W przypadku błędu wysyłania wiersza.
+     */
+    public void rentalsPerGenre(RowSink<String> sink) throws SQLException, IOException {
+        IntLongMap perFilm = rentalsPerFilm();
+        Map<String, long[]> perGenre = new HashMap<>();
+        List<Film> catalog = FilmCatalog.shared().films();
+        for (Film f : catalog) {
+            long count = perFilm.get(f.id());
+            if (count == 0) continue;
+            String genre = f.gatunek() == null || f.gatunek().isBlank() ? "(brak)" : f.gatunek();
+            perGenre.computeIfAbsent(genre, g -> new long[1])[0] += count;
+        }
+        List<Map.Entry<String, long[]>> sorted = new ArrayList<>(perGenre.entrySet());
+        sorted.sort((a, b) -> {
+            int cmp = Long.compare(b.getValue()[0], a.getValue()[0]);
+            return cmp != 0 ? cmp : a.getKey().compareTo(b.getKey());
+        });
+        for (Map.Entry<String, long[]> e : sorted) sink.accept(e.getKey() + ": " + e.getValue()[0]);
+    }
+
+    /**
+     * Najczęściej wypożyczane filmy.
+     *
+     * @param limit Maksymalna liczba filmów.
+     * @param sink  Odbiorca wierszy {@code "Miejsce. Tytuł (Rok) - wypożyczeń: N"}.
+     * @throws SQLException W przypadku błędu bazy danych.
+     * @throws IOException  W przypadku błędu wysyłania wiersza.
+     */
+    public void topFilms(int limit, RowSink<String> sink) throws SQLException, IOException {
+        IntLongMap perFilm = rentalsPerFilm();
+        int place = 0;
+        for (int filmId : perFilm.top(limit)) {
+            Film f = FilmCatalog.shared().find(filmId);
+            String title = f == null ? "Film " + filmId : f.tytul() + " (" + f.rok() + ")";
+            sink.accept(++place + ". " + title + " - wypożyczeń: " + perFilm.get(filmId));
+        }
+    }
+
+    /**
+     * Klienci, którzy zapłacili najwięcej (suma rachunków).
+     *
+     * @param limit Maksymalna liczba klientów.
+     * @param sink  Odbiorca wierszy {@code "Miejsce. login (ID n) - kwota zł"}.
+     * @throws SQLException W przypadku błędu bazy danych.
+     * @throws IOException  W przypadku błędu wysyłania wiersza.
+     */
+    public void topCustomers(int limit, RowSink<String> sink) throws SQLException, IOException {
+        IntLongMap perClient = new IntLongMap(1024);
+        int[] top;
+        Map<Integer, String> logins = new HashMap<>();
+        try (Connection conn = connect("ReportRepository.topCustomers")) {
+            try (Statement stmt = streaming(conn);
+                 ResultSet rs = stmt.executeQuery("SELECT klient_id, lacznaKwota FROM Rachunek")) {
+                while (rs.next()) perClient.add(rs.getInt(1), BillingEngine.toGrosze(rs.getDouble(2)));
+            }
+            top = perClient.top(limit);
+            if (top.length > 0) {
+                StringBuilder in = new StringBuilder();
+                for (int i = 0; i < top.length; i++) in.append(i == 0 ? "?" : ", ?");
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT id, username FROM Uzytkownik WHERE id IN (" + in + ")")) {
+                    for (int i = 0; i < top.length; i++) ps.setInt(i + 1, top[i]);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) logins.put(rs.getInt(1), rs.getString(2));
+                    }
+                }
+            }
+        }
+        int place = 0;
+        for (int clientId : top) {
+            sink.accept(++place + ". " + logins.getOrDefault(clientId, "?") + " (ID " + clientId + ") - "
+                    + BillingEngine.format(perClient.get(clientId)) + " zł");
+        }
+    }
+
+    /**
+     * Zlicza wypożyczenia każdego filmu w tabeli bieżącej i w archiwum.
+     *
+     * @return Mapa ID filmu - liczba wypożyczeń.
+     * @throws SQLException W przypadku błędu bazy danych.
+     */
+    IntLongMap rentalsPerFilm() throws SQLException {
+        IntLongMap perFilm = new IntLongMap(FilmCatalog.shared().films().size());
+        long start = System.nanoTime();
+        long rows = 0;
+        try (Connection conn = connect("ReportRepository.rentalsPerFilm")) {
+            // Tabele czytane po kolei - w MySQL na połączeniu może być otwarty tylko jeden kursor strumieniowy.
+            for (String table : new String[]{"Transakcja", "Transakcja_Archiwum"}) {
+                try (Statement stmt = streaming(conn);
+                     ResultSet rs = stmt.executeQuery("SELECT film_id FROM " + table)) {
+                    while (rs.next()) {
+                        perFilm.add(rs.getInt(1), 1);
+                        rows++;
+                    }
+                }
+            }
+        }
+        logger.info("Zliczono {} wypożyczeń ({} filmów) w {} ms", rows, perFilm.size(), (System.nanoTime() - start) / 1_000_000);
+        return perFilm;
+    }
+
+    private static Connection connect(String caller) throws SQLException {
+        Connection conn = Database.connect(caller);
+        if (conn == null) throw new SQLException("Brak połączenia z bazą");
+        return conn;
+    }
+
+    private static Statement streaming(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(Database.streamingFetchSize());
+        return stmt;
+    }
+
+    private static String revenueRow(String label, long grosze, int count) {
+        return label + " | " + BillingEngine.format(grosze) + " zł | rachunków: " + count;
+    }
+}
@@ -0,0 +1,81 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Odbiorca odpowiedzi generowanych przez {@link CommandProcessor}.
+ * <p>
+ * Oddziela logikę komend od sposobu przesyłania odpowiedzi, dzięki czemu te same
+ * komendy mogą być obsługiwane zarówno przez klasyczny, blokujący {@code ClientHandler},
+ * jak i przez transport nieblokujący ({@link NioServer}).
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public interface ResponseWriter {
+
+    /**
+     * Wysyła odpowiedź jednowierszową (np. {@code LOGIN_OK;5} albo komunikat wypożyczenia).
+     *
+     * @param line Treść odpowiedzi.
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    void line(String line) throws IOException;
+
+    /**
+     * Wysyła pojedynczy wiersz odpowiedzi listowej (np. jeden film z GET_FILMS).
+     *
+     * @param row Treść wiersza.
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    void row(String row) throws IOException;
+
+    /**
+     * Wysyła wiersz listy filmów. Domyślnie jako tekst ({@link Film#format()});
+     * protokół binarny przesyła pola filmu bez formatowania.
+     *
+     * @param film Film do wysłania.
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    default void film(Film film) throws IOException {
+        row(film.format());
+    }
+
+    /**
+     * Informuje, czy odbiorca potrafi wysłać gotowe bajty protokołu tekstowego
+     * ({@link #preEncoded(ByteBuffer[])}).
+     *
+     * @return {@code true} dla transportów tekstowych z dostępem do surowego strumienia.
+     */
+    default boolean supportsPreEncoded() {
+        return false;
+    }
+
+    /**
+     * Wysyła gotową, zakodowaną odpowiedź protokołu tekstowego (np. pełną listę GET_FILMS).
+     *
+     * @param buffers Bufory do wysłania w podanej kolejności; nie są modyfikowane poza pozycją.
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    default void preEncoded(ByteBuffer[] buffers) throws IOException {
+        throw new UnsupportedOperationException("Odbiorca nie obsługuje gotowych odpowiedzi");
+    }
+
+    /**
+     * Wysyła od razu dotąd zbuforowane wiersze (np. postęp długiej operacji). Transporty,
+     * które przesyłają odpowiedź listową w całości, mogą to zignorować.
+     *
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * Kończy odpowiedź listową (w protokole tekstowym wiersz {@code END}).
+     *
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    void end() throws IOException;
+}
@@ -0,0 +1,23 @@
+package server;
+
+import java.io.IOException;
+
+/**
+ * Odbiorca wierszy przekazywanych na bieżąco podczas odczytu z bazy (bez gromadzenia w liście).
+ *
+ * @param <T> Typ wiersza.
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface RowSink<T> {
+
+    /**
+     * Przyjmuje kolejny wiersz.
+     *
+     * @param row Wiersz odczytany z bazy.
+     * @throws IOException W przypadku błędu wysyłania wiersza do klienta.
+     */
+    void accept(T row) throws IOException;
+}
@@ -2,16 +2,57 @@ package server;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import protocol.BinaryProtocol;
 
 import java.io.*;
+import java.lang.reflect.Method;
 import java.net.*;
-import java.util.List;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Główna klasa serwera aplikacji Wypożyczalni DVD.
  * <p>
  * Serwer działa w modelu wielowątkowym. Główny wątek nasłuchuje na określonym porcie
- * i dla każdego nowego połączenia klienta tworzy osobny wątek obsługi (instancję {@link ClientHandler}).
+ * i przekazuje każde nowe połączenie klienta (instancję {@link ClientHandler}) do wykonawcy
+ * wybranego właściwością systemową {@code server.mode}:
+ * </p>
+ * <ul>
+ * <li>{@code pool} (domyślnie) - ograniczona pula wątków platformowych ({@code server.pool.threads}).
+ * Połączenie zajmuje wątek aż do rozłączenia klienta, więc gdy wszystkie wątki są zajęte, nowe
+ * połączenie od razu dostaje {@value #BUSY_RESPONSE} zamiast czekać bez odpowiedzi. Kolejkę
+ * oczekujących połączeń ({@code server.pool.queue}, domyślnie 0) warto włączać tylko dla klientów
+ * z krótkimi połączeniami (jedna komenda na połączenie) - przy trwałych połączeniach zakolejkowany
+ * klient czekałby, aż któryś z obsługiwanych się rozłączy,</li>
+ * <li>{@code virtual} - osobny wątek wirtualny na połączenie (Java 21+; na starszej JVM
+ * serwer wraca do trybu {@code pool}).</li>
+ * </ul>
+ * <p>
+ * Niezależnie od trybu liczba jednoczesnych sesji jest ograniczona ({@code server.maxSessions}).
+ * Nadmiarowe połączenia otrzymują odpowiedź {@value #BUSY_RESPONSE} i są zamykane.
+ * </p>
+ * <p>
+ * Właściwość {@code server.transport=nio} uruchamia zamiast tego nieblokujący transport
+ * {@link NioServer} (pętla zdarzeń + {@code server.nio.workers} wątków roboczych).
+ * </p>
+ * <p>
+ * Właściwość {@code metrics.port} uruchamia dodatkowo punkt HTTP z metrykami w formacie
+ * Prometheus ({@link MetricsHttpServer}).
+ * </p>
+ * <p>
+ * Właściwość {@code archive.intervalMinutes} włącza okresowe przenoszenie rozliczonych
+ * wypożyczeń do tabel archiwalnych ({@link TransactionArchiver}).
  * </p>
  *
  * @author Igor Błędziński, Łukasz Gierczak
@@ -25,6 +66,17 @@ public class ServerApp {
     /** Port, na którym serwer nasłuchuje połączeń przychodzących (5000). */
     private static final int PORT = 5000;
 
+    /** Odpowiedź wysyłana do klienta, gdy przekroczono limit sesji lub kolejka wykonawcy jest pełna. */
+    static final String BUSY_RESPONSE = "SERVER_BUSY";
+
+    /** Tryb wykonywania obsługi klientów. */
+    enum ExecutionMode {
+        /** Ograniczona pula wątków platformowych z kolejką. */
+        POOL,
+        /** Wątek wirtualny na połączenie (Java 21+). */
+        VIRTUAL
+    }
+
     /**
      * Prywatny konstruktor zapobiegający instancjalizacji klasy narzędziowej.
      */
@@ -37,22 +89,45 @@ public class ServerApp {
      * <p>
      * Metoda otwiera gniazdo serwera (ServerSocket) i wchodzi w nieskończoną pętlę,
      * oczekując na połączenia od klientów. Każde zaakceptowane połączenie
-     * jest przekazywane do nowego wątku.
+     * jest przekazywane do wykonawcy zgodnie z trybem {@code server.mode}.
      * </p>
      *
      * @param args Argumenty wiersza poleceń (nieużywane).
      */
     public static void main(String[] args) {
+        ExecutionMode mode = ExecutionMode.valueOf(System.getProperty("server.mode", "pool").toUpperCase());
+        int maxSessions = Integer.getInteger("server.maxSessions", 1000);
+        UserRepository.migrateRegistrationDate();
+        warmUpCatalog();
+        TransactionRoutines.installIfEnabled();
+        MetricsHttpServer.startIfEnabled();
+        TransactionArchiver.startIfEnabled();
+
+        if ("nio".equalsIgnoreCase(System.getProperty("server.transport"))) {
+            runNio(maxSessions);
+            return;
+        }
+
         try (ServerSocket serverSocket = new ServerSocket(PORT)) {
+            ExecutorService executor = createExecutor(mode);
+            Semaphore sessions = new Semaphore(maxSessions);
+
             logger.info("========================================");
             logger.info(" Serwer Wypożyczalni DVD (ADMIN ENABLED)");
             logger.info(" Port: " + PORT);
+            logger.info(" Limit sesji: " + maxSessions);
             logger.info("========================================");
 
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                executor.shutdownNow();
+                Database.shutdown();
+            }, "server-shutdown"));
+            logger.info("Pula połączeń: " + Database.getPoolStats());
+
             while (true) {
                 try {
                     Socket clientSocket = serverSocket.accept();
-                    new Thread(new ClientHandler(clientSocket)).start();
+                    dispatch(clientSocket, executor, sessions);
                 } catch (IOException e) {
                     logger.error("Błąd akceptacji klienta", e);
                 }
@@ -63,110 +138,184 @@ public class ServerApp {
     }
 
     /**
-     * Klasa wewnętrzna odpowiedzialna za obsługę pojedynczego klienta w osobnym wątku.
+     * Wczytuje katalog filmów (wraz z mapą dostępności) przed przyjęciem pierwszego klienta.
+     * Błąd nie zatrzymuje serwera - katalog zostanie wczytany przy pierwszym użyciu.
+     */
+    private static void warmUpCatalog() {
+        try {
+            logger.info("Dostępne filmy: " + FilmCatalog.shared().availableCount());
+        } catch (SQLException e) {
+            logger.warn("Nie udało się wczytać katalogu filmów przy starcie", e);
+        }
+    }
+
+    /**
+     * Uruchamia serwer na transporcie nieblokującym i czeka na jego zakończenie.
+     *
+     * @param maxSessions Maksymalna liczba jednoczesnych połączeń.
+     */
+    private static void runNio(int maxSessions) {
+        int workers = Integer.getInteger("server.nio.workers", 16);
+        NioServer server = new NioServer(new InetSocketAddress(PORT), workers, maxSessions);
+        try {
+            server.start();
+            logger.info("========================================");
+            logger.info(" Serwer Wypożyczalni DVD (NIO, " + workers + " wątków roboczych)");
+            logger.info(" Port: " + PORT);
+            logger.info(" Limit sesji: " + maxSessions);
+            logger.info("========================================");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                Database.shutdown();
+            }, "server-shutdown"));
+            server.awaitTermination();
+        } catch (IOException e) {
+            logger.fatal("Nie można uruchomić serwera na porcie " + PORT, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Przekazuje zaakceptowane połączenie do wykonawcy, pilnując limitu jednoczesnych sesji.
+     * Jeśli limit jest wyczerpany lub wszystkie wątki puli są zajęte (a kolejka pełna lub wyłączona), klient dostaje
+     * {@value #BUSY_RESPONSE}, a gniazdo jest zamykane.
+     *
+     * @param clientSocket Gniazdo nowego klienta.
+     * @param executor     Wykonawca obsługi klientów.
+     * @param sessions     Semafor ograniczający liczbę sesji.
+     */
+    static void dispatch(Socket clientSocket, ExecutorService executor, Semaphore sessions) {
+        if (!sessions.tryAcquire()) {
+            reject(clientSocket, "limit sesji");
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    new ClientHandler(clientSocket).run();
+                } finally {
+                    sessions.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            sessions.release();
+            reject(clientSocket, "wszystkie wątki zajęte");
+        }
+    }
+
+    /**
+     * Tworzy wykonawcę obsługi klientów dla podanego trybu.
+     *
+     * @param mode Tryb wykonywania.
+     * @return Wykonawca; dla {@link ExecutionMode#VIRTUAL} na JVM bez wątków wirtualnych - pula platformowa.
+     */
+    static ExecutorService createExecutor(ExecutionMode mode) {
+        if (mode == ExecutionMode.VIRTUAL) {
+            try {
+                Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                logger.info(" Tryb: wątek wirtualny na połączenie");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Wątki wirtualne niedostępne (wymagana Java 21+) - używam puli wątków.");
+            }
+        }
+
+        int threads = Integer.getInteger("server.pool.threads", 64);
+        int queue = Integer.getInteger("server.pool.queue", 0);
+        logger.info(" Tryb: pula " + threads + " wątków, kolejka " + queue);
+
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "client-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        // Bez kolejki (SynchronousQueue) połączenie jest przyjmowane tylko przez wolny wątek,
+        // a przy wszystkich zajętych wykonawca odrzuca je od razu (SERVER_BUSY w dispatch).
+        BlockingQueue<Runnable> waiting = queue > 0 ? new ArrayBlockingQueue<>(queue) : new SynchronousQueue<>();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                waiting, factory, new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static void reject(Socket clientSocket, String reason) {
+        logger.warn("Odrzucono połączenie " + clientSocket.getRemoteSocketAddress() + " (" + reason + ")");
+        try (Socket s = clientSocket) {
+            OutputStream out = s.getOutputStream();
+            out.write((BUSY_RESPONSE + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Klasa wewnętrzna odpowiedzialna za obsługę pojedynczego klienta (uruchamiana przez wykonawcę).
+     * Odczytuje kolejne linie komend i przekazuje je do {@link CommandProcessor}.
+     * Po komendzie {@value BinaryProtocol#NEGOTIATE} połączenie przechodzi na ramki binarne.
+     * <p>
+     * Klient może wysłać wiele komend naraz (pipelining). Komendy są wykonywane po kolei,
+     * a odpowiedzi trafiają do bufora, który jest wysyłany dopiero wtedy, gdy w gnieździe
+     * nie czekają już kolejne komendy - cała paczka odpowiedzi idzie jednym zapisem.
+     * </p>
      */
     private static class ClientHandler implements Runnable {
+        /** Rozmiar bufora odpowiedzi (odpowiedzi większe są wysyłane w kawałkach tej wielkości). */
+        private static final int OUTPUT_BUFFER = 64 * 1024;
+
         private final Socket socket;
-        private final UserRepository userRepo;
-        private final FilmRepository filmRepo;
-        private final TransactionRepository transRepo;
+        private final CommandProcessor processor;
+        /** Adres klienta do dziennika dostępu (wyznaczany raz na połączenie). */
+        private final String remote;
 
         public ClientHandler(Socket socket) {
             this.socket = socket;
-            this.userRepo = new UserRepository();
-            this.filmRepo = new FilmRepository();
-            this.transRepo = new TransactionRepository();
+            this.processor = new CommandProcessor();
+            this.remote = String.valueOf(socket.getRemoteSocketAddress());
         }
 
         @Override
         public void run() {
             try (
                     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                    PrintWriter out = new PrintWriter(socket.getOutputStream(), true)
+                    PrintWriter out = new PrintWriter(new BufferedWriter(
+                            new OutputStreamWriter(socket.getOutputStream()), OUTPUT_BUFFER), false)
             ) {
+                ResponseWriter writer = new TextResponseWriter(out, Channels.newChannel(socket.getOutputStream()));
                 String request;
                 while ((request = in.readLine()) != null) {
-                    logger.info("[Komenda] " + request);
-                    String[] parts = request.split(";");
-                    String command = parts[0];
-
-                    try {
-                        switch (command) {
-                            case "LOGIN":
-                                if (parts.length < 3) { out.println("LOGIN_FAIL"); break; }
-                                int userId = userRepo.getUserIdByCredentials(parts[1], parts[2]);
-                                out.println(userId >= 0 ? "LOGIN_OK;" + userId : "LOGIN_FAIL");
-                                break;
-
-                            case "REGISTER":
-                                if (parts.length < 3) { out.println("REGISTER_FAIL"); break; }
-                                boolean regOk = userRepo.registerUser(parts[1], parts[2]);
-                                out.println(regOk ? "REGISTER_OK" : "REGISTER_FAIL");
-                                break;
-
-                            case "GET_FILMS":
-                                List<String> films = filmRepo.getAllFilmsFormatted();
-                                for (String f : films) out.println(f);
-                                out.println("END");
-                                break;
-
-                            case "RENT":
-                                if (parts.length < 3) { out.println("Błąd danych"); break; }
-                                String rentResult = transRepo.rentFilm(Integer.parseInt(parts[2]), Integer.parseInt(parts[1]));
-                                out.println(rentResult);
-                                break;
-
-                            case "MY_TRANS":
-                                if (parts.length < 2) { out.println("END"); break; }
-                                List<String> trans = transRepo.getUserTransactions(Integer.parseInt(parts[1]));
-                                for (String t : trans) out.println(t);
-                                out.println("END");
-                                break;
-
-                            case "PAY":
-                                if (parts.length < 2) { out.println("Błąd"); break; }
-                                String payResult = transRepo.payTransaction(Integer.parseInt(parts[1]));
-                                out.println(payResult);
-                                break;
-
-                            case "MY_RENTS":
-                                if (parts.length < 2) { out.println("END"); break; }
-                                List<String> rents = transRepo.getUserRentals(Integer.parseInt(parts[1]));
-                                for (String r : rents) out.println(r);
-                                out.println("END");
-                                break;
-
-                            case "ADMIN_GET_USERS":
-                                List<String> users = userRepo.getAllUsers();
-                                for (String u : users) out.println(u);
-                                out.println("END");
-                                break;
-
-                            case "ADMIN_DEL_USER":
-                                if (parts.length < 2) { out.println("ERROR"); break; }
-                                boolean delOk = userRepo.deleteUser(Integer.parseInt(parts[1]));
-                                out.println(delOk ? "Usunięto pomyślnie" : "Błąd usuwania (może użytkownik nie istnieje?)");
-                                break;
-
-                            case "ADMIN_PASS":
-                                if (parts.length < 3) { out.println("ERROR"); break; }
-                                boolean passOk = userRepo.changeUserPassword(Integer.parseInt(parts[1]), parts[2]);
-                                out.println(passOk ? "Hasło zmienione" : "Błąd zmiany hasła");
-                                break;
-
-                            default:
-                                out.println("UNKNOWN_COMMAND");
-                                break;
-                        }
-                    } catch (Exception e) {
-                        logger.error("Błąd przetwarzania komendy: " + command, e);
-                        out.println("ERROR");
+                    long start = System.nanoTime();
+                    if (BinaryProtocol.NEGOTIATE.equals(request)) {
+                        out.println(BinaryProtocol.NEGOTIATE_OK);
+                        out.flush();
+                        runBinary();
+                        return;
                     }
+                    processor.process(request, writer);
+                    processor.recordAccess(AccessLog.shared(), remote, request, start);
+                    if (!in.ready()) out.flush(); // koniec paczki komend
                 }
             } catch (IOException e) {
             } finally {
+                processor.connectionClosed();
                 try { socket.close(); } catch (IOException e) {}
             }
         }
+
+        /**
+         * Obsługuje połączenie w protokole binarnym aż do jego zamknięcia przez klienta.
+         * Klient wysyła pierwszą ramkę dopiero po otrzymaniu potwierdzenia negocjacji,
+         * więc bufor czytnika tekstowego jest w tym momencie pusty.
+         */
+        private void runBinary() throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER));
+            ResponseWriter writer = new BinaryResponseWriter(out);
+            DataInputStream frame;
+            while ((frame = BinaryProtocol.readFrame(in)) != null) {
+                processor.processBinary(frame, writer);
+                if (in.available() == 0) out.flush(); // koniec paczki ramek
+            }
+        }
     }
-}
\ No newline at end of file
+}
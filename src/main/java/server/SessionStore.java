@@ -0,0 +1,199 @@
+package server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Magazyn sesji zalogowanych użytkowników.
+ * <p>
+ * Po poprawnym logowaniu serwer wydaje losowy, nieprzewidywalny token, który klient przesyła
+ * w kolejnych komendach zamiast ID użytkownika. Sprawdzenie tokenu to jedno wyszukanie
+ * w {@link ConcurrentHashMap} - bez zapytania do bazy i bez liczenia skrótu hasła.
+ * </p>
+ * <p>
+ * Sesja wygasa po {@code session.ttlMs} milisekundach bezczynności (domyślnie 30 minut);
+ * każde użycie tokenu przedłuża ją (wygasanie przesuwne). Wygasłe sesje są usuwane przy próbie
+ * użycia oraz okresowo przez wątek porządkujący (co {@code session.sweepMs}, domyślnie minutę).
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class SessionStore {
+
+    /** Logger log4j do rejestrowania zdarzeń sesji. */
+    private static final Logger logger = LogManager.getLogger(SessionStore.class);
+
+    /** Wspólna instancja używana przez serwer. */
+    private static final SessionStore SHARED = new SessionStore(
+            Long.getLong("session.ttlMs", 30 * 60_000L), Long.getLong("session.sweepMs", 60_000L));
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long ttlMillis;
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * @param ttlMillis   Czas bezczynności, po którym sesja wygasa.
+     * @param sweepMillis Odstęp między porządkowaniem sesji (0 - bez wątku porządkującego).
+     */
+    SessionStore(long ttlMillis, long sweepMillis) {
+        this.ttlMillis = ttlMillis;
+        if (sweepMillis > 0) {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "session-sweeper");
+                t.setDaemon(true);
+                return t;
+            });
+            this.sweeper.scheduleWithFixedDelay(this::sweep, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.sweeper = null;
+        }
+    }
+
+    /**
+     * @return Wspólna instancja magazynu sesji.
+     */
+    public static SessionStore shared() {
+        return SHARED;
+    }
+
+    /**
+     * Zakłada sesję dla zalogowanego użytkownika.
+     *
+     * @param userId ID użytkownika.
+     * @return Token sesji (22 znaki Base64 URL, 128 bitów losowości).
+     */
+    public String create(int userId) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(userId, System.currentTimeMillis()));
+        return token;
+    }
+
+    /**
+     * Odnajduje sesję po tokenie, przedłuża ją i zlicza komendę.
+     *
+     * @param token Token sesji.
+     * @return Sesja lub {@code null}, jeśli token jest nieznany albo wygasł.
+     */
+    public Session touch(String token) {
+        if (token == null) return null;
+        Session s = sessions.get(token);
+        if (s == null) return null;
+        long now = System.currentTimeMillis();
+        if (now - s.lastAccess > ttlMillis) {
+            sessions.remove(token, s);
+            return null;
+        }
+        s.lastAccess = now;
+        s.commands.increment();
+        return s;
+    }
+
+    /**
+     * Kończy sesję (wylogowanie).
+     *
+     * @param token Token sesji.
+     * @return {@code true}, jeśli sesja istniała.
+     */
+    public boolean remove(String token) {
+        return token != null && sessions.remove(token) != null;
+    }
+
+    /**
+     * Kończy wszystkie sesje użytkownika (np. po jego usunięciu lub zmianie hasła).
+     *
+     * @param userId ID użytkownika.
+     * @return Liczba zakończonych sesji.
+     */
+    public int removeUser(int userId) {
+        int removed = 0;
+        for (Iterator<Session> it = sessions.values().iterator(); it.hasNext(); ) {
+            if (it.next().userId == userId) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Usuwa wygasłe sesje.
+     *
+     * @return Liczba usuniętych sesji.
+     */
+    int sweep() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Iterator<Session> it = sessions.values().iterator(); it.hasNext(); ) {
+            if (now - it.next().lastAccess > ttlMillis) {
+                it.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) logger.info("Usunięto wygasłe sesje: {} (aktywne: {})", removed, sessions.size());
+        return removed;
+    }
+
+    /**
+     * @return Liczba aktywnych sesji.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Zatrzymuje wątek porządkujący.
+     */
+    public void shutdown() {
+        if (sweeper != null) sweeper.shutdownNow();
+    }
+
+    /**
+     * Sesja zalogowanego użytkownika wraz z prostymi statystykami użycia.
+     */
+    public static final class Session {
+        private final int userId;
+        private final long createdAt;
+        private volatile long lastAccess;
+        private final LongAdder commands = new LongAdder();
+
+        private Session(int userId, long now) {
+            this.userId = userId;
+            this.createdAt = now;
+            this.lastAccess = now;
+        }
+
+        /** @return ID zalogowanego użytkownika. */
+        public int userId() {
+            return userId;
+        }
+
+        /** @return Czas utworzenia sesji (ms od epoki). */
+        public long createdAt() {
+            return createdAt;
+        }
+
+        /** @return Czas ostatniego użycia sesji (ms od epoki). */
+        public long lastAccess() {
+            return lastAccess;
+        }
+
+        /** @return Liczba komend wykonanych w ramach sesji. */
+        public long commandCount() {
+            return commands.sum();
+        }
+    }
+}
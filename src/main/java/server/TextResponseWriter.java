@@ -0,0 +1,78 @@
+package server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Implementacja {@link ResponseWriter} dla protokołu tekstowego.
+ * <p>
+ * Każda odpowiedź i każdy wiersz listy to osobna linia zakończona znakiem nowej linii;
+ * lista kończy się linią {@code END}.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public class TextResponseWriter implements ResponseWriter {
+
+    /** Znacznik końca odpowiedzi listowej. */
+    public static final String END = "END";
+
+    private final PrintWriter out;
+    /** Surowy kanał tego samego połączenia dla gotowych odpowiedzi (może być null). */
+    private final WritableByteChannel raw;
+
+    /**
+     * @param out Strumień wyjściowy, do którego zapisywane są linie odpowiedzi.
+     */
+    public TextResponseWriter(PrintWriter out) {
+        this(out, null);
+    }
+
+    /**
+     * @param out Strumień wyjściowy, do którego zapisywane są linie odpowiedzi.
+     * @param raw Kanał bajtowy pod strumieniem {@code out}, używany do wysyłania gotowych odpowiedzi.
+     */
+    public TextResponseWriter(PrintWriter out, WritableByteChannel raw) {
+        this.out = out;
+        this.raw = raw;
+    }
+
+    @Override
+    public boolean supportsPreEncoded() {
+        return raw != null;
+    }
+
+    /**
+     * Opróżnia bufor tekstowy (zachowanie kolejności odpowiedzi) i zapisuje gotowe bajty wprost do kanału.
+     */
+    @Override
+    public void preEncoded(ByteBuffer[] buffers) throws IOException {
+        out.flush();
+        for (ByteBuffer b : buffers) {
+            while (b.hasRemaining()) raw.write(b);
+        }
+    }
+
+    @Override
+    public void line(String line) {
+        out.println(line);
+    }
+
+    @Override
+    public void row(String row) {
+        out.println(row);
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
+    @Override
+    public void end() {
+        out.println(END);
+    }
+}
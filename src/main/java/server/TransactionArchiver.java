@@ -0,0 +1,177 @@
+package server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Przenosi rozliczone wypożyczenia z tabel Transakcja/Oplata do tabel archiwalnych
+ * Transakcja_Archiwum/Oplata_Archiwum.
+ * <p>
+ * Archiwizowane są wypożyczenia zwrócone dawniej niż {@code archive.minAgeDays} dni temu
+ * (domyślnie 30), których wszystkie opłaty mają rachunek - takich wierszy nic już nie zmienia.
+ * Praca odbywa się porcjami po {@code archive.chunkSize} transakcji (domyślnie 500), każda porcja
+ * w osobnej krótkiej transakcji bazodanowej ({@code INSERT ... SELECT} i {@code DELETE} po liście ID),
+ * więc blokady nie są trzymane długo, a tabele bieżące pozostają małe. Historia z archiwum jest
+ * czytana tylko na żądanie (MY_RENTS/MY_TRANS z flagą {@code ALL}).
+ * </p>
+ * <p>
+ * Zadanie uruchamiane jest okresowo przez {@link ServerApp}, gdy ustawiono
+ * {@code -Darchive.intervalMinutes=<minuty>}.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class TransactionArchiver {
+
+    /** Logger log4j do rejestrowania przebiegu archiwizacji. */
+    private static final Logger logger = LogManager.getLogger(TransactionArchiver.class);
+
+    private static final String SELECT_CANDIDATES =
+            "SELECT t.id, t.klient_id FROM Transakcja t " +
+            "WHERE t.dataZwrotu IS NOT NULL AND t.dataZwrotu < ? " +
+            "AND NOT EXISTS (SELECT 1 FROM Oplata o WHERE o.transakcja_id = t.id AND o.rachunek_id IS NULL) " +
+            "ORDER BY t.id LIMIT ?";
+
+    private final int chunkSize;
+    private final int minAgeDays;
+
+    /**
+     * @param chunkSize  Liczba transakcji przenoszonych w jednej transakcji bazodanowej.
+     * @param minAgeDays Minimalny wiek zwrotu (w dniach), od którego wypożyczenie jest archiwizowane.
+     */
+    public TransactionArchiver(int chunkSize, int minAgeDays) {
+        this.chunkSize = Math.max(1, chunkSize);
+        this.minAgeDays = Math.max(0, minAgeDays);
+    }
+
+    /**
+     * Uruchamia okresową archiwizację, jeśli ustawiono {@code -Darchive.intervalMinutes}.
+     *
+     * @return Harmonogram zadania lub {@code null}, gdy archiwizacja jest wyłączona.
+     */
+    public static ScheduledExecutorService startIfEnabled() {
+        Integer interval = Integer.getInteger("archive.intervalMinutes");
+        if (interval == null || interval <= 0) return null;
+        TransactionArchiver archiver = new TransactionArchiver(Integer.getInteger("archive.chunkSize", 500),
+                Integer.getInteger("archive.minAgeDays", 30));
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "transaction-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                archiver.archiveAll();
+            } catch (SQLException e) {
+                logger.error("Błąd archiwizacji transakcji", e);
+            }
+        }, interval, interval, TimeUnit.MINUTES);
+        logger.info("Archiwizacja transakcji co {} min (starsze niż {} dni)", interval, archiver.minAgeDays);
+        return scheduler;
+    }
+
+    /**
+     * Przenosi do archiwum wszystkie kwalifikujące się wypożyczenia, porcja po porcji.
+     *
+     * @return Liczba zarchiwizowanych transakcji.
+     * @throws SQLException Jeśli przeniesienie porcji się nie powiodło (wcześniejsze porcje pozostają w archiwum).
+     */
+    public int archiveAll() throws SQLException {
+        return archiveAll(Timestamp.valueOf(LocalDateTime.now().minusDays(minAgeDays)));
+    }
+
+    /**
+     * Przenosi do archiwum wypożyczenia zwrócone przed podaną chwilą, porcja po porcji.
+     *
+     * @param cutoff Granica daty zwrotu.
+     * @return Liczba zarchiwizowanych transakcji.
+     * @throws SQLException Jeśli przeniesienie porcji się nie powiodło.
+     */
+    int archiveAll(Timestamp cutoff) throws SQLException {
+        int total = 0;
+        int moved;
+        do {
+            moved = archiveChunk(cutoff);
+            total += moved;
+        } while (moved == chunkSize);
+        if (total > 0) logger.info("Zarchiwizowano transakcji: {}", total);
+        return total;
+    }
+
+    /**
+     * Przenosi jedną porcję wypożyczeń w jednej transakcji bazodanowej.
+     *
+     * @param cutoff Granica daty zwrotu.
+     * @return Liczba przeniesionych transakcji.
+     * @throws SQLException W przypadku błędu bazy danych (porcja jest wycofywana).
+     */
+    int archiveChunk(Timestamp cutoff) throws SQLException {
+        Connection conn = Database.connect("TransactionArchiver.archiveChunk");
+        if (conn == null) throw new SQLException("Brak połączenia z bazą");
+        List<Integer> ids = new ArrayList<>(chunkSize);
+        Set<Integer> users = new HashSet<>();
+        try {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(SELECT_CANDIDATES)) {
+                ps.setTimestamp(1, cutoff);
+                ps.setInt(2, chunkSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                        users.add(rs.getInt(2));
+                    }
+                }
+            }
+            if (ids.isEmpty()) {
+                conn.rollback();
+                return 0;
+            }
+
+            String in = placeholders(ids.size());
+            execute(conn, "INSERT INTO Transakcja_Archiwum (id, klient_id, film_id, dataWypozyczenia, dataZwrotu) " +
+                    "SELECT id, klient_id, film_id, dataWypozyczenia, dataZwrotu FROM Transakcja WHERE id IN " + in, ids);
+            execute(conn, "INSERT INTO Oplata_Archiwum (id, transakcja_id, rachunek_id, kwota, powod) " +
+                    "SELECT id, transakcja_id, rachunek_id, kwota, powod FROM Oplata WHERE transakcja_id IN " + in, ids);
+            execute(conn, "DELETE FROM Oplata WHERE transakcja_id IN " + in, ids);
+            execute(conn, "DELETE FROM Transakcja WHERE id IN " + in, ids);
+            conn.commit();
+        } catch (SQLException e) {
+            try { conn.rollback(); } catch (SQLException ex) {}
+            throw e;
+        } finally {
+            try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) {}
+        }
+
+        // Widoki MY_RENTS/MY_TRANS w pamięci pokazują tylko tabele bieżące.
+        for (int userId : users) UserHistoryCache.shared().forget(userId);
+        return ids.size();
+    }
+
+    private static String placeholders(int n) {
+        StringBuilder sb = new StringBuilder(n * 3 + 2).append('(');
+        for (int i = 0; i < n; i++) sb.append(i == 0 ? "?" : ", ?");
+        return sb.append(')').toString();
+    }
+
+    private static void execute(Connection conn, String sql, List<Integer> ids) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) ps.setInt(i + 1, ids.get(i));
+            ps.executeUpdate();
+        }
+    }
+}
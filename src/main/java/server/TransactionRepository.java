@@ -4,17 +4,21 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.*;
-import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Repozytorium obsługujące logikę biznesową transakcji, wypożyczeń i płatności.
  * <p>
  * Odpowiada za cały cykl życia wypożyczenia: od rezerwacji filmu (rentFilm),
  * poprzez naliczanie opłat w czasie rzeczywistym, aż po finalizację transakcji (płatność i zwrot).
+ * Po zatwierdzeniu zmian dostępności filmu aktualizuje pamięć podręczną {@link FilmCatalog}.
  * </p>
  *
  * @author Igor Błędziński, Łukasz Gierczak
@@ -23,10 +27,19 @@ import java.util.Locale;
 public class TransactionRepository {
     private static final Logger logger = LogManager.getLogger(TransactionRepository.class);
 
-    /** Stała opłata początkowa naliczana w momencie wypożyczenia filmu. */
-    private static final double OPLATA_STARTOWA = 10.00;
-    /** Stawka za każdą rozpoczętą minutę wypożyczenia. */
-    private static final double STAWKA_ZA_MINUTE = 1.50;
+    /** Stała opłata początkowa naliczana w momencie wypożyczenia filmu (kolumna kwota w złotych). */
+    private static final double OPLATA_STARTOWA = BillingEngine.START_FEE_GROSZE / 100.0;
+    /** Stawka za każdą pełną minutę wypożyczenia (parametr procedury sp_oplac). */
+    private static final double STAWKA_ZA_MINUTE = BillingEngine.RATE_PER_MINUTE_GROSZE / 100.0;
+    /** Opis opłaty startowej. */
+    private static final String POWOD_START = "Wypożyczenie (Start)";
+
+    /**
+     * ID filmów, których wypożyczenie jest właśnie w toku (w tym procesie). Kolejne żądania
+     * tego samego filmu są odrzucane od razu, zamiast zajmować połączenie z puli i czekać
+     * na blokadę FOR UPDATE, którą i tak przegrają.
+     */
+    static final Set<Integer> RENTS_IN_FLIGHT = ConcurrentHashMap.newKeySet();
 
     /**
      * Domyślny konstruktor.
@@ -37,20 +50,51 @@ public class TransactionRepository {
     /**
      * Realizuje proces wypożyczenia filmu.
      *
-     * <br>Metoda wykonuje szereg operacji w jednej transakcji bazodanowej:
+     * <br>Film niedostępny według mapy dostępności katalogu ({@link FilmCatalog#isAvailable(int)})
+     * jest odrzucany bez otwierania transakcji, podobnie jak film, którego wypożyczenie przez innego
+     * użytkownika właśnie trwa ({@link #RENTS_IN_FLIGHT}). W przeciwnym razie metoda wykonuje szereg operacji
+     * w jednej transakcji bazodanowej:
      * <ol>
      * <li>Sprawdza dostępność filmu i blokuje go (FOR UPDATE).</li>
      * <li>Tworzy wpis w tabeli Transakcja.</li>
      * <li>Zmienia status filmu na niedostępny.</li>
      * <li>Tworzy początkowy wpis w tabeli Oplata (kwota startowa).</li>
      * </ol>
+     * Przy włączonym {@code -Drent.groupCommit=true} wypożyczenie trafia do {@link RentGroupCommitter},
+     * który zatwierdza wiele wypożyczeń jedną transakcją.
      *
      * @param userId ID użytkownika wypożyczającego film.
      * @param filmId ID filmu do wypożyczenia.
      * @return Komunikat tekstowy dla klienta (sukces lub błąd).
      */
     public String rentFilm(int userId, int filmId) {
-        Connection conn = Database.connect();
+        try {
+            // Film już wypożyczony według katalogu - bez transakcji i blokady wiersza w bazie.
+            if (!FilmCatalog.shared().isAvailable(filmId)) return "Film jest niedostępny";
+        } catch (SQLException e) {
+            logger.warn("Nie udało się sprawdzić dostępności w katalogu, sprawdzam w bazie", e);
+        }
+
+        // Tylko jedno wypożyczenie danego filmu naraz trafia do bazy; pozostali nie czekają na blokadę wiersza.
+        if (!RENTS_IN_FLIGHT.add(filmId)) return "Film jest niedostępny";
+        try {
+            if (TransactionRoutines.isActive()) return rentFilmRoutine(userId, filmId);
+            if (RentGroupCommitter.ENABLED) return RentGroupCommitter.shared().rent(userId, filmId);
+            return rentFilmInTransaction(userId, filmId);
+        } finally {
+            RENTS_IN_FLIGHT.remove(filmId);
+        }
+    }
+
+    /**
+     * Wypożyczenie we własnej transakcji (kroki opisane w {@link #rentFilm(int, int)}).
+     *
+     * @param userId ID użytkownika wypożyczającego film.
+     * @param filmId ID filmu do wypożyczenia.
+     * @return Komunikat tekstowy dla klienta (sukces lub błąd).
+     */
+    String rentFilmInTransaction(int userId, int filmId) {
+        Connection conn = Database.connect("TransactionRepository.rentFilmInTransaction");
         if (conn == null) return "Błąd połączenia z bazą";
 
         try {
@@ -69,11 +113,12 @@ public class TransactionRepository {
             }
 
             int transakcjaId = -1;
+            LocalDateTime now = LocalDateTime.now().withNano(0);
             String insertTrans = "INSERT INTO Transakcja (klient_id, film_id, dataWypozyczenia) VALUES (?, ?, ?)";
             try (PreparedStatement ps = conn.prepareStatement(insertTrans, Statement.RETURN_GENERATED_KEYS)) {
                 ps.setInt(1, userId);
                 ps.setInt(2, filmId);
-                ps.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
+                ps.setTimestamp(3, Timestamp.valueOf(now));
                 ps.executeUpdate();
                 ResultSet keys = ps.getGeneratedKeys();
                 if (keys.next()) transakcjaId = keys.getInt(1);
@@ -84,16 +129,23 @@ public class TransactionRepository {
                 ps.executeUpdate();
             }
 
+            int oplataId = -1;
             String feeSql = "INSERT INTO Oplata (transakcja_id, kwota, powod) VALUES (?, ?, ?)";
-            try (PreparedStatement ps = conn.prepareStatement(feeSql)) {
+            try (PreparedStatement ps = conn.prepareStatement(feeSql, Statement.RETURN_GENERATED_KEYS)) {
                 ps.setInt(1, transakcjaId);
                 ps.setDouble(2, OPLATA_STARTOWA);
-                ps.setString(3, "Wypożyczenie (Start)");
+                ps.setString(3, POWOD_START);
                 ps.executeUpdate();
+                ResultSet keys = ps.getGeneratedKeys();
+                if (keys.next()) oplataId = keys.getInt(1);
             }
 
             conn.commit();
-            logger.info("Użytkownik " + userId + " wypożyczył film " + filmId);
+            FilmCatalog.shared().markAvailable(filmId, false);
+            BillingEngine.shared().rented(userId, oplataId, filmId, now, BillingEngine.START_FEE_GROSZE);
+            UserHistoryCache.shared().rented(userId, transakcjaId, oplataId, filmId, now,
+                    BillingEngine.START_FEE_GROSZE, POWOD_START);
+            logger.info("Użytkownik {} wypożyczył film {}", userId, filmId);
             return String.format(Locale.US, "Wypożyczono. Opłata bieżąca: %.2f zł. Czas start!", OPLATA_STARTOWA);
 
         } catch (SQLException e) {
@@ -117,10 +169,9 @@ public class TransactionRepository {
      * @return Informacja dla klienta (np. o konieczności zapłaty).
      */
     public String returnFilm(int userId, int filmId) {
-        Connection conn = Database.connect();
-        try {
-            String check = "SELECT count(*) FROM Transakcja t JOIN Oplata o ON o.transakcja_id = t.id " +
-                    "WHERE t.klient_id = ? AND t.film_id = ? AND t.dataZwrotu IS NULL AND o.rachunek_id IS NULL";
+        String check = "SELECT count(*) FROM Transakcja t JOIN Oplata o ON o.transakcja_id = t.id " +
+                "WHERE t.klient_id = ? AND t.film_id = ? AND t.dataZwrotu IS NULL AND o.rachunek_id IS NULL";
+        try (Connection conn = Database.connect("TransactionRepository.returnFilm")) {
             try (PreparedStatement ps = conn.prepareStatement(check)) {
                 ps.setInt(1, userId);
                 ps.setInt(2, filmId);
@@ -147,43 +198,47 @@ public class TransactionRepository {
      */
     public List<String> getUserTransactions(int userId) {
         List<String> list = new ArrayList<>();
-        String sql = "SELECT o.id, o.kwota, o.powod, o.rachunek_id, t.dataWypozyczenia, t.dataZwrotu " +
-                "FROM Oplata o JOIN Transakcja t ON o.transakcja_id = t.id " +
-                "WHERE t.klient_id = ?";
+        try {
+            long now = BillingEngine.nowMillis();
+            for (UserHistoryCache.Fee fee : loadFees(userId)) list.add(fee.format(now));
+        } catch (SQLException e) { logger.error("Błąd opłat", e); }
+        return list;
+    }
+
+    /**
+     * Wczytuje wszystkie opłaty użytkownika (w kolejności ID) dla {@link UserHistoryCache}.
+     *
+     * @param userId ID użytkownika.
+     * @return Opłaty użytkownika.
+     * @throws SQLException W przypadku błędu bazy danych.
+     */
+    List<UserHistoryCache.Fee> loadFees(int userId) throws SQLException {
+        return loadFees(userId, false);
+    }
+
+    private List<UserHistoryCache.Fee> loadFees(int userId, boolean archive) throws SQLException {
+        List<UserHistoryCache.Fee> result = new ArrayList<>();
+        String sql = "SELECT o.id, o.kwota, o.powod, o.rachunek_id, t.id AS tid, t.dataWypozyczenia, t.dataZwrotu " +
+                (archive ? "FROM Oplata_Archiwum o JOIN Transakcja_Archiwum t " : "FROM Oplata o JOIN Transakcja t ") +
+                "ON o.transakcja_id = t.id WHERE t.klient_id = ? ORDER BY o.id";
 
-        try (Connection conn = Database.connect();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+        Connection conn = Database.connect(archive ? "TransactionRepository.loadArchivedFees" : "TransactionRepository.loadFees");
+        if (conn == null) throw new SQLException("Brak połączenia z bazą");
+        try (conn; PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, userId);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                int oid = rs.getInt("id");
-                double kwotaBaza = rs.getDouble("kwota");
-                String powod = rs.getString("powod");
-                boolean oplacona = rs.getObject("rachunek_id") != null;
-
-                Timestamp dw = rs.getTimestamp("dataWypozyczenia");
-                Timestamp dz = rs.getTimestamp("dataZwrotu");
-
-                // LOGIKA: Jeśli film NIE oddany (dz == null) i NIE opłacony -> doliczamy czas "na żywo"
-                if (!oplacona && dz == null && dw != null) {
-                    LocalDateTime start = dw.toLocalDateTime();
-                    LocalDateTime now = LocalDateTime.now();
-                    long minuty = Duration.between(start, now).toMinutes();
-                    if (minuty < 0) minuty = 0;
-
-                    double doplata = minuty * STAWKA_ZA_MINUTE;
-                    double calaSuma = kwotaBaza + doplata; // 10.00 + (min * 1.50)
-
-                    kwotaBaza = calaSuma;
-                    powod = String.format(Locale.US, "Suma bieżąca (Start + %d min)", minuty);
+            try (ResultSet rs = ps.executeQuery()) {
+                UserHistoryCache.detectDatePrecision(rs.getMetaData(), 6);
+                while (rs.next()) {
+                    Timestamp dw = rs.getTimestamp("dataWypozyczenia");
+                    Timestamp dz = rs.getTimestamp("dataZwrotu");
+                    result.add(new UserHistoryCache.Fee(rs.getInt("id"), rs.getInt("tid"),
+                            BillingEngine.toGrosze(rs.getDouble("kwota")), rs.getString("powod"),
+                            rs.getObject("rachunek_id") != null, dz == null && dw != null,
+                            dw == null ? 0 : BillingEngine.toMillis(dw)));
                 }
-
-                String line = String.format(Locale.US, "Opłata %d | kwota: %.2f zł | powód: %s | Opłacona: %s",
-                        oid, kwotaBaza, powod, (oplacona ? "TAK" : "NIE"));
-                list.add(line);
             }
-        } catch (SQLException e) { logger.error("Błąd opłat", e); }
-        return list;
+        }
+        return result;
     }
 
     /**
@@ -197,12 +252,17 @@ public class TransactionRepository {
      * <li>Odblokowuje film (ustawia dostepny=1).</li>
      * <li>Generuje Rachunek i aktualizuje status Opłaty na opłaconą.</li>
      * </ol>
+     * Opłata innego użytkownika jest traktowana jak nieistniejąca, więc nie da się w ten sposób
+     * rozliczyć (i zwrócić) cudzego wypożyczenia.
      *
+     * @param userId   ID użytkownika płacącego (właściciela opłaty).
      * @param oplataId ID opłaty do uregulowania.
      * @return Komunikat o sukcesie (z kwotą) lub błędzie.
      */
-    public String payTransaction(int oplataId) {
-        Connection conn = Database.connect();
+    public String payTransaction(int userId, int oplataId) {
+        if (TransactionRoutines.isActive()) return payTransactionRoutine(userId, oplataId);
+
+        Connection conn = Database.connect("TransactionRepository.payTransaction");
         if (conn == null) return "Błąd połączenia";
 
         try {
@@ -211,16 +271,17 @@ public class TransactionRepository {
             int klientId = -1;
             int transakcjaId = -1;
             int filmId = -1;
-            double kwotaStartowa = 0;
+            long kwotaStartowa = 0;
             Timestamp dataWyp = null;
             Timestamp dataZwrotu = null;
 
             String sqlCheck = "SELECT t.klient_id, t.id as tid, t.film_id, t.dataWypozyczenia, t.dataZwrotu, o.kwota, o.rachunek_id " +
                     "FROM Oplata o JOIN Transakcja t ON o.transakcja_id = t.id " +
-                    "WHERE o.id = ? FOR UPDATE"; // Blokujemy rekord
+                    "WHERE o.id = ? AND t.klient_id = ? FOR UPDATE"; // Blokujemy rekord
 
             try (PreparedStatement ps = conn.prepareStatement(sqlCheck)) {
                 ps.setInt(1, oplataId);
+                ps.setInt(2, userId);
                 ResultSet rs = ps.executeQuery();
                 if (rs.next()) {
                     if (rs.getObject("rachunek_id") != null) { conn.rollback(); return "Już opłacona!"; }
@@ -228,7 +289,7 @@ public class TransactionRepository {
                     klientId = rs.getInt("klient_id");
                     transakcjaId = rs.getInt("tid");
                     filmId = rs.getInt("film_id");
-                    kwotaStartowa = rs.getDouble("kwota");
+                    kwotaStartowa = BillingEngine.toGrosze(rs.getDouble("kwota"));
                     dataWyp = rs.getTimestamp("dataWypozyczenia");
                     dataZwrotu = rs.getTimestamp("dataZwrotu");
                 } else {
@@ -236,16 +297,18 @@ public class TransactionRepository {
                 }
             }
 
-            double finalnaKwota = kwotaStartowa;
+            long finalnaKwota = kwotaStartowa;
             String opisRachunku = "Opłacenie wypożyczenia";
+            LocalDateTime zwrot = null;
 
             if (dataZwrotu == null) {
-                LocalDateTime now = LocalDateTime.now();
-                long minuty = Duration.between(dataWyp.toLocalDateTime(), now).toMinutes();
-                if (minuty < 0) minuty = 0;
+                LocalDateTime now = LocalDateTime.now().withNano(0);
+                zwrot = now;
+                long start = BillingEngine.toMillis(dataWyp);
+                long teraz = BillingEngine.toMillis(Timestamp.valueOf(now));
+                long minuty = BillingEngine.minutes(start, teraz);
 
-                double kosztCzasu = minuty * STAWKA_ZA_MINUTE;
-                finalnaKwota += kosztCzasu;
+                finalnaKwota = BillingEngine.charge(kwotaStartowa, start, teraz);
                 opisRachunku = String.format(Locale.US, "Startowe + Czas (%d min)", minuty);
 
                 try (PreparedStatement ps = conn.prepareStatement("UPDATE Transakcja SET dataZwrotu = ? WHERE id = ?")) {
@@ -257,11 +320,11 @@ public class TransactionRepository {
                     ps.setInt(1, filmId);
                     ps.executeUpdate();
                 }
-                logger.info("Auto-zwrot filmu ID: " + filmId + " przy płatności.");
+                logger.info("Auto-zwrot filmu ID: {} przy płatności.", filmId);
             }
 
             try (PreparedStatement ps = conn.prepareStatement("UPDATE Oplata SET kwota = ?, powod = ? WHERE id = ?")) {
-                ps.setDouble(1, finalnaKwota);
+                ps.setDouble(1, finalnaKwota / 100.0);
                 ps.setString(2, opisRachunku);
                 ps.setInt(3, oplataId);
                 ps.executeUpdate();
@@ -272,7 +335,7 @@ public class TransactionRepository {
             try (PreparedStatement ps = conn.prepareStatement(insRachunek, Statement.RETURN_GENERATED_KEYS)) {
                 ps.setInt(1, klientId);
                 ps.setDate(2, Date.valueOf(java.time.LocalDate.now()));
-                ps.setDouble(3, finalnaKwota);
+                ps.setDouble(3, finalnaKwota / 100.0);
                 ps.executeUpdate();
                 ResultSet keys = ps.getGeneratedKeys();
                 if (keys.next()) nowyRachunekId = keys.getInt(1);
@@ -285,7 +348,10 @@ public class TransactionRepository {
             }
 
             conn.commit();
-            return String.format(Locale.US, "Sukces! Płatność przyjęta: %.2f zł. Film został automatycznie zwrócony.", finalnaKwota);
+            if (dataZwrotu == null) FilmCatalog.shared().markAvailable(filmId, true);
+            BillingEngine.shared().settled(klientId, oplataId);
+            UserHistoryCache.shared().paid(klientId, oplataId, finalnaKwota, opisRachunku, zwrot);
+            return "Sukces! Płatność przyjęta: " + BillingEngine.format(finalnaKwota) + " zł. Film został automatycznie zwrócony.";
 
         } catch (SQLException e) {
             try { conn.rollback(); } catch (SQLException ex) {}
@@ -304,22 +370,397 @@ public class TransactionRepository {
      */
     public List<String> getUserRentals(int userId) {
         List<String> list = new ArrayList<>();
-        String sql = "SELECT f.id, f.tytul, t.dataWypozyczenia, t.dataZwrotu " +
-                "FROM Transakcja t JOIN Film f ON t.film_id = f.id " +
-                "WHERE t.klient_id = ?";
-        try (Connection conn = Database.connect();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, userId);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                int fid = rs.getInt("id");
-                String tytul = rs.getString("tytul");
-                String dw = rs.getString("dataWypozyczenia");
-                String dz = rs.getString("dataZwrotu");
-                String stan = (dz == null) ? "Wypożyczony" : "Zwrócony (" + dz + ")";
-                list.add(fid + ". " + tytul + " - " + stan);
-            }
+        try {
+            for (UserHistoryCache.LoadedRental r : loadRentals(userId)) list.add(r.rental().format());
         } catch (SQLException e) { logger.error("Błąd historii", e); }
         return list;
     }
-}
\ No newline at end of file
+
+    /**
+     * Pobiera zarchiwizowane wypożyczenia użytkownika ({@link TransactionArchiver}).
+     *
+     * @param userId ID użytkownika.
+     * @return Lista wypożyczeń w formacie tekstowym (jak {@link #getUserRentals(int)}).
+     * @throws SQLException W przypadku błędu bazy danych.
+     */
+    public List<String> getArchivedRentals(int userId) throws SQLException {
+        List<String> list = new ArrayList<>();
+        for (UserHistoryCache.LoadedRental r : loadRentals(userId, true)) list.add(r.rental().format());
+        return list;
+    }
+
+    /**
+     * Pobiera zarchiwizowane (opłacone) opłaty użytkownika ({@link TransactionArchiver}).
+     *
+     * @param userId ID użytkownika.
+     * @return Lista opłat w formacie tekstowym (jak {@link #getUserTransactions(int)}).
+     * @throws SQLException W przypadku błędu bazy danych.
+     */
+    public List<String> getArchivedTransactions(int userId) throws SQLException {
+        List<String> list = new ArrayList<>();
+        long now = BillingEngine.nowMillis();
+        for (UserHistoryCache.Fee fee : loadFees(userId, true)) list.add(fee.format(now));
+        return list;
+    }
+
+    /**
+     * Wczytuje wszystkie wypożyczenia użytkownika (w kolejności ID) dla {@link UserHistoryCache}.
+     *
+     * @param userId ID użytkownika.
+     * @return Wypożyczenia użytkownika.
+     * @throws SQLException W przypadku błędu bazy danych.
+     */
+    List<UserHistoryCache.LoadedRental> loadRentals(int userId) throws SQLException {
+        return loadRentals(userId, false);
+    }
+
+    private List<UserHistoryCache.LoadedRental> loadRentals(int userId, boolean archive) throws SQLException {
+        List<UserHistoryCache.LoadedRental> result = new ArrayList<>();
+        String sql = "SELECT t.id AS tid, f.id, f.tytul, t.dataZwrotu " +
+                (archive ? "FROM Transakcja_Archiwum t " : "FROM Transakcja t ") +
+                "JOIN Film f ON t.film_id = f.id WHERE t.klient_id = ? ORDER BY t.id";
+
+        Connection conn = Database.connect(archive ? "TransactionRepository.loadArchivedRentals" : "TransactionRepository.loadRentals");
+        if (conn == null) throw new SQLException("Brak połączenia z bazą");
+        try (conn; PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                UserHistoryCache.detectDatePrecision(rs.getMetaData(), 4);
+                while (rs.next()) {
+                    Timestamp dz = rs.getTimestamp("dataZwrotu");
+                    result.add(new UserHistoryCache.LoadedRental(rs.getInt("tid"), new UserHistoryCache.Rental(
+                            rs.getInt("id"), rs.getString("tytul"),
+                            dz == null ? null : UserHistoryCache.returnText(dz.toLocalDateTime()))));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Wypożyczenie jednym wywołaniem procedury {@code sp_wypozycz_film} ({@link TransactionRoutines}).
+     * Zwraca te same komunikaty co {@link #rentFilm(int, int)}.
+     */
+    private String rentFilmRoutine(int userId, int filmId) {
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        int transakcjaId;
+        int oplataId;
+        try (Connection conn = Database.connect("TransactionRepository.rentFilmRoutine");
+             CallableStatement cs = conn.prepareCall(TransactionRoutines.CALL_RENT)) {
+            cs.setInt(1, userId);
+            cs.setInt(2, filmId);
+            cs.setDouble(3, OPLATA_STARTOWA);
+            cs.setString(4, POWOD_START);
+            cs.setTimestamp(5, Timestamp.valueOf(now));
+            try (ResultSet rs = cs.executeQuery()) {
+                if (!rs.next() || rs.getInt("wynik") != 1) return "Film jest niedostępny";
+                transakcjaId = rs.getInt("transakcja_id");
+                oplataId = rs.getInt("oplata_id");
+            }
+        } catch (SQLException e) {
+            logger.error("Błąd SQL przy wypożyczaniu (procedura)", e);
+            return "Błąd bazy danych";
+        }
+        FilmCatalog.shared().markAvailable(filmId, false);
+        BillingEngine.shared().rented(userId, oplataId, filmId, now, BillingEngine.START_FEE_GROSZE);
+        UserHistoryCache.shared().rented(userId, transakcjaId, oplataId, filmId, now,
+                BillingEngine.START_FEE_GROSZE, POWOD_START);
+        logger.info("Użytkownik {} wypożyczył film {}", userId, filmId);
+        return String.format(Locale.US, "Wypożyczono. Opłata bieżąca: %.2f zł. Czas start!", OPLATA_STARTOWA);
+    }
+
+    /**
+     * Płatność jednym wywołaniem procedury {@code sp_oplac} ({@link TransactionRoutines}).
+     * Zwraca te same komunikaty co {@link #payTransaction(int, int)}.
+     */
+    private String payTransactionRoutine(int userId, int oplataId) {
+        long kwota;
+        int filmId;
+        int klientId;
+        boolean zwrot;
+        try (Connection conn = Database.connect("TransactionRepository.payTransactionRoutine");
+             CallableStatement cs = conn.prepareCall(TransactionRoutines.CALL_PAY)) {
+            cs.setInt(1, oplataId);
+            cs.setInt(2, userId);
+            cs.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
+            cs.setDouble(4, STAWKA_ZA_MINUTE);
+            try (ResultSet rs = cs.executeQuery()) {
+                if (!rs.next()) return "Błąd bazy danych";
+                switch (rs.getString("wynik")) {
+                    case "BRAK": return "Błąd: Opłata nie istnieje.";
+                    case "OPLACONA": return "Już opłacona!";
+                    default: break;
+                }
+                kwota = BillingEngine.toGrosze(rs.getDouble("kwota"));
+                filmId = rs.getInt("film_id");
+                klientId = rs.getInt("klient_id");
+                zwrot = rs.getBoolean("zwrot");
+            }
+        } catch (SQLException e) {
+            logger.error("Błąd płatności (procedura)", e);
+            return "Błąd bazy danych";
+        }
+        if (zwrot) {
+            FilmCatalog.shared().markAvailable(filmId, true);
+            logger.info("Auto-zwrot filmu ID: {} przy płatności.", filmId);
+        }
+        BillingEngine.shared().settled(klientId, oplataId);
+        // Opis opłaty i data zwrotu są ustalane w procedurze - historia zostanie wczytana ponownie.
+        UserHistoryCache.shared().forget(klientId);
+        return "Sukces! Płatność przyjęta: " + BillingEngine.format(kwota) + " zł. Film został automatycznie zwrócony.";
+    }
+
+    /**
+     * Realizuje wiele wypożyczeń w jednej transakcji (dla {@link RentGroupCommitter}).
+     * <p>
+     * Wszystkie filmy partii są blokowane jednym zapytaniem (w kolejności ID, aby uniknąć
+     * zakleszczeń), a wpisy Transakcja, zmiany dostępności i opłaty startowe zapisywane są
+     * wsadowo. Dostępność sprawdzana jest dla każdego żądania osobno - jeśli kilka żądań
+     * w partii dotyczy tego samego filmu, wypożycza go tylko pierwsze.
+     * </p>
+     *
+     * @param userIds ID użytkowników (pozycja = numer żądania).
+     * @param filmIds ID filmów (pozycja = numer żądania).
+     * @return Komunikaty dla kolejnych żądań, takie same jak z {@link #rentFilm(int, int)}.
+     * @throws SQLException Jeśli transakcja się nie powiodła (żadne wypożyczenie nie zostało zapisane).
+     */
+    String[] rentFilmsInOneTransaction(int[] userIds, int[] filmIds) throws SQLException {
+        int n = filmIds.length;
+        String[] results = new String[n];
+        List<Integer> winners = new ArrayList<>(n);
+        LocalDateTime rentedAt;
+        int[] transakcjaIds;
+        int[] oplataIds;
+
+        Connection conn = Database.connect("TransactionRepository.rentFilmsInOneTransaction");
+        if (conn == null) throw new SQLException("Brak połączenia z bazą");
+        try {
+            conn.setAutoCommit(false);
+
+            int[] distinct = Arrays.stream(filmIds).distinct().sorted().toArray();
+            Set<Integer> available = new HashSet<>();
+            StringBuilder lockSql = new StringBuilder("SELECT id, dostepny FROM Film WHERE id IN (");
+            for (int i = 0; i < distinct.length; i++) lockSql.append(i == 0 ? "?" : ", ?");
+            lockSql.append(") ORDER BY id FOR UPDATE");
+            try (PreparedStatement ps = conn.prepareStatement(lockSql.toString())) {
+                for (int i = 0; i < distinct.length; i++) ps.setInt(i + 1, distinct[i]);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) if (rs.getBoolean("dostepny")) available.add(rs.getInt("id"));
+                }
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (available.remove(filmIds[i])) winners.add(i);
+                else results[i] = "Film jest niedostępny";
+            }
+            if (winners.isEmpty()) {
+                conn.rollback();
+                return results;
+            }
+
+            rentedAt = LocalDateTime.now().withNano(0);
+            Timestamp now = Timestamp.valueOf(rentedAt);
+            transakcjaIds = new int[winners.size()];
+            String insertTrans = "INSERT INTO Transakcja (klient_id, film_id, dataWypozyczenia) VALUES (?, ?, ?)";
+            try (PreparedStatement ps = conn.prepareStatement(insertTrans, Statement.RETURN_GENERATED_KEYS)) {
+                for (int w : winners) {
+                    ps.setInt(1, userIds[w]);
+                    ps.setInt(2, filmIds[w]);
+                    ps.setTimestamp(3, now);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (int k = 0; k < transakcjaIds.length; k++) {
+                        if (!keys.next()) throw new SQLException("Brak wygenerowanych kluczy transakcji");
+                        transakcjaIds[k] = keys.getInt(1);
+                    }
+                }
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE Film SET dostepny = 0 WHERE id = ?")) {
+                for (int w : winners) {
+                    ps.setInt(1, filmIds[w]);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+
+            oplataIds = new int[transakcjaIds.length];
+            String feeSql = "INSERT INTO Oplata (transakcja_id, kwota, powod) VALUES (?, ?, ?)";
+            try (PreparedStatement ps = conn.prepareStatement(feeSql, Statement.RETURN_GENERATED_KEYS)) {
+                for (int transakcjaId : transakcjaIds) {
+                    ps.setInt(1, transakcjaId);
+                    ps.setDouble(2, OPLATA_STARTOWA);
+                    ps.setString(3, POWOD_START);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (int k = 0; k < oplataIds.length && keys.next(); k++) oplataIds[k] = keys.getInt(1);
+                }
+            }
+
+            conn.commit();
+        } catch (SQLException e) {
+            try { conn.rollback(); } catch (SQLException ex) {}
+            throw e;
+        } finally {
+            try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) {}
+        }
+
+        String ok = String.format(Locale.US, "Wypożyczono. Opłata bieżąca: %.2f zł. Czas start!", OPLATA_STARTOWA);
+        for (int k = 0; k < winners.size(); k++) {
+            int w = winners.get(k);
+            FilmCatalog.shared().markAvailable(filmIds[w], false);
+            BillingEngine.shared().rented(userIds[w], oplataIds[k], filmIds[w], rentedAt, BillingEngine.START_FEE_GROSZE);
+            UserHistoryCache.shared().rented(userIds[w], transakcjaIds[k], oplataIds[k], filmIds[w], rentedAt,
+                    BillingEngine.START_FEE_GROSZE, POWOD_START);
+            results[w] = ok;
+        }
+        logger.info("Zatwierdzono partię wypożyczeń: {} z {}", winners.size(), n);
+        return results;
+    }
+
+    /**
+     * Wczytuje nieopłacone opłaty użytkownika dla {@link BillingEngine}.
+     *
+     * @param userId ID użytkownika.
+     * @return Nieopłacone opłaty (kwoty w groszach).
+     * @throws SQLException W przypadku błędu bazy danych.
+     */
+    List<BillingEngine.OpenCharge> loadOpenCharges(int userId) throws SQLException {
+        List<BillingEngine.OpenCharge> result = new ArrayList<>();
+        String sql = "SELECT o.id, o.kwota, t.film_id, t.dataWypozyczenia, t.dataZwrotu " +
+                "FROM Oplata o JOIN Transakcja t ON o.transakcja_id = t.id " +
+                "WHERE t.klient_id = ? AND o.rachunek_id IS NULL";
+
+        Connection conn = Database.connect("TransactionRepository.loadOpenCharges");
+        if (conn == null) throw new SQLException("Brak połączenia z bazą");
+        try (conn; PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                UserHistoryCache.detectDatePrecision(rs.getMetaData(), 4);
+                while (rs.next()) {
+                    Timestamp dw = rs.getTimestamp("dataWypozyczenia");
+                    result.add(new BillingEngine.OpenCharge(rs.getInt("id"), rs.getInt("film_id"),
+                            BillingEngine.toGrosze(rs.getDouble("kwota")),
+                            dw == null ? 0 : BillingEngine.toMillis(dw),
+                            dw == null || rs.getTimestamp("dataZwrotu") != null));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rozlicza jednym rachunkiem wszystkie nieopłacone opłaty użytkownika i zwraca wypożyczone filmy.
+     * <p>
+     * Całość to jedna transakcja: blokada opłat użytkownika, wsadowe zamknięcie wypożyczeń
+     * i zwolnienie filmów, jeden wpis Rachunek z sumą oraz wsadowa aktualizacja opłat.
+     * Kwoty liczone są w groszach ({@link BillingEngine}).
+     * </p>
+     *
+     * @param userId ID użytkownika.
+     * @return Komunikat dla klienta (suma i liczba zwróconych filmów) lub informacja o błędzie.
+     */
+    public String payAll(int userId) {
+        Connection conn = Database.connect("TransactionRepository.payAll");
+        if (conn == null) return "Błąd połączenia";
+
+        List<Integer> returnedFilms = new ArrayList<>();
+        long total = 0;
+        try {
+            conn.setAutoCommit(false);
+
+            String sql = "SELECT o.id, o.kwota, t.id AS tid, t.film_id, t.dataWypozyczenia, t.dataZwrotu " +
+                    "FROM Oplata o JOIN Transakcja t ON o.transakcja_id = t.id " +
+                    "WHERE t.klient_id = ? AND o.rachunek_id IS NULL FOR UPDATE";
+            List<long[]> charges = new ArrayList<>();   // {oplataId, kwota w groszach, minuty lub -1}
+            List<int[]> toReturn = new ArrayList<>();   // {transakcjaId, filmId}
+            LocalDateTime now = LocalDateTime.now().withNano(0);
+            long teraz = BillingEngine.toMillis(Timestamp.valueOf(now));
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, userId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        long kwota = BillingEngine.toGrosze(rs.getDouble("kwota"));
+                        Timestamp dw = rs.getTimestamp("dataWypozyczenia");
+                        long minuty = -1;
+                        if (rs.getTimestamp("dataZwrotu") == null && dw != null) {
+                            long start = BillingEngine.toMillis(dw);
+                            minuty = BillingEngine.minutes(start, teraz);
+                            kwota = BillingEngine.charge(kwota, start, teraz);
+                            toReturn.add(new int[] {rs.getInt("tid"), rs.getInt("film_id")});
+                        }
+                        charges.add(new long[] {rs.getInt("id"), kwota, minuty});
+                        total += kwota;
+                    }
+                }
+            }
+            if (charges.isEmpty()) {
+                conn.rollback();
+                return "Brak należności do zapłaty.";
+            }
+
+            try (PreparedStatement closeTrans = conn.prepareStatement("UPDATE Transakcja SET dataZwrotu = ? WHERE id = ?");
+                 PreparedStatement freeFilm = conn.prepareStatement("UPDATE Film SET dostepny = 1 WHERE id = ?")) {
+                for (int[] r : toReturn) {
+                    closeTrans.setTimestamp(1, Timestamp.valueOf(now));
+                    closeTrans.setInt(2, r[0]);
+                    closeTrans.addBatch();
+                    freeFilm.setInt(1, r[1]);
+                    freeFilm.addBatch();
+                    returnedFilms.add(r[1]);
+                }
+                if (!toReturn.isEmpty()) {
+                    closeTrans.executeBatch();
+                    freeFilm.executeBatch();
+                }
+            }
+
+            int rachunekId = -1;
+            String insRachunek = "INSERT INTO Rachunek (klient_id, dataWystawienia, lacznaKwota) VALUES (?, ?, ?)";
+            try (PreparedStatement ps = conn.prepareStatement(insRachunek, Statement.RETURN_GENERATED_KEYS)) {
+                ps.setInt(1, userId);
+                ps.setDate(2, Date.valueOf(now.toLocalDate()));
+                ps.setDouble(3, total / 100.0);
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    if (keys.next()) rachunekId = keys.getInt(1);
+                }
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE Oplata SET kwota = ?, powod = ?, rachunek_id = ? WHERE id = ?")) {
+                for (long[] c : charges) {
+                    ps.setDouble(1, c[1] / 100.0);
+                    ps.setString(2, payAllReason(c[2]));
+                    ps.setInt(3, rachunekId);
+                    ps.setInt(4, (int) c[0]);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+
+            conn.commit();
+            for (long[] c : charges) {
+                UserHistoryCache.shared().paid(userId, (int) c[0], c[1], payAllReason(c[2]), c[2] < 0 ? null : now);
+            }
+        } catch (SQLException e) {
+            try { conn.rollback(); } catch (SQLException ex) {}
+            logger.error("Błąd zbiorczej płatności", e);
+            return "Błąd bazy danych";
+        } finally {
+            try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) {}
+        }
+
+        for (int filmId : returnedFilms) FilmCatalog.shared().markAvailable(filmId, true);
+        BillingEngine.shared().forget(userId);
+        logger.info("Użytkownik {} rozliczył wszystkie opłaty, zwrócono filmów: {}", userId, returnedFilms.size());
+        return "Sukces! Płatność przyjęta: " + BillingEngine.format(total) + " zł. Zwrócono filmów: " + returnedFilms.size() + ".";
+    }
+
+    private static String payAllReason(long minutes) {
+        return minutes < 0 ? "Opłacenie wypożyczenia" : String.format(Locale.US, "Startowe + Czas (%d min)", minutes);
+    }
+}
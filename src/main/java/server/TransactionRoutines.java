@@ -0,0 +1,136 @@
+package server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Procedury składowane MySQL realizujące wypożyczenie i płatność w jednym wywołaniu.
+ * <p>
+ * W trybie standardowym {@link TransactionRepository} wykonuje każde zapytanie osobno, więc blokady
+ * wierszy (FOR UPDATE) są trzymane przez kilka wymian z bazą. Po włączeniu {@code -Dtx.mode=routines}
+ * serwer przy starcie instaluje procedury {@code sp_wypozycz_film} i {@code sp_oplac},
+ * a repozytorium wywołuje je przez {@link java.sql.CallableStatement} - cała transakcja
+ * trwa jedną wymianę. Procedury zwracają jeden wiersz wyniku, z którego repozytorium
+ * buduje te same komunikaty co w trybie standardowym.
+ * </p>
+ * <p>
+ * Tryb działa tylko z MySQL. Dla innych baz (np. H2 w testach) lub przy błędzie instalacji
+ * pozostaje tryb standardowy.
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class TransactionRoutines {
+
+    /** Logger log4j do rejestrowania instalacji procedur. */
+    private static final Logger logger = LogManager.getLogger(TransactionRoutines.class);
+
+    /** Wywołanie procedury wypożyczenia: klient, film, opłata startowa, powód, data. */
+    static final String CALL_RENT = "{call sp_wypozycz_film(?, ?, ?, ?, ?)}";
+    /** Wywołanie procedury płatności: opłata, klient (właściciel), data, stawka za minutę. */
+    static final String CALL_PAY = "{call sp_oplac(?, ?, ?, ?)}";
+
+    private static final String RENT_PROCEDURE =
+            "CREATE PROCEDURE sp_wypozycz_film(IN p_klient INT, IN p_film INT, IN p_oplata DOUBLE, " +
+            "IN p_powod VARCHAR(255), IN p_teraz DATETIME)\n" +
+            "BEGIN\n" +
+            "  DECLARE v_dostepny BOOLEAN DEFAULT NULL;\n" +
+            "  DECLARE v_trans INT;\n" +
+            "  DECLARE EXIT HANDLER FOR SQLEXCEPTION BEGIN ROLLBACK; RESIGNAL; END;\n" +
+            "  START TRANSACTION;\n" +
+            "  SELECT dostepny INTO v_dostepny FROM Film WHERE id = p_film FOR UPDATE;\n" +
+            "  IF v_dostepny IS NULL OR NOT v_dostepny THEN\n" +
+            "    ROLLBACK;\n" +
+            "    SELECT 0 AS wynik, NULL AS transakcja_id, NULL AS oplata_id;\n" +
+            "  ELSE\n" +
+            "    INSERT INTO Transakcja (klient_id, film_id, dataWypozyczenia) VALUES (p_klient, p_film, p_teraz);\n" +
+            "    SET v_trans = LAST_INSERT_ID();\n" +
+            "    INSERT INTO Oplata (transakcja_id, kwota, powod) VALUES (v_trans, p_oplata, p_powod);\n" +
+            "    UPDATE Film SET dostepny = 0 WHERE id = p_film;\n" +
+            "    COMMIT;\n" +
+            "    SELECT 1 AS wynik, v_trans AS transakcja_id, LAST_INSERT_ID() AS oplata_id;\n" +
+            "  END IF;\n" +
+            "END";
+
+    private static final String PAY_PROCEDURE =
+            "CREATE PROCEDURE sp_oplac(IN p_oplata INT, IN p_klient INT, IN p_teraz DATETIME, IN p_stawka DOUBLE)\n" +
+            "BEGIN\n" +
+            "  DECLARE v_jest INT DEFAULT 0;\n" +
+            "  DECLARE v_klient INT; DECLARE v_trans INT; DECLARE v_film INT; DECLARE v_rachunek INT;\n" +
+            "  DECLARE v_kwota DOUBLE; DECLARE v_wyp DATETIME; DECLARE v_zwrot DATETIME;\n" +
+            "  DECLARE v_minuty BIGINT; DECLARE v_opis VARCHAR(255) DEFAULT 'Opłacenie wypożyczenia';\n" +
+            "  DECLARE EXIT HANDLER FOR SQLEXCEPTION BEGIN ROLLBACK; RESIGNAL; END;\n" +
+            "  START TRANSACTION;\n" +
+            "  SELECT 1, t.klient_id, t.id, t.film_id, t.dataWypozyczenia, t.dataZwrotu, o.kwota, o.rachunek_id\n" +
+            "    INTO v_jest, v_klient, v_trans, v_film, v_wyp, v_zwrot, v_kwota, v_rachunek\n" +
+            "    FROM Oplata o JOIN Transakcja t ON o.transakcja_id = t.id WHERE o.id = p_oplata AND t.klient_id = p_klient FOR UPDATE;\n" +
+            "  IF v_jest = 0 THEN\n" +
+            "    ROLLBACK;\n" +
+            "    SELECT 'BRAK' AS wynik, NULL AS kwota, NULL AS film_id, 0 AS zwrot, NULL AS klient_id;\n" +
+            "  ELSEIF v_rachunek IS NOT NULL THEN\n" +
+            "    ROLLBACK;\n" +
+            "    SELECT 'OPLACONA' AS wynik, NULL AS kwota, NULL AS film_id, 0 AS zwrot, NULL AS klient_id;\n" +
+            "  ELSE\n" +
+            "    IF v_zwrot IS NULL THEN\n" +
+            "      SET v_minuty = GREATEST(TIMESTAMPDIFF(MINUTE, v_wyp, p_teraz), 0);\n" +
+            "      SET v_kwota = v_kwota + v_minuty * p_stawka;\n" +
+            "      SET v_opis = CONCAT('Startowe + Czas (', v_minuty, ' min)');\n" +
+            "      UPDATE Transakcja SET dataZwrotu = p_teraz WHERE id = v_trans;\n" +
+            "      UPDATE Film SET dostepny = 1 WHERE id = v_film;\n" +
+            "    END IF;\n" +
+            "    INSERT INTO Rachunek (klient_id, dataWystawienia, lacznaKwota) VALUES (v_klient, DATE(p_teraz), v_kwota);\n" +
+            "    UPDATE Oplata SET kwota = v_kwota, powod = v_opis, rachunek_id = LAST_INSERT_ID() WHERE id = p_oplata;\n" +
+            "    COMMIT;\n" +
+            "    SELECT 'OK' AS wynik, v_kwota AS kwota, v_film AS film_id, v_zwrot IS NULL AS zwrot, v_klient AS klient_id;\n" +
+            "  END IF;\n" +
+            "END";
+
+    /** Czy procedury zostały zainstalowane i mają być używane. */
+    private static volatile boolean active;
+
+    private TransactionRoutines() {
+    }
+
+    /**
+     * Instaluje (lub aktualizuje) procedury, jeśli włączono {@code -Dtx.mode=routines}
+     * i baza to MySQL. Wywoływane raz przy starcie serwera.
+     *
+     * @return {@code true}, jeśli tryb procedur jest aktywny.
+     */
+    public static boolean installIfEnabled() {
+        if (!"routines".equalsIgnoreCase(System.getProperty("tx.mode"))) return false;
+        if (!Database.isMySql()) {
+            logger.warn("Tryb tx.mode=routines wymaga MySQL - używam trybu standardowego");
+            return false;
+        }
+        Connection conn = Database.connect();
+        if (conn == null) {
+            logger.error("Brak połączenia z bazą - procedury nie zostały zainstalowane");
+            return false;
+        }
+        try (conn; Statement st = conn.createStatement()) {
+            st.execute("DROP PROCEDURE IF EXISTS sp_wypozycz_film");
+            st.execute(RENT_PROCEDURE);
+            st.execute("DROP PROCEDURE IF EXISTS sp_oplac");
+            st.execute(PAY_PROCEDURE);
+            active = true;
+            logger.info("Zainstalowano procedury transakcji - wypożyczenie i płatność w jednym wywołaniu");
+        } catch (SQLException e) {
+            logger.error("Nie udało się zainstalować procedur - używam trybu standardowego", e);
+            active = false;
+        }
+        return active;
+    }
+
+    /**
+     * @return {@code true}, jeśli repozytorium ma wywoływać procedury zamiast pojedynczych zapytań.
+     */
+    static boolean isActive() {
+        return active;
+    }
+}
@@ -0,0 +1,338 @@
+package server;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Model odczytu historii użytkowników dla komend MY_RENTS i MY_TRANS.
+ * <p>
+ * Dla ostatnio aktywnych użytkowników trzyma w pamięci ich wypożyczenia i opłaty (wczytane z bazy
+ * raz, dwoma zapytaniami). Repozytorium transakcji po zatwierdzeniu wypożyczenia lub płatności
+ * dopisuje nowe pozycje albo oznacza opłaty jako opłacone ({@link #rented}, {@link #paid}), więc
+ * kolejne odświeżenia widoków to wyszukanie w mapie i sformatowanie wierszy - bez łączenia tabel
+ * Transakcja/Film/Oplata dla całej historii użytkownika. Kwoty otwartych wypożyczeń liczone są
+ * przy każdym odczycie ({@link BillingEngine#charge(long, long, long)}).
+ * </p>
+ * <p>
+ * Pamięć jest ograniczona liczbą użytkowników ({@code -Dhistory.cache.users}, domyślnie 10000)
+ * i łączną liczbą pozycji ({@code -Dhistory.cache.rows}, domyślnie 1000000); po przekroczeniu
+ * usuwani są najdawniej używani użytkownicy (LRU).
+ * </p>
+ *
+ * @author Igor Błędziński, Łukasz Gierczak
+ * @version 1.0
+ */
+public final class UserHistoryCache {
+
+    private static final DateTimeFormatter RETURN_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** Wspólna instancja używana przez serwer. */
+    private static final UserHistoryCache SHARED = new UserHistoryCache(new TransactionRepository(),
+            Integer.getInteger("history.cache.users", 10_000), Integer.getInteger("history.cache.rows", 1_000_000));
+
+    /**
+     * Czy kolumny dat transakcji przechowują tylko dzień (typ DATE, jak w schemacie MySQL),
+     * a nie pełny znacznik czasu. Ustalane przy wczytywaniu historii z bazy.
+     */
+    private static volatile boolean dateOnly;
+
+    private final TransactionRepository source;
+    private final int maxUsers;
+    private final long maxRows;
+    /** Historie użytkowników w kolejności ostatniego użycia; dostęp pod blokadą samej mapy. */
+    private final LinkedHashMap<Integer, History> users = new LinkedHashMap<>(64, 0.75f, true);
+    private long rows;
+
+    /**
+     * @param source   Repozytorium, z którego wczytywana jest historia użytkownika.
+     * @param maxUsers Maksymalna liczba użytkowników w pamięci.
+     * @param maxRows  Maksymalna łączna liczba wypożyczeń i opłat w pamięci.
+     */
+    UserHistoryCache(TransactionRepository source, int maxUsers, long maxRows) {
+        this.source = source;
+        this.maxUsers = Math.max(1, maxUsers);
+        this.maxRows = Math.max(1, maxRows);
+    }
+
+    /**
+     * @return Wspólna instancja.
+     */
+    public static UserHistoryCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Zwraca widok MY_RENTS: wypożyczenia użytkownika (aktywne i zwrócone).
+     *
+     * @param userId ID użytkownika.
+     * @return Wiersze w formacie {@code id. tytuł - stan}.
+     * @throws SQLException Jeśli wczytanie historii z bazy się nie powiodło.
+     */
+    public List<String> rentals(int userId) throws SQLException {
+        History h = history(userId);
+        synchronized (h) {
+            List<String> list = new ArrayList<>(h.rentals.size());
+            for (Rental r : h.rentals.values()) list.add(r.format());
+            return list;
+        }
+    }
+
+    /**
+     * Zwraca widok MY_TRANS: opłaty użytkownika z kwotami otwartych wypożyczeń na chwilę obecną.
+     *
+     * @param userId ID użytkownika.
+     * @return Wiersze w formacie {@code Opłata id | kwota: .. zł | powód: .. | Opłacona: TAK/NIE}.
+     * @throws SQLException Jeśli wczytanie historii z bazy się nie powiodło.
+     */
+    public List<String> transactions(int userId) throws SQLException {
+        History h = history(userId);
+        long now = BillingEngine.nowMillis();
+        synchronized (h) {
+            List<String> list = new ArrayList<>(h.fees.size());
+            for (Fee f : h.fees.values()) list.add(f.format(now));
+            return list;
+        }
+    }
+
+    /**
+     * Dopisuje zatwierdzone wypożyczenie do historii użytkownika (jeśli jest w pamięci).
+     *
+     * @param userId       ID użytkownika.
+     * @param transakcjaId ID nowej transakcji.
+     * @param oplataId     ID opłaty startowej.
+     * @param filmId       ID filmu.
+     * @param rentedAt     Data wypożyczenia zapisana w bazie.
+     * @param kwotaGrosze  Opłata startowa w groszach.
+     * @param powod        Opis opłaty.
+     */
+    void rented(int userId, int transakcjaId, int oplataId, int filmId, LocalDateTime rentedAt,
+                long kwotaGrosze, String powod) {
+        History h = cached(userId);
+        if (h == null) return;
+        String tytul;
+        try {
+            Film film = FilmCatalog.shared().find(filmId);
+            tytul = film == null ? null : film.tytul();
+        } catch (SQLException e) {
+            tytul = null;
+        }
+        if (tytul == null || transakcjaId <= 0 || oplataId <= 0) {
+            forget(userId);
+            return;
+        }
+        int size;
+        synchronized (h) {
+            // Historia jeszcze nie wczytana - wczytanie i tak zobaczy zatwierdzone wypożyczenie.
+            if (!h.loaded) return;
+            h.rentals.putIfAbsent(transakcjaId, new Rental(filmId, tytul, null));
+            h.fees.putIfAbsent(oplataId, new Fee(oplataId, transakcjaId, kwotaGrosze, powod, false,
+                    true, startMillis(rentedAt)));
+            size = h.rentals.size() + h.fees.size();
+        }
+        resized(userId, h, size);
+    }
+
+    /**
+     * Oznacza opłatę jako opłaconą po zatwierdzeniu płatności; przy zwrocie filmu zamyka też wypożyczenie.
+     *
+     * @param userId      ID użytkownika.
+     * @param oplataId    ID opłaty.
+     * @param kwotaGrosze Kwota końcowa w groszach.
+     * @param powod       Opis opłaty po płatności.
+     * @param returnedAt  Data zwrotu filmu zapisana w bazie lub {@code null}, gdy film był już zwrócony.
+     */
+    void paid(int userId, int oplataId, long kwotaGrosze, String powod, LocalDateTime returnedAt) {
+        History h = cached(userId);
+        if (h == null) return;
+        boolean stale;
+        synchronized (h) {
+            if (!h.loaded) return;
+            Fee fee = h.fees.get(oplataId);
+            stale = fee == null;
+            if (fee != null) {
+                h.fees.put(oplataId, new Fee(oplataId, fee.transakcjaId(), kwotaGrosze, powod, true,
+                        fee.open() && returnedAt == null, fee.startMillis()));
+                Rental rental = h.rentals.get(fee.transakcjaId());
+                if (returnedAt != null && rental != null && rental.zwrot() == null) {
+                    h.rentals.put(fee.transakcjaId(), new Rental(rental.filmId(), rental.tytul(), returnText(returnedAt)));
+                }
+            }
+        }
+        // Opłata spoza wczytanej historii - historia jest nieaktualna.
+        if (stale) forget(userId);
+    }
+
+    /**
+     * Usuwa historię użytkownika z pamięci (po zmianach, których nie da się odtworzyć przyrostowo);
+     * kolejny odczyt wczyta ją z bazy.
+     *
+     * @param userId ID użytkownika.
+     */
+    void forget(int userId) {
+        synchronized (users) {
+            History h = users.remove(userId);
+            if (h != null) rows -= h.size;
+        }
+    }
+
+    /**
+     * Usuwa z pamięci historie wszystkich użytkowników (np. po wymianie bazy danych).
+     */
+    void forgetAll() {
+        synchronized (users) {
+            users.clear();
+            rows = 0;
+        }
+    }
+
+    /**
+     * @return Liczba użytkowników, których historia jest w pamięci.
+     */
+    public int size() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    private History cached(int userId) {
+        synchronized (users) {
+            return users.get(userId);
+        }
+    }
+
+    private History history(int userId) throws SQLException {
+        History h;
+        synchronized (users) {
+            h = users.get(userId);
+            if (h == null) {
+                h = new History();
+                users.put(userId, h);
+            }
+        }
+        int size;
+        synchronized (h) {
+            if (h.loaded) return h;
+            try {
+                for (LoadedRental r : source.loadRentals(userId)) h.rentals.put(r.transakcjaId(), r.rental());
+                for (Fee f : source.loadFees(userId)) h.fees.put(f.oplataId(), f);
+            } catch (SQLException e) {
+                h.rentals.clear();
+                h.fees.clear();
+                forget(userId);
+                throw e;
+            }
+            h.loaded = true;
+            size = h.rentals.size() + h.fees.size();
+        }
+        resized(userId, h, size);
+        return h;
+    }
+
+    /** Aktualizuje łączny rozmiar pamięci i usuwa najdawniej używanych użytkowników. */
+    private void resized(int userId, History h, int size) {
+        synchronized (users) {
+            if (users.get(userId) != h) return; // usunięta w międzyczasie
+            rows += size - h.size;
+            h.size = size;
+            Iterator<History> it = users.values().iterator();
+            while ((users.size() > maxUsers || rows > maxRows) && users.size() > 1) {
+                rows -= it.next().size;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Zapamiętuje, czy kolumny dat transakcji przechowują tylko dzień.
+     *
+     * @param md     Metadane wyniku zapytania.
+     * @param column Numer kolumny z datą (od 1).
+     * @throws SQLException W przypadku błędu odczytu metadanych.
+     */
+    static void detectDatePrecision(ResultSetMetaData md, int column) throws SQLException {
+        dateOnly = md.getColumnType(column) == Types.DATE;
+    }
+
+    /**
+     * @param returnedAt Data zwrotu.
+     * @return Data zwrotu w postaci wyświetlanej w MY_RENTS (dzień lub dzień i godzina, zależnie od schematu).
+     */
+    static String returnText(LocalDateTime returnedAt) {
+        return dateOnly ? returnedAt.toLocalDate().toString() : returnedAt.format(RETURN_FORMAT);
+    }
+
+    /**
+     * @param rentedAt Data wypożyczenia zapisana w bazie.
+     * @return Chwila wypożyczenia w takiej postaci, w jakiej zostanie odczytana z bazy ({@link BillingEngine#toMillis(Timestamp)}).
+     */
+    static long startMillis(LocalDateTime rentedAt) {
+        LocalDateTime stored = dateOnly ? rentedAt.toLocalDate().atStartOfDay() : rentedAt;
+        return BillingEngine.toMillis(Timestamp.valueOf(stored));
+    }
+
+    /**
+     * Wypożyczenie w historii użytkownika.
+     *
+     * @param filmId ID filmu.
+     * @param tytul  Tytuł filmu.
+     * @param zwrot  Data zwrotu ({@link #returnText}) lub {@code null}, gdy film jest wypożyczony.
+     */
+    record Rental(int filmId, String tytul, String zwrot) {
+        String format() {
+            return filmId + ". " + tytul + " - " + (zwrot == null ? "Wypożyczony" : "Zwrócony (" + zwrot + ")");
+        }
+    }
+
+    /**
+     * Wypożyczenie wczytane z bazy razem z ID transakcji.
+     *
+     * @param transakcjaId ID transakcji.
+     * @param rental       Wypożyczenie.
+     */
+    record LoadedRental(int transakcjaId, Rental rental) {
+    }
+
+    /**
+     * Opłata w historii użytkownika.
+     *
+     * @param oplataId     ID opłaty.
+     * @param transakcjaId ID transakcji.
+     * @param kwotaGrosze  Kwota zapisana w opłacie.
+     * @param powod        Opis opłaty.
+     * @param paid         Czy opłata ma rachunek.
+     * @param open         Czy film nie został zwrócony (kwota rośnie z czasem).
+     * @param startMillis  Chwila wypożyczenia ({@link BillingEngine#toMillis(Timestamp)}).
+     */
+    record Fee(int oplataId, int transakcjaId, long kwotaGrosze, String powod, boolean paid, boolean open,
+               long startMillis) {
+        String format(long nowMillis) {
+            long kwota = kwotaGrosze;
+            String opis = powod;
+            // Film nie oddany i nie opłacony - doliczamy czas "na żywo"
+            if (!paid && open) {
+                kwota = BillingEngine.charge(kwotaGrosze, startMillis, nowMillis);
+                opis = String.format(Locale.US, "Suma bieżąca (Start + %d min)", BillingEngine.minutes(startMillis, nowMillis));
+            }
+            return String.format(Locale.US, "Opłata %d | kwota: %s zł | powód: %s | Opłacona: %s",
+                    oplataId, BillingEngine.format(kwota), opis, (paid ? "TAK" : "NIE"));
+        }
+    }
+
+    /** Historia jednego użytkownika; pozycje w kolejności ID (tak jak w bazie). */
+    private static final class History {
+        private final LinkedHashMap<Integer, Rental> rentals = new LinkedHashMap<>();
+        private final LinkedHashMap<Integer, Fee> fees = new LinkedHashMap<>();
+        private boolean loaded;
+        /** Liczba pozycji wliczona do rozmiaru pamięci (pod blokadą mapy użytkowników). */
+        private int size;
+    }
+}
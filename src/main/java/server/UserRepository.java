@@ -6,8 +6,10 @@ import org.apache.logging.log4j.Logger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Repozytorium zarządzające danymi użytkowników, uwierzytelnianiem i operacjami administracyjnymi.
@@ -34,6 +36,47 @@ public class UserRepository {
     public UserRepository() {
     }
 
+    /**
+     * Dodaje kolumnę {@code Uzytkownik.dataRejestracji} w bazach utworzonych przed jej wprowadzeniem.
+     * Wywoływane raz przy starcie serwera; gdy kolumna istnieje, nic nie robi.
+     * <p>
+     * Data rejestracji istniejących kont nie jest znana. Domyślne {@code CURRENT_TIMESTAMP} oznaczałoby,
+     * że każde z nich wygląda na świeżo założone i nigdy nie jest uznawane za nieaktywne
+     * ({@link #deleteInactiveUsers(LocalDate, int, Consumer)}), dlatego istniejące wiersze dostają
+     * datę pierwszego wypożyczenia (z archiwum, a gdy go brak - z tabeli Transakcja), a konta bez
+     * wypożyczeń datę {@code 2000-01-01}. Nowe konta dostają bieżący czas z wartości domyślnej kolumny.
+     * </p>
+     *
+     * @return {@code true}, jeśli kolumna została dodana.
+     */
+    public static boolean migrateRegistrationDate() {
+        Connection conn = Database.connect("UserRepository.migrateRegistrationDate");
+        if (conn == null) {
+            logger.error("Brak połączenia z bazą - nie sprawdzono kolumny dataRejestracji");
+            return false;
+        }
+        try (conn; Statement st = conn.createStatement()) {
+            DatabaseMetaData md = conn.getMetaData();
+            try (ResultSet rs = md.getColumns(conn.getCatalog(), null, "Uzytkownik", "dataRejestracji")) {
+                if (rs.next()) return false;
+            }
+            boolean archive;
+            try (ResultSet rs = md.getTables(conn.getCatalog(), null, "Transakcja_Archiwum", null)) {
+                archive = rs.next();
+            }
+            st.executeUpdate("ALTER TABLE Uzytkownik ADD COLUMN dataRejestracji TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP");
+            int rows = st.executeUpdate("UPDATE Uzytkownik SET dataRejestracji = COALESCE(" +
+                    (archive ? "(SELECT MIN(a.dataWypozyczenia) FROM Transakcja_Archiwum a WHERE a.klient_id = Uzytkownik.id), " : "") +
+                    "(SELECT MIN(t.dataWypozyczenia) FROM Transakcja t WHERE t.klient_id = Uzytkownik.id), " +
+                    "TIMESTAMP '2000-01-01 00:00:00')");
+            logger.info("Dodano kolumnę Uzytkownik.dataRejestracji, uzupełniono kont: {}", rows);
+            return true;
+        } catch (SQLException e) {
+            logger.error("Nie udało się dodać kolumny Uzytkownik.dataRejestracji", e);
+            return false;
+        }
+    }
+
     /**
      * Rejestruje nowego użytkownika w systemie.
      *
@@ -53,7 +96,7 @@ public class UserRepository {
             logger.warn("Próba rejestracji z pustymi danymi.");
             return false;
         }
-        Connection conn = Database.connect();
+        Connection conn = Database.connect("UserRepository.registerUser");
         if (conn == null) return false;
         try {
             try (PreparedStatement check = conn.prepareStatement("SELECT COUNT(*) FROM Uzytkownik WHERE username = ?")) {
@@ -99,7 +142,7 @@ public class UserRepository {
      */
     public int getUserIdByCredentials(String username, String password) {
         if (username == null || password == null) return -1;
-        Connection conn = Database.connect();
+        Connection conn = Database.connect("UserRepository.getUserIdByCredentials");
         if (conn == null) return -1;
         try (PreparedStatement ps = conn.prepareStatement("SELECT id, password_hash FROM Uzytkownik WHERE username = ?")) {
             ps.setString(1, username);
@@ -121,6 +164,26 @@ public class UserRepository {
         }
     }
 
+    /**
+     * Sprawdza, czy użytkownik jest administratorem (konto 'admin').
+     *
+     * @param userId ID użytkownika.
+     * @return {@code true} dla konta administratora; {@code false} także przy błędzie bazy.
+     */
+    public boolean isAdmin(int userId) {
+        Connection conn = Database.connect("UserRepository.isAdmin");
+        if (conn == null) return false;
+        try (conn; PreparedStatement ps = conn.prepareStatement("SELECT username FROM Uzytkownik WHERE id = ?")) {
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && "admin".equals(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            logger.error("Błąd sprawdzania uprawnień", e);
+            return false;
+        }
+    }
+
     /**
      * Pobiera listę wszystkich użytkowników (dla panelu administratora).
      * <p>
@@ -132,7 +195,7 @@ public class UserRepository {
     public List<String> getAllUsers() {
         List<String> users = new ArrayList<>();
         String sql = "SELECT id, username FROM Uzytkownik WHERE username != 'admin'"; // Nie pokazujemy admina na liście do usunięcia
-        try (Connection conn = Database.connect();
+        try (Connection conn = Database.connect("UserRepository.getAllUsers");
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
@@ -147,66 +210,190 @@ public class UserRepository {
     /**
      * Usuwa użytkownika i wszystkie powiązane z nim dane z systemu.
      *
-     * <br>Operacja jest wykonywana w transakcji, aby zachować spójność bazy danych.
-     * Kolejność usuwania (Kaskada):
+     * <br>Operacja jest wykonywana w transakcji, aby zachować spójność bazy danych
+     * (kolejność usuwania opisuje {@link #deleteUsers(List, int, Consumer)}).
+     *
+     * @param userId ID użytkownika do usunięcia.
+     * @return {@code true} jeśli operacja się powiodła.
+     */
+    public boolean deleteUser(int userId) {
+        Connection conn = Database.connect("UserRepository.deleteUser");
+        if (conn == null) return false;
+        try {
+            conn.setAutoCommit(false);
+            List<Integer> ids = List.of(userId);
+            List<Integer> heldFilms = new ArrayList<>();
+            int rows = deleteChunk(conn, ids, heldFilms);
+            conn.commit();
+            afterDelete(ids, heldFilms);
+            logger.info("Usunięto użytkownika ID: {}", userId);
+            return rows > 0;
+        } catch (SQLException e) {
+            try { conn.rollback(); } catch (SQLException ex) {}
+            logger.error("Błąd usuwania użytkownika ID " + userId, e);
+            return false;
+        } finally {
+            try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) {}
+        }
+    }
+
+    /**
+     * Usuwa wielu użytkowników porcjami (ADMIN_DEL_USERS).
+     *
+     * <br>Każda porcja (do {@code chunkSize} użytkowników) to jedna krótka transakcja z zapytaniami
+     * zbiorowymi ({@code ... WHERE klient_id IN (...)}) zamiast kilku zapytań na użytkownika:
      * <ol>
-     * <li>Opłaty (tabela Oplata)</li>
+     * <li>Odblokowanie filmów trzymanych przez użytkowników</li>
+     * <li>Opłaty (tabela Oplata) i archiwum (Oplata_Archiwum, Transakcja_Archiwum)</li>
      * <li>Rachunki (tabela Rachunek)</li>
-     * <li>Odblokowanie filmów trzymanych przez użytkownika</li>
      * <li>Transakcje (tabela Transakcja)</li>
      * <li>Dane osobowe (tabela Klient)</li>
      * <li>Konto logowania (tabela Uzytkownik)</li>
      * </ol>
+     * Konto 'admin' nigdy nie jest usuwane. Błąd przerywa pracę - porcje zatwierdzone wcześniej pozostają usunięte.
      *
-     * @param userId ID użytkownika do usunięcia.
-     * @return {@code true} jeśli operacja się powiodła.
+     * @param userIds   ID użytkowników do usunięcia.
+     * @param chunkSize Maksymalna liczba użytkowników w jednej transakcji.
+     * @param progress  Wywoływane po każdej zatwierdzonej porcji z ID usuniętych w niej użytkowników.
+     * @return Łączna liczba usuniętych użytkowników.
+     * @throws SQLException Jeśli usunięcie porcji się nie powiodło.
      */
-    public boolean deleteUser(int userId) {
-        Connection conn = Database.connect();
-        if (conn == null) return false;
+    public int deleteUsers(List<Integer> userIds, int chunkSize, Consumer<List<Integer>> progress) throws SQLException {
+        int size = Math.max(1, chunkSize);
+        int total = 0;
+        for (int from = 0; from < userIds.size(); from += size) {
+            List<Integer> chunk = userIds.subList(from, Math.min(userIds.size(), from + size));
+            String sql = "SELECT id FROM Uzytkownik WHERE username <> 'admin' AND id IN " + placeholders(chunk.size());
+            total += deleteChunk(sql, chunk, progress);
+        }
+        return total;
+    }
+
+    /**
+     * Usuwa porcjami użytkowników nieaktywnych od podanego dnia: zarejestrowanych przed tą datą,
+     * bez wypożyczeń od tej daty (również w archiwum) i bez filmów, które wciąż mają wypożyczone.
+     * Konta założone później nie są usuwane, nawet jeśli nic jeszcze nie wypożyczyły.
+     * Kolejność i zasady usuwania jak w {@link #deleteUsers(List, int, Consumer)}.
+     *
+     * @param since     Data, od której użytkownik nie wypożyczył żadnego filmu (i przed którą się zarejestrował).
+     * @param chunkSize Maksymalna liczba użytkowników w jednej transakcji.
+     * @param progress  Wywoływane po każdej zatwierdzonej porcji z ID usuniętych w niej użytkowników.
+     * @return Łączna liczba usuniętych użytkowników.
+     * @throws SQLException Jeśli usunięcie porcji się nie powiodło.
+     */
+    public int deleteInactiveUsers(LocalDate since, int chunkSize, Consumer<List<Integer>> progress) throws SQLException {
+        int size = Math.max(1, chunkSize);
+        Timestamp from = Timestamp.valueOf(since.atStartOfDay());
+        // Usunięci użytkownicy przestają spełniać warunek, więc kolejne zapytanie zwraca następną porcję.
+        String sql = "SELECT u.id FROM Uzytkownik u WHERE u.username <> 'admin' AND u.dataRejestracji < ? " +
+                "AND NOT EXISTS (SELECT 1 FROM Transakcja t WHERE t.klient_id = u.id " +
+                "AND (t.dataWypozyczenia >= ? OR t.dataZwrotu IS NULL)) " +
+                "AND NOT EXISTS (SELECT 1 FROM Transakcja_Archiwum a WHERE a.klient_id = u.id AND a.dataWypozyczenia >= ?) " +
+                "ORDER BY u.id LIMIT " + size;
+        int total = 0;
+        int n;
+        do {
+            n = deleteChunk(sql, List.of(), progress, from, from, from);
+            total += n;
+        } while (n == size);
+        return total;
+    }
+
+    /**
+     * Wybiera użytkowników zapytaniem {@code select} i usuwa ich w jednej transakcji.
+     *
+     * @param select     Zapytanie zwracające ID użytkowników do usunięcia.
+     * @param params     Parametry całkowite zapytania (w kolejności).
+     * @param progress   Wywoływane po zatwierdzeniu z ID usuniętych użytkowników.
+     * @param timestamps Dodatkowe parametry (daty) zapytania, po parametrach całkowitych.
+     * @return Liczba usuniętych użytkowników.
+     */
+    private int deleteChunk(String select, List<Integer> params, Consumer<List<Integer>> progress,
+                            Timestamp... timestamps) throws SQLException {
+        Connection conn = Database.connect("UserRepository.deleteUsers");
+        if (conn == null) throw new SQLException("Brak połączenia z bazą");
+        List<Integer> ids = new ArrayList<>();
+        List<Integer> heldFilms = new ArrayList<>();
         try {
             conn.setAutoCommit(false);
-
-            String delOplaty = "DELETE o FROM Oplata o JOIN Transakcja t ON o.transakcja_id = t.id WHERE t.klient_id = ?";
-            try (PreparedStatement ps = conn.prepareStatement(delOplaty)) {
-                ps.setInt(1, userId);
-                ps.executeUpdate();
+            try (PreparedStatement ps = conn.prepareStatement(select)) {
+                int i = 1;
+                for (int p : params) ps.setInt(i++, p);
+                for (Timestamp t : timestamps) ps.setTimestamp(i++, t);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) ids.add(rs.getInt(1));
+                }
             }
-
-            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM Rachunek WHERE klient_id = ?")) {
-                ps.setInt(1, userId);
-                ps.executeUpdate();
+            if (ids.isEmpty()) {
+                conn.rollback();
+                return 0;
             }
+            deleteChunk(conn, ids, heldFilms);
+            conn.commit();
+        } catch (SQLException e) {
+            try { conn.rollback(); } catch (SQLException ex) {}
+            throw e;
+        } finally {
+            try { conn.setAutoCommit(true); conn.close(); } catch (SQLException e) {}
+        }
+        afterDelete(ids, heldFilms);
+        logger.info("Usunięto porcję użytkowników: {}", ids.size());
+        progress.accept(ids);
+        return ids.size();
+    }
 
-            try (PreparedStatement ps = conn.prepareStatement("UPDATE Film SET dostepny=1 WHERE id IN (SELECT film_id FROM Transakcja WHERE klient_id=? AND dataZwrotu IS NULL)")) {
-                ps.setInt(1, userId);
-                ps.executeUpdate();
+    /**
+     * Usuwa dane podanych użytkowników zapytaniami zbiorowymi w bieżącej transakcji.
+     *
+     * @param conn      Połączenie z wyłączonym automatycznym zatwierdzaniem.
+     * @param ids       ID użytkowników.
+     * @param heldFilms Uzupełniana o ID filmów, które użytkownicy mieli wypożyczone.
+     * @return Liczba usuniętych kont.
+     */
+    private int deleteChunk(Connection conn, List<Integer> ids, List<Integer> heldFilms) throws SQLException {
+        String in = placeholders(ids.size());
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT film_id FROM Transakcja WHERE dataZwrotu IS NULL AND klient_id IN " + in)) {
+            bind(ps, ids);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) heldFilms.add(rs.getInt(1));
             }
+        }
+        execute(conn, "UPDATE Film SET dostepny = 1 WHERE id IN " +
+                "(SELECT film_id FROM Transakcja WHERE dataZwrotu IS NULL AND klient_id IN " + in + ")", ids);
+        execute(conn, "DELETE FROM Oplata WHERE transakcja_id IN (SELECT id FROM Transakcja WHERE klient_id IN " + in + ")", ids);
+        execute(conn, "DELETE FROM Oplata_Archiwum WHERE transakcja_id IN " +
+                "(SELECT id FROM Transakcja_Archiwum WHERE klient_id IN " + in + ")", ids);
+        execute(conn, "DELETE FROM Transakcja_Archiwum WHERE klient_id IN " + in, ids);
+        execute(conn, "DELETE FROM Rachunek WHERE klient_id IN " + in, ids);
+        execute(conn, "DELETE FROM Transakcja WHERE klient_id IN " + in, ids);
+        execute(conn, "DELETE FROM Klient WHERE id IN " + in, ids);
+        return execute(conn, "DELETE FROM Uzytkownik WHERE id IN " + in, ids);
+    }
 
-            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM Transakcja WHERE klient_id = ?")) {
-                ps.setInt(1, userId);
-                ps.executeUpdate();
-            }
+    /** Aktualizuje pamięć podręczną serwera po zatwierdzonym usunięciu użytkowników. */
+    private static void afterDelete(List<Integer> ids, List<Integer> heldFilms) {
+        for (int filmId : heldFilms) FilmCatalog.shared().markAvailable(filmId, true);
+        for (int userId : ids) {
+            BillingEngine.shared().forget(userId);
+            UserHistoryCache.shared().forget(userId);
+        }
+    }
 
-            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM Klient WHERE id = ?")) {
-                ps.setInt(1, userId);
-                ps.executeUpdate();
-            }
+    private static String placeholders(int n) {
+        StringBuilder sb = new StringBuilder(n * 3 + 2).append('(');
+        for (int i = 0; i < n; i++) sb.append(i == 0 ? "?" : ", ?");
+        return sb.append(')').toString();
+    }
 
-            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM Uzytkownik WHERE id = ?")) {
-                ps.setInt(1, userId);
-                int rows = ps.executeUpdate();
-                conn.commit();
-                logger.info("Usunięto użytkownika ID: " + userId);
-                return rows > 0;
-            }
+    private static void bind(PreparedStatement ps, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) ps.setInt(i + 1, ids.get(i));
+    }
 
-        } catch (SQLException e) {
-            try { conn.rollback(); } catch (SQLException ex) {}
-            logger.error("Błąd usuwania użytkownika ID " + userId, e);
-            return false;
-        } finally {
-            try { conn.close(); } catch (SQLException e) {}
+    private static int execute(Connection conn, String sql, List<Integer> ids) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            bind(ps, ids);
+            return ps.executeUpdate();
         }
     }
 
@@ -219,12 +406,12 @@ public class UserRepository {
      */
     public boolean changeUserPassword(int userId, String newPass) {
         String sql = "UPDATE Uzytkownik SET password_hash = ? WHERE id = ?";
-        try (Connection conn = Database.connect();
+        try (Connection conn = Database.connect("UserRepository.changeUserPassword");
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, hash(newPass));
             ps.setInt(2, userId);
             int rows = ps.executeUpdate();
-            logger.info("Zmieniono hasło dla ID: " + userId);
+            logger.info("Zmieniono hasło dla ID: {}", userId);
             return rows > 0;
         } catch (SQLException e) {
             logger.error("Błąd zmiany hasła", e);
@@ -238,7 +425,7 @@ public class UserRepository {
      * @param input Hasło w tekście jawnym.
      * @return Skrót hasła w formacie szesnastkowym (Hex String).
      */
-    private String hash(String input) {
+    String hash(String input) {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
             byte[] digest = md.digest(input.getBytes());
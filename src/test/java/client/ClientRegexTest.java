@@ -33,4 +33,14 @@ class ClientRegexTest {
         assertEquals("16.50", m.group(2));
         assertEquals("Suma bieżąca (Start + 4 min)", m.group(3));
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldReadFilmFieldsFromTextLine() {
+        FilmEntry film = FilmEntry.parse("12. Dobry, zły i brzydki (1966) - Dostępny: Nie");
+
+        assertNotNull(film);
+        assertEquals(new FilmEntry(12, "Dobry, zły i brzydki", 1966, false), film);
+        assertEquals("12. Dobry, zły i brzydki (1966) - Dostępny: Nie", film.format());
+        assertNull(FilmEntry.parse("Brak filmów"));
+    }
+}
@@ -0,0 +1,121 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void shouldRedactPasswordsAndTokens() throws Exception {
+        Path file = dir.resolve("access.log");
+        try (AccessLog log = new AccessLog(file, 64, 16, 1.0)) {
+            long start = System.nanoTime();
+            log.log("/127.0.0.1:5000", "LOGIN;jan;tajne", start);
+            log.log("/127.0.0.1:5000", "RENT;7;abcdef123456", start);
+            log.log("/127.0.0.1:5000", "PAY;3;10.0;abcdef123456", start);
+            log.log("/127.0.0.1:5000", "GET_FILMS_PAGE;0;20", start);
+        }
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).contains(" /127.0.0.1:5000 LOGIN;jan;*** "), lines.get(0));
+        assertTrue(lines.get(1).contains(" RENT;7;abcd*** "), lines.get(1));
+        assertTrue(lines.get(2).contains(" PAY;3;10.0;abcd*** "), lines.get(2));
+        assertTrue(lines.get(3).contains(" GET_FILMS_PAGE;0;20 "), lines.get(3));
+        assertTrue(lines.get(3).endsWith("ms"));
+        String all = String.join("\n", lines);
+        assertFalse(all.contains("tajne"));
+        assertFalse(all.contains("abcdef123456"));
+    }
+
+    @Test
+    void shouldWakeIdleWriterOnNewEntry() throws Exception {
+        Path file = dir.resolve("idle.log");
+        try (AccessLog log = new AccessLog(file, 64, 16, 1.0)) {
+            Thread.sleep(100); // wątek zapisujący zasypia przy pustym buforze
+            log.log("c", "RENT;1;abcdef", System.nanoTime());
+            long deadline = System.nanoTime() + 500_000_000L;
+            while (Files.size(file) == 0 && System.nanoTime() < deadline) Thread.sleep(5);
+            assertTrue(Files.size(file) > 0, "Wpis zapisany przed upływem awaryjnego czasu snu");
+        }
+    }
+
+    @Test
+    void shouldSampleOnlyReadCommands() throws Exception {
+        Path file = dir.resolve("sampled.log");
+        try (AccessLog log = new AccessLog(file, 64, 16, 0.0)) {
+            long start = System.nanoTime();
+            log.log("c", "GET_FILMS", start);
+            log.log("c", "MY_TRANS;abcdef", start);
+            log.log("c", "RENT;1;abcdef", start);
+            assertEquals(2, log.sampledOut());
+        }
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("RENT;1;abcd***"));
+    }
+
+    @Test
+    void shouldDropInsteadOfBlockingWhenBufferIsFull() throws Exception {
+        Path file = dir.resolve("full.log");
+        int total = 20_000;
+        long dropped;
+        try (AccessLog log = new AccessLog(file, 4, 2, 1.0)) {
+            for (int i = 0; i < total; i++) log.log("c", "RENT;" + i + ";abcdef", System.nanoTime());
+            dropped = log.dropped();
+        }
+
+        long written = Files.readAllLines(file, StandardCharsets.UTF_8).size();
+        assertTrue(dropped > 0, "bufor 4 wpisów powinien się zapełnić");
+        assertEquals(total, written + dropped);
+    }
+
+    @Test
+    void shouldLogWholeImportAsOneEntryWithSummary() throws Exception {
+        TestDatabaseSetup.initDatabase();
+        UserRepository userRepo = new UserRepository();
+        userRepo.registerUser("admin", "admin");
+        String token = SessionStore.shared().create(userRepo.getUserIdByCredentials("admin", "admin"));
+        CommandProcessor processor = new CommandProcessor();
+        ResponseWriter out = new ResponseWriter() {
+            @Override
+            public void line(String text) {
+            }
+
+            @Override
+            public void row(String text) {
+            }
+
+            @Override
+            public void end() {
+            }
+        };
+
+        Path file = dir.resolve("import.log");
+        try (AccessLog log = new AccessLog(file, 64, 16, 1.0)) {
+            for (String line : List.of("ADMIN_IMPORT_FILMS;" + token, "tytul,gatunek,rok", "Tajny film,Dramat,2020", "END",
+                    "COUNT_AVAILABLE")) {
+                long start = System.nanoTime();
+                processor.process(line, out);
+                processor.recordAccess(log, "c", line, start);
+            }
+        }
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size(), lines.toString());
+        assertTrue(lines.get(0).contains(" ADMIN_IMPORT_FILMS;" + token.substring(0, 4) + "***;Dodano: 1, "), lines.get(0));
+        assertTrue(lines.get(1).contains(" COUNT_AVAILABLE "), lines.get(1));
+        assertFalse(String.join("\n", lines).contains("Tajny film"), "Wiersze CSV nie trafiają do dziennika");
+    }
+}
@@ -0,0 +1,85 @@
+package server;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BillingEngineTest {
+
+    private TransactionRepository transRepo;
+    private int userId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabaseSetup.initDatabase();
+        transRepo = new TransactionRepository();
+        UserRepository userRepo = new UserRepository();
+        userRepo.registerUser("rachunek", "rachunek");
+        userId = userRepo.getUserIdByCredentials("rachunek", "rachunek");
+    }
+
+    @Test
+    void shouldChargeStartFeePlusFullMinutesInGrosze() {
+        long start = 1_000_000L;
+        assertEquals(1_000, BillingEngine.charge(1_000, start, start + 59_999));
+        assertEquals(1_150, BillingEngine.charge(1_000, start, start + 60_000));
+        assertEquals(1_000 + 90 * 150, BillingEngine.charge(1_000, start, start + 90 * 60_000L + 5));
+        assertEquals(1_000, BillingEngine.charge(1_000, start, start - 120_000), "Zegar cofnięty - bez ujemnych minut");
+        assertEquals("11.50", BillingEngine.format(1_150));
+        assertEquals(1_015, BillingEngine.toGrosze(10.15), "Zaokrąglenie kwoty DOUBLE z bazy");
+    }
+
+    @Test
+    void shouldTrackTotalOwedAndSettleAllAtOnce() throws Exception {
+        BillingEngine engine = BillingEngine.shared();
+        assertEquals(0, engine.totalOwed(userId));
+
+        transRepo.rentFilm(userId, 1);
+        transRepo.rentFilm(userId, 2);
+        assertEquals(2 * BillingEngine.START_FEE_GROSZE, engine.totalOwed(userId));
+        assertEquals(2, engine.openCharges(userId).size());
+
+        String result = transRepo.payAll(userId);
+        assertTrue(result.contains("20.00") && result.contains("Zwrócono filmów: 2"), result);
+        assertEquals(0, engine.totalOwed(userId), "Po rozliczeniu nic nie zostaje do zapłaty");
+        assertTrue(FilmCatalog.shared().isAvailable(1) && FilmCatalog.shared().isAvailable(2), "Filmy zwrócone");
+        assertTrue(transRepo.getUserTransactions(userId).stream().allMatch(t -> t.contains("Opłacona: TAK")));
+        assertEquals("Brak należności do zapłaty.", transRepo.payAll(userId));
+    }
+
+    @Test
+    void shouldAddNewRentalWithoutReloadAndEvictLeastRecentlyUsed() throws Exception {
+        int[] loads = {0};
+        TransactionRepository counting = new TransactionRepository() {
+            @Override
+            List<BillingEngine.OpenCharge> loadOpenCharges(int id) throws SQLException {
+                loads[0]++;
+                return super.loadOpenCharges(id);
+            }
+        };
+        BillingEngine engine = new BillingEngine(counting, 2);
+        assertEquals(0, engine.totalOwed(userId));
+
+        transRepo.rentFilm(userId, 1);
+        int oplataId = BillingEngine.shared().openCharges(userId).get(0).oplataId();
+        engine.rented(userId, oplataId, 1, LocalDateTime.now().withNano(0), BillingEngine.START_FEE_GROSZE);
+        assertEquals(BillingEngine.START_FEE_GROSZE, engine.totalOwed(userId));
+        assertEquals(1, loads[0], "Nowa opłata dopisana bez ponownego wczytania");
+        assertEquals(BillingEngine.shared().openCharges(userId).get(0).startMillis(),
+                engine.openCharges(userId).get(0).startMillis(), "Data jak po wczytaniu z bazy");
+
+        engine.totalOwed(userId + 1000);
+        engine.totalOwed(userId);
+        engine.totalOwed(userId + 2000);
+        assertEquals(2, engine.size());
+        engine.totalOwed(userId);
+        assertEquals(3, loads[0], "Ostatnio używany użytkownik pozostaje w pamięci");
+        engine.totalOwed(userId + 1000);
+        assertEquals(4, loads[0], "Najdawniej używany został usunięty");
+    }
+}
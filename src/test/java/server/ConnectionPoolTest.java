@@ -0,0 +1,107 @@
+package server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabaseSetup.initDatabase();
+        ConnectionPool.Config config = new ConnectionPool.Config();
+        config.minSize = 1;
+        config.maxSize = 2;
+        config.borrowTimeoutMs = 200;
+        pool = new ConnectionPool("jdbc:h2:mem:testdb;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE", "sa", "", config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void shouldReuseReturnedConnection() throws Exception {
+        try (Connection c = pool.borrow()) {
+            assertFalse(c.isClosed());
+        }
+        try (Connection c = pool.borrow()) {
+            assertFalse(c.isClosed());
+        }
+
+        ConnectionPool.Stats stats = pool.stats();
+        assertEquals(1, stats.created(), "Drugie wypożyczenie powinno użyć tego samego połączenia");
+        assertEquals(0, stats.active());
+        assertEquals(1, stats.idle());
+        assertEquals(2, stats.borrowCount());
+    }
+
+    @Test
+    void shouldTimeOutWhenPoolExhausted() throws Exception {
+        Connection a = pool.borrow();
+        Connection b = pool.borrow();
+
+        assertThrows(SQLException.class, () -> pool.borrow(), "Pula o rozmiarze 2 nie może wydać trzeciego połączenia");
+        assertEquals(1, pool.stats().timeouts());
+
+        a.close();
+        b.close();
+    }
+
+    @Test
+    void shouldRollbackUncommittedWorkOnReturn() throws Exception {
+        try (Connection c = pool.borrow()) {
+            c.setAutoCommit(false);
+            c.createStatement().executeUpdate("UPDATE Film SET dostepny = FALSE WHERE id = 1");
+        }
+        try (Connection c = pool.borrow()) {
+            assertTrue(c.getAutoCommit(), "Połączenie z puli musi wracać w trybie autocommit");
+            var rs = c.createStatement().executeQuery("SELECT dostepny FROM Film WHERE id = 1");
+            assertTrue(rs.next());
+            assertTrue(rs.getBoolean(1), "Niezatwierdzone zmiany powinny zostać wycofane");
+        }
+    }
+
+    @Test
+    void shouldReusePreparedStatementAcrossBorrows() throws Exception {
+        String sql = "SELECT tytul FROM Film WHERE id = ?";
+        for (int id = 1; id <= 2; id++) {
+            try (Connection c = pool.borrow();
+                 PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setInt(1, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    assertTrue(rs.next(), "Film " + id + " powinien istnieć");
+                }
+            }
+        }
+
+        ConnectionPool.Stats stats = pool.stats();
+        assertEquals(1, stats.statementMisses(), "Pierwsze użycie przygotowuje zapytanie");
+        assertEquals(1, stats.statementHits(), "Drugie użycie powinno trafić w pamięć połączenia");
+    }
+
+    @Test
+    void shouldPrepareSeparateStatementWhenCachedOneIsOpen() throws Exception {
+        String sql = "SELECT COUNT(*) FROM Film";
+        try (Connection c = pool.borrow();
+             PreparedStatement a = c.prepareStatement(sql);
+             PreparedStatement b = c.prepareStatement(sql);
+             ResultSet ra = a.executeQuery();
+             ResultSet rb = b.executeQuery()) {
+            assertTrue(ra.next());
+            assertTrue(rb.next());
+            assertEquals(ra.getInt(1), rb.getInt(1));
+        }
+        assertEquals(2, pool.stats().statementMisses());
+    }
+}
@@ -2,6 +2,12 @@ package server;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
 import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -24,4 +30,161 @@ class FilmRepositoryTest {
         assertTrue(firstFilm.contains("Matrix"), "Powinien być Matrix");
         assertTrue(firstFilm.contains("Dostępny:"), "Musi zawierać status dostępności");
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldServeCatalogFromMemoryAndRefreshAvailabilityAfterRent() throws Exception {
+        filmRepo.getAllFilmsFormatted();
+
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:testdb;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE", "sa", "")) {
+            conn.createStatement().executeUpdate("UPDATE Film SET tytul = 'Zmieniony' WHERE id = 1");
+        }
+        assertTrue(filmRepo.getAllFilmsFormatted().get(0).contains("Matrix"), "Lista powinna pochodzić z pamięci");
+
+        UserRepository userRepo = new UserRepository();
+        userRepo.registerUser("kat", "kat");
+        new TransactionRepository().rentFilm(userRepo.getUserIdByCredentials("kat", "kat"), 2);
+        assertTrue(filmRepo.getAllFilmsFormatted().get(1).endsWith("Dostępny: Nie"), "Wypożyczenie musi zaktualizować dostępność");
+
+        FilmCatalog.shared().invalidate();
+        assertTrue(filmRepo.getAllFilmsFormatted().get(0).contains("Zmieniony"), "Po unieważnieniu katalog czytany jest z bazy");
+    }
+
+    @Test
+    void shouldKeepPreEncodedListingInSyncWithCatalog() throws Exception {
+        FilmCatalog catalog = FilmCatalog.shared();
+        catalog.encodedListing();
+        catalog.markAvailable(1, false);
+        catalog.markAvailable(4, true);
+
+        StringBuilder expected = new StringBuilder();
+        for (String line : filmRepo.getAllFilmsFormatted()) expected.append(line).append(System.lineSeparator());
+        expected.append("END").append(System.lineSeparator());
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        for (ByteBuffer b : catalog.encodedListing()) {
+            byte[] chunk = new byte[b.remaining()];
+            b.get(chunk);
+            actual.write(chunk);
+        }
+        assertArrayEquals(expected.toString().getBytes(Charset.defaultCharset()), actual.toByteArray(),
+                "Gotowa odpowiedź musi być identyczna z formatowaniem wierszy");
+    }
+
+    @Test
+    void shouldWalkCatalogWithKeysetPagesAndStream() throws Exception {
+        List<Integer> paged = new ArrayList<>();
+        int afterId = 0;
+        List<Film> page;
+        while (!(page = filmRepo.getFilmsPage(afterId, 3)).isEmpty()) {
+            assertTrue(page.size() <= 3, "Strona nie może przekroczyć limitu");
+            for (Film f : page) paged.add(f.id());
+            afterId = page.get(page.size() - 1).id();
+        }
+        assertEquals(List.of(1, 2, 3, 4), paged, "Strony muszą pokryć cały katalog bez powtórzeń");
+
+        List<Integer> streamed = new ArrayList<>();
+        int count = filmRepo.streamAllFilms(f -> streamed.add(f.id()));
+        assertEquals(4, count);
+        assertEquals(paged, streamed, "Strumień musi zwrócić filmy w kolejności ID");
+    }
+
+    @Test
+    void shouldSearchCatalogByPrefixTypoGenreYearAndAvailability() throws Exception {
+        FilmCatalog catalog = FilmCatalog.shared();
+
+        assertEquals(List.of(1), ids(catalog.search("matr", "", 0, false, 10)), "Dopasowanie prefiksu");
+        assertEquals(List.of(2), ids(catalog.search("INCEPCJA", "", 0, false, 10)), "Wielkość liter bez znaczenia");
+        assertEquals(List.of(3), ids(catalog.search("forest gump", "", 0, false, 10)), "Tolerancja literówek");
+        assertEquals(List.of(1, 2, 3, 4), ids(catalog.search("", "", 0, false, 10)), "Puste zapytanie zwraca cały katalog");
+        assertFalse(ids(catalog.search("", "", 0, true, 10)).contains(4), "Filtr dostępności");
+
+        Film matrix = catalog.find(1);
+        assertEquals(List.of(1), ids(catalog.search("matrix", matrix.gatunek().toUpperCase(), matrix.rok(), true, 10)));
+        assertTrue(catalog.search("matrix", "", matrix.rok() + 1, false, 10).isEmpty(), "Filtr roku");
+
+        catalog.markAvailable(1, false);
+        assertTrue(catalog.search("matrix", "", 0, true, 10).isEmpty(), "Dostępność czytana z bieżącego katalogu");
+    }
+
+    @Test
+    void shouldImportCsvSkippingDuplicatesAndRefreshCatalog() throws Exception {
+        FilmCatalog.shared().films();
+        CommandProcessor processor = new CommandProcessor();
+        List<String> reply = new ArrayList<>();
+        ResponseWriter out = new ResponseWriter() {
+            @Override
+            public void line(String text) {
+                reply.add(text);
+            }
+
+            @Override
+            public void row(String text) {
+                reply.add(text);
+            }
+
+            @Override
+            public void end() {
+                reply.add("END");
+            }
+        };
+
+        processor.process("ADMIN_IMPORT_FILMS;zly-token", out);
+        processor.process("Matrix,Sci-Fi,2021", out);
+        processor.process("ADMIN_RELOAD_FILMS", out);
+        assertEquals(List.of("SESSION_INVALID", "UNKNOWN_COMMAND", "SESSION_INVALID"), reply,
+                "Import i przeładowanie katalogu wymagają sesji administratora");
+        reply.clear();
+
+        UserRepository userRepo = new UserRepository();
+        userRepo.registerUser("admin", "admin");
+        String token = SessionStore.shared().create(userRepo.getUserIdByCredentials("admin", "admin"));
+        for (String line : List.of("ADMIN_IMPORT_FILMS;" + token, "tytul,gatunek,rok", "\"Dobry, zły i brzydki\",Western,1966",
+                "matrix ,Sci-Fi,1999", "Matrix,Sci-Fi,2021", "Matrix,Sci-Fi,2021", "bez roku,Dramat,", "END")) {
+            processor.process(line, out);
+        }
+
+        assertEquals("IMPORT_READY", reply.get(0));
+        assertEquals("Dodano: 2, pominięto duplikatów: 2, błędnych wierszy: 1", reply.get(reply.size() - 2));
+        assertEquals("END", reply.get(reply.size() - 1));
+        List<Film> films = FilmCatalog.shared().films();
+        assertEquals(6, films.size(), "Katalog przeładowany po zatwierdzeniu importu");
+        assertEquals("Dobry, zły i brzydki", films.get(4).tytul());
+        assertTrue(films.get(5).dostepny());
+
+        processor.process("COUNT_AVAILABLE", out);
+        assertEquals("5", reply.get(reply.size() - 1), "Po END procesor wraca do zwykłych komend");
+    }
+
+    @Test
+    void shouldInsertFilmsInMultiRowBatches() throws Exception {
+        List<Film> films = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) films.add(new Film(0, "Film " + i, "Dramat", 2000 + i, true));
+
+        assertEquals(5, filmRepo.insertFilms(films, 2));
+        assertEquals(9, new FilmRepository().loadFilmsFromDatabase().size());
+    }
+
+    @Test
+    void shouldHoldOnlyOneBatchAndCapImportedRows() throws Exception {
+        FilmImport current = new FilmImport(2, 3);
+        current.accept("Film A,Dramat,2001");
+        assertFalse(current.batchFull());
+        current.accept("Matrix,Sci-Fi,1999");
+        assertTrue(current.batchFull());
+
+        List<Film> batch = current.takeBatch(FilmCatalog.shared().films());
+        assertEquals(List.of("Film A"), batch.stream().map(Film::tytul).toList(), "Film z katalogu pominięty");
+        assertFalse(current.batchFull(), "Porcja opróżniona po odebraniu");
+
+        current.accept("Film B,Dramat,2002");
+        current.accept("Film C,Dramat,2003");
+        assertEquals(1, current.overLimit());
+        assertEquals(1, current.duplicates());
+    }
+
+    private static List<Integer> ids(List<Film> films) {
+        List<Integer> ids = new ArrayList<>();
+        for (Film f : films) ids.add(f.id());
+        return ids;
+    }
+}
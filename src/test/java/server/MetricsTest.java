@@ -0,0 +1,90 @@
+package server;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabaseSetup.initDatabase();
+        Metrics.reset();
+    }
+
+    @Test
+    void shouldReportPercentilesWithinBucketPrecision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) h.record(i * 1_000L);
+
+        assertEquals(1000, h.count());
+        assertEquals(1_000_000L, h.max());
+        long p50 = h.percentile(0.50);
+        long p99 = h.percentile(0.99);
+        assertTrue(p50 >= 500_000 && p50 <= 625_000, "p50 = " + p50);
+        assertTrue(p99 >= 990_000 && p99 <= 1_000_000, "p99 = " + p99);
+        assertEquals(0, new LatencyHistogram().percentile(0.99));
+    }
+
+    @Test
+    void shouldTrackCommandsAndRepositoryCalls() throws Exception {
+        CommandProcessor processor = new CommandProcessor();
+        RecordingWriter out = new RecordingWriter();
+        processor.process("REGISTER;metryki;metryki", out);
+        processor.process("LOGIN;metryki;metryki", out);
+        processor.process("NIEZNANA", out);
+
+        assertEquals(1, Metrics.command("LOGIN").count());
+        assertEquals(1, Metrics.repository("UserRepository.getUserIdByCredentials").count());
+        assertTrue(Metrics.poolAcquire().count() >= 2);
+
+        UserRepository userRepo = new UserRepository();
+
+        out.lines.clear();
+        processor.process("ADMIN_STATS;" + SessionStore.shared().create(userRepo.getUserIdByCredentials("metryki", "metryki")), out);
+        assertEquals(List.of("SESSION_INVALID", "END"), out.lines, "Statystyki wymagają sesji administratora");
+
+        out.lines.clear();
+        userRepo.registerUser("admin", "admin");
+        processor.process("ADMIN_STATS;" + SessionStore.shared().create(userRepo.getUserIdByCredentials("admin", "admin")), out);
+        assertTrue(out.lines.stream().anyMatch(l -> l.startsWith("command;LOGIN;count=1;")), out.lines.toString());
+        assertTrue(out.lines.stream().noneMatch(l -> l.contains("NIEZNANA")), "Nieznane komendy nie są mierzone");
+        assertEquals("END", out.lines.get(out.lines.size() - 1));
+
+        try (MetricsHttpServer http = new MetricsHttpServer(0)) {
+            HttpResponse<String> resp = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + http.port() + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, resp.statusCode());
+            assertTrue(resp.body().contains("dvd_command_duration_seconds_count{command=\"LOGIN\"} 1"), resp.body());
+        }
+    }
+
+    /** Zapamiętuje odpowiedzi w postaci linii protokołu tekstowego. */
+    private static final class RecordingWriter implements ResponseWriter {
+        private final List<String> lines = new ArrayList<>();
+
+        @Override
+        public void line(String text) {
+            lines.add(text);
+        }
+
+        @Override
+        public void row(String text) {
+            lines.add(text);
+        }
+
+        @Override
+        public void end() {
+            lines.add("END");
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioServerTest {
+
+    private NioServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabaseSetup.initDatabase();
+        server = new NioServer(new InetSocketAddress("localhost", 0), 2, 10);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void shouldHandleLoginAndGetFilms() throws Exception {
+        try (Socket socket = new Socket("localhost", server.getPort());
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+
+            out.println("REGISTER;test;test");
+            assertEquals("REGISTER_OK", in.readLine());
+
+            out.println("LOGIN;test;test");
+            assertTrue(in.readLine().startsWith("LOGIN_OK"), "Logowanie powinno się udać");
+
+            out.println("GET_FILMS");
+            assertTrue(in.readLine().contains("Matrix"), "Powinien zwrócić pierwszy film");
+            String line;
+            while ((line = in.readLine()) != null && !"END".equals(line)) {
+                assertFalse(line.isEmpty());
+            }
+        }
+    }
+
+    @Test
+    void shouldReassembleCommandSplitAcrossWritesAndKeepOrder() throws Exception {
+        try (Socket socket = new Socket("localhost", server.getPort());
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            OutputStream raw = socket.getOutputStream();
+            Charset cs = Charset.defaultCharset();
+
+            raw.write("REGISTER;po".getBytes(cs));
+            raw.flush();
+            Thread.sleep(50);
+            raw.write("dzielony;x\r\nNIEZNANA\nLOGIN;podzielony;x\n".getBytes(cs));
+            raw.flush();
+
+            assertEquals("REGISTER_OK", in.readLine());
+            assertEquals("UNKNOWN_COMMAND", in.readLine());
+            assertTrue(in.readLine().startsWith("LOGIN_OK"));
+        }
+    }
+
+    @Test
+    void shouldRejectConnectionsOverLimit() throws Exception {
+        server.close();
+        server = new NioServer(new InetSocketAddress("localhost", 0), 1, 1);
+        server.start();
+
+        try (Socket first = new Socket("localhost", server.getPort());
+             PrintWriter out = new PrintWriter(first.getOutputStream(), true);
+             BufferedReader firstIn = new BufferedReader(new InputStreamReader(first.getInputStream()))) {
+            out.println("NIEZNANA");
+            assertEquals("UNKNOWN_COMMAND", firstIn.readLine());
+
+            try (Socket second = new Socket("localhost", server.getPort());
+                 BufferedReader in = new BufferedReader(new InputStreamReader(second.getInputStream()))) {
+                assertEquals(ServerApp.BUSY_RESPONSE, in.readLine());
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package server;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RentGroupCommitterTest {
+
+    private TransactionRepository transRepo;
+    private int userId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabaseSetup.initDatabase();
+        transRepo = new TransactionRepository();
+        UserRepository userRepo = new UserRepository();
+        userRepo.registerUser("grupa", "grupa");
+        userId = userRepo.getUserIdByCredentials("grupa", "grupa");
+    }
+
+    @Test
+    void shouldCommitConcurrentRentsInOneBatchWithPerFilmResults() throws Exception {
+        try (RentGroupCommitter committer = new RentGroupCommitter(transRepo, 16, 200)) {
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int filmId : new int[] {1, 2, 1, 4}) results.add(committer.submit(userId, filmId));
+
+            assertTrue(results.get(0).get().startsWith("Wypo"), "Pierwsze żądanie filmu 1 wygrywa");
+            assertTrue(results.get(1).get().startsWith("Wypo"));
+            assertEquals("Film jest niedostępny", results.get(2).get(), "Drugie żądanie tego samego filmu przegrywa");
+            assertEquals("Film jest niedostępny", results.get(3).get(), "Film 4 jest niedostępny w init.sql");
+        }
+
+        assertEquals(2, transRepo.getUserTransactions(userId).size(), "Zapisane tylko wygrane wypożyczenia");
+        assertFalse(FilmCatalog.shared().isAvailable(1));
+        assertFalse(FilmCatalog.shared().isAvailable(2));
+    }
+
+    @Test
+    void shouldFallBackToSingleTransactionsWhenBatchFails() throws Exception {
+        try (RentGroupCommitter committer = new RentGroupCommitter(transRepo, 16, 200)) {
+            CompletableFuture<String> bad = committer.submit(-1, 1);
+            CompletableFuture<String> good = committer.submit(userId, 2);
+
+            assertTrue(good.get().startsWith("Wypo"), "Błędne żądanie nie może odrzucić pozostałych");
+            assertFalse(bad.get().startsWith("Wypo"));
+        }
+    }
+}
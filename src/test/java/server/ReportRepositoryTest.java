@@ -0,0 +1,119 @@
+package server;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportRepositoryTest {
+
+    private ReportRepository reports;
+    private int first;
+    private int second;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabaseSetup.initDatabase();
+        reports = new ReportRepository();
+        UserRepository userRepo = new UserRepository();
+        userRepo.registerUser("raport1", "raport1");
+        userRepo.registerUser("raport2", "raport2");
+        first = userRepo.getUserIdByCredentials("raport1", "raport1");
+        second = userRepo.getUserIdByCredentials("raport2", "raport2");
+    }
+
+    @Test
+    void shouldReportRevenuePerDayInDateOrder() throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:testdb;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE", "sa", "");
+             Statement st = conn.createStatement()) {
+            st.executeUpdate("INSERT INTO Rachunek (klient_id, dataWystawienia, lacznaKwota) VALUES (" + first + ", '2024-03-02 10:00:00', 12.5)");
+            st.executeUpdate("INSERT INTO Rachunek (klient_id, dataWystawienia, lacznaKwota) VALUES (" + second + ", '2024-03-01 18:00:00', 10.0)");
+            st.executeUpdate("INSERT INTO Rachunek (klient_id, dataWystawienia, lacznaKwota) VALUES (" + second + ", '2024-03-02 09:00:00', 1.5)");
+        }
+        List<String> rows = new ArrayList<>();
+        reports.revenuePerDay(rows::add);
+
+        assertEquals(List.of("2024-03-01 | 10.00 zł | rachunków: 1", "2024-03-02 | 14.00 zł | rachunków: 2",
+                "Razem | 24.00 zł | rachunków: 3"), rows);
+    }
+
+    @Test
+    void shouldRankFilmsGenresAndCustomersIncludingArchive() throws Exception {
+        TransactionRepository transRepo = new TransactionRepository();
+        transRepo.rentFilm(first, 1);
+        transRepo.rentFilm(second, 2);
+        transRepo.payAll(first);
+        transRepo.rentFilm(second, 1);
+        transRepo.payAll(second);
+        transRepo.rentFilm(first, 3);
+        new TransactionArchiver(10, 0).archiveAll(Timestamp.valueOf(LocalDateTime.now().plusDays(1)));
+
+        List<String> films = new ArrayList<>();
+        reports.topFilms(2, films::add);
+        assertEquals(2, films.size());
+        assertTrue(films.get(0).startsWith("1. Matrix (1999)") && films.get(0).endsWith("wypożyczeń: 2"),
+                "Wypożyczenia z archiwum są liczone: " + films);
+
+        List<String> genres = new ArrayList<>();
+        reports.rentalsPerGenre(genres::add);
+        assertEquals(List.of("Sci-Fi: 3", "Dramat: 1"), genres);
+
+        List<String> customers = new ArrayList<>();
+        reports.topCustomers(10, customers::add);
+        assertEquals(2, customers.size());
+        assertTrue(customers.get(0).contains("raport2 (ID " + second + ")"), "Klient z dwiema opłatami: " + customers);
+    }
+
+    @Test
+    void shouldRequireAdminSessionForReport() throws Exception {
+        CommandProcessor processor = new CommandProcessor();
+        List<String> reply = new ArrayList<>();
+        ResponseWriter out = new ResponseWriter() {
+            @Override
+            public void line(String text) {
+                reply.add(text);
+            }
+
+            @Override
+            public void row(String text) {
+                reply.add(text);
+            }
+
+            @Override
+            public void end() {
+                reply.add("END");
+            }
+        };
+
+        processor.process("ADMIN_REPORT;" + SessionStore.shared().create(first) + ";GENRES", out);
+        assertEquals(List.of("SESSION_INVALID", "END"), reply, "Raport wymaga sesji administratora");
+        reply.clear();
+
+        UserRepository userRepo = new UserRepository();
+        userRepo.registerUser("admin", "admin");
+        String token = SessionStore.shared().create(userRepo.getUserIdByCredentials("admin", "admin"));
+        processor.process("ADMIN_REPORT;" + token + ";GENRES", out);
+        assertEquals(List.of("END"), reply, "Administrator dostaje raport (pusty bez wypożyczeń)");
+    }
+
+    @Test
+    void shouldSumAndSelectTopKeysAcrossGrowth() {
+        IntLongMap map = new IntLongMap(4);
+        for (int key = 1; key <= 10_000; key++) map.add(key, key % 100);
+        map.add(-5, 1_000);
+        map.add(-5, 1_000);
+
+        assertEquals(10_001, map.size());
+        assertEquals(2_000, map.get(-5));
+        assertEquals(0, map.get(123_456));
+        assertArrayEquals(new int[]{-5, 99, 199}, map.top(3));
+    }
+}
@@ -4,7 +4,12 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import protocol.BinaryProtocol;
+import protocol.Request;
+
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.lang.reflect.Constructor;
@@ -12,6 +17,7 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -85,4 +91,141 @@ class ServerAppTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldRejectConnectionWhenSessionLimitReached() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(port);
+             Socket socket = new Socket("localhost", port);
+             Socket accepted = serverSocket.accept();
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+
+            ServerApp.dispatch(accepted, executor, new Semaphore(0));
+
+            assertEquals(ServerApp.BUSY_RESPONSE, in.readLine());
+            assertNull(in.readLine(), "Serwer powinien zamknąć odrzucone połączenie");
+        }
+    }
+
+    @Test
+    void shouldRejectWhenAllPoolThreadsAreBusy() throws Exception {
+        System.setProperty("server.pool.threads", "1");
+        ExecutorService pool = ServerApp.createExecutor(ServerApp.ExecutionMode.POOL);
+        try (ServerSocket serverSocket = new ServerSocket(port);
+             Socket first = new Socket("localhost", port);
+             Socket second = new Socket("localhost", port)) {
+            Semaphore sessions = new Semaphore(10);
+            ServerApp.dispatch(serverSocket.accept(), pool, sessions);
+            PrintWriter out = new PrintWriter(first.getOutputStream(), true);
+            BufferedReader firstIn = new BufferedReader(new InputStreamReader(first.getInputStream()));
+            out.println("COUNT_AVAILABLE");
+            assertNotNull(firstIn.readLine(), "Pierwsze połączenie zajmuje jedyny wątek");
+
+            ServerApp.dispatch(serverSocket.accept(), pool, sessions);
+            BufferedReader secondIn = new BufferedReader(new InputStreamReader(second.getInputStream()));
+            assertEquals(ServerApp.BUSY_RESPONSE, secondIn.readLine(), "Bez kolejki - od razu SERVER_BUSY");
+            assertEquals(9, sessions.availablePermits(), "Odrzucone połączenie zwalnia miejsce sesji");
+        } finally {
+            System.clearProperty("server.pool.threads");
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldSwitchToBinaryProtocolAfterNegotiation() throws Exception {
+        startHandler();
+
+        try (Socket socket = new Socket("localhost", port)) {
+            PrintWriter textOut = new PrintWriter(socket.getOutputStream(), true);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+
+            textOut.println(BinaryProtocol.NEGOTIATE);
+            StringBuilder ack = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\n') ack.append((char) b);
+            assertEquals(BinaryProtocol.NEGOTIATE_OK, ack.toString().trim());
+
+            Request.getFilms().writeFrame(out);
+            out.flush();
+            DataInputStream frame = BinaryProtocol.readFrame(in);
+            assertEquals(BinaryProtocol.REPLY_FILMS, frame.readUnsignedByte());
+            assertEquals(4, frame.readInt(), "init.sql zawiera 4 filmy");
+            assertEquals(1, frame.readInt());
+            assertEquals("Matrix", BinaryProtocol.readString(frame));
+            assertEquals(1999, frame.readShort());
+            assertEquals(1, frame.readUnsignedByte());
+
+            Request.register("bin", "bin").writeFrame(out);
+            out.flush();
+            frame = BinaryProtocol.readFrame(in);
+            assertEquals(BinaryProtocol.REPLY_LINE, frame.readUnsignedByte());
+            assertEquals("REGISTER_OK", BinaryProtocol.readString(frame));
+        }
+    }
+
+    @Test
+    void shouldAnswerPipelinedCommandsInOrder() throws Exception {
+        startHandler();
+
+        try (Socket socket = new Socket("localhost", port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            socket.getOutputStream().write("REGISTER;pipe;pipe\nLOGIN;pipe;pipe\nGET_FILMS\nNIEZNANA\n".getBytes());
+            socket.getOutputStream().flush();
+
+            assertEquals("REGISTER_OK", in.readLine());
+            assertTrue(in.readLine().startsWith("LOGIN_OK"));
+            int films = 0;
+            String line;
+            while (!"END".equals(line = in.readLine())) {
+                assertNotNull(line);
+                films++;
+            }
+            assertEquals(4, films);
+            assertEquals("UNKNOWN_COMMAND", in.readLine());
+        }
+    }
+
+    @Test
+    void shouldAuthorizeCommandsWithSessionToken() throws Exception {
+        startHandler();
+
+        try (Socket socket = new Socket("localhost", port);
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            out.println("REGISTER;sesja;sesja");
+            assertEquals("REGISTER_OK", in.readLine());
+            out.println("LOGIN;sesja;sesja");
+            String[] login = in.readLine().split(";");
+            assertEquals(3, login.length, "LOGIN_OK;<id>;<token>");
+            String token = login[2];
+
+            out.println("RENT;1;" + token);
+            assertTrue(in.readLine().startsWith("Wypo"), "Wypożyczenie z ważnym tokenem");
+            out.println("MY_RENTS;" + token);
+            assertTrue(in.readLine().contains("Matrix"));
+            assertEquals("END", in.readLine());
+
+            out.println("MY_RENTS;" + login[1]);
+            assertEquals(CommandProcessor.SESSION_INVALID, in.readLine(), "Surowe ID nie może zastąpić tokenu");
+            assertEquals("END", in.readLine());
+
+            out.println("LOGOUT;" + token);
+            assertEquals("LOGOUT_OK", in.readLine());
+            out.println("RENT;2;" + token);
+            assertEquals(CommandProcessor.SESSION_INVALID, in.readLine());
+        }
+    }
+
+    private void startHandler() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(port);
+        executor.submit(() -> {
+            try (ServerSocket ss = serverSocket; Socket clientSocket = ss.accept()) {
+                Constructor<?> ctor = Class.forName("server.ServerApp$ClientHandler").getDeclaredConstructor(Socket.class);
+                ctor.setAccessible(true);
+                ((Runnable) ctor.newInstance(clientSocket)).run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+}
@@ -0,0 +1,31 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionStoreTest {
+
+    @Test
+    void shouldResolveTokensAndExpireIdleSessions() throws Exception {
+        SessionStore store = new SessionStore(50, 0);
+        String first = store.create(7);
+        String second = store.create(7);
+        assertNotEquals(first, second, "Tokeny muszą być unikalne");
+
+        SessionStore.Session session = store.touch(first);
+        assertEquals(7, session.userId());
+        assertEquals(1, session.commandCount());
+        assertNull(store.touch("nieznany"));
+
+        Thread.sleep(80);
+        assertNull(store.touch(first), "Sesja bezczynna dłużej niż TTL wygasa");
+        assertEquals(1, store.sweep(), "Porządkowanie usuwa pozostałą wygasłą sesję");
+        assertEquals(0, store.size());
+
+        String third = store.create(8);
+        store.create(8);
+        assertEquals(2, store.removeUser(8));
+        assertNull(store.touch(third));
+    }
+}
@@ -32,5 +32,8 @@ public class TestDatabaseSetup {
                 }
             }
         }
+        FilmCatalog.shared().invalidate();
+        BillingEngine.shared().forgetAll();
+        UserHistoryCache.shared().forgetAll();
     }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package server;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionArchiverTest {
+
+    private TransactionRepository transRepo;
+    private int userId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabaseSetup.initDatabase();
+        transRepo = new TransactionRepository();
+        UserRepository userRepo = new UserRepository();
+        userRepo.registerUser("archiwum", "archiwum");
+        userId = userRepo.getUserIdByCredentials("archiwum", "archiwum");
+    }
+
+    @Test
+    void shouldMoveOnlySettledRentalsInChunks() throws Exception {
+        transRepo.rentFilm(userId, 1);
+        transRepo.rentFilm(userId, 2);
+        transRepo.payAll(userId);
+        transRepo.rentFilm(userId, 3);
+        assertEquals(3, UserHistoryCache.shared().rentals(userId).size());
+
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().plusDays(1));
+        assertEquals(2, new TransactionArchiver(1, 0).archiveAll(cutoff), "Dwie porcje po jednej transakcji");
+
+        assertEquals(1, transRepo.getUserRentals(userId).size(), "W tabeli bieżącej zostaje otwarte wypożyczenie");
+        assertEquals(1, transRepo.getUserTransactions(userId).size());
+        assertEquals(2, transRepo.getArchivedRentals(userId).size());
+        assertTrue(transRepo.getArchivedTransactions(userId).stream().allMatch(t -> t.contains("Opłacona: TAK")));
+        assertEquals(transRepo.getUserRentals(userId), UserHistoryCache.shared().rentals(userId));
+        assertEquals(0, new TransactionArchiver(1, 0).archiveAll(cutoff), "Otwarte wypożyczenie nie jest archiwizowane");
+    }
+
+    @Test
+    void shouldIncludeArchiveOnlyWhenRequested() throws Exception {
+        transRepo.rentFilm(userId, 1);
+        transRepo.payAll(userId);
+        transRepo.rentFilm(userId, 2);
+        new TransactionArchiver(100, 0).archiveAll(Timestamp.valueOf(LocalDateTime.now().plusDays(1)));
+
+        String token = SessionStore.shared().create(userId);
+        CommandProcessor processor = new CommandProcessor();
+        Rows hot = new Rows();
+        processor.process("MY_RENTS;" + token, hot);
+        Rows all = new Rows();
+        processor.process("MY_RENTS;" + token + ";ALL", all);
+        Rows fees = new Rows();
+        processor.process("MY_TRANS;" + token + ";ALL", fees);
+
+        assertEquals(1, hot.rows.size());
+        assertEquals(2, all.rows.size());
+        assertTrue(all.rows.get(0).startsWith("1. "), "Archiwum przed bieżącymi wypożyczeniami");
+        assertEquals(2, fees.rows.size());
+    }
+
+    private static final class Rows implements ResponseWriter {
+        private final List<String> rows = new ArrayList<>();
+
+        @Override
+        public void line(String text) {
+            rows.add(text);
+        }
+
+        @Override
+        public void row(String text) {
+            rows.add(text);
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+}
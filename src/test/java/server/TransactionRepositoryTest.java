@@ -2,6 +2,8 @@ package server;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -52,7 +54,7 @@ class TransactionRepositoryTest {
         String line = trans.get(0);
         int oplataId = Integer.parseInt(line.split("\\|")[0].replaceAll("[^0-9]", ""));
 
-        String payResult = transRepo.payTransaction(oplataId);
+        String payResult = transRepo.payTransaction(userId, oplataId);
 
         assertTrue(payResult.contains("Sukces"), "Płatność udana");
         assertTrue(payResult.contains("zwrócony"), "Film powinien zostać zwrócony");
@@ -64,4 +66,71 @@ class TransactionRepositoryTest {
         String filmInfo = filmRepo.getAllFilmsFormatted().get(0); // Matrix
         assertTrue(filmInfo.contains("Dostępny: true"), "Film powinien być znów dostępny");
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldRefuseToPayAnotherUsersFee() throws Exception {
+        transRepo.rentFilm(userId, 1);
+        String line = transRepo.getUserTransactions(userId).get(0);
+        int oplataId = Integer.parseInt(line.split("\\|")[0].replaceAll("[^0-9]", ""));
+        userRepo.registerUser("obcy", "pass");
+        int other = userRepo.getUserIdByCredentials("obcy", "pass");
+
+        assertEquals("Błąd: Opłata nie istnieje.", transRepo.payTransaction(other, oplataId));
+
+        CommandProcessor processor = new CommandProcessor();
+        List<String> reply = new java.util.ArrayList<>();
+        ResponseWriter out = new ResponseWriter() {
+            @Override
+            public void line(String text) {
+                reply.add(text);
+            }
+
+            @Override
+            public void row(String text) {
+                reply.add(text);
+            }
+
+            @Override
+            public void end() {
+            }
+        };
+        processor.process("PAY;" + oplataId, out);
+        processor.process("PAY;" + oplataId + ";0.0;" + SessionStore.shared().create(other), out);
+        assertEquals(List.of(CommandProcessor.SESSION_INVALID, "Błąd: Opłata nie istnieje."), reply);
+
+        assertTrue(transRepo.getUserTransactions(userId).get(0).contains("Opłacona: NIE"));
+        assertFalse(FilmCatalog.shared().isAvailable(1), "Cudze wypożyczenie nie zostało zakończone");
+    }
+
+    @Test
+    void shouldRejectRentOfUnavailableFilmFromBitmapWithoutDatabase() throws Exception {
+        FilmCatalog catalog = FilmCatalog.shared();
+        assertEquals(3, catalog.availableCount());
+
+        transRepo.rentFilm(userId, 1);
+        assertFalse(catalog.isAvailable(1));
+        assertEquals(2, catalog.availableCount(), "Licznik dostępnych musi spaść po wypożyczeniu");
+        assertEquals(List.of(2, 3), catalog.availableFilms().stream().map(Film::id).toList());
+
+        // Baza twierdzi, że film jest dostępny, ale mapa bitowa odrzuca wypożyczenie bez transakcji.
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:testdb;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE", "sa", "")) {
+            conn.createStatement().executeUpdate("UPDATE Film SET dostepny = TRUE WHERE id = 1");
+        }
+        assertEquals("Film jest niedostępny", transRepo.rentFilm(userId, 1));
+        assertEquals(1, transRepo.getUserTransactions(userId).size(), "Nie może powstać druga transakcja");
+    }
+
+    @Test
+    void shouldRejectRentWhileSameFilmIsBeingRented() {
+        TransactionRepository.RENTS_IN_FLIGHT.add(2);
+        try {
+            assertEquals("Film jest niedostępny", transRepo.rentFilm(userId, 2), "Przegrany nie otwiera transakcji");
+            assertTrue(transRepo.getUserTransactions(userId).isEmpty());
+        } finally {
+            TransactionRepository.RENTS_IN_FLIGHT.remove(2);
+        }
+
+        assertTrue(transRepo.rentFilm(userId, 2).startsWith("Wypo"), "Po zakończeniu wypożyczenia film znów można wypożyczyć");
+        assertTrue(TransactionRepository.RENTS_IN_FLIGHT.isEmpty(), "Znacznik musi zostać zwolniony");
+    }
+}
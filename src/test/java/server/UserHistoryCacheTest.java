@@ -0,0 +1,86 @@
+package server;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserHistoryCacheTest {
+
+    private TransactionRepository transRepo;
+    private UserRepository userRepo;
+    private int userId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDatabaseSetup.initDatabase();
+        transRepo = new TransactionRepository();
+        userRepo = new UserRepository();
+        userRepo.registerUser("historia", "historia");
+        userId = userRepo.getUserIdByCredentials("historia", "historia");
+    }
+
+    @Test
+    void shouldMatchDatabaseAfterIncrementalRentAndPay() throws Exception {
+        UserHistoryCache cache = UserHistoryCache.shared();
+        assertTrue(cache.rentals(userId).isEmpty());
+        assertTrue(cache.transactions(userId).isEmpty());
+
+        transRepo.rentFilm(userId, 1);
+        transRepo.rentFilm(userId, 2);
+        assertEquals(transRepo.getUserRentals(userId), cache.rentals(userId));
+        assertEquals(transRepo.getUserTransactions(userId), cache.transactions(userId));
+        assertEquals(2, cache.rentals(userId).size());
+
+        String first = cache.transactions(userId).get(0);
+        int oplataId = Integer.parseInt(first.substring(first.indexOf(' ') + 1, first.indexOf(" |")));
+        transRepo.payTransaction(userId, oplataId);
+        assertEquals(transRepo.getUserRentals(userId), cache.rentals(userId));
+        assertEquals(transRepo.getUserTransactions(userId), cache.transactions(userId));
+        assertTrue(cache.transactions(userId).get(0).contains("Opłacona: TAK"));
+
+        transRepo.payAll(userId);
+        List<String> rentals = cache.rentals(userId);
+        assertEquals(transRepo.getUserRentals(userId), rentals);
+        assertEquals(transRepo.getUserTransactions(userId), cache.transactions(userId));
+        assertTrue(rentals.stream().noneMatch(r -> r.endsWith("Wypożyczony")));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedUsers() throws Exception {
+        userRepo.registerUser("drugi", "drugi");
+        userRepo.registerUser("trzeci", "trzeci");
+        int second = userRepo.getUserIdByCredentials("drugi", "drugi");
+        int third = userRepo.getUserIdByCredentials("trzeci", "trzeci");
+
+        UserHistoryCache cache = new UserHistoryCache(transRepo, 2, 1_000);
+        cache.rentals(userId);
+        cache.rentals(second);
+        cache.rentals(userId);
+        cache.rentals(third);
+
+        assertEquals(2, cache.size());
+        cache.forget(userId);
+        assertEquals(1, cache.size(), "Najdawniej używany (drugi) został usunięty, zostaje trzeci");
+        cache.forget(third);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void shouldNotCacheHistoryWhenLoadingFails() {
+        TransactionRepository failing = new TransactionRepository() {
+            @Override
+            List<UserHistoryCache.LoadedRental> loadRentals(int userId) throws SQLException {
+                throw new SQLException("Brak połączenia z bazą");
+            }
+        };
+        UserHistoryCache cache = new UserHistoryCache(failing, 10, 1_000);
+
+        assertThrows(SQLException.class, () -> cache.rentals(userId));
+        assertThrows(SQLException.class, () -> cache.transactions(userId));
+        assertEquals(0, cache.size(), "Pusta historia po błędzie nie trafia do pamięci podręcznej");
+    }
+}
@@ -2,6 +2,14 @@ package server;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class UserRepositoryTest {
@@ -39,4 +47,107 @@ class UserRepositoryTest {
         int userId = userRepo.getUserIdByCredentials("testuser", "zlehaslo");
         assertEquals(-1, userId, "Złe hasło powinno zwrócić -1");
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldDeleteUserWithHistoryAndReleaseFilm() throws Exception {
+        int userId = userRepo.getUserIdByCredentials("testuser", "testpass");
+        new TransactionRepository().rentFilm(userId, 1);
+
+        assertTrue(userRepo.deleteUser(userId));
+        assertEquals(-1, userRepo.getUserIdByCredentials("testuser", "testpass"));
+        assertTrue(FilmCatalog.shared().isAvailable(1), "Film usuniętego użytkownika wraca do katalogu");
+    }
+
+    @Test
+    void shouldDeleteUsersInChunksSkippingAdmin() throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            userRepo.registerUser("masowy" + i, "haslo");
+            ids.add(userRepo.getUserIdByCredentials("masowy" + i, "haslo"));
+        }
+        userRepo.registerUser("admin", "admin");
+        ids.add(userRepo.getUserIdByCredentials("admin", "admin"));
+        new TransactionRepository().rentFilm(ids.get(0), 2);
+
+        List<Integer> chunks = new ArrayList<>();
+        int deleted = userRepo.deleteUsers(ids, 2, chunk -> chunks.add(chunk.size()));
+
+        assertEquals(5, deleted);
+        assertEquals(List.of(2, 2, 1), chunks, "Porcje po 2, konto admin pominięte");
+        assertTrue(userRepo.getUserIdByCredentials("admin", "admin") > 0);
+        assertTrue(FilmCatalog.shared().isAvailable(2));
+    }
+
+    @Test
+    void shouldDeleteOnlyInactiveUsers() throws Exception {
+        userRepo.registerUser("aktywny", "haslo");
+        int active = userRepo.getUserIdByCredentials("aktywny", "haslo");
+        new TransactionRepository().rentFilm(active, 1);
+
+        assertEquals(0, userRepo.deleteInactiveUsers(LocalDate.now().minusDays(1), 10, chunk -> { }),
+                "Konto założone po dacie granicznej nie jest usuwane, choć nic nie wypożyczyło");
+
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:testdb;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE", "sa", "");
+             Statement st = conn.createStatement()) {
+            st.executeUpdate("UPDATE Uzytkownik SET dataRejestracji = DATEADD('DAY', -30, CURRENT_TIMESTAMP)");
+        }
+        int deleted = userRepo.deleteInactiveUsers(LocalDate.now().minusDays(1), 10, chunk -> { });
+
+        assertEquals(1, deleted, "Usunięty tylko dawno zarejestrowany testuser bez wypożyczeń");
+        assertEquals(-1, userRepo.getUserIdByCredentials("testuser", "testpass"));
+        assertEquals(active, userRepo.getUserIdByCredentials("aktywny", "haslo"));
+    }
+
+    @Test
+    void shouldAddRegistrationDateToExistingDatabase() throws Exception {
+        assertFalse(UserRepository.migrateRegistrationDate(), "Kolumna już istnieje");
+
+        userRepo.registerUser("aktywny", "haslo");
+        int active = userRepo.getUserIdByCredentials("aktywny", "haslo");
+        new TransactionRepository().rentFilm(active, 1);
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:testdb;MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE", "sa", "");
+             Statement st = conn.createStatement()) {
+            st.executeUpdate("UPDATE Transakcja SET dataWypozyczenia = DATEADD('DAY', -10, CURRENT_TIMESTAMP)");
+            st.executeUpdate("ALTER TABLE Uzytkownik DROP COLUMN dataRejestracji");
+        }
+
+        assertTrue(UserRepository.migrateRegistrationDate());
+        assertEquals(1, userRepo.deleteInactiveUsers(LocalDate.now().minusDays(20), 10, chunk -> { }),
+                "Konto bez wypożyczeń nie wygląda na świeżo założone, konto z wypożyczeniem ma jego datę");
+        assertEquals(-1, userRepo.getUserIdByCredentials("testuser", "testpass"));
+        assertEquals(active, userRepo.getUserIdByCredentials("aktywny", "haslo"));
+    }
+
+    @Test
+    void shouldRequireAdminSessionForMassDelete() throws Exception {
+        int userId = userRepo.getUserIdByCredentials("testuser", "testpass");
+        userRepo.registerUser("admin", "admin");
+        int adminId = userRepo.getUserIdByCredentials("admin", "admin");
+        CommandProcessor processor = new CommandProcessor();
+        List<String> reply = new ArrayList<>();
+        ResponseWriter out = new ResponseWriter() {
+            @Override
+            public void line(String text) {
+                reply.add(text);
+            }
+
+            @Override
+            public void row(String text) {
+                reply.add(text);
+            }
+
+            @Override
+            public void end() {
+                reply.add("END");
+            }
+        };
+
+        processor.process("ADMIN_DEL_USERS;" + SessionStore.shared().create(userId) + ";IDS;" + userId, out);
+        assertEquals(List.of(CommandProcessor.SESSION_INVALID, "END"), reply, "Zwykły użytkownik nie może usuwać kont");
+        assertTrue(userRepo.getUserIdByCredentials("testuser", "testpass") > 0);
+
+        reply.clear();
+        processor.process("ADMIN_DEL_USERS;" + SessionStore.shared().create(adminId) + ";IDS;" + userId, out);
+        assertEquals("Usunięto użytkowników: 1", reply.get(reply.size() - 2));
+    }
+}
@@ -5,7 +5,8 @@
 CREATE TABLE Uzytkownik (
   id INT AUTO_INCREMENT PRIMARY KEY,
   username VARCHAR(100) NOT NULL UNIQUE,
-  password_hash VARCHAR(255) NOT NULL
+  password_hash VARCHAR(255) NOT NULL,
+  dataRejestracji TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
 
 CREATE TABLE Klient (
@@ -43,6 +44,8 @@ CREATE TABLE Rachunek (
   CONSTRAINT fk_rachunek_klient FOREIGN KEY (klient_id) REFERENCES Klient(id)
 );
 
+CREATE INDEX idx_rachunek_data ON Rachunek(dataWystawienia);
+
 CREATE TABLE Oplata (
   id INT AUTO_INCREMENT PRIMARY KEY,
   transakcja_id INT NOT NULL,
@@ -53,6 +56,27 @@ CREATE TABLE Oplata (
   CONSTRAINT fk_oplata_rachunek FOREIGN KEY (rachunek_id) REFERENCES Rachunek(id)
 );
 
+-- Archiwum rozliczonych wypożyczeń (zwrócone i opłacone) - przenoszone z tabel Transakcja/Oplata przez TransactionArchiver
+CREATE TABLE Transakcja_Archiwum (
+  id INT PRIMARY KEY,
+  klient_id INT NOT NULL,
+  film_id INT NOT NULL,
+  dataWypozyczenia TIMESTAMP,
+  dataZwrotu TIMESTAMP NULL
+);
+
+CREATE INDEX idx_trans_arch_klient ON Transakcja_Archiwum(klient_id);
+
+CREATE TABLE Oplata_Archiwum (
+  id INT PRIMARY KEY,
+  transakcja_id INT NOT NULL,
+  rachunek_id INT NULL,
+  kwota DOUBLE,
+  powod VARCHAR(255)
+);
+
+CREATE INDEX idx_oplata_arch_trans ON Oplata_Archiwum(transakcja_id);
+
 -- Przykładowe dane (kilka filmów dostępnych)
 INSERT INTO Film(tytul, gatunek, rok, dostepny) VALUES ('Matrix', 'Sci-Fi', 1999, TRUE);
 INSERT INTO Film(tytul, gatunek, rok, dostepny) VALUES ('Incepcja', 'Sci-Fi', 2010, TRUE);
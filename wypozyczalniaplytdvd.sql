@@ -4,9 +4,20 @@ USE WypozyczalniaPlytDVD;
 CREATE TABLE IF NOT EXISTS Uzytkownik (
   id INT AUTO_INCREMENT PRIMARY KEY,
   username VARCHAR(100) NOT NULL UNIQUE,
-  password_hash VARCHAR(64) NOT NULL
+  password_hash VARCHAR(64) NOT NULL,
+  dataRejestracji TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
 
+-- Migracja baz utworzonych przed dodaniem kolumny dataRejestracji (serwer wykonuje ją sam przy starcie,
+-- UserRepository.migrateRegistrationDate). Istniejące konta dostają datę pierwszego wypożyczenia,
+-- a konta bez wypożyczeń 2000-01-01 - inaczej wartość domyślna oznaczałaby je jako świeżo założone
+-- i ADMIN_DEL_USERS;...;INACTIVE nigdy by ich nie usunął.
+-- ALTER TABLE Uzytkownik ADD COLUMN dataRejestracji TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP;
+-- UPDATE Uzytkownik SET dataRejestracji = COALESCE(
+--     (SELECT MIN(a.dataWypozyczenia) FROM Transakcja_Archiwum a WHERE a.klient_id = Uzytkownik.id),
+--     (SELECT MIN(t.dataWypozyczenia) FROM Transakcja t WHERE t.klient_id = Uzytkownik.id),
+--     TIMESTAMP '2000-01-01 00:00:00');
+
 
 CREATE TABLE Klient (
     id INT AUTO_INCREMENT PRIMARY KEY,
@@ -45,7 +56,8 @@ CREATE TABLE Rachunek (
     klient_id INT NOT NULL,
     dataWystawienia DATE NOT NULL,
     lacznaKwota DOUBLE,
-    FOREIGN KEY (klient_id) REFERENCES Klient(id)
+    FOREIGN KEY (klient_id) REFERENCES Klient(id),
+    INDEX idx_rachunek_data (dataWystawienia)
 );
 
 
@@ -59,3 +71,25 @@ CREATE TABLE Oplata (
     FOREIGN KEY (transakcja_id) REFERENCES Transakcja(id),
     FOREIGN KEY (rachunek_id) REFERENCES Rachunek(id)
 );
+
+
+-- Archiwum rozliczonych wypożyczeń (zwrócone i opłacone) - przenoszone z tabel Transakcja/Oplata przez TransactionArchiver
+CREATE TABLE Transakcja_Archiwum (
+    id INT PRIMARY KEY,
+    klient_id INT NOT NULL,
+    film_id INT NOT NULL,
+    dataWypozyczenia DATE NOT NULL,
+    dataZwrotu DATE,
+    INDEX idx_trans_arch_klient (klient_id)
+);
+
+
+
+CREATE TABLE Oplata_Archiwum (
+    id INT PRIMARY KEY,
+    transakcja_id INT NOT NULL,
+    rachunek_id INT,
+    kwota DOUBLE NOT NULL,
+    powod VARCHAR(255),
+    INDEX idx_oplata_arch_trans (transakcja_id)
+);